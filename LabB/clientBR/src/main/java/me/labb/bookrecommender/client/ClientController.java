@@ -19,13 +19,18 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 import javafx.util.Pair;
+import me.labb.bookrecommender.client.comunicazione.ClientComunicazione;
 import me.labb.bookrecommender.client.comunicazione.ClientOperazioni;
+import me.labb.bookrecommender.client.comunicazione.ClientOperazioniAsync;
 import me.labb.bookrecommender.client.oggetti.*;
 
 import java.io.IOException;
 import java.net.URL;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -36,6 +41,12 @@ import java.util.stream.Collectors;
  * @author Manicone Giorgia 758716 VA
  */
 public class ClientController implements Initializable {
+    // Libri richiesti per ogni pagina dei risultati e posizione di scorrimento (0-1) oltre cui caricare la successiva
+    private static final int PAGINA_RISULTATI = 20;
+    private static final double SOGLIA_CARICAMENTO = 0.9;
+    // Elementi richiesti per ogni pagina di libreria, valutazioni e consigli
+    private static final int PAGINA_ELENCO = 50;
+
     // Cache locale dei libri per mostrare titolo/autore nelle valutazioni
     private final Map<Integer, Libro> libriCache = new HashMap<>();
 
@@ -74,6 +85,14 @@ public class ClientController implements Initializable {
     @FXML
     private TextField annoField;
     @FXML
+    private ScrollPane resultScrollPane;
+    @FXML
+    private ScrollPane libreriaScrollPane;
+    @FXML
+    private ScrollPane valutazioniScrollPane;
+    @FXML
+    private ScrollPane consigliScrollPane;
+    @FXML
     private VBox resultContainer;
     @FXML
     private Label resultLabel;
@@ -126,6 +145,14 @@ public class ClientController implements Initializable {
     private VBox consigliContainer;
 
     private ClientOperazioni client;
+    private ClientOperazioniAsync clientAsync;
+    private CompletableFuture<Pagina<Libro>> ricercaCorrente;
+    // Richiede una pagina della ricerca mostrata dato il cursore; null se non ci sono altre pagine da caricare
+    private Function<String, CompletableFuture<Pagina<Libro>>> paginaRicerca;
+    private String cursoreRicerca;
+    private ElencoAPagine<Libro> elencoLibreria;
+    private ElencoAPagine<Valutazione> elencoValutazioni;
+    private ElencoAPagine<Consiglio> elencoConsigli;
     private boolean isConnected = false;
     private boolean isLoggedIn = false;
     private Utente utente;
@@ -174,6 +201,7 @@ public class ClientController implements Initializable {
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
         client = new ClientOperazioni("localhost", 8080);
+        clientAsync = new ClientOperazioniAsync(client);
 
 
         HBox.setMargin(creaLibreriaBtn, new Insets(20, 0, 20, 0));
@@ -206,6 +234,16 @@ public class ClientController implements Initializable {
 
         // Configura il listener per il caricamento automatico delle librerie
         setupTabListener();
+
+        // Carica la pagina successiva dei risultati quando si scorre vicino alla fine
+        resultScrollPane.vvalueProperty().addListener((obs, vecchio, nuovo) -> {
+            if (nuovo.doubleValue() >= SOGLIA_CARICAMENTO) {
+                caricaPaginaSuccessiva();
+            }
+        });
+        elencoLibreria = new ElencoAPagine<>(libreriaScrollPane, "libri");
+        elencoValutazioni = new ElencoAPagine<>(valutazioniScrollPane, "valutazioni");
+        elencoConsigli = new ElencoAPagine<>(consigliScrollPane, "consigli");
     }
 
 
@@ -305,44 +343,29 @@ public class ClientController implements Initializable {
         loadingLabel.getStyleClass().add("loading-label");
         libreriaContentContainer.getChildren().add(loadingLabel);
 
-        // Esegui il caricamento in un thread separato
-        Task<List<Libro>> task = new Task<>() {
-            @Override
-            protected List<Libro> call() throws Exception {
-                return client.visualizzaLibreria(libreriaID);
-            }
-
-            @Override
-            protected void succeeded() {
-                libreriaContentContainer.getChildren().clear();
-                List<Libro> libri = getValue();
-
+        // Le pagine successive vengono richieste scorrendo la libreria
+        Consumer<List<Libro>> aggiungiLibri = libri -> {
+            for (Libro libro : libri) {
                 // Aggiorna la cache locale dei libri
-                for (Libro libro : libri) {
-                    libriCache.put(libro.libroId(), libro);
-                }
-
-                if (libri.isEmpty()) {
-                    Label emptyLabel = new Label("Questa libreria è vuota. Aggiungi dei libri!");
-                    emptyLabel.getStyleClass().add("empty-label");
-                    libreriaContentContainer.getChildren().add(emptyLabel);
-                } else {
-                    for (Libro libro : libri) {
-                        libreriaContentContainer.getChildren().add(creaCardLibro(libro, libreriaID));
-                    }
-                }
-            }
-
-            @Override
-            protected void failed() {
-                libreriaContentContainer.getChildren().clear();
-                Label errorLabel = new Label("Errore nel caricamento dei libri: " + getException().getMessage());
-                errorLabel.getStyleClass().add("error-label");
-                libreriaContentContainer.getChildren().add(errorLabel);
+                libriCache.put(libro.libroId(), libro);
+                libreriaContentContainer.getChildren().add(creaCardLibro(libro, libreriaID));
             }
         };
-
-        new Thread(task).start();
+        elencoLibreria.carica(cursore -> clientAsync.visualizzaLibreria(libreriaID, PAGINA_ELENCO, cursore), libri -> {
+            libreriaContentContainer.getChildren().clear();
+            if (libri.isEmpty()) {
+                Label emptyLabel = new Label("Questa libreria è vuota. Aggiungi dei libri!");
+                emptyLabel.getStyleClass().add("empty-label");
+                libreriaContentContainer.getChildren().add(emptyLabel);
+            } else {
+                aggiungiLibri.accept(libri);
+            }
+        }, aggiungiLibri, errore -> {
+            libreriaContentContainer.getChildren().clear();
+            Label errorLabel = new Label("Errore nel caricamento dei libri: " + errore.getMessage());
+            errorLabel.getStyleClass().add("error-label");
+            libreriaContentContainer.getChildren().add(errorLabel);
+        });
     }
 
     /**
@@ -409,7 +432,7 @@ public class ClientController implements Initializable {
                     // Controlla se il libro è in almeno una libreria dell'utente
                     List<Libreria> mieLibrerie = client.elencaLibrerie();
                     for (Libreria lib : mieLibrerie) {
-                        List<Libro> libri = client.visualizzaLibreria(lib.libreriaID());
+                        List<Libro> libri = client.tuttiLibriInLibreria(lib.libreriaID());
                         for (Libro l : libri) {
                             if (l.libroId() == libro.libroId()) {
                                 libroInLibreria = true;
@@ -420,7 +443,7 @@ public class ClientController implements Initializable {
                     }
                 }
                 // Controlla se esiste già una valutazione dell'utente per questo libro
-                List<Valutazione> mieValutazioni = client.visualizzaMieValutazioni();
+                List<Valutazione> mieValutazioni = client.tutteMieValutazioni();
                 for (Valutazione v : mieValutazioni) {
                     if (v.libroID() == libro.libroId()) {
                         valutazionePresente = true;
@@ -722,7 +745,7 @@ public class ClientController implements Initializable {
             }
         };
 
-        new Thread(task).start();
+        esegui(task);
     }
 
     /**
@@ -757,15 +780,22 @@ public class ClientController implements Initializable {
         TextInputDialog dialog = new TextInputDialog();
         dialog.getDialogPane().getStyleClass().add("profile-dialog");
         dialog.setTitle("Aggiungi Libro");
-        dialog.setHeaderText("Aggiungi un libro alla libreria '" + libreriaSelezionata.nomeLibreria() + "'");
-        dialog.setContentText("ID del libro:");
+        dialog.setHeaderText("Aggiungi uno o più libri alla libreria '" + libreriaSelezionata.nomeLibreria() + "'");
+        dialog.setContentText("ID dei libri (separati da virgola):");
         dialog.getDialogPane().getStylesheets().add(getClass().getResource("/styles.css").toExternalForm());
 
         Optional<String> result = dialog.showAndWait();
 
         result.ifPresent(libroIDStr -> {
             try {
-                int libroID = Integer.parseInt(libroIDStr.trim());
+                List<Integer> libriID = leggiIdLibri(libroIDStr);
+                if (libriID.size() > 1) {
+                    // Più libri: un'unica richiesta con l'esito di ciascuno
+                    mostraEsitoOperazioneLibri("Libri Aggiunti", libreriaSelezionata,
+                            client.aggiungiLibriALibreria(libreriaSelezionata.libreriaID(), libriID));
+                    return;
+                }
+                int libroID = libriID.get(0);
 
                 boolean success = client.aggiungiLibroALibreria(libreriaSelezionata.libreriaID(), libroID);
                 if (success) {
@@ -822,6 +852,59 @@ public class ClientController implements Initializable {
         });
     }
 
+    /**
+     * Legge uno o più ID di libri separati da virgole o spazi.
+     *
+     * @throws NumberFormatException se un ID non è un numero intero
+     */
+    private List<Integer> leggiIdLibri(String testo) {
+        List<Integer> libriID = new ArrayList<>();
+        for (String parte : testo.trim().split("[,\\s]+")) {
+            libriID.add(Integer.parseInt(parte));
+        }
+        return libriID;
+    }
+
+    /**
+     * Mostra il riepilogo di un'aggiunta o rimozione di più libri e aggiorna la libreria.
+     */
+    private void mostraEsitoOperazioneLibri(String titolo, Libreria libreria, Map<Integer, String> esiti) {
+        if (esiti.isEmpty()) {
+            Alert alertError = new Alert(Alert.AlertType.ERROR);
+            alertError.setTitle("Errore");
+            alertError.setHeaderText("Operazione Fallita");
+            alertError.setContentText("Non è stato possibile modificare la libreria '" + libreria.nomeLibreria() + "'.");
+            alertError.getDialogPane().getStylesheets().add(getClass().getResource("/styles.css").toExternalForm());
+            alertError.getDialogPane().getStyleClass().add("error-dialog");
+            alertError.showAndWait();
+
+            stampaConAnimazione("Errore nella modifica della libreria.");
+            return;
+        }
+
+        Map<String, List<Integer>> perEsito = new LinkedHashMap<>();
+        esiti.forEach((libroID, esito) -> perEsito.computeIfAbsent(esito, _ -> new ArrayList<>()).add(libroID));
+        StringBuilder dettaglio = new StringBuilder();
+        perEsito.forEach((esito, libri) -> dettaglio.append(switch (esito) {
+            case "AGGIUNTO" -> "Aggiunti";
+            case "RIMOSSO" -> "Rimossi";
+            case "GIA_PRESENTE" -> "Già presenti";
+            case "NON_PRESENTE" -> "Non presenti";
+            case "INESISTENTE" -> "Inesistenti";
+            default -> esito;
+        }).append(": ").append(libri).append("\n"));
+
+        Alert alertSuccess = new Alert(Alert.AlertType.INFORMATION);
+        alertSuccess.setTitle("Operazione Completata");
+        alertSuccess.setHeaderText(titolo);
+        alertSuccess.setContentText(dettaglio.toString().trim());
+        alertSuccess.getDialogPane().getStylesheets().add(getClass().getResource("/styles.css").toExternalForm());
+        alertSuccess.getDialogPane().getStyleClass().add("success-dialog");
+        alertSuccess.showAndWait();
+
+        stampaConAnimazione("Libreria '" + libreria.nomeLibreria() + "' aggiornata.");
+        caricaLibriInLibreria(libreria.libreriaID());
+    }
 
     /**
      * Gestisce la rimozione di un libro da una libreria.
@@ -843,8 +926,8 @@ public class ClientController implements Initializable {
         TextInputDialog dialog = new TextInputDialog();
         dialog.getDialogPane().getStyleClass().add("profile-dialog");
         dialog.setTitle("Rimuovi Libro");
-        dialog.setHeaderText("Rimuovi un libro dalla libreria '" + libreriaSelezionata.nomeLibreria() + "'");
-        dialog.setContentText("ID del libro:");
+        dialog.setHeaderText("Rimuovi uno o più libri dalla libreria '" + libreriaSelezionata.nomeLibreria() + "'");
+        dialog.setContentText("ID dei libri (separati da virgola):");
 
         // Aggiungi stile al dialogo
         dialog.getDialogPane().getStylesheets().add(getClass().getResource("/styles.css").toExternalForm());
@@ -854,7 +937,13 @@ public class ClientController implements Initializable {
 
         result.ifPresent(libroIDStr -> {
             try {
-                int libroID = Integer.parseInt(libroIDStr.trim());
+                List<Integer> libriID = leggiIdLibri(libroIDStr);
+                if (libriID.size() > 1) {
+                    mostraEsitoOperazioneLibri("Libri Rimossi", libreriaSelezionata,
+                            client.rimuoviLibriDaLibreria(libreriaSelezionata.libreriaID(), libriID));
+                    return;
+                }
+                int libroID = libriID.get(0);
 
                 boolean success = client.rimuoviLibroDaLibreria(libreriaSelezionata.libreriaID(), libroID);
                 if (success) {
@@ -1117,39 +1206,9 @@ public class ClientController implements Initializable {
         loadingLabel.getStyleClass().add("loading-label");
         valutazioniContainer.getChildren().add(loadingLabel);
 
-        // Esegui il caricamento in un thread separato
-        Task<List<Valutazione>> task = new Task<>() {
-            @Override
-            protected List<Valutazione> call() throws Exception {
-                return client.visualizzaMieValutazioni();
-            }
-
-            @Override
-            protected void succeeded() {
-                valutazioniContainer.getChildren().clear();
-                List<Valutazione> valutazioni = getValue();
-
-                if (valutazioni.isEmpty()) {
-                    Label emptyLabel = new Label("Non hai ancora valutato nessun libro.");
-                    emptyLabel.getStyleClass().add("empty-label");
-                    valutazioniContainer.getChildren().add(emptyLabel);
-                } else {
-                    for (Valutazione valutazione : valutazioni) {
-                        valutazioniContainer.getChildren().add(creaCardValutazione(valutazione));
-                    }
-                }
-            }
-
-            @Override
-            protected void failed() {
-                valutazioniContainer.getChildren().clear();
-                Label errorLabel = new Label("Errore nel caricamento delle valutazioni: " + getException().getMessage());
-                errorLabel.getStyleClass().add("error-label");
-                valutazioniContainer.getChildren().add(errorLabel);
-            }
-        };
-
-        new Thread(task).start();
+        // Le pagine successive vengono richieste scorrendo le valutazioni
+        caricaValutazioni(cursore -> clientAsync.visualizzaMieValutazioni(PAGINA_ELENCO, cursore),
+                "Non hai ancora valutato nessun libro.");
     }
 
     /**
@@ -1178,44 +1237,44 @@ public class ClientController implements Initializable {
             loadingLabel.getStyleClass().add("loading-label");
             valutazioniContainer.getChildren().add(loadingLabel);
 
-            // Esegui il caricamento in un thread separato
-            Task<List<Valutazione>> task = new Task<>() {
-                @Override
-                protected List<Valutazione> call() throws Exception {
-                    return client.visualizzaValutazioniLibro(libroID);
-                }
-
-                @Override
-                protected void succeeded() {
-                    valutazioniContainer.getChildren().clear();
-                    List<Valutazione> valutazioni = getValue();
-
-                    if (valutazioni.isEmpty()) {
-                        Label emptyLabel = new Label("Nessuna valutazione trovata per questo libro.");
-                        emptyLabel.getStyleClass().add("empty-label");
-                        valutazioniContainer.getChildren().add(emptyLabel);
-                    } else {
-                        for (Valutazione valutazione : valutazioni) {
-                            valutazioniContainer.getChildren().add(creaCardValutazione(valutazione));
-                        }
-                    }
-                }
-
-                @Override
-                protected void failed() {
-                    valutazioniContainer.getChildren().clear();
-                    Label errorLabel = new Label("Errore nel caricamento delle valutazioni: " + getException().getMessage());
-                    errorLabel.getStyleClass().add("error-label");
-                    valutazioniContainer.getChildren().add(errorLabel);
-                }
-            };
-
-            new Thread(task).start();
+            // Le pagine successive vengono richieste scorrendo le valutazioni
+            caricaValutazioni(cursore -> clientAsync.visualizzaValutazioniLibro(libroID, PAGINA_ELENCO, cursore),
+                    "Nessuna valutazione trovata per questo libro.");
         } catch (NumberFormatException e) {
             stampaConAnimazione("ID libro non valido. Inserisci un numero intero.");
         }
     }
 
+    /**
+     * Mostra la prima pagina di valutazioni al posto di quelle visualizzate.
+     *
+     * @param richiesta      Richiede la pagina di valutazioni che segue il cursore (null per la prima)
+     * @param messaggioVuoto Il messaggio da mostrare se non ci sono valutazioni
+     */
+    private void caricaValutazioni(Function<String, CompletableFuture<Pagina<Valutazione>>> richiesta,
+                                   String messaggioVuoto) {
+        Consumer<List<Valutazione>> aggiungiValutazioni = valutazioni -> {
+            for (Valutazione valutazione : valutazioni) {
+                valutazioniContainer.getChildren().add(creaCardValutazione(valutazione));
+            }
+        };
+        elencoValutazioni.carica(richiesta, valutazioni -> {
+            valutazioniContainer.getChildren().clear();
+            if (valutazioni.isEmpty()) {
+                Label emptyLabel = new Label(messaggioVuoto);
+                emptyLabel.getStyleClass().add("empty-label");
+                valutazioniContainer.getChildren().add(emptyLabel);
+            } else {
+                aggiungiValutazioni.accept(valutazioni);
+            }
+        }, aggiungiValutazioni, errore -> {
+            valutazioniContainer.getChildren().clear();
+            Label errorLabel = new Label("Errore nel caricamento delle valutazioni: " + errore.getMessage());
+            errorLabel.getStyleClass().add("error-label");
+            valutazioniContainer.getChildren().add(errorLabel);
+        });
+    }
+
     /**
      * Crea una card per visualizzare una valutazione.
      *
@@ -1266,9 +1325,7 @@ public class ClientController implements Initializable {
                 loadingLabel.getStyleClass().add("libro-titolo-fallback");
                 headerSection.getChildren().add(loadingLabel);
 
-                Thread thread = new Thread(task);
-                thread.setDaemon(true);
-                thread.start();
+                esegui(task);
             } catch (Exception e) {
                 Label errorLabel = new Label("Libro ID: " + valutazione.libroID());
                 errorLabel.getStyleClass().add("libro-titolo-fallback");
@@ -1608,7 +1665,7 @@ public class ClientController implements Initializable {
                 }
             };
 
-            new Thread(task).start();
+            esegui(task);
         } catch (NumberFormatException e) {
             // Alert per errore di formato
             Alert alertFormatError = new Alert(Alert.AlertType.ERROR);
@@ -1639,44 +1696,35 @@ public class ClientController implements Initializable {
         loadingLabel.getStyleClass().add("loading-label");
         consigliContainer.getChildren().add(loadingLabel);
 
-        // Esegui il caricamento in un thread separato
-        Task<List<Consiglio>> task = new Task<>() {
-            @Override
-            protected List<Consiglio> call() throws Exception {
-                return client.visualizzaMieiConsigli();
-            }
-
-            @Override
-            protected void succeeded() {
-                consigliContainer.getChildren().clear();
-                List<Consiglio> consigli = getValue();
-
-                if (consigli.isEmpty()) {
-                    Label emptyLabel = new Label("Non hai ancora salvato nessun consiglio.");
-                    emptyLabel.getStyleClass().add("empty-label");
-                    consigliContainer.getChildren().add(emptyLabel);
-                } else {
-                    // Aggiungi un'etichetta con il numero di consigli
-                    Label titleLabel = new Label("I tuoi consigli salvati (" + consigli.size() + ")");
-                    titleLabel.getStyleClass().add("section-title");
-                    consigliContainer.getChildren().add(titleLabel);                    // Aggiungi le card dei consigli con la nuova implementazione migliorata
-                    for (Consiglio consiglio : consigli) {
-                        VBox consiglioCard = creaCardConsiglioMigliorata(consiglio);
-                        consigliContainer.getChildren().add(consiglioCard);
-                    }
-                }
-            }
-
-            @Override
-            protected void failed() {
-                consigliContainer.getChildren().clear();
-                Label errorLabel = new Label("Errore nel caricamento dei consigli: " + getException().getMessage());
-                errorLabel.getStyleClass().add("error-label");
-                consigliContainer.getChildren().add(errorLabel);
+        // Etichetta con il numero di consigli visualizzati, aggiornata a ogni pagina
+        Label titleLabel = new Label();
+        titleLabel.getStyleClass().add("section-title");
+        Consumer<List<Consiglio>> aggiungiConsigli = consigli -> {
+            // Aggiungi le card dei consigli con la nuova implementazione migliorata
+            for (Consiglio consiglio : consigli) {
+                VBox consiglioCard = creaCardConsiglioMigliorata(consiglio);
+                consigliContainer.getChildren().add(consiglioCard);
             }
+            titleLabel.setText("I tuoi consigli salvati (" + (consigliContainer.getChildren().size() - 1) + ")");
         };
 
-        new Thread(task).start();
+        // Le pagine successive vengono richieste scorrendo i consigli
+        elencoConsigli.carica(cursore -> clientAsync.visualizzaMieiConsigli(PAGINA_ELENCO, cursore), consigli -> {
+            consigliContainer.getChildren().clear();
+            if (consigli.isEmpty()) {
+                Label emptyLabel = new Label("Non hai ancora salvato nessun consiglio.");
+                emptyLabel.getStyleClass().add("empty-label");
+                consigliContainer.getChildren().add(emptyLabel);
+            } else {
+                consigliContainer.getChildren().add(titleLabel);
+                aggiungiConsigli.accept(consigli);
+            }
+        }, aggiungiConsigli, errore -> {
+            consigliContainer.getChildren().clear();
+            Label errorLabel = new Label("Errore nel caricamento dei consigli: " + errore.getMessage());
+            errorLabel.getStyleClass().add("error-label");
+            consigliContainer.getChildren().add(errorLabel);
+        });
     }
 
     /**
@@ -1748,7 +1796,7 @@ public class ClientController implements Initializable {
             try {
 
                 // Massimo 3 consigli per lo stesso libro
-                List<Consiglio> consigli = client.visualizzaMieiConsigli();
+                List<Consiglio> consigli = client.tuttiMieiConsigli();
                 if (!consigli.isEmpty()) {
                     long count = consigli.stream()
                             .filter(c -> c.libroRiferimentoID() == pair.getKey())
@@ -1917,7 +1965,8 @@ public class ClientController implements Initializable {
         footerBox.setAlignment(Pos.CENTER_LEFT);
 
         Label calendarIcon = new Label("📅");
-        Label dataLabel = new Label("Salvato il: " + consiglio.dataSuggerimento().toLocalDate().toString());
+        Label dataLabel = new Label("Salvato il: " + (consiglio.dataSuggerimento() != null
+                ? consiglio.dataSuggerimento().toLocalDate().toString() : "data non disponibile"));
         dataLabel.getStyleClass().add("consiglio-data");
 
         footerBox.getChildren().addAll(calendarIcon, dataLabel);        // Pulsanti di azione con miglior layout
@@ -2062,8 +2111,12 @@ public class ClientController implements Initializable {
             @Override
             protected Boolean call() {
                 try {
-
-                    return client.connetti();
+                    boolean connesso = client.connetti();
+                    // Un server che non conosce il formato binario risponde con un errore: si resta su JSON
+                    if (connesso && !client.impostaFormato(ClientComunicazione.FORMAT_BINARY)) {
+                        System.out.println("Formato binario non disponibile, uso JSON.");
+                    }
+                    return connesso;
                 } catch (IOException e) {
                     Platform.runLater(() -> {
 
@@ -2116,7 +2169,7 @@ public class ClientController implements Initializable {
         connettiBtn.setDisable(true);
         connettiBtn.setText("Connessione...");
 
-        new Thread(task).start();
+        esegui(task);
 
         task.setOnSucceeded(event -> {
             rt.stop();
@@ -2397,50 +2450,30 @@ public class ClientController implements Initializable {
         fade.setAutoReverse(true);
         fade.play();
 
-        // Esegui la ricerca in un thread separato
         String finalCategoriaSelezionata = categoriaSelezionata;
-        Task<List<Libro>> task = new Task<>() {
-            @Override
-            protected List<Libro> call() throws Exception {
-                return client.cercaLibriPerCategoria(finalCategoriaSelezionata);
-            }
-
-            @Override
-            protected void succeeded() {
-                fade.stop();
-                resultLabel.setOpacity(1.0);
-
-                List<Libro> libri = getValue();
-                if (libri.isEmpty()) {
-                    stampaConAnimazione("Nessun libro trovato per la categoria: \"" + finalCategoriaSelezionata + "\"");
-                    resultLabel.setText("Nessun risultato trovato");
-                } else {
-                    stampaConAnimazione("📚 Trovati " + libri.size() + " libri nella categoria \"" + finalCategoriaSelezionata + "\"");
-                    resultLabel.setText("Libri trovati (" + libri.size() + ")");
-                    mostraRisultati(libri);
-                }
-            }
-
-            @Override
-            protected void failed() {
-                fade.stop();
-                resultLabel.setOpacity(1.0);
-                stampaConAnimazione("Errore durante la ricerca per categoria: " + getException().getMessage());
-                resultLabel.setText("Errore nella ricerca");
-
-                // Mostra alert di errore
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("Errore nella ricerca");
-                alert.setHeaderText("Impossibile cercare libri per categoria");
-                alert.setContentText("Si è verificato un errore: " + getException().getMessage());
-                alert.getDialogPane().getStylesheets().add(getClass().getResource("/styles.css").toExternalForm());
-                alert.getDialogPane().getStyleClass().add("registration-alert");
-                animaDialogo(alert);
-                alert.showAndWait();
+        eseguiRicerca(cursore -> clientAsync.cercaLibriPerCategoria(finalCategoriaSelezionata, PAGINA_RISULTATI, cursore), fade, libri -> {
+            if (libri.isEmpty()) {
+                stampaConAnimazione("Nessun libro trovato per la categoria: \"" + finalCategoriaSelezionata + "\"");
+                resultLabel.setText("Nessun risultato trovato");
+            } else {
+                stampaConAnimazione("📚 Trovati " + libri.size() + " libri nella categoria \"" + finalCategoriaSelezionata + "\"");
+                resultLabel.setText("Libri trovati (" + libri.size() + ")");
+                mostraRisultati(libri);
             }
-        };
-
-        new Thread(task).start();
+        }, errore -> {
+            stampaConAnimazione("Errore durante la ricerca per categoria: " + errore.getMessage());
+            resultLabel.setText("Errore nella ricerca");
+
+            // Mostra alert di errore
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Errore nella ricerca");
+            alert.setHeaderText("Impossibile cercare libri per categoria");
+            alert.setContentText("Si è verificato un errore: " + errore.getMessage());
+            alert.getDialogPane().getStylesheets().add(getClass().getResource("/styles.css").toExternalForm());
+            alert.getDialogPane().getStyleClass().add("registration-alert");
+            animaDialogo(alert);
+            alert.showAndWait();
+        });
     }
 
     /**
@@ -2473,38 +2506,19 @@ public class ClientController implements Initializable {
         fade.setAutoReverse(true);
         fade.play();
 
-        Task<List<Libro>> task = new Task<>() {
-            @Override
-            protected List<Libro> call() throws Exception {
-                return client.cercaLibriPerAutore(autore).stream().toList();
-            }
-
-            @Override
-            protected void succeeded() {
-                fade.stop();
-                resultLabel.setOpacity(1.0);
-
-                List<Libro> libri = getValue();
-                if (libri.isEmpty()) {
-                    stampaConAnimazione("Nessun libro trovato per l'autore: \"" + autore + "\"");
-                    resultLabel.setText("Nessun risultato trovato");
-                } else {
-                    stampaConAnimazione("📚 Trovati " + libri.size() + " libri per l'autore \"" + autore + "\"");
-                    resultLabel.setText("Libri trovati (" + libri.size() + ")");
-                    mostraRisultati(libri);
-                }
-            }
-
-            @Override
-            protected void failed() {
-                fade.stop();
-                resultLabel.setOpacity(1.0);
-                stampaConAnimazione("Errore durante la ricerca per autore: " + getException().getMessage());
-                resultLabel.setText("Errore nella ricerca");
+        eseguiRicerca(cursore -> clientAsync.cercaLibriPerAutore(autore, PAGINA_RISULTATI, cursore), fade, libri -> {
+            if (libri.isEmpty()) {
+                stampaConAnimazione("Nessun libro trovato per l'autore: \"" + autore + "\"");
+                resultLabel.setText("Nessun risultato trovato");
+            } else {
+                stampaConAnimazione("📚 Trovati " + libri.size() + " libri per l'autore \"" + autore + "\"");
+                resultLabel.setText("Libri trovati (" + libri.size() + ")");
+                mostraRisultati(libri);
             }
-        };
-
-        new Thread(task).start();
+        }, errore -> {
+            stampaConAnimazione("Errore durante la ricerca per autore: " + errore.getMessage());
+            resultLabel.setText("Errore nella ricerca");
+        });
     }
 
     /**
@@ -2552,38 +2566,19 @@ public class ClientController implements Initializable {
         fade.setAutoReverse(true);
         fade.play();
 
-        Task<List<Libro>> task = new Task<>() {
-            @Override
-            protected List<Libro> call() throws Exception {
-                return client.cercaLibriPerAnno(Integer.parseInt(anno)).stream().toList();
-            }
-
-            @Override
-            protected void succeeded() {
-                fade.stop();
-                resultLabel.setOpacity(1.0);
-
-                List<Libro> libri = getValue();
-                if (libri.isEmpty()) {
-                    stampaConAnimazione("Nessun libro trovato per l'anno: \"" + anno + "\"");
-                    resultLabel.setText("Nessun risultato trovato");
-                } else {
-                    stampaConAnimazione("📚 Trovati " + libri.size() + " libri per l'anno \"" + anno + "\"");
-                    resultLabel.setText("Libri trovati (" + libri.size() + ")");
-                    mostraRisultati(libri);
-                }
-            }
-
-            @Override
-            protected void failed() {
-                fade.stop();
-                resultLabel.setOpacity(1.0);
-                stampaConAnimazione("Errore durante la ricerca per anno: " + getException().getMessage());
-                resultLabel.setText("Errore nella ricerca");
+        eseguiRicerca(cursore -> clientAsync.cercaLibriPerAnno(Integer.parseInt(anno), PAGINA_RISULTATI, cursore), fade, libri -> {
+            if (libri.isEmpty()) {
+                stampaConAnimazione("Nessun libro trovato per l'anno: \"" + anno + "\"");
+                resultLabel.setText("Nessun risultato trovato");
+            } else {
+                stampaConAnimazione("📚 Trovati " + libri.size() + " libri per l'anno \"" + anno + "\"");
+                resultLabel.setText("Libri trovati (" + libri.size() + ")");
+                mostraRisultati(libri);
             }
-        };
-
-        new Thread(task).start();
+        }, errore -> {
+            stampaConAnimazione("Errore durante la ricerca per anno: " + errore.getMessage());
+            resultLabel.setText("Errore nella ricerca");
+        });
     }
 
     /**
@@ -2644,38 +2639,19 @@ public class ClientController implements Initializable {
         fade.setAutoReverse(true);
         fade.play();
 
-        Task<List<Libro>> task = new Task<>() {
-            @Override
-            protected List<Libro> call() throws Exception {
-                return client.cercaLibriPerAutoreEAnno(autore, Integer.parseInt(anno)).stream().toList();
-            }
-
-            @Override
-            protected void succeeded() {
-                fade.stop();
-                resultLabel.setOpacity(1.0);
-
-                List<Libro> libri = getValue();
-                if (libri.isEmpty()) {
-                    stampaConAnimazione("Nessun libro trovato per l'autore: \"" + autore + "\"");
-                    resultLabel.setText("Nessun risultato trovato");
-                } else {
-                    stampaConAnimazione("📚 Trovati " + libri.size() + " libri per l'autore \"" + autore + "\"");
-                    resultLabel.setText("Libri trovati (" + libri.size() + ")");
-                    mostraRisultati(libri);
-                }
-            }
-
-            @Override
-            protected void failed() {
-                fade.stop();
-                resultLabel.setOpacity(1.0);
-                stampaConAnimazione("Errore durante la ricerca per autore e anno: " + getException().getMessage());
-                resultLabel.setText("Errore nella ricerca");
+        eseguiRicerca(cursore -> clientAsync.cercaLibriPerAutoreEAnno(autore, Integer.parseInt(anno), PAGINA_RISULTATI, cursore), fade, libri -> {
+            if (libri.isEmpty()) {
+                stampaConAnimazione("Nessun libro trovato per l'autore: \"" + autore + "\"");
+                resultLabel.setText("Nessun risultato trovato");
+            } else {
+                stampaConAnimazione("📚 Trovati " + libri.size() + " libri per l'autore \"" + autore + "\"");
+                resultLabel.setText("Libri trovati (" + libri.size() + ")");
+                mostraRisultati(libri);
             }
-        };
-
-        new Thread(task).start();
+        }, errore -> {
+            stampaConAnimazione("Errore durante la ricerca per autore e anno: " + errore.getMessage());
+            resultLabel.setText("Errore nella ricerca");
+        });
     }
 
     /**
@@ -2709,39 +2685,191 @@ public class ClientController implements Initializable {
         fade.setAutoReverse(true);
         fade.play();
 
-        // Esegui la ricerca in un thread separato
-        Task<List<Libro>> task = new Task<>() {
-            @Override
-            protected List<Libro> call() throws Exception {
-                return client.cercaLibri(termine).stream().toList();
+        eseguiRicerca(cursore -> clientAsync.cercaLibri(termine, PAGINA_RISULTATI, cursore), fade, libri -> {
+            if (libri.isEmpty()) {
+                stampaConAnimazione("Nessun libro trovato per: \"" + termine + "\"");
+                resultLabel.setText("Nessun risultato trovato");
+            } else {
+                stampaConAnimazione("📚 Trovati " + libri.size() + " libri per \"" + termine + "\"");
+                resultLabel.setText("Libri trovati (" + libri.size() + ")");
+                mostraRisultati(libri);
             }
+        }, errore -> {
+            stampaConAnimazione("Errore durante la ricerca: " + errore.getMessage());
+            resultLabel.setText("Errore nella ricerca");
+        });
+    }
 
-            @Override
-            protected void succeeded() {
-                fade.stop();
-                resultLabel.setOpacity(1.0);
+    /**
+     * Avvia una ricerca annullando quella ancora in corso: se l'utente cerca di nuovo prima
+     * della risposta, i risultati della ricerca precedente non sovrascrivono quelli nuovi.
+     * Le pagine successive alla prima vengono richieste scorrendo i risultati.
+     *
+     * @param ricerca   Richiede la pagina della ricerca che segue il cursore (null per la prima)
+     * @param fade      L'animazione da fermare al termine
+     * @param risultati Eseguito sul thread JavaFX con i libri della prima pagina
+     * @param errore    Eseguito sul thread JavaFX con l'errore della ricerca
+     */
+    private void eseguiRicerca(Function<String, CompletableFuture<Pagina<Libro>>> ricerca, FadeTransition fade,
+                               Consumer<List<Libro>> risultati, Consumer<Throwable> errore) {
+        if (ricercaCorrente != null) {
+            ricercaCorrente.cancel(false);
+        }
+        paginaRicerca = null;
+        cursoreRicerca = null;
+        CompletableFuture<Pagina<Libro>> primaPagina = ricerca.apply(null);
+        ricercaCorrente = primaPagina;
+
+        primaPagina.whenComplete((pagina, ex) -> Platform.runLater(() -> {
+            fade.stop();
+            if (primaPagina != ricercaCorrente) {
+                return;
+            }
+            ricercaCorrente = null;
+            resultLabel.setOpacity(1.0);
+            if (ex == null) {
+                paginaRicerca = ricerca;
+                cursoreRicerca = pagina.prossimoCursore();
+                resultScrollPane.setVvalue(0);
+                risultati.accept(pagina.elementi());
+            } else {
+                errore.accept(ClientOperazioniAsync.causa(ex));
+            }
+        }));
+    }
 
-                List<Libro> libri = getValue();
-                if (libri.isEmpty()) {
-                    stampaConAnimazione("Nessun libro trovato per: \"" + termine + "\"");
-                    resultLabel.setText("Nessun risultato trovato");
-                } else {
-                    stampaConAnimazione("📚 Trovati " + libri.size() + " libri per \"" + termine + "\"");
-                    resultLabel.setText("Libri trovati (" + libri.size() + ")");
-                    mostraRisultati(libri);
+    /**
+     * Richiede la pagina successiva della ricerca mostrata e ne aggiunge i libri ai risultati.
+     * Non fa nulla se una richiesta è già in corso o se i risultati sono tutti visualizzati.
+     */
+    private void caricaPaginaSuccessiva() {
+        if (paginaRicerca == null || cursoreRicerca == null || ricercaCorrente != null) {
+            return;
+        }
+        CompletableFuture<Pagina<Libro>> successiva = paginaRicerca.apply(cursoreRicerca);
+        ricercaCorrente = successiva;
+
+        successiva.whenComplete((pagina, ex) -> Platform.runLater(() -> {
+            if (successiva != ricercaCorrente) {
+                return;
+            }
+            ricercaCorrente = null;
+            if (ex == null) {
+                cursoreRicerca = pagina.prossimoCursore();
+                aggiungiRisultati(pagina.elementi());
+                resultLabel.setText("Libri trovati (" + resultContainer.getChildren().size() + ")");
+            } else {
+                stampa("Errore nel caricamento di altri risultati: " + ClientOperazioniAsync.causa(ex).getMessage());
+            }
+        }));
+    }
+
+    /**
+     * Elenco mostrato in una vista a scorrimento (libreria, valutazioni, consigli): come per i risultati
+     * di ricerca, le pagine successive alla prima vengono richieste quando si scorre vicino alla fine.
+     *
+     * @param <T> Tipo degli elementi dell'elenco
+     */
+    private final class ElencoAPagine<T> {
+        private final ScrollPane scrollPane;
+        private final String descrizione;
+        private CompletableFuture<Pagina<T>> inCorso;
+        // Richiede una pagina dell'elenco mostrato dato il cursore; null se non ci sono altre pagine da caricare
+        private Function<String, CompletableFuture<Pagina<T>>> richiesta;
+        private Consumer<List<T>> aggiungi;
+        private String cursore;
+
+        /**
+         * @param scrollPane  Il pannello che contiene l'elenco
+         * @param descrizione Cosa contiene l'elenco, per i messaggi di errore
+         */
+        private ElencoAPagine(ScrollPane scrollPane, String descrizione) {
+            this.scrollPane = scrollPane;
+            this.descrizione = descrizione;
+            // Le valutazioni sono affiancate in orizzontale, gli altri elenchi impilati in verticale
+            scrollPane.vvalueProperty().addListener((obs, vecchio, nuovo) -> {
+                if (nuovo.doubleValue() >= SOGLIA_CARICAMENTO) {
+                    caricaSuccessiva();
+                }
+            });
+            scrollPane.hvalueProperty().addListener((obs, vecchio, nuovo) -> {
+                if (nuovo.doubleValue() >= SOGLIA_CARICAMENTO) {
+                    caricaSuccessiva();
                 }
+            });
+        }
+
+        /**
+         * Richiede la prima pagina annullando il caricamento ancora in corso, così la risposta
+         * di un elenco richiesto in precedenza non sovrascrive quello nuovo.
+         *
+         * @param richiesta  Richiede la pagina che segue il cursore (null per la prima)
+         * @param prima      Eseguito sul thread JavaFX con gli elementi della prima pagina
+         * @param successive Eseguito sul thread JavaFX con gli elementi di ogni pagina successiva
+         * @param errore     Eseguito sul thread JavaFX con l'errore della prima pagina
+         */
+        private void carica(Function<String, CompletableFuture<Pagina<T>>> richiesta, Consumer<List<T>> prima,
+                            Consumer<List<T>> successive, Consumer<Throwable> errore) {
+            if (inCorso != null) {
+                inCorso.cancel(false);
             }
+            this.richiesta = null;
+            cursore = null;
+            CompletableFuture<Pagina<T>> primaPagina = richiesta.apply(null);
+            inCorso = primaPagina;
 
-            @Override
-            protected void failed() {
-                fade.stop();
-                resultLabel.setOpacity(1.0);
-                stampaConAnimazione("Errore durante la ricerca: " + getException().getMessage());
-                resultLabel.setText("Errore nella ricerca");
+            primaPagina.whenComplete((pagina, ex) -> Platform.runLater(() -> {
+                if (primaPagina != inCorso) {
+                    return;
+                }
+                inCorso = null;
+                if (ex == null) {
+                    this.richiesta = richiesta;
+                    aggiungi = successive;
+                    cursore = pagina.prossimoCursore();
+                    scrollPane.setVvalue(0);
+                    scrollPane.setHvalue(0);
+                    prima.accept(pagina.elementi());
+                } else {
+                    errore.accept(ClientOperazioniAsync.causa(ex));
+                }
+            }));
+        }
+
+        /**
+         * Richiede la pagina successiva e ne aggiunge gli elementi all'elenco.
+         * Non fa nulla se una richiesta è già in corso o se gli elementi sono tutti visualizzati.
+         */
+        private void caricaSuccessiva() {
+            if (richiesta == null || cursore == null || inCorso != null) {
+                return;
             }
-        };
+            CompletableFuture<Pagina<T>> successiva = richiesta.apply(cursore);
+            inCorso = successiva;
 
-        new Thread(task).start();
+            successiva.whenComplete((pagina, ex) -> Platform.runLater(() -> {
+                if (successiva != inCorso) {
+                    return;
+                }
+                inCorso = null;
+                if (ex == null) {
+                    cursore = pagina.prossimoCursore();
+                    aggiungi.accept(pagina.elementi());
+                } else {
+                    stampa("Errore nel caricamento di altri " + descrizione + ": "
+                            + ClientOperazioniAsync.causa(ex).getMessage());
+                }
+            }));
+        }
+    }
+
+    /**
+     * Esegue un Task sull'esecutore condiviso del client invece di creare un nuovo thread.
+     *
+     * @param task Il Task da eseguire
+     */
+    private void esegui(Task<?> task) {
+        ClientOperazioniAsync.getEsecutore().execute(task);
     }
 
     /**
@@ -2751,7 +2879,15 @@ public class ClientController implements Initializable {
      */
     private void mostraRisultati(List<Libro> libri) {
         resultContainer.getChildren().clear();
+        aggiungiRisultati(libri);
+    }
 
+    /**
+     * Aggiunge in fondo ai risultati mostrati le card dei libri indicati, con le stesse animazioni.
+     *
+     * @param libri La lista di libri da aggiungere
+     */
+    private void aggiungiRisultati(List<Libro> libri) {
         // Crea un effetto di caricamento progressivo
         PauseTransition delay = new PauseTransition(Duration.millis(50));
 
@@ -3347,7 +3483,7 @@ public class ClientController implements Initializable {
                         }
                     };
 
-                    new Thread(moveBookTask).start();
+                    esegui(moveBookTask);
                 });
             }
 
@@ -3357,7 +3493,7 @@ public class ClientController implements Initializable {
             }
         };
 
-        new Thread(loadLibrariesTask).start();
+        esegui(loadLibrariesTask);
     }
 
     /**
@@ -3616,31 +3752,25 @@ public class ClientController implements Initializable {
         sectionTitle.getStyleClass().addAll("book-title", "section-header");
         section.getChildren().add(sectionTitle);
 
-        // Carica le valutazioni in background
-        Task<List<Valutazione>> loadRatingsTask = new Task<>() {
+        // Carica il riepilogo calcolato dal server in background
+        Task<RiepilogoValutazioni> loadRatingsTask = new Task<>() {
             @Override
-            protected List<Valutazione> call() throws Exception {
-                return client.visualizzaValutazioniLibro(libro.libroId());
+            protected RiepilogoValutazioni call() throws Exception {
+                return client.riepilogoValutazioni(libro.libroId());
             }
 
             @Override
             protected void succeeded() {
-                List<Valutazione> valutazioni = getValue();
-                if (valutazioni.isEmpty()) {
+                RiepilogoValutazioni riepilogo = getValue();
+                if (riepilogo == null || riepilogo.numeroValutazioni() == 0) {
                     Label noRatingsLabel = new Label("Nessuna valutazione disponibile per questo libro.");
                     noRatingsLabel.getStyleClass().add("book-author");
                     section.getChildren().add(noRatingsLabel);
                 } else {
-                    // Calcola medie per ogni criterio
-                    double mediaStile = valutazioni.stream().mapToDouble(v -> v.scoreStile()).average().orElse(0);
-                    double mediaContenuto = valutazioni.stream().mapToDouble(v -> v.scoreContenuto()).average().orElse(0);
-                    double mediaGradevolezza = valutazioni.stream().mapToDouble(v -> v.scoreGradevolezza()).average().orElse(0);
-                    double mediaOriginalita = valutazioni.stream().mapToDouble(v -> v.scoreOriginalita()).average().orElse(0);
-                    double mediaEdizione = valutazioni.stream().mapToDouble(v -> v.scoreEdizione()).average().orElse(0);
-                    double mediaComplessiva = (mediaStile + mediaContenuto + mediaGradevolezza + mediaOriginalita + mediaEdizione) / 5;
+                    double mediaComplessiva = riepilogo.mediaComplessiva();
 
                     // Mostra numero totale di valutazioni
-                    Label countLabel = new Label("📊 Basato su " + valutazioni.size() + " valutazioni");
+                    Label countLabel = new Label("📊 Basato su " + riepilogo.numeroValutazioni() + " valutazioni");
                     countLabel.getStyleClass().add("book-author");
                     section.getChildren().add(countLabel);
 
@@ -3656,11 +3786,11 @@ public class ClientController implements Initializable {
 
                     // Valutazioni dettagliate per criterio
                     section.getChildren().addAll(
-                            creaRigaValutazione("🎨 Stile", mediaStile),
-                            creaRigaValutazione("📚 Contenuto", mediaContenuto),
-                            creaRigaValutazione("😊 Gradevolezza", mediaGradevolezza),
-                            creaRigaValutazione("💡 Originalità", mediaOriginalita),
-                            creaRigaValutazione("📖 Edizione", mediaEdizione)
+                            creaRigaValutazione("🎨 Stile", riepilogo.stile().media()),
+                            creaRigaValutazione("📚 Contenuto", riepilogo.contenuto().media()),
+                            creaRigaValutazione("😊 Gradevolezza", riepilogo.gradevolezza().media()),
+                            creaRigaValutazione("💡 Originalità", riepilogo.originalita().media()),
+                            creaRigaValutazione("📖 Edizione", riepilogo.edizione().media())
                     );
                 }
             }
@@ -3673,7 +3803,7 @@ public class ClientController implements Initializable {
             }
         };
 
-        new Thread(loadRatingsTask).start();
+        esegui(loadRatingsTask);
         return section;
     }
 
@@ -3727,11 +3857,17 @@ public class ClientController implements Initializable {
         sectionTitle.getStyleClass().addAll("book-title", "section-header");
         section.getChildren().add(sectionTitle);
 
-        // Carica le recensioni dettagliate
+        // Carica solo le 5 recensioni più recenti per non appesantire l'interfaccia;
+        // il totale arriva dal riepilogo, senza scaricare tutte le valutazioni
         Task<List<Valutazione>> loadReviewsTask = new Task<>() {
+            private int totale;
+
             @Override
             protected List<Valutazione> call() throws Exception {
-                return client.visualizzaValutazioniLibro(libro.libroId());
+                List<Valutazione> recenti = client.visualizzaValutazioniLibro(libro.libroId(), 5);
+                RiepilogoValutazioni riepilogo = recenti.size() < 5 ? null : client.riepilogoValutazioni(libro.libroId());
+                totale = riepilogo != null ? riepilogo.numeroValutazioni() : recenti.size();
+                return recenti;
             }
 
             @Override
@@ -3742,16 +3878,13 @@ public class ClientController implements Initializable {
                     noReviewsLabel.getStyleClass().add("book-author");
                     section.getChildren().add(noReviewsLabel);
                 } else {
-                    // Mostra solo le prime 5 recensioni per non appesantire l'interfaccia
-                    int maxReviews = Math.min(5, valutazioni.size());
-                    for (int i = 0; i < maxReviews; i++) {
-                        Valutazione val = valutazioni.get(i);
+                    for (Valutazione val : valutazioni) {
                         VBox reviewCard = creaCardRecensione(val);
                         section.getChildren().add(reviewCard);
                     }
 
-                    if (valutazioni.size() > 5) {
-                        Label moreLabel = new Label("... e altre " + (valutazioni.size() - 5) + " recensioni");
+                    if (totale > valutazioni.size()) {
+                        Label moreLabel = new Label("... e altre " + (totale - valutazioni.size()) + " recensioni");
                         moreLabel.getStyleClass().add("book-author");
                         section.getChildren().add(moreLabel);
                     }
@@ -3766,7 +3899,7 @@ public class ClientController implements Initializable {
             }
         };
 
-        new Thread(loadReviewsTask).start();
+        esegui(loadReviewsTask);
         return section;
     }
 
@@ -3782,7 +3915,8 @@ public class ClientController implements Initializable {
         HBox header = new HBox(10);
         header.setAlignment(Pos.CENTER_LEFT);
 
-        Label dateLabel = new Label("📅 " + valutazione.dataValutazione().toLocalDate().toString());
+        Label dateLabel = new Label("📅 " + (valutazione.dataValutazione() != null
+                ? valutazione.dataValutazione().toLocalDate().toString() : "data non disponibile"));
         dateLabel.getStyleClass().add("book-info");
 
         double mediaPersonale = (valutazione.scoreStile() + valutazione.scoreContenuto() +
@@ -3876,7 +4010,7 @@ public class ClientController implements Initializable {
             }
         };
 
-        new Thread(loadRecommendationsTask).start();
+        esegui(loadRecommendationsTask);
         return section;
     }
 
@@ -3947,7 +4081,7 @@ public class ClientController implements Initializable {
         Task<Long> checkSuggestionsTask = new Task<>() {
             @Override
             protected Long call() throws Exception {
-                List<Consiglio> consigli = client.visualizzaMieiConsigli();
+                List<Consiglio> consigli = client.tuttiMieiConsigli();
                 // Filtra per il libro corrente
                 return consigli.stream()
                         .filter(c -> c.libroRiferimentoID() == libro.libroId())
@@ -3970,7 +4104,7 @@ public class ClientController implements Initializable {
             }
         };
 
-        new Thread(checkSuggestionsTask).start();
+        esegui(checkSuggestionsTask);
 
         actionsBox.getChildren().addAll(addToLibraryButton, rateBookButton, suggestButton);
         section.getChildren().add(actionsBox);
@@ -4040,7 +4174,7 @@ public class ClientController implements Initializable {
                         }
                     };
 
-                    new Thread(addBookTask).start();
+                    esegui(addBookTask);
                 });
             }
 
@@ -4050,7 +4184,7 @@ public class ClientController implements Initializable {
             }
         };
 
-        new Thread(loadLibrariesTask).start();
+        esegui(loadLibrariesTask);
     }
 
     /**
@@ -4254,7 +4388,7 @@ public class ClientController implements Initializable {
             }
         };
 
-        new Thread(loadLibrariesTask).start();
+        esegui(loadLibrariesTask);
     }
 
     /**
@@ -4266,7 +4400,7 @@ public class ClientController implements Initializable {
             protected List<Libro> call() throws Exception {
                 List<Libro> tuttiLibri = new java.util.ArrayList<>();
                 for (Libreria libreria : librerie) {
-                    List<Libro> libriLibreria = client.visualizzaLibreria(libreria.libreriaID());
+                    List<Libro> libriLibreria = client.tuttiLibriInLibreria(libreria.libreriaID());
                     tuttiLibri.addAll(libriLibreria);
                 }
 
@@ -4305,7 +4439,7 @@ public class ClientController implements Initializable {
             }
         };
 
-        new Thread(loadBooksTask).start();
+        esegui(loadBooksTask);
     }
 
     /**
@@ -4358,7 +4492,7 @@ public class ClientController implements Initializable {
                 }
             };
 
-            new Thread(suggestTask).start();
+            esegui(suggestTask);
         });
     }
 
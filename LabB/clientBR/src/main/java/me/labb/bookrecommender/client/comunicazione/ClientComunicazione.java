@@ -1,20 +1,38 @@
 package me.labb.bookrecommender.client.comunicazione;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Classe che gestisce la comunicazione tra il client e il server.
  * Supporta sia il formato testuale che JSON per le comunicazioni.
+ * Le richieste non attendono la risposta della precedente: ogni richiesta JSON porta un "id"
+ * che il server riporta nella risposta, e un thread di lettura completa la richiesta corrispondente.
+ * Il server risponde nell'ordine di arrivo, quindi le risposte senza id (formato testo)
+ * vengono abbinate alla richiesta in attesa più vecchia.
+ * Con il formato BINARY richieste e risposte viaggiano come frame binari (vedi {@link FormatoBinario});
+ * i metodi pubblici continuano a ricevere e restituire il testo JSON.
+ * Alla connessione il client chiede anche la compressione: da quel momento ogni risposta è un frame
+ * e quelle più grandi della soglia del server arrivano compresse. Le richieste non vengono compresse.
  *
  * @author Caretti Gabriele 756564 VA
  * @author Como Riccardo 758697 VA
@@ -25,6 +43,7 @@ public class ClientComunicazione {
     // Format
     public static final String FORMAT_TEXT = "TEXT";
     public static final String FORMAT_JSON = "JSON";
+    public static final String FORMAT_BINARY = "BINARY";
 
     // Format di default
     private String formatoDefault = FORMAT_JSON;
@@ -35,14 +54,30 @@ public class ClientComunicazione {
 
     // Socket e stream per la comunicazione
     private Socket socket;
+    private OutputStream uscita;
     private PrintWriter out;
-    private BufferedReader in;
+    private LettoreRisposte in;
+
+    // Passa a true quando il server ha accettato FORMAT BINARY
+    private volatile boolean binario = false;
+    private volatile long idCambioFormato = -1;
+
+    // Compressione chiesta alla connessione e, se il server l'ha accettata, attiva
+    private volatile boolean compressioneRichiesta = true;
+    private volatile boolean compressione = false;
+    private volatile long idCompressione = -1;
 
     // Jackson ObjectMapper (JSON)
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     // Stato connessione
-    private boolean connesso = false;
+    private volatile boolean connesso = false;
+
+    // Richieste inviate e non ancora completate, per id e in ordine di invio
+    private final AtomicLong prossimoId = new AtomicLong(1);
+    private final Map<Long, CompletableFuture<String>> inAttesa = new ConcurrentHashMap<>();
+    private final Queue<Long> ordineInvio = new ConcurrentLinkedQueue<>();
+    private Thread lettore;
 
     /**
      * @param serverAddress Indirizzo del server
@@ -66,14 +101,24 @@ public class ClientComunicazione {
 
         try {
             socket = new Socket(serverAddress, serverPort);
-            out = new PrintWriter(socket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            uscita = new BufferedOutputStream(socket.getOutputStream());
+            out = new PrintWriter(new OutputStreamWriter(uscita, StandardCharsets.UTF_8), true);
+            in = new LettoreRisposte(socket.getInputStream());
 
             // Legge il messaggio di benvenuto dal server
-            String welcomeMessage = in.readLine();
+            String welcomeMessage = in.leggiRiga();
             System.out.println("Server: " + welcomeMessage);
 
             connesso = true;
+            LettoreRisposte inLettore = in;
+            lettore = new Thread(() -> leggiRisposte(inLettore), "lettore-risposte");
+            lettore.setDaemon(true);
+            lettore.start();
+
+            // Un server che non conosce COMPRESSIONE risponde con un errore e la sessione resta non compressa
+            if (compressioneRichiesta) {
+                attivaCompressione();
+            }
             return true;
         } catch (IOException e) {
             chiudi();
@@ -89,9 +134,6 @@ public class ClientComunicazione {
             if (out != null) {
                 out.close();
             }
-            if (in != null) {
-                in.close();
-            }
             if (socket != null && !socket.isClosed()) {
                 socket.close();
             }
@@ -100,11 +142,105 @@ public class ClientComunicazione {
         } finally {
             connesso = false;
             socket = null;
+            uscita = null;
             out = null;
             in = null;
+            lettore = null;
+            binario = false;
+            idCambioFormato = -1;
+            compressione = false;
+            idCompressione = -1;
+            if (FORMAT_BINARY.equals(formatoDefault)) {
+                formatoDefault = FORMAT_JSON;
+            }
+            fallisciInAttesa(new IOException("Connessione con il server chiusa"));
+        }
+    }
+
+    /**
+     * Eseguito dal thread di lettura: abbina ogni risposta alla sua richiesta finché la connessione resta aperta.
+     * Dopo la risposta positiva a FORMAT BINARY le risposte successive vengono lette come frame Smile;
+     * dopo quella a COMPRESSIONE come frame, decompressi se necessario, anche nel formato testuale.
+     */
+    private void leggiRisposte(LettoreRisposte in) {
+        try {
+            boolean frame = false;
+            boolean compressi = false;
+            while (true) {
+                String risposta;
+                if (frame || compressi) {
+                    byte[] contenuto = in.leggiFrame();
+                    if (contenuto == null) {
+                        risposta = null;
+                    } else {
+                        risposta = frame ? FormatoBinario.decodifica(contenuto) : new String(contenuto, StandardCharsets.UTF_8);
+                    }
+                } else {
+                    risposta = in.leggiRiga();
+                }
+                if (risposta == null) {
+                    break;
+                }
+
+                Long id = leggiId(risposta);
+                if (id == null) {
+                    id = ordineInvio.poll();
+                } else {
+                    ordineInvio.remove(id);
+                }
+                CompletableFuture<String> richiesta = id == null ? null : inAttesa.remove(id);
+                if (richiesta == null) {
+                    System.err.println("Risposta senza richiesta corrispondente: " + risposta);
+                    continue;
+                }
+
+                // Il formato cambia prima di consegnare la risposta, così il prossimo invio usa già i frame
+                if (!frame && id == idCambioFormato && isSuccesso(risposta)) {
+                    frame = true;
+                    binario = true;
+                }
+                if (!compressi && id == idCompressione && isSuccesso(risposta)) {
+                    compressi = true;
+                    compressione = true;
+                }
+                richiesta.complete(risposta);
+            }
+            fallisciInAttesa(new IOException("Connessione chiusa dal server"));
+        } catch (IOException e) {
+            fallisciInAttesa(e);
         }
     }
 
+    /**
+     * Legge solo il primo campo della risposta: il server vi scrive l'id della richiesta.
+     *
+     * @return L'id della richiesta, o null se la risposta non lo contiene
+     */
+    private Long leggiId(String risposta) {
+        if (!risposta.startsWith("{\"id\":")) {
+            return null;
+        }
+        try (JsonParser parser = objectMapper.getFactory().createParser(risposta)) {
+            if (parser.nextToken() == JsonToken.START_OBJECT && parser.nextToken() == JsonToken.FIELD_NAME
+                    && parser.nextToken() == JsonToken.VALUE_NUMBER_INT) {
+                return parser.getLongValue();
+            }
+        } catch (IOException e) {
+            System.err.println("Errore nell'analisi della risposta JSON: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private void fallisciInAttesa(IOException causa) {
+        for (Long id : inAttesa.keySet()) {
+            CompletableFuture<String> richiesta = inAttesa.remove(id);
+            if (richiesta != null) {
+                richiesta.completeExceptionally(causa);
+            }
+        }
+        ordineInvio.clear();
+    }
+
     /**
      * Verifica se il client è connesso al server.
      *
@@ -123,18 +259,8 @@ public class ClientComunicazione {
      * @throws IOException           se si verifica un errore durante la comunicazione
      * @throws IllegalStateException se il client non è connesso al server
      */
-    public synchronized String inviaComando(String comando, String parametri) throws IOException {
-        if (!isConnesso()) {
-            throw new IllegalStateException("Il client non è connesso al server");
-        }
-        String richiesta;
-        if (formatoDefault.equals(FORMAT_JSON)) {
-            richiesta = formattaRichiestaJSON(comando, parametri);
-        } else {
-            richiesta = formattaRichiestaTesto(comando, parametri);
-        }
-        out.println(richiesta);
-        return in.readLine();
+    public String inviaComando(String comando, String parametri) throws IOException {
+        return attendi(inviaComandoAsync(comando, parametri));
     }
 
     /**
@@ -147,13 +273,78 @@ public class ClientComunicazione {
      * @throws IllegalStateException se il client non è connesso al server
      */
     public String inviaComando(String comando, Map<String, Object> parametri) throws IOException {
-        if (!isConnesso()) {
-            throw new IllegalStateException("Il client non è connesso al server");
+        return attendi(inviaComandoAsync(comando, parametri));
+    }
+
+    /**
+     * Invia un comando al server senza attendere la risposta.
+     *
+     * @param comando   Il comando da inviare
+     * @param parametri I parametri del comando (può essere null)
+     * @return La risposta del server, completata dal thread di lettura
+     * @throws IllegalStateException se il client non è connesso al server
+     */
+    public CompletableFuture<String> inviaComandoAsync(String comando, String parametri) {
+        long id = prossimoId.getAndIncrement();
+        String richiesta;
+        if (!formatoDefault.equals(FORMAT_TEXT)) {
+            richiesta = formattaRichiestaJSON(id, comando, parametri);
+        } else {
+            richiesta = formattaRichiestaTesto(comando, parametri);
+        }
+        return invia(id, richiesta);
+    }
+
+    /**
+     * Chiede al server una pagina di un elenco e riceve la risposta.
+     *
+     * @param comando   Il comando da inviare
+     * @param parametri I parametri del comando (può essere null)
+     * @param limite    Il numero massimo di elementi della pagina
+     * @param cursore   Il cursore ricevuto con la pagina precedente, o null per la prima pagina
+     * @return La risposta del server, con "prossimoCursore" se ci sono altre pagine
+     * @throws IOException           se si verifica un errore durante la comunicazione
+     * @throws IllegalStateException se il client non è connesso al server
+     */
+    public String inviaComandoPaginato(String comando, String parametri, int limite, String cursore) throws IOException {
+        return attendi(inviaComandoPaginatoAsync(comando, parametri, limite, cursore));
+    }
+
+    /**
+     * Chiede al server una pagina di un elenco senza attendere la risposta.
+     * La richiesta è sempre in JSON, anche con il formato TEXT: limite e cursore
+     * viaggiano in campi propri e non possono confondersi con i parametri di una ricerca.
+     *
+     * @param comando   Il comando da inviare
+     * @param parametri I parametri del comando (può essere null)
+     * @param limite    Il numero massimo di elementi della pagina
+     * @param cursore   Il cursore ricevuto con la pagina precedente, o null per la prima pagina
+     * @return La risposta del server, completata dal thread di lettura
+     * @throws IllegalStateException se il client non è connesso al server
+     */
+    public CompletableFuture<String> inviaComandoPaginatoAsync(String comando, String parametri, int limite, String cursore) {
+        long id = prossimoId.getAndIncrement();
+        Map<String, Object> pagina = new HashMap<>();
+        pagina.put("limite", limite);
+        if (cursore != null) {
+            pagina.put("cursore", cursore);
         }
+        return invia(id, formattaRichiestaJSON(id, comando, parametri, pagina));
+    }
 
+    /**
+     * Invia un comando con parametri strutturati al server senza attendere la risposta.
+     *
+     * @param comando   Il comando da inviare
+     * @param parametri I parametri del comando come mappa chiave-valore
+     * @return La risposta del server, completata dal thread di lettura
+     * @throws IllegalStateException se il client non è connesso al server
+     */
+    public CompletableFuture<String> inviaComandoAsync(String comando, Map<String, Object> parametri) {
+        long id = prossimoId.getAndIncrement();
         String richiesta;
-        if (formatoDefault.equals(FORMAT_JSON)) {
-            richiesta = formattaRichiestaJSONStrutturata(comando, parametri);
+        if (!formatoDefault.equals(FORMAT_TEXT)) {
+            richiesta = formattaRichiestaJSONStrutturata(id, comando, parametri);
         } else {
             // Converti i parametri in una stringa
             StringBuilder paramsStr = new StringBuilder();
@@ -164,9 +355,109 @@ public class ClientComunicazione {
             }
             richiesta = formattaRichiestaTesto(comando, paramsStr.toString().trim());
         }
+        return invia(id, richiesta);
+    }
 
-        out.println(richiesta);
-        return in.readLine();
+    /**
+     * Registra la richiesta tra quelle in attesa e la scrive sulla connessione.
+     * La scrittura è sincronizzata perché l'ordine di invio deve coincidere con quello registrato.
+     */
+    private synchronized CompletableFuture<String> invia(long id, String richiesta) {
+        if (!isConnesso()) {
+            throw new IllegalStateException("Il client non è connesso al server");
+        }
+        CompletableFuture<String> risposta = new CompletableFuture<>();
+        inAttesa.put(id, risposta);
+        ordineInvio.add(id);
+        boolean errore;
+        if (binario) {
+            try {
+                uscita.write(FormatoBinario.codificaFrame(richiesta));
+                uscita.flush();
+                errore = false;
+            } catch (IOException e) {
+                errore = true;
+            }
+        } else {
+            out.println(richiesta);
+            errore = out.checkError();
+        }
+        if (errore) {
+            inAttesa.remove(id);
+            ordineInvio.remove(id);
+            risposta.completeExceptionally(new IOException("Errore nell'invio della richiesta al server"));
+        }
+        return risposta;
+    }
+
+    /**
+     * Chiede al server di passare al formato BINARY. Finché il server non risponde
+     * nessun'altra richiesta viene inviata, perché dopo la risposta la connessione usa solo frame.
+     *
+     * @return true se il server ha accettato il formato binario
+     * @throws IOException           se si verifica un errore durante la comunicazione
+     * @throws IllegalStateException se il client non è connesso al server
+     */
+    public synchronized boolean attivaFormatoBinario() throws IOException {
+        if (binario) {
+            return true;
+        }
+        long id = prossimoId.getAndIncrement();
+        idCambioFormato = id;
+        attendi(invia(id, formattaRichiestaJSON(id, "FORMAT", FORMAT_BINARY)));
+        if (binario) {
+            formatoDefault = FORMAT_BINARY;
+        }
+        return binario;
+    }
+
+    /**
+     * Chiede al server di comprimere le risposte. Come per il formato binario, nessun'altra richiesta
+     * viene inviata finché il server non risponde, perché dopo la risposta le risposte arrivano come frame.
+     * Viene chiamato da {@link #connetti()} se la compressione è richiesta.
+     *
+     * @return true se il server ha attivato la compressione
+     * @throws IOException           se si verifica un errore durante la comunicazione
+     * @throws IllegalStateException se il client non è connesso al server
+     */
+    public synchronized boolean attivaCompressione() throws IOException {
+        if (compressione) {
+            return true;
+        }
+        long id = prossimoId.getAndIncrement();
+        idCompressione = id;
+        attendi(invia(id, formattaRichiestaJSON(id, "COMPRESSIONE", "DEFLATE")));
+        return compressione;
+    }
+
+    /**
+     * Indica se chiedere la compressione delle risposte alle prossime connessioni.
+     *
+     * @param richiesta true per chiederla (predefinito), false per ricevere sempre righe di testo o frame non compressi
+     */
+    public void setCompressione(boolean richiesta) {
+        this.compressioneRichiesta = richiesta;
+    }
+
+    /**
+     * @return true se il server comprime le risposte di questa connessione
+     */
+    public boolean isCompressione() {
+        return compressione;
+    }
+
+    private String attendi(CompletableFuture<String> risposta) throws IOException {
+        try {
+            return risposta.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Attesa della risposta interrotta", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException causa) {
+                throw causa;
+            }
+            throw new IOException(e.getCause());
+        }
     }
 
     /**
@@ -187,12 +478,27 @@ public class ClientComunicazione {
     /**
      * Formatta una richiesta in formato JSON.
      *
+     * @param id        Identificativo della richiesta
      * @param comando   Il comando da inviare
      * @param parametri I parametri del comando (può essere null)
      * @return La richiesta formattata in JSON
      */
-    private String formattaRichiestaJSON(String comando, String parametri) {
-        Map<String, Object> richiesta = new HashMap<>();
+    private String formattaRichiestaJSON(long id, String comando, String parametri) {
+        return formattaRichiestaJSON(id, comando, parametri, Map.of());
+    }
+
+    /**
+     * Formatta una richiesta in formato JSON con campi aggiuntivi accanto al comando.
+     *
+     * @param id        Identificativo della richiesta
+     * @param comando   Il comando da inviare
+     * @param parametri I parametri del comando (può essere null)
+     * @param campi     Campi aggiunti alla richiesta (es. "limite" e "cursore")
+     * @return La richiesta formattata in JSON
+     */
+    private String formattaRichiestaJSON(long id, String comando, String parametri, Map<String, Object> campi) {
+        Map<String, Object> richiesta = new HashMap<>(campi);
+        richiesta.put("id", id);
         richiesta.put("comando", comando);
         if (parametri != null && !parametri.isEmpty()) {
             richiesta.put("parametri", parametri);
@@ -209,12 +515,14 @@ public class ClientComunicazione {
     /**
      * Formatta una richiesta in formato JSON con parametri strutturati.
      *
+     * @param id        Identificativo della richiesta
      * @param comando   Il comando da inviare
      * @param parametri I parametri del comando come mappa chiave-valore
      * @return La richiesta formattata in JSON
      */
-    private String formattaRichiestaJSONStrutturata(String comando, Map<String, Object> parametri) {
+    private String formattaRichiestaJSONStrutturata(long id, String comando, Map<String, Object> parametri) {
         Map<String, Object> richiesta = new HashMap<>();
+        richiesta.put("id", id);
         richiesta.put("comando", comando);
         if (parametri != null && !parametri.isEmpty()) {
             richiesta.put("parametri", parametri);
@@ -239,7 +547,7 @@ public class ClientComunicazione {
             return false;
         }
 
-        if (formatoDefault.equals(FORMAT_JSON)) {
+        if (!formatoDefault.equals(FORMAT_TEXT)) {
             try {
                 JsonNode rootNode = objectMapper.readTree(risposta);
                 JsonNode statusNode = rootNode.get("status");
@@ -264,7 +572,7 @@ public class ClientComunicazione {
             return "";
         }
 
-        if (formatoDefault.equals(FORMAT_JSON)) {
+        if (!formatoDefault.equals(FORMAT_TEXT)) {
             try {
                 JsonNode rootNode = objectMapper.readTree(risposta);
                 JsonNode messageNode = rootNode.get("message");
@@ -296,7 +604,7 @@ public class ClientComunicazione {
             return null;
         }
 
-        if (formatoDefault.equals(FORMAT_JSON)) {
+        if (!formatoDefault.equals(FORMAT_TEXT)) {
             try {
                 JsonNode rootNode = objectMapper.readTree(risposta);
                 JsonNode dataNode = rootNode.get("data");
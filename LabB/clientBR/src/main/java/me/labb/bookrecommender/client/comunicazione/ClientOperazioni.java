@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -26,6 +27,10 @@ import java.util.Map;
  */
 public class ClientOperazioni {
 
+    // Dimensione di pagina predefinita delle ricerche e quella usata per leggere gli elenchi completi
+    private static final int PAGINA_RICERCA = 10;
+    private static final int PAGINA_ELENCO = 100;
+
     private final ClientComunicazione client;
 
     private final ObjectMapper objectMapper = new ObjectMapper();
@@ -245,35 +250,20 @@ public class ClientOperazioni {
      * @throws IOException se si verifica un errore durante la comunicazione
      */
     public List<Libro> cercaLibri(String termine) throws IOException {
-        String risposta = client.inviaComando("CERCA", termine);
-
-        List<Libro> libri = new ArrayList<>();
-
-        if (client.isSuccesso(risposta)) {
-            Map<String, Object> dati = client.estraiDati(risposta);
-            if (dati != null && dati.containsKey("libri")) {
-                List<Map<String, Object>> libriList = (List<Map<String, Object>>) dati.get("libri");
-
-                for (Map<String, Object> libroMap : libriList) {
-                    // Crea l'oggetto Libro
-                    Libro libro = new Libro(
-                            (Integer) libroMap.get("id"),
-                            (String) libroMap.get("titolo"),
-                            (String) libroMap.get("autori"),
-                            "",
-                            (String) libroMap.get("categoria"),
-                            "",
-                            ((Number) libroMap.get("prezzo")).floatValue(),
-                            "",
-                            0
-                    );
-
-                    libri.add(libro);
-                }
-            }
-        }
+        return cercaLibri(termine, PAGINA_RICERCA, null).elementi();
+    }
 
-        return libri;
+    /**
+     * Cerca una pagina di libri in base a un termine di ricerca.
+     *
+     * @param termine Termine di ricerca
+     * @param limite  Numero massimo di libri (1-100)
+     * @param cursore Cursore ricevuto con la pagina precedente, o null per la prima pagina
+     * @return La pagina di libri trovati
+     * @throws IOException se si verifica un errore durante la comunicazione
+     */
+    public Pagina<Libro> cercaLibri(String termine, int limite, String cursore) throws IOException {
+        return cercaPagina("CERCA", termine, limite, cursore);
     }
 
     /**
@@ -284,34 +274,20 @@ public class ClientOperazioni {
      * @throws IOException In caso di errori di comunicazione
      */
     public List<Libro> cercaLibriPerCategoria(String categoria) throws IOException {
-        String risposta = client.inviaComando("CERCA_PER_CATEGORIA", categoria);
-
-        List<Libro> libri = new ArrayList<>();
-
-        if (client.isSuccesso(risposta)) {
-            Map<String, Object> dati = client.estraiDati(risposta);
-            if (dati != null && dati.containsKey("libri")) {
-                List<Map<String, Object>> libriList = (List<Map<String, Object>>) dati.get("libri");
-
-                for (Map<String, Object> libroMap : libriList) {
-                    Libro libro = new Libro(
-                            (Integer) libroMap.get("id"),
-                            (String) libroMap.get("titolo"),
-                            (String) libroMap.get("autori"),
-                            "",
-                            (String) libroMap.get("categoria"),
-                            "",
-                            ((Number) libroMap.get("prezzo")).floatValue(),
-                            "",
-                            0
-                    );
-
-                    libri.add(libro);
-                }
-            }
-        }
+        return cercaLibriPerCategoria(categoria, PAGINA_RICERCA, null).elementi();
+    }
 
-        return libri;
+    /**
+     * Cerca una pagina di libri per categoria specifica.
+     *
+     * @param categoria La categoria da cercare, opzionalmente seguita da "&gt;" e dal titolo
+     * @param limite    Numero massimo di libri (1-100)
+     * @param cursore   Cursore ricevuto con la pagina precedente, o null per la prima pagina
+     * @return La pagina di libri della categoria specificata
+     * @throws IOException In caso di errori di comunicazione
+     */
+    public Pagina<Libro> cercaLibriPerCategoria(String categoria, int limite, String cursore) throws IOException {
+        return cercaPagina("CERCA_PER_CATEGORIA", categoria, limite, cursore);
     }
 
     /**
@@ -322,34 +298,20 @@ public class ClientOperazioni {
      * @throws IOException In caso di errori di comunicazione
      */
     public List<Libro> cercaLibriPerAutore(String autore) throws IOException {
-        String risposta = client.inviaComando("CERCA_PER_AUTORE", autore);
-
-        List<Libro> libri = new ArrayList<>();
-
-        if (client.isSuccesso(risposta)) {
-            Map<String, Object> dati = client.estraiDati(risposta);
-            if (dati != null && dati.containsKey("libri")) {
-                List<Map<String, Object>> libriList = (List<Map<String, Object>>) dati.get("libri");
-
-                for (Map<String, Object> libroMap : libriList) {
-                    Libro libro = new Libro(
-                            (Integer) libroMap.get("id"),
-                            (String) libroMap.get("titolo"),
-                            (String) libroMap.get("autori"),
-                            "",
-                            (String) libroMap.get("categoria"),
-                            "",
-                            ((Number) libroMap.get("prezzo")).floatValue(),
-                            "",
-                            0
-                    );
-
-                    libri.add(libro);
-                }
-            }
-        }
+        return cercaLibriPerAutore(autore, PAGINA_RICERCA, null).elementi();
+    }
 
-        return libri;
+    /**
+     * Cerca una pagina di libri per autore specifico.
+     *
+     * @param autore  L'autore da cercare
+     * @param limite  Numero massimo di libri (1-100)
+     * @param cursore Cursore ricevuto con la pagina precedente, o null per la prima pagina
+     * @return La pagina di libri dell'autore specificato
+     * @throws IOException In caso di errori di comunicazione
+     */
+    public Pagina<Libro> cercaLibriPerAutore(String autore, int limite, String cursore) throws IOException {
+        return cercaPagina("CERCA_PER_AUTORE", autore, limite, cursore);
     }
 
     /**
@@ -360,34 +322,20 @@ public class ClientOperazioni {
      * @throws IOException In caso di errori di comunicazione
      */
     public List<Libro> cercaLibriPerAnno(int anno) throws IOException {
-        String risposta = client.inviaComando("CERCA_PER_ANNO", String.valueOf(anno));
-
-        List<Libro> libri = new ArrayList<>();
-
-        if (client.isSuccesso(risposta)) {
-            Map<String, Object> dati = client.estraiDati(risposta);
-            if (dati != null && dati.containsKey("libri")) {
-                List<Map<String, Object>> libriList = (List<Map<String, Object>>) dati.get("libri");
-
-                for (Map<String, Object> libroMap : libriList) {
-                    Libro libro = new Libro(
-                            (Integer) libroMap.get("id"),
-                            (String) libroMap.get("titolo"),
-                            (String) libroMap.get("autori"),
-                            "",
-                            (String) libroMap.get("categoria"),
-                            "",
-                            ((Number) libroMap.get("prezzo")).floatValue(),
-                            "",
-                            0
-                    );
-
-                    libri.add(libro);
-                }
-            }
-        }
+        return cercaLibriPerAnno(anno, PAGINA_RICERCA, null).elementi();
+    }
 
-        return libri;
+    /**
+     * Cerca una pagina di libri per anno di pubblicazione.
+     *
+     * @param anno    L'anno di pubblicazione da cercare
+     * @param limite  Numero massimo di libri (1-100)
+     * @param cursore Cursore ricevuto con la pagina precedente, o null per la prima pagina
+     * @return La pagina di libri pubblicati nell'anno specificato
+     * @throws IOException In caso di errori di comunicazione
+     */
+    public Pagina<Libro> cercaLibriPerAnno(int anno, int limite, String cursore) throws IOException {
+        return cercaPagina("CERCA_PER_ANNO", String.valueOf(anno), limite, cursore);
     }
 
     /**
@@ -399,8 +347,28 @@ public class ClientOperazioni {
      * @throws IOException In caso di errori di comunicazione
      */
     public List<Libro> cercaLibriPerAutoreEAnno(String autore, int anno) throws IOException {
-        String parametri = autore + " " + anno;
-        String risposta = client.inviaComando("CERCA_PER_AUTORE_E_ANNO", parametri);
+        return cercaLibriPerAutoreEAnno(autore, anno, PAGINA_RICERCA, null).elementi();
+    }
+
+    /**
+     * Cerca una pagina di libri per autore e anno insieme.
+     *
+     * @param autore  L'autore da cercare
+     * @param anno    L'anno di pubblicazione da cercare
+     * @param limite  Numero massimo di libri (1-100)
+     * @param cursore Cursore ricevuto con la pagina precedente, o null per la prima pagina
+     * @return La pagina di libri dell'autore specificato pubblicati nell'anno specificato
+     * @throws IOException In caso di errori di comunicazione
+     */
+    public Pagina<Libro> cercaLibriPerAutoreEAnno(String autore, int anno, int limite, String cursore) throws IOException {
+        return cercaPagina("CERCA_PER_AUTORE_E_ANNO", autore + " " + anno, limite, cursore);
+    }
+
+    /**
+     * Richiede una pagina di una ricerca e ne legge i libri trovati.
+     */
+    private Pagina<Libro> cercaPagina(String comando, String parametri, int limite, String cursore) throws IOException {
+        String risposta = client.inviaComandoPaginato(comando, parametri, limite, cursore);
 
         List<Libro> libri = new ArrayList<>();
 
@@ -410,6 +378,7 @@ public class ClientOperazioni {
                 List<Map<String, Object>> libriList = (List<Map<String, Object>>) dati.get("libri");
 
                 for (Map<String, Object> libroMap : libriList) {
+                    // Crea l'oggetto Libro
                     Libro libro = new Libro(
                             (Integer) libroMap.get("id"),
                             (String) libroMap.get("titolo"),
@@ -424,20 +393,24 @@ public class ClientOperazioni {
 
                     libri.add(libro);
                 }
+                return new Pagina<>(libri, (String) dati.get("prossimoCursore"));
             }
         }
 
-        return libri;
+        return new Pagina<>(libri, null);
     }
 
     /**
      * Imposta il formato di default per le comunicazioni.
      *
-     * @param formato Il formato da utilizzare (FORMAT_TEXT o FORMAT_JSON)
+     * @param formato Il formato da utilizzare (FORMAT_TEXT, FORMAT_JSON o FORMAT_BINARY)
      * @return true se il formato è stato impostato con successo, false altrimenti
      * @throws IOException se si verifica un errore durante la comunicazione
      */
     public boolean impostaFormato(String formato) throws IOException {
+        if (ClientComunicazione.FORMAT_BINARY.equals(formato)) {
+            return client.attivaFormatoBinario();
+        }
         String risposta = client.inviaComando("FORMAT", formato);
 
         if (client.isSuccesso(risposta)) {
@@ -575,6 +548,55 @@ public class ClientOperazioni {
         return client.isSuccesso(risposta);
     }
 
+    /**
+     * Aggiunge più libri a una libreria con un'unica richiesta.
+     *
+     * @param libreriaID ID della libreria
+     * @param libriID    ID dei libri da aggiungere
+     * @return Esito di ogni libro (AGGIUNTO, GIA_PRESENTE o INESISTENTE), o una mappa vuota se la richiesta non è riuscita
+     * @throws IOException           se si verifica un errore durante la comunicazione
+     * @throws IllegalStateException se l'utente non è autenticato
+     */
+    public Map<Integer, String> aggiungiLibriALibreria(int libreriaID, List<Integer> libriID) throws IOException {
+        return operazioneLibri("AGGIUNGI_LIBRI", libreriaID, libriID);
+    }
+
+    /**
+     * Rimuove più libri da una libreria con un'unica richiesta.
+     *
+     * @param libreriaID ID della libreria
+     * @param libriID    ID dei libri da rimuovere
+     * @return Esito di ogni libro (RIMOSSO, NON_PRESENTE o INESISTENTE), o una mappa vuota se la richiesta non è riuscita
+     * @throws IOException           se si verifica un errore durante la comunicazione
+     * @throws IllegalStateException se l'utente non è autenticato
+     */
+    public Map<Integer, String> rimuoviLibriDaLibreria(int libreriaID, List<Integer> libriID) throws IOException {
+        return operazioneLibri("RIMUOVI_LIBRI", libreriaID, libriID);
+    }
+
+    private Map<Integer, String> operazioneLibri(String comando, int libreriaID, List<Integer> libriID) throws IOException {
+        if (!isAutenticato()) {
+            throw new IllegalStateException("Nessun utente autenticato");
+        }
+
+        Map<String, Object> parametri = new HashMap<>();
+        parametri.put("libreriaID", libreriaID);
+        parametri.put("libriID", libriID);
+
+        String risposta = client.inviaComando(comando, parametri);
+
+        Map<Integer, String> esiti = new LinkedHashMap<>();
+        if (client.isSuccesso(risposta)) {
+            Map<String, Object> dati = client.estraiDati(risposta);
+            if (dati != null && dati.containsKey("risultati")) {
+                for (Map<String, Object> risultato : (List<Map<String, Object>>) dati.get("risultati")) {
+                    esiti.put(((Number) risultato.get("libroID")).intValue(), (String) risultato.get("esito"));
+                }
+            }
+        }
+        return esiti;
+    }
+
     /**
      * Sposta un libro da una libreria all'altra.
      *
@@ -601,19 +623,55 @@ public class ClientOperazioni {
     }
 
     /**
-     * Visualizza i libri in una libreria.
+     * Sposta più libri da una libreria all'altra con un'unica richiesta.
+     *
+     * @param libreriaOrigineID      ID della libreria di origine
+     * @param libreriaDestinazioneID ID della libreria di destinazione
+     * @param libriID                ID dei libri da spostare
+     * @return ID dei libri effettivamente spostati, o una lista vuota se lo spostamento non è riuscito
+     * @throws IOException           se si verifica un errore durante la comunicazione
+     * @throws IllegalStateException se l'utente non è autenticato
+     */
+    public List<Integer> spostaLibri(int libreriaOrigineID, int libreriaDestinazioneID, List<Integer> libriID) throws IOException {
+        if (!isAutenticato()) {
+            throw new IllegalStateException("Nessun utente autenticato");
+        }
+
+        Map<String, Object> parametri = new HashMap<>();
+        parametri.put("libreriaOrigineID", libreriaOrigineID);
+        parametri.put("libreriaDestinazioneID", libreriaDestinazioneID);
+        parametri.put("libriID", libriID);
+
+        String risposta = client.inviaComando("SPOSTA_LIBRI", parametri);
+
+        List<Integer> spostati = new ArrayList<>();
+        if (client.isSuccesso(risposta)) {
+            Map<String, Object> dati = client.estraiDati(risposta);
+            if (dati != null && dati.containsKey("spostati")) {
+                for (Object libroID : (List<Object>) dati.get("spostati")) {
+                    spostati.add(((Number) libroID).intValue());
+                }
+            }
+        }
+        return spostati;
+    }
+
+    /**
+     * Visualizza una pagina dei libri di una libreria, dall'ultimo aggiunto.
      *
      * @param libreriaID ID della libreria da visualizzare
-     * @return Lista dei libri nella libreria, o una lista vuota se nessun libro è stato trovato
+     * @param limite     Numero massimo di libri (1-100)
+     * @param cursore    Cursore ricevuto con la pagina precedente, o null per la prima pagina
+     * @return La pagina di libri della libreria, vuota se la richiesta non è andata a buon fine
      * @throws IOException           se si verifica un errore durante la comunicazione
      * @throws IllegalStateException se l'utente non è autenticato
      */
-    public List<Libro> visualizzaLibreria(int libreriaID) throws IOException {
+    public Pagina<Libro> visualizzaLibreria(int libreriaID, int limite, String cursore) throws IOException {
         if (!isAutenticato()) {
             throw new IllegalStateException("Nessun utente autenticato");
         }
 
-        String risposta = client.inviaComando("VISUALIZZA_LIBRERIA", String.valueOf(libreriaID));
+        String risposta = client.inviaComandoPaginato("VISUALIZZA_LIBRERIA", String.valueOf(libreriaID), limite, cursore);
 
         List<Libro> libri = new ArrayList<>();
 
@@ -638,10 +696,25 @@ public class ClientOperazioni {
 
                     libri.add(libro);
                 }
+                return new Pagina<>(libri, (String) dati.get("prossimoCursore"));
             }
         }
 
-        return libri;
+        return new Pagina<>(libri, null);
+    }
+
+    /**
+     * Tutti i libri di una libreria, richiesti al server una pagina alla volta.
+     * Da usare solo quando serve l'elenco completo, ad esempio per verificare se un libro è presente:
+     * le viste richiedono le pagine con {@link #visualizzaLibreria(int, int, String)} man mano che si scorre.
+     *
+     * @param libreriaID ID della libreria
+     * @return Lista dei libri nella libreria, o una lista vuota se nessun libro è stato trovato
+     * @throws IOException           se si verifica un errore durante la comunicazione
+     * @throws IllegalStateException se l'utente non è autenticato
+     */
+    public List<Libro> tuttiLibriInLibreria(int libreriaID) throws IOException {
+        return leggiTutto(cursore -> visualizzaLibreria(libreriaID, PAGINA_ELENCO, cursore));
     }
 
     /**
@@ -705,17 +778,74 @@ public class ClientOperazioni {
     }
 
     /**
-     * Visualizza le valutazioni di un libro.
+     * Visualizza una pagina delle valutazioni di un libro, dalla più recente.
      *
      * @param libroID ID del libro di cui visualizzare le valutazioni
-     * @return Lista delle valutazioni del libro, o una lista vuota se nessuna valutazione è stata trovata
+     * @param limite  Numero massimo di valutazioni (1-100)
+     * @param cursore Cursore ricevuto con la pagina precedente, o null per la prima pagina
+     * @return La pagina di valutazioni del libro
      * @throws IOException se si verifica un errore durante la comunicazione
      */
-    public List<Valutazione> visualizzaValutazioniLibro(int libroID) throws IOException {
-        String risposta = client.inviaComando("VALUTAZIONI_LIBRO", String.valueOf(libroID));
+    public Pagina<Valutazione> visualizzaValutazioniLibro(int libroID, int limite, String cursore) throws IOException {
+        return leggiValutazioni(client.inviaComandoPaginato("VALUTAZIONI_LIBRO", String.valueOf(libroID), limite, cursore));
+    }
 
-        List<Valutazione> valutazioni = new ArrayList<>();
+    /**
+     * Visualizza le valutazioni più recenti di un libro, al massimo quante indicate.
+     *
+     * @param libroID ID del libro di cui visualizzare le valutazioni
+     * @param limite  Numero massimo di valutazioni (1-100)
+     * @return Lista delle valutazioni del libro, dalla più recente
+     * @throws IOException se si verifica un errore durante la comunicazione
+     */
+    public List<Valutazione> visualizzaValutazioniLibro(int libroID, int limite) throws IOException {
+        return visualizzaValutazioniLibro(libroID, limite, null).elementi();
+    }
+
+    /**
+     * Ottiene il riepilogo delle valutazioni di un libro, calcolato dal server senza trasferire le singole valutazioni.
+     *
+     * @param libroID ID del libro
+     * @return Il riepilogo, o null se la richiesta non è andata a buon fine
+     * @throws IOException se si verifica un errore durante la comunicazione
+     */
+    public RiepilogoValutazioni riepilogoValutazioni(int libroID) throws IOException {
+        String risposta = client.inviaComando("RIEPILOGO_VALUTAZIONI", String.valueOf(libroID));
 
+        if (client.isSuccesso(risposta)) {
+            Map<String, Object> dati = client.estraiDati(risposta);
+            if (dati != null && dati.containsKey("criteri")) {
+                Map<String, Object> criteri = (Map<String, Object>) dati.get("criteri");
+                return new RiepilogoValutazioni(
+                        ((Number) dati.get("libroID")).intValue(),
+                        ((Number) dati.get("numeroValutazioni")).intValue(),
+                        ((Number) dati.get("mediaComplessiva")).doubleValue(),
+                        leggiCriterio(criteri, "stile"),
+                        leggiCriterio(criteri, "contenuto"),
+                        leggiCriterio(criteri, "gradevolezza"),
+                        leggiCriterio(criteri, "originalita"),
+                        leggiCriterio(criteri, "edizione")
+                );
+            }
+        }
+
+        return null;
+    }
+
+    private RiepilogoValutazioni.Criterio leggiCriterio(Map<String, Object> criteri, String nome) {
+        Map<String, Object> criterio = (Map<String, Object>) criteri.get(nome);
+        return new RiepilogoValutazioni.Criterio(
+                ((Number) criterio.get("numero")).intValue(),
+                ((Number) criterio.get("media")).doubleValue(),
+                ((Number) criterio.get("deviazioneStandard")).doubleValue()
+        );
+    }
+
+    /**
+     * Legge le valutazioni di una pagina ricevuta dal server.
+     */
+    private Pagina<Valutazione> leggiValutazioni(String risposta) throws IOException {
+        List<Valutazione> valutazioni = new ArrayList<>();
         if (client.isSuccesso(risposta)) {
             Map<String, Object> dati = client.estraiDati(risposta);
             if (dati != null && dati.containsKey("valutazioni")) {
@@ -733,10 +863,10 @@ public class ClientOperazioni {
                         Number scoreEdizioneNum = (Number) valutazioneMap.get("scoreEdizione");
                         String dataValutazioneStr = (String) valutazioneMap.get("dataValutazione");
 
-                        // Verifica che tutti i campi obbligatori siano presenti
+                        // Verifica che tutti i campi obbligatori siano presenti (la data può mancare)
                         if (valutazioneIDNum == null || userIDNum == null || libroIDNum == null ||
                                 scoreStileNum == null || scoreContenutoNum == null || scoreGradevolezzaNum == null ||
-                                scoreOriginalitaNum == null || scoreEdizioneNum == null || dataValutazioneStr == null) {
+                                scoreOriginalitaNum == null || scoreEdizioneNum == null) {
                             System.err.println("Valutazione con dati incompleti saltata: " + valutazioneMap);
                             continue;
                         }
@@ -756,7 +886,7 @@ public class ClientOperazioni {
                                 (String) valutazioneMap.get("noteOriginalita"),
                                 scoreEdizioneNum.shortValue(),
                                 (String) valutazioneMap.get("noteEdizione"),
-                                ZonedDateTime.parse(dataValutazioneStr)
+                                dataValutazioneStr != null ? ZonedDateTime.parse(dataValutazioneStr) : null
                         );
 
                         valutazioni.add(valutazione);
@@ -766,82 +896,40 @@ public class ClientOperazioni {
                     }
                 }
             }
+            return new Pagina<>(valutazioni, dati != null ? (String) dati.get("prossimoCursore") : null);
         }
 
-        return valutazioni;
+        return new Pagina<>(valutazioni, null);
     }
 
     /**
-     * Visualizza le valutazioni dell'utente autenticato.
+     * Visualizza una pagina delle valutazioni dell'utente autenticato, dalla più recente.
      *
-     * @return Lista delle valutazioni dell'utente, o una lista vuota se nessuna valutazione è stata trovata
+     * @param limite  Numero massimo di valutazioni (1-100)
+     * @param cursore Cursore ricevuto con la pagina precedente, o null per la prima pagina
+     * @return La pagina di valutazioni dell'utente
      * @throws IOException           se si verifica un errore durante la comunicazione
      * @throws IllegalStateException se l'utente non è autenticato
      */
-    public List<Valutazione> visualizzaMieValutazioni() throws IOException {
+    public Pagina<Valutazione> visualizzaMieValutazioni(int limite, String cursore) throws IOException {
         if (!isAutenticato()) {
             throw new IllegalStateException("Nessun utente autenticato");
         }
 
-        String risposta = client.inviaComando("MIE_VALUTAZIONI", "");
-
-        List<Valutazione> valutazioni = new ArrayList<>();
-
-        if (client.isSuccesso(risposta)) {
-            Map<String, Object> dati = client.estraiDati(risposta);
-            if (dati != null && dati.containsKey("valutazioni")) {
-                List<Map<String, Object>> valutazioniList = (List<Map<String, Object>>) dati.get("valutazioni");
-
-                for (Map<String, Object> valutazioneMap : valutazioniList) {
-                    try {
-                        // Parse con controlli null-safe
-                        Number valutazioneIDNum = (Number) valutazioneMap.get("valutazioneID");
-                        Number userIDNum = (Number) valutazioneMap.get("userID");
-                        Number libroIDNum = (Number) valutazioneMap.get("libroID");
-                        Number scoreStileNum = (Number) valutazioneMap.get("scoreStile");
-                        Number scoreContenutoNum = (Number) valutazioneMap.get("scoreContenuto");
-                        Number scoreGradevolezzaNum = (Number) valutazioneMap.get("scoreGradevolezza");
-                        Number scoreOriginalitaNum = (Number) valutazioneMap.get("scoreOriginalita");
-                        Number scoreEdizioneNum = (Number) valutazioneMap.get("scoreEdizione");
-                        String dataValutazioneStr = (String) valutazioneMap.get("dataValutazione");
-
-                        // Verifica che tutti i campi obbligatori siano presenti
-                        if (valutazioneIDNum == null || userIDNum == null || libroIDNum == null ||
-                                scoreStileNum == null || scoreContenutoNum == null || scoreGradevolezzaNum == null ||
-                                scoreOriginalitaNum == null || scoreEdizioneNum == null || dataValutazioneStr == null) {
-                            System.err.println("Valutazione con dati incompleti saltata: " + valutazioneMap);
-                            continue;
-                        }
-
-                        // Crea l'oggetto Valutazione
-                        Valutazione valutazione = new Valutazione(
-
-                                valutazioneIDNum.intValue(),
-                                userIDNum.intValue(),
-                                libroIDNum.intValue(),
-                                scoreStileNum.shortValue(),
-                                (String) valutazioneMap.get("noteStile"),
-                                scoreContenutoNum.shortValue(),
-                                (String) valutazioneMap.get("noteContenuto"),
-                                scoreGradevolezzaNum.shortValue(),
-                                (String) valutazioneMap.get("noteGradevolezza"),
-                                scoreOriginalitaNum.shortValue(),
-                                (String) valutazioneMap.get("noteOriginalita"),
-                                scoreEdizioneNum.shortValue(),
-                                (String) valutazioneMap.get("noteEdizione"),
-                                ZonedDateTime.parse(dataValutazioneStr)
-                        );
-
-                        valutazioni.add(valutazione);
-                    } catch (Exception e) {
-                        System.err.println("Errore nel parsing della valutazione: " + e.getMessage() + " - Dati: " + valutazioneMap);
-                        // Continua con la prossima valutazione invece di fermarsi
-                    }
-                }
-            }
-        }
+        return leggiValutazioni(client.inviaComandoPaginato("MIE_VALUTAZIONI", "", limite, cursore));
+    }
 
-        return valutazioni;
+    /**
+     * Tutte le valutazioni dell'utente autenticato, richieste al server una pagina alla volta.
+     * Da usare solo quando serve l'elenco completo, ad esempio per trovare la valutazione di un libro:
+     * le viste richiedono le pagine con {@link #visualizzaMieValutazioni(int, String)} man mano che si scorre.
+     *
+     * @return Lista delle valutazioni dell'utente, o una lista vuota se nessuna valutazione è stata trovata
+     * @throws IOException           se si verifica un errore durante la comunicazione
+     * @throws IllegalStateException se l'utente non è autenticato
+     */
+    public List<Valutazione> tutteMieValutazioni() throws IOException {
+        return leggiTutto(cursore -> visualizzaMieValutazioni(PAGINA_ELENCO, cursore));
     }
 
     /**
@@ -920,18 +1008,20 @@ public class ClientOperazioni {
     }
 
     /**
-     * Visualizza i consigli salvati dall'utente autenticato.
+     * Visualizza una pagina dei consigli salvati dall'utente autenticato, dal più recente.
      *
-     * @return Lista dei consigli dell'utente, o una lista vuota se nessun consiglio è stato trovato
+     * @param limite  Numero massimo di consigli (1-100)
+     * @param cursore Cursore ricevuto con la pagina precedente, o null per la prima pagina
+     * @return La pagina di consigli dell'utente
      * @throws IOException           se si verifica un errore durante la comunicazione
      * @throws IllegalStateException se l'utente non è autenticato
      */
-    public List<Consiglio> visualizzaMieiConsigli() throws IOException {
+    public Pagina<Consiglio> visualizzaMieiConsigli(int limite, String cursore) throws IOException {
         if (!isAutenticato()) {
             throw new IllegalStateException("Nessun utente autenticato");
         }
 
-        String risposta = client.inviaComando("MIEI_CONSIGLI", "");
+        String risposta = client.inviaComandoPaginato("MIEI_CONSIGLI", "", limite, cursore);
 
         List<Consiglio> consigli = new ArrayList<>();
 
@@ -940,7 +1030,7 @@ public class ClientOperazioni {
             if (dati != null && dati.containsKey("consigli")) {
                 List<Map<String, Object>> consigliList = (List<Map<String, Object>>) dati.get("consigli");
                 for (Map<String, Object> consiglioMap : consigliList) {
-                    // Verifica che tutti i campi necessari siano presenti
+                    // Verifica che tutti i campi necessari siano presenti (la data può mancare)
                     Object consiglioIdObj = consiglioMap.get("consiglioID");
                     Object userIdObj = consiglioMap.get("userID");
                     Object libroRiferimentoIdObj = consiglioMap.get("libroRiferimentoID");
@@ -948,7 +1038,7 @@ public class ClientOperazioni {
                     Object dataSuggerimentoObj = consiglioMap.get("dataSuggerimento");
 
                     if (consiglioIdObj == null || userIdObj == null || libroRiferimentoIdObj == null ||
-                            libroSuggeritoIdObj == null || dataSuggerimentoObj == null) {
+                            libroSuggeritoIdObj == null) {
                         System.err.println("Consiglio incompleto ricevuto dal server: " + consiglioMap);
                         continue; // Salta questo consiglio incompleto
                     }                    // Estrai i titoli dei libri se disponibili
@@ -961,17 +1051,53 @@ public class ClientOperazioni {
                             ((Number) userIdObj).intValue(),
                             ((Number) libroRiferimentoIdObj).intValue(),
                             ((Number) libroSuggeritoIdObj).intValue(),
-                            ZonedDateTime.parse((String) dataSuggerimentoObj),
+                            dataSuggerimentoObj != null ? ZonedDateTime.parse((String) dataSuggerimentoObj) : null,
                             titoloLibroRiferimento,
                             titoloLibroSuggerito
                     );
 
                     consigli.add(consiglio);
                 }
+                return new Pagina<>(consigli, (String) dati.get("prossimoCursore"));
             }
         }
 
-        return consigli;
+        return new Pagina<>(consigli, null);
+    }
+
+    /**
+     * Tutti i consigli salvati dall'utente autenticato, richiesti al server una pagina alla volta.
+     * Da usare solo quando serve l'elenco completo, ad esempio per contare i consigli di un libro:
+     * le viste richiedono le pagine con {@link #visualizzaMieiConsigli(int, String)} man mano che si scorre.
+     *
+     * @return Lista dei consigli dell'utente, o una lista vuota se nessun consiglio è stato trovato
+     * @throws IOException           se si verifica un errore durante la comunicazione
+     * @throws IllegalStateException se l'utente non è autenticato
+     */
+    public List<Consiglio> tuttiMieiConsigli() throws IOException {
+        return leggiTutto(cursore -> visualizzaMieiConsigli(PAGINA_ELENCO, cursore));
+    }
+
+    /**
+     * Richiede una pagina di un elenco dato il cursore della precedente.
+     */
+    @FunctionalInterface
+    private interface RichiestaPagina<T> {
+        Pagina<T> richiedi(String cursore) throws IOException;
+    }
+
+    /**
+     * Legge tutte le pagine di un elenco, seguendo i cursori fino all'ultima.
+     */
+    private static <T> List<T> leggiTutto(RichiestaPagina<T> richiesta) throws IOException {
+        List<T> elementi = new ArrayList<>();
+        String cursore = null;
+        do {
+            Pagina<T> pagina = richiesta.richiedi(cursore);
+            elementi.addAll(pagina.elementi());
+            cursore = pagina.prossimoCursore();
+        } while (cursore != null);
+        return elementi;
     }
 
     /**
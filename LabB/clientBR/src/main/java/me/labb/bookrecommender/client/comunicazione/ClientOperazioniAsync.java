@@ -0,0 +1,342 @@
+package me.labb.bookrecommender.client.comunicazione;
+
+import me.labb.bookrecommender.client.oggetti.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Versione asincrona delle operazioni di {@link ClientOperazioni}.
+ * Ogni metodo restituisce subito un CompletableFuture e l'operazione viene eseguita
+ * sull'esecutore condiviso del client, che usa thread virtuali: le attese sulla rete
+ * non occupano thread di sistema e non serve creare un thread per ogni richiesta.
+ * <p>
+ * Annullare il future prima che l'operazione parta evita di inviarla al server;
+ * se è già partita la risposta viene semplicemente ignorata.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class ClientOperazioniAsync {
+
+    private static final ExecutorService ESECUTORE =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("client-operazioni-", 0).factory());
+
+    /**
+     * Operazione sul server che può fallire con un errore di comunicazione.
+     *
+     * @param <T> Tipo del risultato
+     */
+    @FunctionalInterface
+    public interface Operazione<T> {
+        T esegui() throws IOException;
+    }
+
+    private final ClientOperazioni operazioni;
+
+    /**
+     * Costruttore della classe ClientOperazioniAsync.
+     *
+     * @param operazioni Le operazioni sincrone da eseguire in modo asincrono
+     */
+    public ClientOperazioniAsync(ClientOperazioni operazioni) {
+        this.operazioni = operazioni;
+    }
+
+    /**
+     * Restituisce l'esecutore condiviso, da usare anche per i Task dell'interfaccia grafica.
+     *
+     * @return L'esecutore delle operazioni del client
+     */
+    public static ExecutorService getEsecutore() {
+        return ESECUTORE;
+    }
+
+    /**
+     * Esegue un'operazione qualsiasi sull'esecutore condiviso.
+     * Un'IOException completa il future con una CompletionException che la contiene.
+     *
+     * @param operazione L'operazione da eseguire
+     * @param <T>        Tipo del risultato
+     * @return Il risultato dell'operazione
+     */
+    public static <T> CompletableFuture<T> esegui(Operazione<T> operazione) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return operazione.esegui();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, ESECUTORE);
+    }
+
+    /**
+     * @return Le operazioni sincrone usate da questa classe
+     */
+    public ClientOperazioni getOperazioni() {
+        return operazioni;
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#cercaLibri(String)}.
+     *
+     * @param termine Termine di ricerca
+     * @return Lista di libri trovati
+     */
+    public CompletableFuture<List<Libro>> cercaLibri(String termine) {
+        return esegui(() -> operazioni.cercaLibri(termine));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#cercaLibri(String, int, String)}.
+     *
+     * @param termine Termine di ricerca
+     * @param limite  Numero massimo di libri
+     * @param cursore Cursore della pagina precedente, o null per la prima pagina
+     * @return Pagina di libri trovati
+     */
+    public CompletableFuture<Pagina<Libro>> cercaLibri(String termine, int limite, String cursore) {
+        return esegui(() -> operazioni.cercaLibri(termine, limite, cursore));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#cercaLibriPerCategoria(String)}.
+     *
+     * @param categoria Categoria da cercare, eventualmente seguita da "&gt;" e un titolo
+     * @return Lista di libri trovati
+     */
+    public CompletableFuture<List<Libro>> cercaLibriPerCategoria(String categoria) {
+        return esegui(() -> operazioni.cercaLibriPerCategoria(categoria));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#cercaLibriPerCategoria(String, int, String)}.
+     *
+     * @param categoria Categoria da cercare, eventualmente seguita da "&gt;" e un titolo
+     * @param limite    Numero massimo di libri
+     * @param cursore   Cursore della pagina precedente, o null per la prima pagina
+     * @return Pagina di libri trovati
+     */
+    public CompletableFuture<Pagina<Libro>> cercaLibriPerCategoria(String categoria, int limite, String cursore) {
+        return esegui(() -> operazioni.cercaLibriPerCategoria(categoria, limite, cursore));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#cercaLibriPerAutore(String)}.
+     *
+     * @param autore Autore da cercare
+     * @return Lista di libri trovati
+     */
+    public CompletableFuture<List<Libro>> cercaLibriPerAutore(String autore) {
+        return esegui(() -> operazioni.cercaLibriPerAutore(autore));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#cercaLibriPerAutore(String, int, String)}.
+     *
+     * @param autore  Autore da cercare
+     * @param limite  Numero massimo di libri
+     * @param cursore Cursore della pagina precedente, o null per la prima pagina
+     * @return Pagina di libri trovati
+     */
+    public CompletableFuture<Pagina<Libro>> cercaLibriPerAutore(String autore, int limite, String cursore) {
+        return esegui(() -> operazioni.cercaLibriPerAutore(autore, limite, cursore));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#cercaLibriPerAnno(int)}.
+     *
+     * @param anno Anno di pubblicazione
+     * @return Lista di libri trovati
+     */
+    public CompletableFuture<List<Libro>> cercaLibriPerAnno(int anno) {
+        return esegui(() -> operazioni.cercaLibriPerAnno(anno));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#cercaLibriPerAnno(int, int, String)}.
+     *
+     * @param anno    Anno di pubblicazione
+     * @param limite  Numero massimo di libri
+     * @param cursore Cursore della pagina precedente, o null per la prima pagina
+     * @return Pagina di libri trovati
+     */
+    public CompletableFuture<Pagina<Libro>> cercaLibriPerAnno(int anno, int limite, String cursore) {
+        return esegui(() -> operazioni.cercaLibriPerAnno(anno, limite, cursore));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#cercaLibriPerAutoreEAnno(String, int)}.
+     *
+     * @param autore Autore da cercare
+     * @param anno   Anno di pubblicazione
+     * @return Lista di libri trovati
+     */
+    public CompletableFuture<List<Libro>> cercaLibriPerAutoreEAnno(String autore, int anno) {
+        return esegui(() -> operazioni.cercaLibriPerAutoreEAnno(autore, anno));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#cercaLibriPerAutoreEAnno(String, int, int, String)}.
+     *
+     * @param autore  Autore da cercare
+     * @param anno    Anno di pubblicazione
+     * @param limite  Numero massimo di libri
+     * @param cursore Cursore della pagina precedente, o null per la prima pagina
+     * @return Pagina di libri trovati
+     */
+    public CompletableFuture<Pagina<Libro>> cercaLibriPerAutoreEAnno(String autore, int anno, int limite, String cursore) {
+        return esegui(() -> operazioni.cercaLibriPerAutoreEAnno(autore, anno, limite, cursore));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#elencaLibrerie()}.
+     *
+     * @return Lista delle librerie dell'utente
+     */
+    public CompletableFuture<List<Libreria>> elencaLibrerie() {
+        return esegui(operazioni::elencaLibrerie);
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#visualizzaLibreria(int, int, String)}.
+     *
+     * @param libreriaID ID della libreria
+     * @param limite     Numero massimo di libri
+     * @param cursore    Cursore della pagina precedente, o null per la prima pagina
+     * @return Pagina di libri nella libreria
+     */
+    public CompletableFuture<Pagina<Libro>> visualizzaLibreria(int libreriaID, int limite, String cursore) {
+        return esegui(() -> operazioni.visualizzaLibreria(libreriaID, limite, cursore));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#tuttiLibriInLibreria(int)}.
+     *
+     * @param libreriaID ID della libreria
+     * @return Lista dei libri nella libreria
+     */
+    public CompletableFuture<List<Libro>> tuttiLibriInLibreria(int libreriaID) {
+        return esegui(() -> operazioni.tuttiLibriInLibreria(libreriaID));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#visualizzaValutazioniLibro(int, int)}.
+     *
+     * @param libroID ID del libro
+     * @param limite  Numero massimo di valutazioni
+     * @return Le valutazioni più recenti del libro
+     */
+    public CompletableFuture<List<Valutazione>> visualizzaValutazioniLibro(int libroID, int limite) {
+        return esegui(() -> operazioni.visualizzaValutazioniLibro(libroID, limite));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#visualizzaValutazioniLibro(int, int, String)}.
+     *
+     * @param libroID ID del libro
+     * @param limite  Numero massimo di valutazioni
+     * @param cursore Cursore della pagina precedente, o null per la prima pagina
+     * @return Pagina di valutazioni del libro
+     */
+    public CompletableFuture<Pagina<Valutazione>> visualizzaValutazioniLibro(int libroID, int limite, String cursore) {
+        return esegui(() -> operazioni.visualizzaValutazioniLibro(libroID, limite, cursore));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#riepilogoValutazioni(int)}.
+     *
+     * @param libroID ID del libro
+     * @return Il riepilogo delle valutazioni del libro
+     */
+    public CompletableFuture<RiepilogoValutazioni> riepilogoValutazioni(int libroID) {
+        return esegui(() -> operazioni.riepilogoValutazioni(libroID));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#visualizzaMieValutazioni(int, String)}.
+     *
+     * @param limite  Numero massimo di valutazioni
+     * @param cursore Cursore della pagina precedente, o null per la prima pagina
+     * @return Pagina di valutazioni dell'utente
+     */
+    public CompletableFuture<Pagina<Valutazione>> visualizzaMieValutazioni(int limite, String cursore) {
+        return esegui(() -> operazioni.visualizzaMieValutazioni(limite, cursore));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#tutteMieValutazioni()}.
+     *
+     * @return Le valutazioni dell'utente
+     */
+    public CompletableFuture<List<Valutazione>> tutteMieValutazioni() {
+        return esegui(operazioni::tutteMieValutazioni);
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#generaConsigli(int)}.
+     *
+     * @param libroID ID del libro di riferimento
+     * @return Lista di libri consigliati
+     */
+    public CompletableFuture<List<Libro>> generaConsigli(int libroID) {
+        return esegui(() -> operazioni.generaConsigli(libroID));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#visualizzaMieiConsigli(int, String)}.
+     *
+     * @param limite  Numero massimo di consigli
+     * @param cursore Cursore della pagina precedente, o null per la prima pagina
+     * @return Pagina di consigli salvati dall'utente
+     */
+    public CompletableFuture<Pagina<Consiglio>> visualizzaMieiConsigli(int limite, String cursore) {
+        return esegui(() -> operazioni.visualizzaMieiConsigli(limite, cursore));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#tuttiMieiConsigli()}.
+     *
+     * @return I consigli salvati dall'utente
+     */
+    public CompletableFuture<List<Consiglio>> tuttiMieiConsigli() {
+        return esegui(operazioni::tuttiMieiConsigli);
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#ottieniDettagliLibro(int)}.
+     *
+     * @param libroID ID del libro
+     * @return I dettagli del libro
+     */
+    public CompletableFuture<Libro> ottieniDettagliLibro(int libroID) {
+        return esegui(() -> operazioni.ottieniDettagliLibro(libroID));
+    }
+
+    /**
+     * Versione asincrona di {@link ClientOperazioni#getCategorie()}.
+     *
+     * @return Lista delle categorie
+     */
+    public CompletableFuture<List<String>> getCategorie() {
+        return esegui(operazioni::getCategorie);
+    }
+
+    /**
+     * Restituisce l'errore originale di un future fallito, senza l'involucro CompletionException.
+     *
+     * @param errore L'errore ricevuto dal future
+     * @return La causa effettiva
+     */
+    public static Throwable causa(Throwable errore) {
+        if (errore instanceof CompletionException && errore.getCause() != null) {
+            return errore.getCause();
+        }
+        return errore;
+    }
+}
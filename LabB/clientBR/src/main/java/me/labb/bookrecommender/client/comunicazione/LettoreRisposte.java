@@ -0,0 +1,161 @@
+package me.labb.bookrecommender.client.comunicazione;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Legge dalla connessione sia righe di testo sia frame binari usando lo stesso buffer:
+ * quando la connessione passa al formato BINARY o alla compressione nessun byte già letto va perso.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+class LettoreRisposte {
+
+    private static final int DIMENSIONE_BUFFER = 64 * 1024;
+    private static final int LUNGHEZZA_MASSIMA_FRAME = 64 * 1024 * 1024;
+    // Bit più alto dell'intestazione: il contenuto del frame è compresso
+    private static final int FLAG_COMPRESSO = 0x80000000;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[DIMENSIONE_BUFFER];
+    private int inizio = 0;
+    private int fine = 0;
+
+    LettoreRisposte(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Legge una riga terminata da newline.
+     *
+     * @return La riga senza terminatore, o null se la connessione è stata chiusa
+     * @throws IOException In caso di errore di lettura
+     */
+    String leggiRiga() throws IOException {
+        ByteArrayOutputStream parziale = null;
+        while (true) {
+            for (int i = inizio; i < fine; i++) {
+                if (buffer[i] == '\n') {
+                    int lunghezza = i > inizio && buffer[i - 1] == '\r' ? i - 1 - inizio : i - inizio;
+                    String riga;
+                    if (parziale == null) {
+                        riga = new String(buffer, inizio, lunghezza, StandardCharsets.UTF_8);
+                    } else {
+                        parziale.write(buffer, inizio, i - inizio);
+                        riga = parziale.toString(StandardCharsets.UTF_8);
+                        if (riga.endsWith("\r")) {
+                            riga = riga.substring(0, riga.length() - 1);
+                        }
+                    }
+                    inizio = i + 1;
+                    return riga;
+                }
+            }
+
+            // Riga più lunga del buffer: si accumula quanto letto finora
+            if (parziale == null) {
+                parziale = new ByteArrayOutputStream();
+            }
+            parziale.write(buffer, inizio, fine - inizio);
+            inizio = fine;
+            if (!riempi()) {
+                return parziale.size() > 0 ? parziale.toString(StandardCharsets.UTF_8) : null;
+            }
+        }
+    }
+
+    /**
+     * Legge un frame binario: 4 byte di lunghezza e il contenuto.
+     * Se l'intestazione ha il bit più alto impostato il contenuto è compresso: inizia con la
+     * lunghezza originale ed è seguito dai dati deflate, restituiti già decompressi.
+     *
+     * @return Il contenuto del frame, o null se la connessione è stata chiusa tra un frame e l'altro
+     * @throws IOException In caso di errore di lettura o di frame non valido
+     */
+    byte[] leggiFrame() throws IOException {
+        byte[] intestazione = new byte[FormatoBinario.LUNGHEZZA_INTESTAZIONE];
+        if (!leggiTutto(intestazione, true)) {
+            return null;
+        }
+        int valore = leggiIntero(intestazione, 0);
+        boolean compresso = (valore & FLAG_COMPRESSO) != 0;
+        int lunghezza = valore & ~FLAG_COMPRESSO;
+        if (lunghezza > LUNGHEZZA_MASSIMA_FRAME || (compresso && lunghezza < FormatoBinario.LUNGHEZZA_INTESTAZIONE)) {
+            throw new IOException("Frame di " + lunghezza + " byte non valido");
+        }
+        byte[] contenuto = new byte[lunghezza];
+        leggiTutto(contenuto, false);
+        return compresso ? decomprimi(contenuto) : contenuto;
+    }
+
+    private static byte[] decomprimi(byte[] contenuto) throws IOException {
+        int lunghezzaOriginale = leggiIntero(contenuto, 0);
+        if (lunghezzaOriginale < 0 || lunghezzaOriginale > LUNGHEZZA_MASSIMA_FRAME) {
+            throw new IOException("Frame compresso di " + lunghezzaOriginale + " byte non valido");
+        }
+        byte[] originale = new byte[lunghezzaOriginale];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(contenuto, FormatoBinario.LUNGHEZZA_INTESTAZIONE, contenuto.length - FormatoBinario.LUNGHEZZA_INTESTAZIONE);
+            int scritti = 0;
+            while (scritti < lunghezzaOriginale && !inflater.finished()) {
+                int n = inflater.inflate(originale, scritti, lunghezzaOriginale - scritti);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                scritti += n;
+            }
+            if (scritti != lunghezzaOriginale || !inflater.finished()) {
+                throw new IOException("Frame compresso incompleto");
+            }
+            return originale;
+        } catch (DataFormatException e) {
+            throw new IOException("Frame compresso non valido: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int leggiIntero(byte[] origine, int posizione) {
+        return ((origine[posizione] & 0xFF) << 24) | ((origine[posizione + 1] & 0xFF) << 16)
+                | ((origine[posizione + 2] & 0xFF) << 8) | (origine[posizione + 3] & 0xFF);
+    }
+
+    /**
+     * @param inizioMessaggio true se la chiusura della connessione prima del primo byte non è un errore
+     * @return false se la connessione è stata chiusa prima del primo byte
+     */
+    private boolean leggiTutto(byte[] destinazione, boolean inizioMessaggio) throws IOException {
+        int letti = 0;
+        while (letti < destinazione.length) {
+            if (inizio == fine && !riempi()) {
+                if (letti == 0 && inizioMessaggio) {
+                    return false;
+                }
+                throw new EOFException("Connessione chiusa durante la lettura di un frame");
+            }
+            int n = Math.min(destinazione.length - letti, fine - inizio);
+            System.arraycopy(buffer, inizio, destinazione, letti, n);
+            inizio += n;
+            letti += n;
+        }
+        return true;
+    }
+
+    private boolean riempi() throws IOException {
+        int letti = in.read(buffer, 0, buffer.length);
+        if (letti < 0) {
+            return false;
+        }
+        inizio = 0;
+        fine = letti;
+        return true;
+    }
+}
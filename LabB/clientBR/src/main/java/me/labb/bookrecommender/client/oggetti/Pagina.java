@@ -0,0 +1,19 @@
+package me.labb.bookrecommender.client.oggetti;
+
+import java.util.List;
+
+/**
+ * Record per rappresentare una pagina di un elenco ricevuta dal server.
+ *
+ * @param elementi        Gli elementi della pagina
+ * @param prossimoCursore Il cursore da inviare per la pagina successiva, o null se questa è l'ultima
+ * @param <T>             Il tipo degli elementi
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public record Pagina<T>(
+        List<T> elementi,
+        String prossimoCursore
+) {
+}
@@ -0,0 +1,38 @@
+package me.labb.bookrecommender.client.oggetti;
+
+/**
+ * Record per rappresentare il riepilogo delle valutazioni di un libro nel client.
+ *
+ * @param libroID           Identificativo del libro
+ * @param numeroValutazioni Numero di valutazioni del libro
+ * @param mediaComplessiva  Media delle medie dei criteri
+ * @param stile             Statistiche dei punteggi sullo stile
+ * @param contenuto         Statistiche dei punteggi sul contenuto
+ * @param gradevolezza      Statistiche dei punteggi sulla gradevolezza
+ * @param originalita       Statistiche dei punteggi sull'originalità
+ * @param edizione          Statistiche dei punteggi sull'edizione
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public record RiepilogoValutazioni(
+        int libroID,
+        int numeroValutazioni,
+        double mediaComplessiva,
+        Criterio stile,
+        Criterio contenuto,
+        Criterio gradevolezza,
+        Criterio originalita,
+        Criterio edizione
+) {
+
+    /**
+     * Statistiche dei punteggi di un singolo criterio.
+     *
+     * @param numero             Numero di punteggi presenti
+     * @param media              Media dei punteggi
+     * @param deviazioneStandard Deviazione standard dei punteggi
+     */
+    public record Criterio(int numero, double media, double deviazioneStandard) {
+    }
+}
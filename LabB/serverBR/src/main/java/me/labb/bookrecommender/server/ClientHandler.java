@@ -1,122 +1,445 @@
 package me.labb.bookrecommender.server;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import me.labb.bookrecommender.server.cache.CacheRisposte;
 import me.labb.bookrecommender.server.db.*;
+import me.labb.bookrecommender.server.log.Log;
+import me.labb.bookrecommender.server.log.LogRichieste;
+import me.labb.bookrecommender.server.metriche.MetricheComandi;
+import me.labb.bookrecommender.server.metriche.MetricheConnessioni;
 import me.labb.bookrecommender.server.oggetti.*;
+import me.labb.bookrecommender.server.profilazione.EventoComando;
+import me.labb.bookrecommender.server.profilazione.RegistrazioneSuRichiesta;
+import me.labb.bookrecommender.server.raccomandazioni.CampionatoreCategorie;
+import me.labb.bookrecommender.server.raccomandazioni.ModelloRaccomandazioni;
+import me.labb.bookrecommender.server.ricerca.IndiceLibri;
+import me.labb.bookrecommender.server.utils.Compressione;
+import me.labb.bookrecommender.server.utils.Cursore;
+import me.labb.bookrecommender.server.utils.FormatoBinario;
 import me.labb.bookrecommender.server.utils.RequestParser;
 import me.labb.bookrecommender.server.utils.ResponseFormatter;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Gestisce una connessione a un client.
- * Ogni istanza viene eseguita in un thread separato.
+ * Con il trasporto bloccante ogni istanza viene eseguita in un thread separato;
+ * con il trasporto NIO l'istanza mantiene solo lo stato della sessione e
+ * le richieste vengono elaborate tramite {@link #elaboraComando(String)}.
  *
  * @author Caretti Gabriele 756564 VA
  * @author Como Riccardo 758697 VA
  * @author Manicone Giorgia 758716 VA
  */
 public class ClientHandler implements Runnable {
+    public static final String MESSAGGIO_BENVENUTO = "Benvenuto al server di BookRecommender - LabB!";
+    public static final String MESSAGGIO_ARRIVEDERCI = "Arrivederci!";
+    // Durata massima di una scrittura bloccata di una risposta in streaming (vedi UscitaRisposta)
+    public static final int TIMEOUT_SCRITTURA_DEFAULT_MS = 30_000;
+    private static final long ATTESA_MASSIMA_LIMITATORE_MS = 10_000;
+    private static final int MAX_LIBRI_PER_RICHIESTA = 500;
+    private static final int LUNGHEZZA_MASSIMA_FRAME = 1024 * 1024;
+    // Byte di una risposta in streaming trattenuti prima di iniziare a inviarla (vedi UscitaRisposta)
+    private static final int BYTE_RISPOSTA_IN_MEMORIA = 16 * 1024;
+    // Dimensioni di pagina: predefinita per le ricerche, predefinita per gli altri elenchi e massima ammessa
+    private static final int PAGINA_RICERCA = 10;
+    private static final int PAGINA_ELENCO = 50;
+    private static final int PAGINA_MASSIMA = 100;
+    // SQLState di PostgreSQL per la violazione di una chiave esterna
+    private static final String VIOLAZIONE_CHIAVE_ESTERNA = "23503";
+    // Comandi riconosciuti da eseguiComando: disponibili a tutti e riservati agli utenti autenticati
+    private static final Set<String> COMANDI_PUBBLICI = Set.of(
+            "CERCA", "CONSIGLIA", "DETTAGLI_LIBRO", "CATEGORIE", "CERCA_PER_CATEGORIA", "CERCA_PER_AUTORE",
+            "CERCA_PER_ANNO", "CERCA_PER_AUTORE_E_ANNO", "HELP", "LOGIN", "REGISTRA", "FORMAT", "COMPRESSIONE");
+    private static final Set<String> COMANDI_AUTENTICATI = Set.of(
+            "LOGOUT", "PROFILO", "CREA_LIBRERIA", "LIBRERIE", "AGGIUNGI_LIBRO", "RIMUOVI_LIBRO",
+            "AGGIUNGI_LIBRI", "RIMUOVI_LIBRI", "SPOSTA_LIBRO", "SPOSTA_LIBRI", "VISUALIZZA_LIBRERIA",
+            "ELIMINA_LIBRERIA", "RINOMINA_LIBRERIA", "VALUTA_LIBRO", "VALUTAZIONI_LIBRO", "RIEPILOGO_VALUTAZIONI",
+            "MIE_VALUTAZIONI", "GENERA_CONSIGLI", "SALVA_CONSIGLIO", "MIEI_CONSIGLI", "STATS", "REGISTRAZIONE_JFR");
+
     private final Socket clientSocket;
+    private final Semaphore limitatoreDB;
+    private final int timeoutScritturaMs;
     private PrintWriter out;
-    private BufferedReader in;
+    // Righe e frame binari vengono letti dallo stesso buffer, così il passaggio a FORMAT BINARY non perde byte
+    private DataInputStream in;
+    private final ByteArrayOutputStream rigaInLettura = new ByteArrayOutputStream();
     private final DatabaseManager dbManager;
     private final LibroDAO libroDAO;
     private final UtenteDAO utenteDAO;
     private final ValutazioneDAO valutazioneDAO;
     private final LibreriaDAO libreriaDAO;
     private final ConsiglioDAO consiglioDAO;
+    private final CategoriaDAO categoriaDAO;
 
     private Utente utenteAutenticato = null;
 
+    // Impostato dal comando FORMAT BINARY: da quel momento la connessione usa i frame binari
+    private volatile boolean formatoBinario = false;
+
+    // Impostato dal comando COMPRESSIONE: da quel momento ogni risposta è un frame, compresso se supera la soglia
+    private volatile boolean compressione = false;
+
+    // Trasporto bloccante: uscita su cui le risposte in streaming vengono scritte direttamente (null per NIO)
+    private UscitaRisposta uscitaDiretta;
+    // Identificativo della richiesta in corso, primo campo delle risposte scritte direttamente
+    private String idRichiesta;
+    // Byte della risposta in corso già scritti direttamente sulla connessione
+    private long byteInviatiDirettamente;
+    // Impostato se una risposta scritta direttamente non è stata inviata per intero: la connessione va chiusa
+    private boolean connessioneInterrotta = false;
+
     /**
      * Crea un nuovo handler per la connessione client specificato.
      *
      * @param clientSocket Il socket della connessione client
      */
     public ClientHandler(Socket clientSocket) {
+        this(clientSocket, null);
+    }
+
+    /**
+     * Crea un nuovo handler che limita le richieste elaborate in contemporanea.
+     * Usato con i thread virtuali, dove il numero di client attivi non è più
+     * limitato dai thread e serve un tetto pari alle connessioni al database disponibili.
+     *
+     * @param clientSocket Il socket della connessione client (null per il trasporto NIO)
+     * @param limitatoreDB Semaforo condiviso tra gli handler, o null per nessun limite
+     */
+    public ClientHandler(Socket clientSocket, Semaphore limitatoreDB) {
+        this(clientSocket, limitatoreDB, TIMEOUT_SCRITTURA_DEFAULT_MS);
+    }
+
+    /**
+     * Crea un nuovo handler con un limite alla durata delle scritture bloccate delle risposte in streaming:
+     * oltre il limite la connessione viene chiusa, così un client che non legge non trattiene
+     * la connessione al database e il permesso del limitatore.
+     *
+     * @param clientSocket       Il socket della connessione client (null per il trasporto NIO)
+     * @param limitatoreDB       Semaforo condiviso tra gli handler, o null per nessun limite
+     * @param timeoutScritturaMs Durata massima di una scrittura bloccata, 0 per nessun limite
+     */
+    public ClientHandler(Socket clientSocket, Semaphore limitatoreDB, int timeoutScritturaMs) {
         this.clientSocket = clientSocket;
+        this.limitatoreDB = limitatoreDB;
+        this.timeoutScritturaMs = timeoutScritturaMs;
         this.dbManager = DatabaseManager.getInstance();
         this.libroDAO = new LibroDAO();
         this.utenteDAO = new UtenteDAO();
         this.valutazioneDAO = new ValutazioneDAO();
         this.libreriaDAO = new LibreriaDAO();
         this.consiglioDAO = new ConsiglioDAO();
+        this.categoriaDAO = new CategoriaDAO();
+    }
+
+    /**
+     * Crea un handler senza socket, usato dal trasporto NIO che
+     * gestisce direttamente la lettura e la scrittura sul canale.
+     */
+    public ClientHandler() {
+        this(null, null);
     }
 
     @Override
     public void run() {
+        MetricheConnessioni.connessioneAperta();
+        MetricheConnessioni.handlerAvviato();
         try {
             out = new PrintWriter(clientSocket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            out.println("Benvenuto al server di BookRecommender - LabB!");
+            in = new DataInputStream(new BufferedInputStream(clientSocket.getInputStream()));
+            OutputStream uscita = new BufferedOutputStream(clientSocket.getOutputStream());
+            uscitaDiretta = new UscitaRisposta(uscita, BYTE_RISPOSTA_IN_MEMORIA, timeoutScritturaMs, this::interrompiConnessione);
+            out.println(MESSAGGIO_BENVENUTO);
 
             String inputLine;
-            while ((inputLine = in.readLine()) != null) {
-                if ("EXIT".equalsIgnoreCase(inputLine.trim())) {
-                    out.println("Arrivederci!");
+            while ((inputLine = leggiRiga()) != null) {
+                if (isComandoUscita(inputLine)) {
+                    scriviRisposta(uscita, MESSAGGIO_ARRIVEDERCI, compressione);
                     break;
                 }
 
+                // La risposta a COMPRESSIONE è ancora una riga: lo stato si legge prima di elaborare
+                boolean compressa = compressione;
                 String risposta = elaboraComando(inputLine);
-                out.println(risposta);
+                if (connessioneInterrotta) {
+                    break;
+                }
+                if (risposta != null) {
+                    scriviRisposta(uscita, risposta, compressa);
+                }
+
+                if (formatoBinario) {
+                    gestisciFrameBinari(uscita);
+                    break;
+                }
             }
 
         } catch (IOException e) {
-            System.err.println("Errore nella gestione del client: " + e.getMessage());
+            Log.errore("Errore nella gestione del client: " + e.getMessage());
         } finally {
             chiudiConnessione();
+            MetricheConnessioni.handlerTerminato();
+            MetricheConnessioni.connessioneChiusa();
         }
     }
 
+    /**
+     * Legge una riga di testo terminata da newline.
+     *
+     * @return La riga senza terminatore, o null se la connessione è stata chiusa
+     * @throws IOException In caso di errore di lettura
+     */
+    private String leggiRiga() throws IOException {
+        rigaInLettura.reset();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                return rigaInLettura.size() > 0 ? rigaInLettura.toString(StandardCharsets.UTF_8) : null;
+            }
+            rigaInLettura.write(b);
+        }
+        String riga = rigaInLettura.toString(StandardCharsets.UTF_8);
+        return riga.endsWith("\r") ? riga.substring(0, riga.length() - 1) : riga;
+    }
+
+    /**
+     * Scrive una risposta del formato testuale: una riga, o un frame se la compressione è attiva.
+     */
+    private void scriviRisposta(OutputStream uscita, String risposta, boolean compressa) throws IOException {
+        if (!compressa) {
+            out.println(risposta);
+            return;
+        }
+        uscita.write(codificaRisposta(risposta, false, true));
+        uscita.flush();
+    }
+
+    /**
+     * Prosegue la sessione dopo FORMAT BINARY: ogni richiesta e ogni risposta è un frame
+     * con la lunghezza seguita dal documento Smile. La connessione resta aperta finché il client la chiude.
+     */
+    private void gestisciFrameBinari(OutputStream uscita) throws IOException {
+        while (true) {
+            int lunghezza;
+            try {
+                lunghezza = in.readInt();
+            } catch (EOFException e) {
+                return;
+            }
+            if (lunghezza < 0 || lunghezza > LUNGHEZZA_MASSIMA_FRAME) {
+                Log.avviso("Frame di " + lunghezza + " byte rifiutato, connessione chiusa.");
+                return;
+            }
+            byte[] richiesta = new byte[lunghezza];
+            in.readFully(richiesta);
+
+            boolean compressa = compressione;
+            String risposta = elaboraComando(FormatoBinario.decodifica(richiesta));
+            if (connessioneInterrotta) {
+                return;
+            }
+            if (risposta != null) {
+                uscita.write(codificaRisposta(risposta, true, compressa));
+                uscita.flush();
+            }
+        }
+    }
+
+    /**
+     * Indica se la sessione è passata al formato BINARY. Le risposte già in corso di invio
+     * quando il formato cambia (compresa quella a FORMAT BINARY) restano righe di testo.
+     *
+     * @return true se richieste e risposte successive sono frame binari
+     */
+    public boolean isFormatoBinario() {
+        return formatoBinario;
+    }
+
+    /**
+     * Indica se la sessione ha attivato la compressione. Come per il formato, la risposta
+     * a COMPRESSIONE viene ancora inviata senza frame.
+     *
+     * @return true se le risposte successive sono frame con contenuto eventualmente compresso
+     */
+    public boolean isCompressione() {
+        return compressione;
+    }
+
+    /**
+     * Prepara i byte di una risposta per la connessione.
+     *
+     * @param risposta  La risposta JSON
+     * @param binaria   true se la sessione usa il formato BINARY
+     * @param compressa true se la sessione usa la compressione
+     * @return Una riga di testo, un frame Smile o un frame con contenuto eventualmente compresso
+     * @throws IOException Se la risposta non può essere convertita nel formato binario
+     */
+    public static byte[] codificaRisposta(String risposta, boolean binaria, boolean compressa) throws IOException {
+        long inizio = System.nanoTime();
+        try {
+            if (compressa) {
+                return Compressione.frame(binaria ? FormatoBinario.codifica(risposta) : risposta.getBytes(StandardCharsets.UTF_8));
+            }
+            if (binaria) {
+                return FormatoBinario.codificaFrame(risposta);
+            }
+            return (risposta + "\n").getBytes(StandardCharsets.UTF_8);
+        } finally {
+            MetricheComandi.registraCodifica(System.nanoTime() - inizio);
+        }
+    }
+
+    /**
+     * Verifica se la riga ricevuta chiede la chiusura della connessione.
+     *
+     * @param input La riga ricevuta dal client
+     * @return true se la riga è il comando EXIT
+     */
+    public static boolean isComandoUscita(String input) {
+        return "EXIT".equalsIgnoreCase(input.trim());
+    }
+
+    /**
+     * Verifica se la riga ricevuta è un comando FORMAT o COMPRESSIONE, che cambia il modo in cui
+     * la connessione legge le richieste successive o codifica le risposte.
+     *
+     * @param input La riga ricevuta dal client
+     * @return true se la riga è un comando FORMAT o COMPRESSIONE
+     */
+    public static boolean isComandoFormato(String input) {
+        String maiuscolo = input.toUpperCase();
+        if (!maiuscolo.contains("FORMAT") && !maiuscolo.contains("COMPRESSIONE")) {
+            return false;
+        }
+        String comando = RequestParser.parseRequest(input).getComando();
+        return comando.equals("FORMAT") || comando.equals("COMPRESSIONE");
+    }
+
     /**
      * Elabora comandi inviati dal client.
      * Supporta sia il formato testuale che JSON per l'input.
-     * Produce risposte JSON.
+     * Produce risposte JSON; se la richiesta JSON contiene un campo "id" la risposta lo riporta,
+     * così il client può inviare più richieste senza attendere le risposte e abbinarle.
+     * Le chiamate per la stessa sessione devono essere eseguite una alla volta, nell'ordine di arrivo.
      *
      * @param input Il comando da elaborare (testo o JSON)
-     * @return La risposta JSON da inviare al client
+     * @return La risposta JSON da inviare al client, o null se è già stata scritta direttamente sulla connessione
      */
-    private String elaboraComando(String input) {
+    public String elaboraComando(String input) {
+        long inizio = System.nanoTime();
+        MetricheComandi.inizioRichiesta();
+        EventoComando evento = new EventoComando();
+        evento.begin();
         RequestParser.ParsedRequest parsedRequest = RequestParser.parseRequest(input);
+        idRichiesta = parsedRequest.getId();
+        byteInviatiDirettamente = 0;
+        String risposta = null;
+        try {
+            risposta = ResponseFormatter.conId(elaboraComando(input, parsedRequest), parsedRequest.getId());
+            return risposta;
+        } catch (RuntimeException e) {
+            MetricheComandi.segnalaErrore();
+            throw e;
+        } finally {
+            MetricheComandi.fineRichiesta(nomeMetrica(parsedRequest.getComando()), System.nanoTime() - inizio);
+            registraEvento(evento, parsedRequest.getComando(), input, risposta);
+        }
+    }
+
+    /**
+     * @return Il nome con cui registrare il comando nelle metriche: i nomi non riconosciuti finiscono tutti
+     * sotto {@link MetricheComandi#ALTRO}, così un client non può riempire le metriche di voci inventate
+     */
+    private static String nomeMetrica(String comando) {
+        return COMANDI_PUBBLICI.contains(comando) || COMANDI_AUTENTICATI.contains(comando)
+                ? comando : MetricheComandi.ALTRO;
+    }
+
+    /**
+     * Completa l'evento JFR del comando. I campi vengono calcolati solo se una registrazione lo raccoglie.
+     */
+    private void registraEvento(EventoComando evento, String comando, String input, String risposta) {
+        evento.end();
+        if (evento.shouldCommit()) {
+            evento.comando = comando;
+            evento.userID = isAutenticato() ? utenteAutenticato.userID() : -1;
+            evento.byteRicevuti = input.getBytes(StandardCharsets.UTF_8).length;
+            evento.byteInviati = risposta == null ? byteInviatiDirettamente : risposta.getBytes(StandardCharsets.UTF_8).length;
+            evento.errore = MetricheComandi.isErrore();
+            evento.commit();
+        }
+    }
+
+    private String elaboraComando(String input, RequestParser.ParsedRequest parsedRequest) {
+        if (limitatoreDB == null) {
+            return eseguiComando(input, parsedRequest);
+        }
+
+        try {
+            if (!limitatoreDB.tryAcquire(ATTESA_MASSIMA_LIMITATORE_MS, TimeUnit.MILLISECONDS)) {
+                return ResponseFormatter.erroreJson("Server occupato. Riprova più tardi.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseFormatter.erroreJson("Richiesta interrotta.");
+        }
+        try {
+            return eseguiComando(input, parsedRequest);
+        } finally {
+            limitatoreDB.release();
+        }
+    }
+
+    private String eseguiComando(String input, RequestParser.ParsedRequest parsedRequest) {
         String azione = parsedRequest.getComando();
         String parametri = parsedRequest.getParametri();
-        if (RequestParser.isJsonRequest(input)) {
-            System.out.println("Ricevuta richiesta JSON: comando=" + azione + ", parametri=" + parametri);
-        }
-        System.out.println("Ricevuta richiesta: comando=" + azione + ", parametri=" + parametri);
+        LogRichieste.registra(azione, parametri, RequestParser.isJsonRequest(input));
         switch (azione) {
             case "CERCA":
-                return cercaLibri(parametri);
+                return daCache(azione, chiavePaginata(parametri, parsedRequest), () -> cercaLibri(parametri, parsedRequest));
             case "CONSIGLIA":
                 return consigliaLibri(parametri);
             case "DETTAGLI_LIBRO":
-                return dettagliLibro(parametri);
+                return daCache(azione, parametri, () -> dettagliLibro(parametri));
             case "CATEGORIE":
-                return getCategorie();
+                return daCache(azione, parametri, this::getCategorie);
             case "CERCA_PER_CATEGORIA":
-                return gestisciCercaPerCategoria(parametri);
+                return gestisciCercaPerCategoria(parametri, parsedRequest);
             case "CERCA_PER_AUTORE":
-                return cercaPerAutore(parametri);
+                return cercaPerAutore(parametri, parsedRequest);
             case "CERCA_PER_ANNO":
-                return cercaPerAnno(parametri);
+                return cercaPerAnno(parametri, parsedRequest);
             case "CERCA_PER_AUTORE_E_ANNO":
-                return cercaPerAutoreEAnno(parametri);
+                return cercaPerAutoreEAnno(parametri, parsedRequest);
             case "HELP":
                 return getComandi();
             case "LOGIN":
@@ -133,6 +456,8 @@ public class ClientHandler implements Runnable {
                 }
             case "FORMAT":
                 return impostaFormato(parametri);
+            case "COMPRESSIONE":
+                return attivaCompressione(parametri);
         }
 
         if (isAutenticato()) {
@@ -149,10 +474,16 @@ public class ClientHandler implements Runnable {
                     return aggiungiLibro(parametri);
                 case "RIMUOVI_LIBRO":
                     return rimuoviLibro(parametri);
+                case "AGGIUNGI_LIBRI":
+                    return aggiungiLibri(parametri);
+                case "RIMUOVI_LIBRI":
+                    return rimuoviLibri(parametri);
                 case "SPOSTA_LIBRO":
                     return spostaLibro(parametri);
+                case "SPOSTA_LIBRI":
+                    return spostaLibri(parametri);
                 case "VISUALIZZA_LIBRERIA":
-                    return visualizzaLibreria(parametri);
+                    return visualizzaLibreria(parametri, parsedRequest);
                 case "ELIMINA_LIBRERIA":
                     return eliminaLibreria(parametri);
                 case "RINOMINA_LIBRERIA":
@@ -160,30 +491,94 @@ public class ClientHandler implements Runnable {
                 case "VALUTA_LIBRO":
                     return valutaLibro(parametri);
                 case "VALUTAZIONI_LIBRO":
-                    return visualizzaValutazioniLibro(parametri);
+                    return daCache(azione, chiavePaginata(parametri, parsedRequest),
+                            () -> visualizzaValutazioniLibro(parametri, parsedRequest));
+                case "RIEPILOGO_VALUTAZIONI":
+                    return daCache(azione, parametri, () -> riepilogoValutazioni(parametri));
                 case "MIE_VALUTAZIONI":
-                    return visualizzaMieValutazioni();
+                    return visualizzaMieValutazioni(parametri, parsedRequest);
                 case "GENERA_CONSIGLI":
-                    return generaConsigli(parametri);
+                    return daCache(azione, parametri, () -> generaConsigli(parametri));
                 case "SALVA_CONSIGLIO":
                     return salvaConsiglio(parametri);
                 case "MIEI_CONSIGLI":
-                    return visualizzaMieiConsigli();
+                    return visualizzaMieiConsigli(parametri, parsedRequest);
+                case "STATS":
+                    return statistiche();
+                case "REGISTRAZIONE_JFR":
+                    return registrazioneJfr(parametri);
             }
-        } else if (azione.equals("LOGOUT") || azione.equals("PROFILO") ||
-                azione.equals("CREA_LIBRERIA") || azione.equals("LIBRERIE") ||
-                azione.equals("AGGIUNGI_LIBRO") || azione.equals("RIMUOVI_LIBRO") ||
-                azione.equals("VISUALIZZA_LIBRERIA") || azione.equals("ELIMINA_LIBRERIA") ||
-                azione.equals("RINOMINA_LIBRERIA") ||
-                azione.equals("VALUTA_LIBRO") || azione.equals("VALUTAZIONI_LIBRO") ||
-                azione.equals("MIE_VALUTAZIONI") || azione.equals("GENERA_CONSIGLI") ||
-                azione.equals("SALVA_CONSIGLIO") || azione.equals("MIEI_CONSIGLI")) {
+        } else if (COMANDI_AUTENTICATI.contains(azione)) {
             return ResponseFormatter.erroreJson("Devi effettuare il login per utilizzare questo comando.");
         }
 
         return ResponseFormatter.erroreJson("Comando non riconosciuto. Digita HELP per la lista dei comandi.");
     }
 
+    /**
+     * Restituisce la risposta dalla cache, se attiva, altrimenti la calcola.
+     */
+    private String daCache(String azione, String parametri, Supplier<String> calcolo) {
+        CacheRisposte cache = CacheRisposte.getCorrente();
+        return cache != null ? cache.ottieni(azione, parametri, calcolo) : calcolo.get();
+    }
+
+    /**
+     * Rimuove dalla cache, se attiva, la risposta di un comando di lettura modificata da una scrittura.
+     */
+    private void invalidaCache(String azione, int libroID) {
+        CacheRisposte cache = CacheRisposte.getCorrente();
+        if (cache != null) {
+            cache.invalida(azione, String.valueOf(libroID));
+        }
+    }
+
+    /**
+     * Parametri usati come chiave della cache, completati da limite e cursore se la richiesta JSON li indica.
+     * Il separatore iniziale è uno spazio, così l'invalidazione per libro rimuove anche le pagine successive.
+     */
+    private static String chiavePaginata(String parametri, RequestParser.ParsedRequest richiesta) {
+        if (richiesta.getLimite() == null && richiesta.getCursore() == null) {
+            return parametri;
+        }
+        return parametri + " \u0001" + richiesta.getLimite() + " " + richiesta.getCursore();
+    }
+
+    /**
+     * Dimensione e cursore della pagina richiesta per un elenco.
+     */
+    private record Paginazione(int limite, String cursore) {
+    }
+
+    /**
+     * Legge limite e cursore della pagina richiesta: i campi "limite" e "cursore"
+     * di una richiesta JSON hanno la precedenza sui parametri testuali.
+     *
+     * @param richiesta    La richiesta ricevuta
+     * @param predefinito  Il limite da usare se non indicato
+     * @param limiteTesto  Il limite indicato nei parametri testuali, o null
+     * @param cursoreTesto Il cursore indicato nei parametri testuali, o null
+     * @return La paginazione richiesta
+     * @throws IllegalArgumentException Se il limite non è un numero tra 1 e {@value #PAGINA_MASSIMA}
+     */
+    private static Paginazione leggiPaginazione(RequestParser.ParsedRequest richiesta, int predefinito,
+                                                String limiteTesto, String cursoreTesto) {
+        String limite = richiesta.getLimite() != null ? richiesta.getLimite() : limiteTesto;
+        String cursore = richiesta.getCursore() != null ? richiesta.getCursore() : cursoreTesto;
+        int valore = predefinito;
+        if (limite != null) {
+            try {
+                valore = Integer.parseInt(limite.trim());
+            } catch (NumberFormatException e) {
+                valore = 0;
+            }
+        }
+        if (valore < 1 || valore > PAGINA_MASSIMA) {
+            throw new IllegalArgumentException("Il limite deve essere compreso tra 1 e " + PAGINA_MASSIMA + ".");
+        }
+        return new Paginazione(valore, cursore == null || cursore.isBlank() ? null : cursore.trim());
+    }
+
     // Metodo helper per estrarre il JSON dai parametri
     private String estraiJsonDaInput(String input) {
         try {
@@ -202,49 +597,31 @@ public class ClientHandler implements Runnable {
             return parsedRequest.getParametri();
 
         } catch (Exception e) {
-            System.err.println("Errore nell'estrazione del JSON: " + e.getMessage());
+            Log.errore("Errore nell'estrazione del JSON: " + e.getMessage());
             RequestParser.ParsedRequest parsedRequest = RequestParser.parseRequest(input);
             return parsedRequest.getParametri();
         }
     }
 
-    private String cercaPerAnno(String parametri) {
+    private String cercaPerAnno(String parametri, RequestParser.ParsedRequest richiesta) {
         if (parametri.isEmpty()) {
             return ResponseFormatter.erroreJson("Specifica un anno per la ricerca.");
         }
-        try (Connection conn = dbManager.getConnection()) {
-            String sql = """
-                    SELECT "LibroID", "Titolo", "Autori", "Categoria", "Prezzo"
-                    FROM "Libri"
-                    WHERE "AnnoPubblicazione" = ?
-                    LIMIT 10
-                    """;
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setInt(1, Integer.parseInt(parametri));
-                try (ResultSet rs = stmt.executeQuery()) {
-                    List<Map<String, Object>> libri = new ArrayList<>();
-                    while (rs.next()) {
-                        Map<String, Object> libro = new HashMap<>();
-                        libro.put("id", rs.getInt("LibroID"));
-                        libro.put("titolo", rs.getString("Titolo"));
-                        libro.put("autori", rs.getString("Autori"));
-                        libro.put("categoria", rs.getString("Categoria"));
-                        libro.put("prezzo", rs.getFloat("Prezzo"));
-                        libri.add(libro);
-                    }
-                    if (libri.isEmpty()) {
-                        return ResponseFormatter.erroreJson("Nessun libro trovato per l'anno: " + parametri);
-                    }
-                    return ResponseFormatter.successoJson("Trovati " + libri.size() + " libri per l'anno: " + parametri, ResponseFormatter.singletonMap("libri", libri));
-                }
-            }
-        } catch (SQLException e) {
-            System.err.println("Errore durante la ricerca dei libri per anno: " + e.getMessage());
-            return ResponseFormatter.erroreJson("Errore durante la ricerca. Riprova più tardi.");
+        int anno;
+        try {
+            anno = Integer.parseInt(parametri.trim());
+        } catch (NumberFormatException e) {
+            return ResponseFormatter.erroreJson("Anno non valido. Assicurati di inserire un numero intero.");
         }
+        IndiceLibri indice = IndiceLibri.getCorrente();
+        return ricercaPaginata(richiesta, (cursore, limite) -> indice != null
+                        ? indice.cercaPerAnno(anno, cursore, limite)
+                        : libroDAO.cercaLibriPerAutoreEAnno(null, anno, cursore, limite),
+                "Nessun libro trovato per l'anno: " + parametri, "per l'anno: " + parametri,
+                "Errore durante la ricerca dei libri per anno: ");
     }
 
-    private String cercaPerAutoreEAnno(String parametri) {
+    private String cercaPerAutoreEAnno(String parametri, RequestParser.ParsedRequest richiesta) {
         if (parametri.isEmpty()) {
             return ResponseFormatter.erroreJson("Specifica un autore e un anno per la ricerca.");
         }
@@ -253,76 +630,31 @@ public class ClientHandler implements Runnable {
             return ResponseFormatter.erroreJson("Formato non valido. Usa: AUTORE ANNO");
         }
         String autore = parts[0];
-        int anno = Integer.parseInt(parts[1]); // Da testare
-
-        try (Connection conn = dbManager.getConnection()) {
-            String sql = """
-                    SELECT "LibroID", "Titolo", "Autori", "Categoria", "Prezzo"
-                    FROM "Libri"
-                    WHERE "Autori" ILIKE ? AND "AnnoPubblicazione" = ?
-                    LIMIT 10
-                    """;
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, "%" + autore + "%");
-                stmt.setInt(2, anno);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    List<Map<String, Object>> libri = new ArrayList<>();
-                    while (rs.next()) {
-                        Map<String, Object> libro = new HashMap<>();
-                        libro.put("id", rs.getInt("LibroID"));
-                        libro.put("titolo", rs.getString("Titolo"));
-                        libro.put("autori", rs.getString("Autori"));
-                        libro.put("categoria", rs.getString("Categoria"));
-                        libro.put("prezzo", rs.getFloat("Prezzo"));
-                        libri.add(libro);
-                    }
-                    if (libri.isEmpty()) {
-                        return ResponseFormatter.erroreJson("Nessun libro trovato per l'autore: " + autore + " e l'anno: " + anno);
-                    }
-                    return ResponseFormatter.successoJson("Trovati " + libri.size() + " libri per l'autore: " + autore + " e l'anno: " + anno, ResponseFormatter.singletonMap("libri", libri));
-                }
-            }
-        } catch (SQLException e) {
-            System.err.println("Errore durante la ricerca dei libri per autore e anno: " + e.getMessage());
-            return ResponseFormatter.erroreJson("Errore durante la ricerca. Riprova più tardi.");
+        int anno;
+        try {
+            anno = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            return ResponseFormatter.erroreJson("Anno non valido. Assicurati di inserire un numero intero.");
         }
+        IndiceLibri indice = IndiceLibri.getCorrente();
+        return ricercaPaginata(richiesta, (cursore, limite) -> indice != null
+                        ? indice.cercaPerAutoreEAnno(autore, anno, cursore, limite)
+                        : libroDAO.cercaLibriPerAutoreEAnno(autore, anno, cursore, limite),
+                "Nessun libro trovato per l'autore: " + autore + " e l'anno: " + anno,
+                "per l'autore: " + autore + " e l'anno: " + anno,
+                "Errore durante la ricerca dei libri per autore e anno: ");
     }
 
-    private String cercaPerAutore(String parametri) {
+    private String cercaPerAutore(String parametri, RequestParser.ParsedRequest richiesta) {
         if (parametri.isEmpty()) {
             return ResponseFormatter.erroreJson("Specifica un autore per la ricerca.");
         }
-        try (Connection conn = dbManager.getConnection()) {
-            String sql = """
-                    SELECT "LibroID", "Titolo", "Autori", "Categoria", "Prezzo"
-                    FROM "Libri"
-                    WHERE "Autori" ILIKE ?
-                    LIMIT 10
-                    """;
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                String termine = "%" + parametri + "%";
-                stmt.setString(1, termine);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    List<Map<String, Object>> libri = new ArrayList<>();
-                    while (rs.next()) {
-                        Map<String, Object> libro = new HashMap<>();
-                        libro.put("id", rs.getInt("LibroID"));
-                        libro.put("titolo", rs.getString("Titolo"));
-                        libro.put("autori", rs.getString("Autori"));
-                        libro.put("categoria", rs.getString("Categoria"));
-                        libro.put("prezzo", rs.getFloat("Prezzo"));
-                        libri.add(libro);
-                    }
-                    if (libri.isEmpty()) {
-                        return ResponseFormatter.erroreJson("Nessun libro trovato per l'autore: " + parametri);
-                    }
-                    return ResponseFormatter.successoJson("Trovati " + libri.size() + " libri per l'autore: " + parametri, ResponseFormatter.singletonMap("libri", libri));
-                }
-            }
-        } catch (SQLException e) {
-            System.err.println("Errore durante la ricerca dei libri per autore: " + e.getMessage());
-            return ResponseFormatter.erroreJson("Errore durante la ricerca. Riprova più tardi.");
-        }
+        IndiceLibri indice = IndiceLibri.getCorrente();
+        return ricercaPaginata(richiesta, (cursore, limite) -> indice != null
+                        ? indice.cercaPerAutore(parametri, cursore, limite)
+                        : libroDAO.cercaLibriPerAutoreEAnno(parametri, null, cursore, limite),
+                "Nessun libro trovato per l'autore: " + parametri, "per l'autore: " + parametri,
+                "Errore durante la ricerca dei libri per autore: ");
     }
 
     /**
@@ -356,46 +688,22 @@ public class ClientHandler implements Runnable {
 
     /**
      * Cerca libri nel database in base ai parametri forniti.
+     * I risultati sono ordinati per rilevanza, con le corrispondenze nel titolo prima di quelle negli autori.
      *
-     * @param parametri I parametri di ricerca (titolo)
+     * @param parametri I parametri di ricerca (titolo o autore)
+     * @param richiesta La richiesta, con limite e cursore della pagina se inviata in JSON
      * @return Messaggio di successo o errore in formato JSON
      */
-    private String cercaLibri(String parametri) {
+    private String cercaLibri(String parametri, RequestParser.ParsedRequest richiesta) {
         if (parametri.isEmpty()) {
             return ResponseFormatter.erroreJson("Specifica un termine di ricerca.");
         }
-        try (Connection conn = dbManager.getConnection()) {
-            String sql = """
-                    SELECT "LibroID", "Titolo", "Autori", "Categoria", "Prezzo"
-                    FROM "Libri"
-                    WHERE "Titolo" ILIKE ?
-                    LIMIT 10
-                    """;
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                String termine = "%" + parametri + "%";
-                stmt.setString(1, termine);
-                //stmt.setString(2, termine);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    List<Map<String, Object>> libri = new ArrayList<>();
-                    while (rs.next()) {
-                        Map<String, Object> libro = new HashMap<>();
-                        libro.put("id", rs.getInt("LibroID"));
-                        libro.put("titolo", rs.getString("Titolo"));
-                        libro.put("autori", rs.getString("Autori"));
-                        libro.put("categoria", rs.getString("Categoria"));
-                        libro.put("prezzo", rs.getFloat("Prezzo"));
-                        libri.add(libro);
-                    }
-                    if (libri.isEmpty()) {
-                        return ResponseFormatter.erroreJson("Nessun libro trovato per: " + parametri);
-                    }
-                    return ResponseFormatter.successoJson("Trovati " + libri.size() + " libri per: " + parametri, ResponseFormatter.singletonMap("libri", libri));
-                }
-            }
-        } catch (SQLException e) {
-            System.err.println("Errore durante la ricerca dei libri: " + e.getMessage());
-            return ResponseFormatter.erroreJson("Errore durante la ricerca. Riprova più tardi.");
-        }
+        IndiceLibri indice = IndiceLibri.getCorrente();
+        return ricercaPaginata(richiesta, (cursore, limite) -> indice != null
+                        ? indice.cerca(parametri, cursore, limite)
+                        : libroDAO.cercaLibri(parametri, cursore, limite),
+                "Nessun libro trovato per: " + parametri, "per: " + parametri,
+                "Errore durante la ricerca dei libri: ");
     }
 
     /**
@@ -407,9 +715,10 @@ public class ClientHandler implements Runnable {
      * Se viene specificato anche un secondo valore, la ricerca sarà effettuata per categoria e titolo.
      *
      * @param categoriaEAltro Stringa nel formato "Categoria>Titolo" (es. "Horror>Dracula")
+     * @param richiesta       La richiesta, con limite e cursore della pagina se inviata in JSON
      * @return JSON con i libri trovati o un messaggio di errore
      */
-    private String gestisciCercaPerCategoria(String categoriaEAltro) {
+    private String gestisciCercaPerCategoria(String categoriaEAltro, RequestParser.ParsedRequest richiesta) {
         if (categoriaEAltro == null || categoriaEAltro.trim().isEmpty()) {
             return ResponseFormatter.erroreJson("Specifica almeno una categoria.");
         }
@@ -419,57 +728,80 @@ public class ClientHandler implements Runnable {
         String categoria = parts[0].trim();
         String titolo = (parts.length > 1) ? parts[1].trim() : "";
 
-        try (Connection conn = dbManager.getConnection()) {
-            StringBuilder sqlBuilder = new StringBuilder(
-                    "SELECT \"LibroID\", \"Titolo\", \"Autori\", \"Categoria\", \"Prezzo\" " +
-                            "FROM \"Libri\" WHERE \"Categoria\" ILIKE ?"
-            );
-
-            if (!titolo.isEmpty()) {
-                sqlBuilder.append(" AND \"Titolo\" ILIKE ?");
-            }
-
-            sqlBuilder.append(" ORDER BY \"Titolo\" LIMIT 10");
-
-            try (PreparedStatement stmt = conn.prepareStatement(sqlBuilder.toString())) {
-                stmt.setString(1, "%" + categoria + "%");
-                if (!titolo.isEmpty()) {
-                    stmt.setString(2, "%" + titolo + "%");
-                }
-
-                try (ResultSet rs = stmt.executeQuery()) {
-                    List<Map<String, Object>> libri = new ArrayList<>();
-
-                    while (rs.next()) {
-                        Map<String, Object> libro = new HashMap<>();
-                        libro.put("id", rs.getInt("LibroID"));
-                        libro.put("titolo", rs.getString("Titolo"));
-                        libro.put("autori", rs.getString("Autori"));
-                        libro.put("categoria", rs.getString("Categoria"));
-                        libro.put("prezzo", rs.getFloat("Prezzo"));
-                        libri.add(libro);
-                    }
+        String descrizione = "per categoria: " + categoria + (titolo.isEmpty() ? "" : " e titolo: " + titolo);
+        IndiceLibri indice = IndiceLibri.getCorrente();
+        return ricercaPaginata(richiesta, (cursore, limite) -> indice != null
+                        ? indice.cercaPerCategoria(categoria, titolo, cursore, limite)
+                        : categoriaDAO.cercaLibri(categoria, titolo, cursore, limite),
+                "Nessun libro trovato " + descrizione, descrizione,
+                "Errore nella ricerca per categoria e titolo: ");
+    }
 
-                    if (libri.isEmpty()) {
-                        return ResponseFormatter.erroreJson(
-                                "Nessun libro trovato per categoria: " + categoria +
-                                        (titolo.isEmpty() ? "" : " e titolo: " + titolo)
-                        );
-                    }
+    /**
+     * Ricerca di una pagina di libri, sull'indice in memoria o sul database.
+     */
+    @FunctionalInterface
+    private interface RicercaPaginata {
+        Pagina<Libro> cerca(String cursore, int limite) throws SQLException;
+    }
 
-                    return ResponseFormatter.successoJson(
-                            "Trovati " + libri.size() + " libri per categoria: " + categoria +
-                                    (titolo.isEmpty() ? "" : " e titolo: " + titolo),
-                            ResponseFormatter.singletonMap("libri", libri)
-                    );
-                }
-            }
+    /**
+     * Esegue una ricerca paginata e ne costruisce la risposta.
+     * Le richieste testuali ricevono sempre la prima pagina di {@value #PAGINA_RICERCA} libri;
+     * le richieste JSON possono indicare "limite" e "cursore".
+     *
+     * @param richiesta        La richiesta ricevuta
+     * @param ricerca          La ricerca da eseguire
+     * @param messaggioNessuno Messaggio di errore se la prima pagina è vuota
+     * @param descrizione      Descrizione della ricerca (es. "per l'autore: Rowling")
+     * @param contestoErrore   Prefisso del messaggio registrato in caso di errore del database
+     * @return Messaggio di successo o errore in formato JSON
+     */
+    private String ricercaPaginata(RequestParser.ParsedRequest richiesta, RicercaPaginata ricerca,
+                                   String messaggioNessuno, String descrizione, String contestoErrore) {
+        try {
+            Paginazione paginazione = leggiPaginazione(richiesta, PAGINA_RICERCA, null, null);
+            Pagina<Libro> trovati = ricerca.cerca(paginazione.cursore(), paginazione.limite());
+            return rispostaLibriTrovati(trovati, paginazione.cursore() != null, messaggioNessuno, descrizione);
+        } catch (IllegalArgumentException e) {
+            return ResponseFormatter.erroreJson(e.getMessage());
         } catch (SQLException e) {
-            System.err.println("Errore nella ricerca per categoria e titolo: " + e.getMessage());
+            Log.errore(contestoErrore + e.getMessage());
             return ResponseFormatter.erroreJson("Errore durante la ricerca. Riprova più tardi.");
         }
     }
 
+    /**
+     * Costruisce la risposta di una ricerca con i dati sintetici dei libri trovati
+     * e, se ci sono altri risultati, il cursore della pagina successiva in "prossimoCursore".
+     *
+     * @param trovati          La pagina di libri trovati
+     * @param continuazione    true se la pagina segue un cursore: una pagina vuota non è un errore
+     * @param messaggioNessuno Messaggio di errore se non ci sono risultati
+     * @param descrizione      Descrizione della ricerca (es. "per l'autore: Rowling")
+     * @return Messaggio di successo o errore in formato JSON
+     */
+    private String rispostaLibriTrovati(Pagina<Libro> trovati, boolean continuazione, String messaggioNessuno, String descrizione) {
+        if (trovati.elementi().isEmpty() && !continuazione) {
+            return ResponseFormatter.erroreJson(messaggioNessuno);
+        }
+        List<Map<String, Object>> libri = new ArrayList<>();
+        for (Libro l : trovati.elementi()) {
+            Map<String, Object> libro = new HashMap<>();
+            libro.put("id", l.libroId());
+            libro.put("titolo", l.titolo());
+            libro.put("autori", l.autori());
+            libro.put("categoria", l.categoria());
+            libro.put("prezzo", l.prezzo());
+            libri.add(libro);
+        }
+        Map<String, Object> dati = new HashMap<>();
+        dati.put("libri", libri);
+        if (trovati.prossimo() != null) {
+            dati.put("prossimoCursore", trovati.prossimo().codifica());
+        }
+        return ResponseFormatter.successoJson("Trovati " + libri.size() + " libri " + descrizione, dati);
+    }
 
     /**
      * Metodo helper per fare l'escape di caratteri speciali nel JSON
@@ -519,7 +851,7 @@ public class ClientHandler implements Runnable {
         } catch (NumberFormatException e) {
             return ResponseFormatter.erroreJson("ID libro non valido. Assicurati di inserire un numero intero.");
         } catch (SQLException e) {
-            System.err.println("Errore durante il recupero dei dettagli del libro: " + e.getMessage());
+            Log.errore("Errore durante il recupero dei dettagli del libro: " + e.getMessage());
             return ResponseFormatter.erroreJson("Errore durante il recupero dei dettagli del libro. Riprova più tardi.");
         }
     }
@@ -534,29 +866,24 @@ public class ClientHandler implements Runnable {
         if (categoria.isEmpty()) {
             return ResponseFormatter.erroreJson("Specifica una categoria per le raccomandazioni.");
         }
-        try (Connection conn = dbManager.getConnection()) {
-            String sql = "SELECT \"LibroID\", \"Titolo\", \"Autori\", \"Categoria\", \"Prezzo\" FROM \"Libri\" WHERE \"Categoria\" ILIKE ? ORDER BY RANDOM() LIMIT 5";
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, "%" + categoria + "%");
-                try (ResultSet rs = stmt.executeQuery()) {
-                    List<Map<String, Object>> libri = new ArrayList<>();
-                    while (rs.next()) {
-                        Map<String, Object> libro = new HashMap<>();
-                        libro.put("id", rs.getInt("LibroID"));
-                        libro.put("titolo", rs.getString("Titolo"));
-                        libro.put("autori", rs.getString("Autori"));
-                        libro.put("categoria", rs.getString("Categoria"));
-                        libro.put("prezzo", rs.getFloat("Prezzo"));
-                        libri.add(libro);
-                    }
-                    if (libri.isEmpty()) {
-                        return ResponseFormatter.erroreJson("Nessun libro trovato nella categoria: " + categoria);
-                    }
-                    return ResponseFormatter.successoJson("Libri consigliati nella categoria '" + categoria + "'", ResponseFormatter.singletonMap("libri", libri));
-                }
+        try {
+            List<Integer> estratti = CampionatoreCategorie.getInstance().estrai(categoria, 5);
+            List<Map<String, Object>> libri = new ArrayList<>();
+            for (Libro l : libroDAO.getLibriByIds(estratti)) {
+                Map<String, Object> libro = new HashMap<>();
+                libro.put("id", l.libroId());
+                libro.put("titolo", l.titolo());
+                libro.put("autori", l.autori());
+                libro.put("categoria", l.categoria());
+                libro.put("prezzo", l.prezzo());
+                libri.add(libro);
             }
+            if (libri.isEmpty()) {
+                return ResponseFormatter.erroreJson("Nessun libro trovato nella categoria: " + categoria);
+            }
+            return ResponseFormatter.successoJson("Libri consigliati nella categoria '" + categoria + "'", ResponseFormatter.singletonMap("libri", libri));
         } catch (SQLException e) {
-            System.err.println("Errore durante la ricerca di consigli: " + e.getMessage());
+            Log.errore("Errore durante la ricerca di consigli: " + e.getMessage());
             return ResponseFormatter.erroreJson("Errore durante la ricerca di consigli. Riprova più tardi.");
         }
     }
@@ -569,14 +896,15 @@ public class ClientHandler implements Runnable {
      */
     private String getCategorie() {
         try {
-            List<String> categorie = libroDAO.getAllCategorie();
+            IndiceLibri indice = IndiceLibri.getCorrente();
+            List<String> categorie = indice != null ? indice.getCategorie() : categoriaDAO.getCategorie();
             if (categorie.isEmpty()) {
                 return ResponseFormatter.erroreJson("Nessuna categoria trovata nel database.");
             }
             return ResponseFormatter.successoJson("Lista di tutte le categorie disponibili",
                     ResponseFormatter.singletonMap("categorie", categorie));
         } catch (SQLException e) {
-            System.err.println("Errore durante il recupero delle categorie: " + e.getMessage());
+            Log.errore("Errore durante il recupero delle categorie: " + e.getMessage());
             return ResponseFormatter.erroreJson("Errore durante il recupero delle categorie. Riprova più tardi.");
         }
     }
@@ -608,7 +936,7 @@ public class ClientHandler implements Runnable {
                 return ResponseFormatter.erroreJson("Credenziali non valide. Riprova.");
             }
         } catch (SQLException e) {
-            System.err.println("Errore durante il login: " + e.getMessage());
+            Log.errore("Errore durante il login: " + e.getMessage());
             return ResponseFormatter.erroreJson("Errore durante il login. Riprova più tardi.");
         }
     }
@@ -647,7 +975,7 @@ public class ClientHandler implements Runnable {
                     ResponseFormatter.singletonMap("userID", userID)
             );
         } catch (SQLException e) {
-            System.err.println("Errore durante la registrazione: " + e.getMessage());
+            Log.errore("Errore durante la registrazione: " + e.getMessage());
             return ResponseFormatter.erroreJson("Errore durante la registrazione. L'username o l'email potrebbero essere già in uso.");
         }
     }
@@ -682,7 +1010,8 @@ public class ClientHandler implements Runnable {
         comandiGenerali.add(createCommandInfo("CERCA_PER_AUTORE", "Cerca libri di un autore specifico", "<autore>"));
         comandiGenerali.add(createCommandInfo("CERCA_PER_ANNO", "Cerca libri pubblicati in un anno specifico", "<anno>"));
         comandiGenerali.add(createCommandInfo("CERCA_PER_AUTORE_E_ANNO", "Cerca libri di un autore specifico pubblicati in un anno specifico", "<autore> <anno>"));
-        comandiGenerali.add(createCommandInfo("FORMAT", "Imposta il formato di risposta (TEXT o JSON)", "<formato>"));
+        comandiGenerali.add(createCommandInfo("FORMAT", "Imposta il formato di risposta (TEXT, JSON o BINARY)", "<formato>"));
+        comandiGenerali.add(createCommandInfo("COMPRESSIONE", "Comprimi le risposte più grandi della soglia del server", "[DEFLATE]"));
         comandiGenerali.add(createCommandInfo("HELP", "Mostra questa lista di comandi", ""));
         comandiGenerali.add(createCommandInfo("EXIT", "Chiudi la connessione", ""));
 
@@ -692,20 +1021,28 @@ public class ClientHandler implements Runnable {
         } else {
             comandiAccount.add(createCommandInfo("LOGOUT", "Esci dal tuo account", ""));
             comandiAccount.add(createCommandInfo("PROFILO", "Visualizza i dettagli del tuo profilo", ""));
+            if (MetricheComandi.isAmministratore(utenteAutenticato.username())) {
+                comandiAccount.add(createCommandInfo("STATS", "Visualizza le metriche del server (solo amministratori)", ""));
+                comandiAccount.add(createCommandInfo("REGISTRAZIONE_JFR", "Avvia una registrazione JFR del server (solo amministratori)", "[secondi]"));
+            }
             comandiLibrerie.add(createCommandInfo("CREA_LIBRERIA", "Crea una nuova libreria personale", "<nomeLibreria>"));
             comandiLibrerie.add(createCommandInfo("LIBRERIE", "Visualizza tutte le tue librerie", ""));
             comandiLibrerie.add(createCommandInfo("AGGIUNGI_LIBRO", "Aggiungi un libro a una libreria", "<libreriaID> <libroID>"));
             comandiLibrerie.add(createCommandInfo("RIMUOVI_LIBRO", "Rimuovi un libro da una libreria", "<libreriaID> <libroID>"));
+            comandiLibrerie.add(createCommandInfo("AGGIUNGI_LIBRI", "Aggiungi più libri a una libreria", "<libreriaID> <libroID> [libroID...]"));
+            comandiLibrerie.add(createCommandInfo("RIMUOVI_LIBRI", "Rimuovi più libri da una libreria", "<libreriaID> <libroID> [libroID...]"));
             comandiLibrerie.add(createCommandInfo("SPOSTA_LIBRO", "Sposta un libro da una libreria a un'altra", "<libreriaOrigineID> <libreriaDestinazioneID> <libroID>"));
-            comandiLibrerie.add(createCommandInfo("VISUALIZZA_LIBRERIA", "Visualizza i libri in una libreria", "<libreriaID>"));
+            comandiLibrerie.add(createCommandInfo("SPOSTA_LIBRI", "Sposta più libri da una libreria a un'altra", "<libreriaOrigineID> <libreriaDestinazioneID> <libroID> [libroID...]"));
+            comandiLibrerie.add(createCommandInfo("VISUALIZZA_LIBRERIA", "Visualizza i libri in una libreria, a pagine", "<libreriaID> [limite] [cursore]"));
             comandiLibrerie.add(createCommandInfo("ELIMINA_LIBRERIA", "Elimina una libreria personale", "<libreriaID>"));
             comandiLibrerie.add(createCommandInfo("RINOMINA_LIBRERIA", "Rinomina una libreria personale", "<libreriaID> <nuovoNome>"));
             comandiValutazioni.add(createCommandInfo("VALUTA_LIBRO", "Valuta un libro", "<libroID> <scoreStile> <noteStile> <scoreContenuto> <noteContenuto> <scoreGradevolezza> <noteGradevolezza> <scoreOriginalita> <noteOriginalita> <scoreEdizione> <noteEdizione>"));
-            comandiValutazioni.add(createCommandInfo("VALUTAZIONI_LIBRO", "Visualizza le valutazioni di un libro", "<libroID>"));
-            comandiValutazioni.add(createCommandInfo("MIE_VALUTAZIONI", "Visualizza le tue valutazioni", ""));
+            comandiValutazioni.add(createCommandInfo("VALUTAZIONI_LIBRO", "Visualizza le valutazioni di un libro, a pagine", "<libroID> [limite] [cursore]"));
+            comandiValutazioni.add(createCommandInfo("RIEPILOGO_VALUTAZIONI", "Visualizza numero, media e deviazione standard dei punteggi di un libro", "<libroID>"));
+            comandiValutazioni.add(createCommandInfo("MIE_VALUTAZIONI", "Visualizza le tue valutazioni, a pagine", "[limite] [cursore]"));
             comandiConsigli.add(createCommandInfo("GENERA_CONSIGLI", "Genera consigli personalizzati per un libro", "<libroID>"));
             comandiConsigli.add(createCommandInfo("SALVA_CONSIGLIO", "Salva un consiglio di libro", "<libroRiferimentoID> <libroSuggeritoID>"));
-            comandiConsigli.add(createCommandInfo("MIEI_CONSIGLI", "Visualizza i tuoi consigli salvati", ""));
+            comandiConsigli.add(createCommandInfo("MIEI_CONSIGLI", "Visualizza i tuoi consigli salvati, a pagine", "[limite] [cursore]"));
         }
 
         Map<String, Object> data = new HashMap<>();
@@ -745,37 +1082,167 @@ public class ClientHandler implements Runnable {
         return comando;
     }
 
+    /**
+     * Avvia una registrazione JFR con gli eventi dei comandi e delle istruzioni SQL
+     * (vedi {@link RegistrazioneSuRichiesta}). Riservato agli utenti indicati in server.stats.admins.
+     *
+     * @param parametri Durata in secondi, facoltativa
+     * @return Messaggio di successo con il file della registrazione, o errore in formato JSON
+     */
+    private String registrazioneJfr(String parametri) {
+        if (!MetricheComandi.isAmministratore(utenteAutenticato.username())) {
+            return ResponseFormatter.erroreJson("Comando riservato agli amministratori.");
+        }
+        int secondi = RegistrazioneSuRichiesta.SECONDI_PREDEFINITI;
+        if (!parametri.isBlank()) {
+            try {
+                secondi = Integer.parseInt(parametri.trim());
+            } catch (NumberFormatException e) {
+                return ResponseFormatter.erroreJson("La durata deve essere un numero di secondi.");
+            }
+        }
+
+        try {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("file", RegistrazioneSuRichiesta.avvia(secondi).toString());
+            data.put("secondi", secondi);
+            return ResponseFormatter.successoJson("Registrazione JFR avviata", data);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseFormatter.erroreJson(e.getMessage());
+        } catch (IOException e) {
+            Log.errore("Errore durante l'avvio della registrazione JFR: " + e.getMessage());
+            return ResponseFormatter.erroreJson("Impossibile avviare la registrazione JFR.");
+        }
+    }
+
+    /**
+     * Restituisce le metriche del server: per ogni comando richieste, errori e percentili delle durate
+     * (vedi {@link MetricheComandi}), più lo stato della cache delle risposte e del pool di connessioni
+     * e le istruzioni SQL con il maggior tempo complessivo (vedi {@link RegistroQuery}).
+     * Riservato agli utenti indicati in server.stats.admins.
+     *
+     * @return Messaggio di successo con le metriche, o errore in formato JSON
+     */
+    private String statistiche() {
+        if (!MetricheComandi.isAmministratore(utenteAutenticato.username())) {
+            return ResponseFormatter.erroreJson("Comando riservato agli amministratori.");
+        }
+        Map<String, Object> data = MetricheComandi.istantanea();
+
+        CacheRisposte cache = CacheRisposte.getCorrente();
+        if (cache != null) {
+            Map<String, Object> datiCache = new LinkedHashMap<>();
+            datiCache.put("hit", cache.getHit());
+            datiCache.put("miss", cache.getMiss());
+            datiCache.put("evizioni", cache.getEvizioni());
+            datiCache.put("scadute", cache.getScadute());
+            datiCache.put("invalidazioni", cache.getInvalidazioni());
+            datiCache.put("voci", cache.getNumeroVoci());
+            datiCache.put("dimensioneByte", cache.getDimensioneCorrente());
+            data.put("cache", datiCache);
+        }
+
+        PoolConnessioni pool = dbManager.getPool();
+        Map<String, Object> datiPool = new LinkedHashMap<>();
+        datiPool.put("attive", pool.getConnessioniAttive());
+        datiPool.put("inattive", pool.getConnessioniInattive());
+        datiPool.put("inAttesa", pool.getThreadInAttesa());
+        datiPool.put("totali", pool.getConnessioniTotali());
+        datiPool.put("dimensioneMassima", pool.getDimensioneMassima());
+        datiPool.put("create", pool.getConnessioniCreate());
+        datiPool.put("timeoutAcquisizione", pool.getTimeoutAcquisizione());
+        data.put("pool", datiPool);
+
+        if (RegistroQuery.isAttivo()) {
+            data.put("query", RegistroQuery.istantanea(10));
+        }
+
+        return ResponseFormatter.successoJson("Statistiche del server.", data);
+    }
+
     /**
      * Imposta il formato di risposta per il client.
+     * Con BINARY la risposta a questo comando è ancora una riga di testo; il client deve
+     * attenderla prima di inviare il primo frame.
      *
-     * @param formato Il formato richiesto (TEXT o JSON)
+     * @param formato Il formato richiesto (TEXT, JSON o BINARY)
      * @return Messaggio di successo o errore in formato JSON
      */
     private String impostaFormato(String formato) {
         if (formato == null || formato.isEmpty()) {
-            return ResponseFormatter.erroreJson("Specifica un formato (TEXT o JSON).");
+            return ResponseFormatter.erroreJson("Specifica un formato (TEXT, JSON o BINARY).");
+        }
+        formato = formato.trim().toUpperCase();
+        if (formatoBinario) {
+            if (formato.equals(ResponseFormatter.FORMAT_BINARY)) {
+                return ResponseFormatter.successoJson("Il formato binario è già attivo.");
+            }
+            return ResponseFormatter.erroreJson("Il formato binario resta attivo fino alla chiusura della connessione.");
+        }
+        if (formato.equals(ResponseFormatter.FORMAT_BINARY)) {
+            formatoBinario = true;
+            return ResponseFormatter.successoJson("Comando FORMAT ricevuto. Le prossime richieste e risposte useranno frame binari.");
         }
-        formato = formato.toUpperCase();
         if (formato.equals(ResponseFormatter.FORMAT_TEXT) || formato.equals(ResponseFormatter.FORMAT_JSON)) {
             return ResponseFormatter.successoJson("Comando FORMAT ricevuto. Questo client riceverà risposte in formato JSON.");
         } else {
-            return ResponseFormatter.erroreJson("Formato non valido. Usa TEXT o JSON.");
+            return ResponseFormatter.erroreJson("Formato non valido. Usa TEXT, JSON o BINARY.");
+        }
+    }
+
+    /**
+     * Attiva la compressione delle risposte per questa connessione.
+     * La risposta a questo comando non è ancora un frame; da quella successiva in poi ogni risposta
+     * è un frame (vedi {@link Compressione}). Le richieste restano non compresse.
+     *
+     * @param algoritmo L'algoritmo richiesto (solo DEFLATE, predefinito)
+     * @return Messaggio di successo con algoritmo e soglia, o errore in formato JSON
+     */
+    private String attivaCompressione(String algoritmo) {
+        if (!Compressione.isDisponibile()) {
+            return ResponseFormatter.erroreJson("Compressione non disponibile su questo server.");
+        }
+        if (algoritmo != null && !algoritmo.isBlank() && !algoritmo.trim().equalsIgnoreCase(Compressione.ALGORITMO)) {
+            return ResponseFormatter.erroreJson("Algoritmo di compressione non supportato. Usa " + Compressione.ALGORITMO + ".");
+        }
+        Map<String, Object> data = new HashMap<>();
+        data.put("algoritmo", Compressione.ALGORITMO);
+        data.put("soglia", Compressione.getSoglia());
+        if (compressione) {
+            return ResponseFormatter.successoJson("La compressione è già attiva.", data);
         }
+        compressione = true;
+        return ResponseFormatter.successoJson("Compressione attiva. Le prossime risposte useranno frame compressi oltre la soglia.", data);
     }
 
     /**
      * Chiude la connessione con il client.
      */
     private void chiudiConnessione() {
+        if (uscitaDiretta != null) {
+            uscitaDiretta.termina();
+        }
         try {
             if (out != null) out.close();
             if (in != null) in.close();
             if (clientSocket != null && !clientSocket.isClosed()) {
                 clientSocket.close();
-                System.out.println("Connessione client chiusa: " + clientSocket.getInetAddress().getHostAddress());
+                Log.debug(() -> "Connessione client chiusa: " + clientSocket.getInetAddress().getHostAddress());
             }
         } catch (IOException e) {
-            System.err.println("Errore durante la chiusura della connessione client: " + e.getMessage());
+            Log.errore("Errore durante la chiusura della connessione client: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Chiude il socket da un altro thread, sbloccando la scrittura in corso: il thread dell'handler
+     * riceve l'errore di scrittura e chiude il resto della connessione.
+     */
+    private void interrompiConnessione() {
+        try {
+            clientSocket.close();
+        } catch (IOException e) {
+            Log.errore("Errore durante la chiusura della connessione client: " + e.getMessage());
         }
     }
 
@@ -795,7 +1262,7 @@ public class ClientHandler implements Runnable {
             data.put("libreriaID", libreriaID);
             return ResponseFormatter.successoJson("Libreria '" + nomeLibreria + "' creata con successo.", data);
         } catch (SQLException e) {
-            System.err.println("Errore durante la creazione della libreria: " + e.getMessage());
+            Log.errore("Errore durante la creazione della libreria: " + e.getMessage());
             return ResponseFormatter.erroreJson("Errore durante la creazione della libreria. Riprova più tardi.");
         }
     }
@@ -823,7 +1290,7 @@ public class ClientHandler implements Runnable {
             }
             return ResponseFormatter.successoJson("Elenco delle tue librerie.", ResponseFormatter.singletonMap("librerie", librerieData));
         } catch (SQLException e) {
-            System.err.println("Errore durante il recupero delle librerie: " + e.getMessage());
+            Log.errore("Errore durante il recupero delle librerie: " + e.getMessage());
             return ResponseFormatter.erroreJson("Errore durante il recupero delle librerie. Riprova più tardi.");
         }
     }
@@ -851,7 +1318,7 @@ public class ClientHandler implements Runnable {
         } catch (NumberFormatException e) {
             return ResponseFormatter.erroreJson("ID non validi. Assicurati di inserire numeri interi.");
         } catch (SQLException e) {
-            System.err.println("Errore durante l'aggiunta del libro alla libreria: " + e.getMessage());
+            Log.errore("Errore durante l'aggiunta del libro alla libreria: " + e.getMessage());
             return ResponseFormatter.erroreJson("Errore durante l'aggiunta del libro. Il libro potrebbe non esistere, essere già presente, o la libreria non è tua.");
         }
     }
@@ -879,13 +1346,80 @@ public class ClientHandler implements Runnable {
         } catch (NumberFormatException e) {
             return ResponseFormatter.erroreJson("ID non validi. Assicurati di inserire numeri interi.");
         } catch (SQLException e) {
-            System.err.println("Errore durante la rimozione del libro dalla libreria: " + e.getMessage());
+            Log.errore("Errore durante la rimozione del libro dalla libreria: " + e.getMessage());
             return ResponseFormatter.erroreJson("Errore durante la rimozione del libro. Il libro potrebbe non essere presente nella libreria.");
         }
     }
 
+    /**
+     * Aggiunge più libri a una libreria dell'utente autenticato con un'unica istruzione.
+     *
+     * @param parametri I parametri per l'aggiunta (libreriaID libroID [libroID...])
+     * @return Messaggio di successo o errore in formato JSON con l'esito di ogni libro
+     */
+    private String aggiungiLibri(String parametri) {
+        return operazioneLibri("AGGIUNGI_LIBRI", parametri, true);
+    }
+
+    /**
+     * Rimuove più libri da una libreria dell'utente autenticato con un'unica istruzione.
+     *
+     * @param parametri I parametri per la rimozione (libreriaID libroID [libroID...])
+     * @return Messaggio di successo o errore in formato JSON con l'esito di ogni libro
+     */
+    private String rimuoviLibri(String parametri) {
+        return operazioneLibri("RIMUOVI_LIBRI", parametri, false);
+    }
+
+    private String operazioneLibri(String comando, String parametri, boolean aggiunta) {
+        String[] parti = parametri.trim().split("\\s+");
+        if (parti.length < 2) {
+            return ResponseFormatter.erroreJson("Formato non valido. Usa: " + comando + " libreriaID libroID [libroID...]");
+        }
+        if (parti.length - 1 > MAX_LIBRI_PER_RICHIESTA) {
+            return ResponseFormatter.erroreJson("Puoi indicare al massimo " + MAX_LIBRI_PER_RICHIESTA + " libri per richiesta.");
+        }
+        try {
+            int libreriaID = Integer.parseInt(parti[0]);
+            Set<Integer> libriID = new LinkedHashSet<>();
+            for (int i = 1; i < parti.length; i++) {
+                libriID.add(Integer.parseInt(parti[i]));
+            }
+
+            Optional<Map<Integer, LibreriaDAO.EsitoLibro>> esiti = aggiunta
+                    ? libreriaDAO.aggiungiLibri(utenteAutenticato.userID(), libreriaID, new ArrayList<>(libriID))
+                    : libreriaDAO.rimuoviLibri(utenteAutenticato.userID(), libreriaID, new ArrayList<>(libriID));
+            if (esiti.isEmpty()) {
+                return ResponseFormatter.erroreJson("Libreria non trovata o non hai i permessi per modificarla.");
+            }
+
+            List<Map<String, Object>> risultati = new ArrayList<>();
+            int eseguiti = 0;
+            for (Map.Entry<Integer, LibreriaDAO.EsitoLibro> esito : esiti.get().entrySet()) {
+                Map<String, Object> risultato = new HashMap<>();
+                risultato.put("libroID", esito.getKey());
+                risultato.put("esito", esito.getValue().name());
+                risultati.add(risultato);
+                if (esito.getValue() == LibreriaDAO.EsitoLibro.AGGIUNTO || esito.getValue() == LibreriaDAO.EsitoLibro.RIMOSSO) {
+                    eseguiti++;
+                }
+            }
+            Map<String, Object> data = new HashMap<>();
+            data.put("libreriaID", libreriaID);
+            data.put("risultati", risultati);
+            return ResponseFormatter.successoJson(eseguiti + " libri " + (aggiunta ? "aggiunti alla" : "rimossi dalla") + " libreria.", data);
+        } catch (NumberFormatException e) {
+            return ResponseFormatter.erroreJson("ID non validi. Assicurati di inserire numeri interi.");
+        } catch (SQLException e) {
+            Log.errore("Errore durante l'operazione " + comando + ": " + e.getMessage());
+            return ResponseFormatter.erroreJson("Errore durante la modifica della libreria. Riprova più tardi.");
+        }
+    }
+
     /**
      * Sposta un libro da una libreria all'altra per l'utente autenticato.
+     * Verifica dei permessi e spostamento avvengono in un'unica istruzione, quindi il libro
+     * non può restare fuori da entrambe le librerie.
      *
      * @param parametri I parametri per lo spostamento (libreriaOrigineID libreriaDestinazioneID libroID)
      * @return Messaggio di successo o errore in formato JSON
@@ -900,86 +1434,210 @@ public class ClientHandler implements Runnable {
             int libreriaDestinazioneID = Integer.parseInt(parti[1]);
             int libroID = Integer.parseInt(parti[2]);
 
-            // Verifica che entrambe le librerie esistano e appartengano all'utente
-            Optional<Libreria> libreriaOrigineOpt = libreriaDAO.getLibreriaById(libreriaOrigineID);
-            Optional<Libreria> libreriaDestinazioneOpt = libreriaDAO.getLibreriaById(libreriaDestinazioneID);
+            if (libreriaOrigineID == libreriaDestinazioneID) {
+                return ResponseFormatter.erroreJson("Le librerie di origine e destinazione devono essere diverse.");
+            }
 
-            if (libreriaOrigineOpt.isEmpty() || libreriaOrigineOpt.get().userID() != utenteAutenticato.userID()) {
-                return ResponseFormatter.erroreJson("Libreria di origine non trovata o non hai i permessi per modificarla.");
+            Optional<LibreriaDAO.EsitoSpostamento> esito = libreriaDAO.spostaLibri(
+                    utenteAutenticato.userID(), libreriaOrigineID, libreriaDestinazioneID, List.of(libroID));
+            if (esito.isEmpty()) {
+                return ResponseFormatter.erroreJson("Libreria di origine o di destinazione non trovata o non hai i permessi per modificarla.");
+            }
+            if (esito.get().spostati().isEmpty()) {
+                return ResponseFormatter.erroreJson("Il libro non è presente nella libreria di origine.");
             }
 
-            if (libreriaDestinazioneOpt.isEmpty() || libreriaDestinazioneOpt.get().userID() != utenteAutenticato.userID()) {
-                return ResponseFormatter.erroreJson("Libreria di destinazione non trovata o non hai i permessi per modificarla.");
+            return ResponseFormatter.successoJson("Libro spostato con successo dalla libreria '" +
+                    esito.get().nomeOrigine() + "' alla libreria '" + esito.get().nomeDestinazione() + "'.");
+        } catch (NumberFormatException e) {
+            return ResponseFormatter.erroreJson("ID non validi. Assicurati di inserire numeri interi.");
+        } catch (SQLException e) {
+            Log.errore("Errore durante lo spostamento del libro: " + e.getMessage());
+            return ResponseFormatter.erroreJson("Errore durante lo spostamento del libro. Riprova più tardi.");
+        }
+    }
+
+    /**
+     * Sposta più libri da una libreria all'altra per l'utente autenticato, con un'unica istruzione.
+     * I libri non presenti nella libreria di origine vengono ignorati e restituiti nella risposta.
+     *
+     * @param parametri I parametri per lo spostamento (libreriaOrigineID libreriaDestinazioneID libroID [libroID...])
+     * @return Messaggio di successo o errore in formato JSON con i libri spostati e quelli non trovati
+     */
+    private String spostaLibri(String parametri) {
+        String[] parti = parametri.trim().split("\\s+");
+        if (parti.length < 3) {
+            return ResponseFormatter.erroreJson("Formato non valido. Usa: SPOSTA_LIBRI libreriaOrigineID libreriaDestinazioneID libroID [libroID...]");
+        }
+        if (parti.length - 2 > MAX_LIBRI_PER_RICHIESTA) {
+            return ResponseFormatter.erroreJson("Puoi spostare al massimo " + MAX_LIBRI_PER_RICHIESTA + " libri per richiesta.");
+        }
+        try {
+            int libreriaOrigineID = Integer.parseInt(parti[0]);
+            int libreriaDestinazioneID = Integer.parseInt(parti[1]);
+            Set<Integer> libriID = new LinkedHashSet<>();
+            for (int i = 2; i < parti.length; i++) {
+                libriID.add(Integer.parseInt(parti[i]));
             }
 
             if (libreriaOrigineID == libreriaDestinazioneID) {
                 return ResponseFormatter.erroreJson("Le librerie di origine e destinazione devono essere diverse.");
             }
 
-            // Rimuovi il libro dalla libreria di origine
-            libreriaDAO.rimuoviLibroDaLibreria(libreriaOrigineID, libroID);
-
-            // Aggiungi il libro alla libreria di destinazione
-            libreriaDAO.aggiungiLibroALibreria(libreriaDestinazioneID, libroID);
+            Optional<LibreriaDAO.EsitoSpostamento> esito = libreriaDAO.spostaLibri(
+                    utenteAutenticato.userID(), libreriaOrigineID, libreriaDestinazioneID, new ArrayList<>(libriID));
+            if (esito.isEmpty()) {
+                return ResponseFormatter.erroreJson("Libreria di origine o di destinazione non trovata o non hai i permessi per modificarla.");
+            }
 
-            return ResponseFormatter.successoJson("Libro spostato con successo dalla libreria '" +
-                    libreriaOrigineOpt.get().nomeLibreria() + "' alla libreria '" +
-                    libreriaDestinazioneOpt.get().nomeLibreria() + "'.");
+            List<Integer> spostati = esito.get().spostati();
+            libriID.removeAll(spostati);
+            Map<String, Object> data = new HashMap<>();
+            data.put("spostati", spostati);
+            data.put("nonTrovati", new ArrayList<>(libriID));
+            return ResponseFormatter.successoJson(spostati.size() + " libri spostati dalla libreria '" +
+                    esito.get().nomeOrigine() + "' alla libreria '" + esito.get().nomeDestinazione() + "'.", data);
         } catch (NumberFormatException e) {
             return ResponseFormatter.erroreJson("ID non validi. Assicurati di inserire numeri interi.");
         } catch (SQLException e) {
-            System.err.println("Errore durante lo spostamento del libro: " + e.getMessage());
-            return ResponseFormatter.erroreJson("Errore durante lo spostamento del libro. Il libro potrebbe non essere presente nella libreria di origine o già presente in quella di destinazione.");
+            Log.errore("Errore durante lo spostamento dei libri: " + e.getMessage());
+            return ResponseFormatter.erroreJson("Errore durante lo spostamento dei libri. Riprova più tardi.");
         }
     }
 
     /**
-     * Visualizza i libri in una libreria specificata dall'utente autenticato.
+     * Visualizza una pagina dei libri in una libreria specificata dall'utente autenticato,
+     * dall'ultimo aggiunto, e il cursore da passare per ottenere la pagina successiva.
      *
-     * @param libreriaIDStr L'ID della libreria da visualizzare
+     * @param parametri L'ID della libreria da visualizzare, opzionalmente seguito dal limite e dal cursore
+     * @param richiesta La richiesta, con limite e cursore della pagina se inviata in JSON
      * @return Messaggio di successo o errore in formato JSON con i libri della libreria
      */
-    private String visualizzaLibreria(String libreriaIDStr) {
-        if (libreriaIDStr.isEmpty()) {
+    private String visualizzaLibreria(String parametri, RequestParser.ParsedRequest richiesta) {
+        if (parametri.isEmpty()) {
             return ResponseFormatter.erroreJson("Specifica l'ID della libreria da visualizzare.");
         }
         try {
-            int libreriaID = Integer.parseInt(libreriaIDStr);
+            String[] parti = parametri.trim().split("\\s+");
+            int libreriaID = Integer.parseInt(parti[0]);
+            Paginazione paginazione = leggiPaginazione(richiesta, PAGINA_ELENCO,
+                    parti.length > 1 ? parti[1] : null, parti.length > 2 ? parti[2] : null);
             Optional<Libreria> libreriaOpt = libreriaDAO.getLibreriaById(libreriaID);
             if (libreriaOpt.isEmpty() || libreriaOpt.get().userID() != utenteAutenticato.userID()) {
                 return ResponseFormatter.erroreJson("Libreria non trovata o non hai i permessi per visualizzarla.");
             }
 
-            List<Libro> libriObj = libreriaDAO.getLibriInLibreria(libreriaID);
-            List<Map<String, Object>> libriData = new ArrayList<>();
-            Map<String, Object> dataResponse = new HashMap<>();
-            dataResponse.put("libreriaID", libreriaID);
-            dataResponse.put("nomeLibreria", libreriaOpt.get().nomeLibreria());
-
-            if (libriObj.isEmpty()) {
-                dataResponse.put("libri", libriData); // Lista vuota
-                return ResponseFormatter.successoJson("La libreria '" + libreriaOpt.get().nomeLibreria() + "' è vuota.", dataResponse);
-            }
-
-            for (Libro libro : libriObj) {
-                Map<String, Object> libroMap = new HashMap<>();
-                libroMap.put("libroID", libro.libroId());
-                libroMap.put("titolo", libro.titolo());
-                libroMap.put("autori", libro.autori());
-                libroMap.put("categoria", libro.categoria());
-                libroMap.put("prezzo", libro.prezzo());
-                libriData.add(libroMap);
-            }
-            dataResponse.put("libri", libriData);
-            return ResponseFormatter.successoJson("Libri nella libreria '" + libreriaOpt.get().nomeLibreria() + "'.", dataResponse);
+            String nomeLibreria = libreriaOpt.get().nomeLibreria();
+            return rispostaInStreaming(dati -> {
+                dati.writeNumberField("libreriaID", libreriaID);
+                dati.writeStringField("nomeLibreria", nomeLibreria);
+                dati.writeArrayFieldStart("libri");
+                int[] numeroLibri = {0};
+                Cursore prossimo = libreriaDAO.leggiLibriInLibreria(libreriaID, paginazione.cursore(), paginazione.limite(), rs -> {
+                    Libro libro = LibroDAO.mappaLibro(rs);
+                    try {
+                        dati.writeStartObject();
+                        dati.writeNumberField("libroID", libro.libroId());
+                        dati.writeStringField("titolo", libro.titolo());
+                        dati.writeStringField("autori", libro.autori());
+                        dati.writeStringField("categoria", libro.categoria());
+                        dati.writeNumberField("prezzo", libro.prezzo());
+                        dati.writeEndObject();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    numeroLibri[0]++;
+                });
+                dati.writeEndArray();
+                scriviProssimoCursore(dati, prossimo);
+                return numeroLibri[0] == 0 && paginazione.cursore() == null
+                        ? "La libreria '" + nomeLibreria + "' è vuota."
+                        : "Libri nella libreria '" + nomeLibreria + "'.";
+            });
         } catch (NumberFormatException e) {
             return ResponseFormatter.erroreJson("ID libreria non valido. Assicurati di inserire un numero intero.");
+        } catch (IllegalArgumentException e) {
+            return ResponseFormatter.erroreJson(e.getMessage());
         } catch (SQLException e) {
-            System.err.println("Errore durante il recupero dei libri dalla libreria: " + e.getMessage());
+            Log.errore("Errore durante il recupero dei libri dalla libreria: " + e.getMessage());
             return ResponseFormatter.erroreJson("Errore durante il recupero dei libri. Riprova più tardi.");
         }
     }
 
+    /**
+     * Risposta di successo con i dati scritti man mano che vengono letti dal database.
+     * Sul trasporto bloccante senza compressione la risposta viene scritta direttamente sulla connessione
+     * e il metodo restituisce null: in JSON le righe passano dal ResultSet al socket con memoria limitata
+     * (vedi {@link UscitaRisposta}), in BINARY il documento Smile viene generato direttamente, senza passare
+     * dal testo JSON, e inviato come frame. Con NIO o la compressione restituisce la risposta JSON come testo.
+     *
+     * @param scrittore Scrive i campi di "data" e restituisce il messaggio
+     * @return La risposta JSON, o null se è già stata inviata
+     * @throws SQLException In caso di errori nella lettura dei dati prima che la risposta venga inviata
+     */
+    private String rispostaInStreaming(ResponseFormatter.ScrittoreDati scrittore) throws SQLException {
+        if (uscitaDiretta == null || compressione) {
+            return ResponseFormatter.successoJson(scrittore);
+        }
+        if (formatoBinario) {
+            return frameInStreaming(scrittore);
+        }
+
+        uscitaDiretta.inizia();
+        try {
+            try (JsonGenerator generatore = ResponseFormatter.creaGeneratore(uscitaDiretta)) {
+                ResponseFormatter.scriviSuccesso(generatore, idRichiesta, scrittore);
+            }
+            uscitaDiretta.write('\n');
+            uscitaDiretta.completa();
+        } catch (IOException | SQLException e) {
+            if (!uscitaDiretta.isScartabile()) {
+                Log.errore("Risposta interrotta dopo " + uscitaDiretta.getByteScritti() + " byte, connessione chiusa: "
+                        + e.getMessage());
+                connessioneInterrotta = true;
+                return null;
+            }
+            if (e instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            Log.errore("Errore nella serializzazione della risposta: " + e.getMessage());
+            return ResponseFormatter.erroreJson("Errore durante la preparazione della risposta.");
+        }
+        byteInviatiDirettamente = uscitaDiretta.getByteScritti();
+        return null;
+    }
+
+    private String frameInStreaming(ResponseFormatter.ScrittoreDati scrittore) throws SQLException {
+        ByteArrayOutputStream frame = FormatoBinario.apriFrame(1024);
+        try (JsonGenerator generatore = FormatoBinario.creaGeneratore(frame)) {
+            ResponseFormatter.scriviSuccesso(generatore, idRichiesta, scrittore);
+        } catch (IOException e) {
+            Log.errore("Errore nella serializzazione della risposta: " + e.getMessage());
+            return ResponseFormatter.erroreJson("Errore durante la preparazione della risposta.");
+        }
+
+        byte[] contenuto = FormatoBinario.chiudiFrame(frame);
+        uscitaDiretta.inizia();
+        try {
+            uscitaDiretta.write(contenuto);
+            uscitaDiretta.completa();
+            byteInviatiDirettamente = contenuto.length;
+        } catch (IOException e) {
+            Log.errore("Errore nell'invio della risposta: " + e.getMessage());
+            connessioneInterrotta = true;
+        }
+        return null;
+    }
+
+    /**
+     * Scrive il cursore della pagina successiva nel campo "prossimoCursore", se ce n'è una.
+     */
+    private static void scriviProssimoCursore(JsonGenerator dati, Cursore prossimo) throws IOException {
+        if (prossimo != null) {
+            dati.writeStringField("prossimoCursore", prossimo.codifica());
+        }
+    }
+
     /**
      * Elimina una libreria dell'utente autenticato.
      *
@@ -1000,7 +1658,7 @@ public class ClientHandler implements Runnable {
         } catch (NumberFormatException e) {
             return ResponseFormatter.erroreJson("ID libreria non valido. Assicurati di inserire un numero intero.");
         } catch (SQLException e) {
-            System.err.println("Errore durante l'eliminazione della libreria: " + e.getMessage());
+            Log.errore("Errore durante l'eliminazione della libreria: " + e.getMessage());
             return ResponseFormatter.erroreJson("Errore durante l'eliminazione della libreria. Riprova più tardi.");
         }
     }
@@ -1017,7 +1675,7 @@ public class ClientHandler implements Runnable {
             try {
                 paramsMap = new ObjectMapper().readValue(parametri, HashMap.class);
             } catch (JsonProcessingException e) {
-                System.err.println("Parametri per VALUTA_LIBRO sembravano JSON ma non parsabili: " + e.getMessage());
+                Log.avviso("Parametri per VALUTA_LIBRO sembravano JSON ma non parsabili: " + e.getMessage());
             }
         }
 
@@ -1085,6 +1743,8 @@ public class ClientHandler implements Runnable {
                     scoreGradevolezza, noteGradevolezza, scoreOriginalita, noteOriginalita,
                     scoreEdizione, noteEdizione
             );
+            invalidaCache("VALUTAZIONI_LIBRO", libroID);
+            invalidaCache("RIEPILOGO_VALUTAZIONI", libroID);
             return ResponseFormatter.successoJson("Valutazione salvata con successo.", ResponseFormatter.singletonMap("valutazioneID", valutazioneID));
 
         } catch (NumberFormatException e) {
@@ -1092,94 +1752,157 @@ public class ClientHandler implements Runnable {
         } catch (ClassCastException | NullPointerException e) {
             return ResponseFormatter.erroreJson("Errore nel formato dei parametri JSON per VALUTA_LIBRO.");
         } catch (SQLException e) {
-            System.err.println("Errore durante il salvataggio della valutazione: " + e.getMessage());
+            Log.errore("Errore durante il salvataggio della valutazione: " + e.getMessage());
             return ResponseFormatter.erroreJson("Errore durante il salvataggio della valutazione. Riprova più tardi.");
         }
     }
 
     /**
-     * Visualizza le valutazioni di un libro specificato dall'utente.
+     * Visualizza una pagina delle valutazioni di un libro specificato dall'utente, dalla più recente,
+     * e il cursore da passare per ottenere la pagina successiva.
      *
-     * @param libroIDStr L'ID del libro di cui visualizzare le valutazioni
+     * @param parametri L'ID del libro, opzionalmente seguito dal limite e dal cursore
+     * @param richiesta La richiesta, con limite e cursore della pagina se inviata in JSON
      * @return Messaggio di successo o errore in formato JSON con le valutazioni del libro
      */
-    private String visualizzaValutazioniLibro(String libroIDStr) {
-        if (libroIDStr.isEmpty()) {
+    private String visualizzaValutazioniLibro(String parametri, RequestParser.ParsedRequest richiesta) {
+        if (parametri.isEmpty()) {
             return ResponseFormatter.erroreJson("Specifica l'ID del libro di cui visualizzare le valutazioni.");
         }
         try {
-            int libroID = Integer.parseInt(libroIDStr);
-            List<Valutazione> valutazioniObj = valutazioneDAO.getValutazioniLibro(libroID);
-            List<Map<String, Object>> valutazioniData = new ArrayList<>();
-            Map<String, Object> responseData = new HashMap<>();
-            responseData.put("libroID", libroID);
+            String[] parti = parametri.trim().split("\\s+");
+            int libroID = Integer.parseInt(parti[0]);
+            Paginazione paginazione = leggiPaginazione(richiesta, PAGINA_ELENCO,
+                    parti.length > 1 ? parti[1] : null, parti.length > 2 ? parti[2] : null);
+            return ResponseFormatter.successoJson(dati -> {
+                dati.writeNumberField("libroID", libroID);
+                dati.writeArrayFieldStart("valutazioni");
+                int[] numeroValutazioni = {0};
+                Cursore prossimo = valutazioneDAO.leggiValutazioniLibro(libroID, paginazione.cursore(), paginazione.limite(), rs -> {
+                    scriviValutazione(dati, ValutazioneDAO.mappaValutazione(rs), null);
+                    numeroValutazioni[0]++;
+                });
+                dati.writeEndArray();
+                scriviProssimoCursore(dati, prossimo);
+                return numeroValutazioni[0] == 0 && paginazione.cursore() == null
+                        ? "Nessuna valutazione trovata per il libro ID: " + libroID
+                        : "Valutazioni per il libro ID: " + libroID;
+            });
+        } catch (NumberFormatException e) {
+            return ResponseFormatter.erroreJson("ID libro non valido. Assicurati di inserire un numero intero.");
+        } catch (IllegalArgumentException e) {
+            return ResponseFormatter.erroreJson(e.getMessage());
+        } catch (SQLException e) {
+            Log.errore("Errore durante il recupero delle valutazioni: " + e.getMessage());
+            return ResponseFormatter.erroreJson("Errore durante il recupero delle valutazioni. Riprova più tardi.");
+        }
+    }
 
-            if (valutazioniObj.isEmpty()) {
-                responseData.put("valutazioni", valutazioniData);
-                return ResponseFormatter.successoJson("Nessuna valutazione trovata per il libro ID: " + libroID, responseData);
-            }
-            for (Valutazione val : valutazioniObj) {
-                Map<String, Object> valMap = new HashMap<>();
-                valMap.put("valutazioneID", val.valutazioneID());
-                valMap.put("userID", val.userID());
-                valMap.put("libroID", val.libroID()); // AGGIUNTO per compatibilità client
-                valMap.put("scoreStile", val.scoreStile());
-                valMap.put("noteStile", val.noteStile());
-                valMap.put("scoreContenuto", val.scoreContenuto());
-                valMap.put("noteContenuto", val.noteContenuto());
-                valMap.put("scoreGradevolezza", val.scoreGradevolezza());
-                valMap.put("noteGradevolezza", val.noteGradevolezza());
-                valMap.put("scoreOriginalita", val.scoreOriginalita());
-                valMap.put("noteOriginalita", val.noteOriginalita());
-                valMap.put("scoreEdizione", val.scoreEdizione());
-                valMap.put("noteEdizione", val.noteEdizione());
-                valMap.put("dataValutazione", val.dataValutazione().toString());
-                valutazioniData.add(valMap);
+    /**
+     * Scrive una valutazione come oggetto JSON, con il titolo del libro se disponibile.
+     * Chiamato durante la lettura delle righe, riporta gli errori di scrittura come UncheckedIOException.
+     */
+    private static void scriviValutazione(JsonGenerator dati, Valutazione val, String titoloLibro) {
+        try {
+            dati.writeStartObject();
+            dati.writeNumberField("valutazioneID", val.valutazioneID());
+            dati.writeNumberField("userID", val.userID());
+            dati.writeNumberField("libroID", val.libroID());
+            if (titoloLibro != null) {
+                dati.writeStringField("titoloLibro", titoloLibro);
             }
-            responseData.put("valutazioni", valutazioniData);
-            return ResponseFormatter.successoJson("Valutazioni per il libro ID: " + libroID, responseData);
+            dati.writeNumberField("scoreStile", val.scoreStile());
+            dati.writeStringField("noteStile", val.noteStile());
+            dati.writeNumberField("scoreContenuto", val.scoreContenuto());
+            dati.writeStringField("noteContenuto", val.noteContenuto());
+            dati.writeNumberField("scoreGradevolezza", val.scoreGradevolezza());
+            dati.writeStringField("noteGradevolezza", val.noteGradevolezza());
+            dati.writeNumberField("scoreOriginalita", val.scoreOriginalita());
+            dati.writeStringField("noteOriginalita", val.noteOriginalita());
+            dati.writeNumberField("scoreEdizione", val.scoreEdizione());
+            dati.writeStringField("noteEdizione", val.noteEdizione());
+            // La data ha solo un DEFAULT nello schema e può mancare
+            dati.writeStringField("dataValutazione", val.dataValutazione() != null ? val.dataValutazione().toString() : null);
+            dati.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Visualizza il riepilogo dei punteggi di un libro: numero di valutazioni, media complessiva
+     * e, per ogni criterio, numero, media e deviazione standard dei punteggi.
+     *
+     * @param libroIDStr L'ID del libro
+     * @return Messaggio di successo o errore in formato JSON con il riepilogo
+     */
+    private String riepilogoValutazioni(String libroIDStr) {
+        if (libroIDStr.isEmpty()) {
+            return ResponseFormatter.erroreJson("Specifica l'ID del libro di cui visualizzare il riepilogo.");
+        }
+        try {
+            int libroID = Integer.parseInt(libroIDStr.trim());
+            RiepilogoValutazioni riepilogo = valutazioneDAO.getRiepilogo(libroID);
+
+            Map<String, Object> criteri = new LinkedHashMap<>();
+            criteri.put("stile", descriviCriterio(riepilogo.stile()));
+            criteri.put("contenuto", descriviCriterio(riepilogo.contenuto()));
+            criteri.put("gradevolezza", descriviCriterio(riepilogo.gradevolezza()));
+            criteri.put("originalita", descriviCriterio(riepilogo.originalita()));
+            criteri.put("edizione", descriviCriterio(riepilogo.edizione()));
+
+            Map<String, Object> responseData = new HashMap<>();
+            responseData.put("libroID", libroID);
+            responseData.put("numeroValutazioni", riepilogo.numeroValutazioni());
+            responseData.put("mediaComplessiva", riepilogo.mediaComplessiva());
+            responseData.put("criteri", criteri);
+            return ResponseFormatter.successoJson("Riepilogo delle valutazioni per il libro ID: " + libroID, responseData);
         } catch (NumberFormatException e) {
             return ResponseFormatter.erroreJson("ID libro non valido. Assicurati di inserire un numero intero.");
         } catch (SQLException e) {
-            System.err.println("Errore durante il recupero delle valutazioni: " + e.getMessage());
-            return ResponseFormatter.erroreJson("Errore durante il recupero delle valutazioni. Riprova più tardi.");
+            Log.errore("Errore durante il recupero del riepilogo delle valutazioni: " + e.getMessage());
+            return ResponseFormatter.erroreJson("Errore durante il recupero del riepilogo delle valutazioni. Riprova più tardi.");
         }
     }
 
+    private static Map<String, Object> descriviCriterio(RiepilogoValutazioni.Criterio criterio) {
+        Map<String, Object> dati = new HashMap<>();
+        dati.put("numero", criterio.numero());
+        dati.put("media", criterio.media());
+        dati.put("deviazioneStandard", criterio.deviazioneStandard());
+        return dati;
+    }
+
     /**
-     * Visualizza le valutazioni fatte dall'utente autenticato.
+     * Visualizza una pagina delle valutazioni fatte dall'utente autenticato, dalla più recente,
+     * e il cursore da passare per ottenere la pagina successiva.
      *
+     * @param parametri Opzionalmente il limite seguito dal cursore
+     * @param richiesta La richiesta, con limite e cursore della pagina se inviata in JSON
      * @return Messaggio di successo o errore in formato JSON con le valutazioni dell'utente
      */
-    private String visualizzaMieValutazioni() {
+    private String visualizzaMieValutazioni(String parametri, RequestParser.ParsedRequest richiesta) {
         try {
-            List<Valutazione> valutazioniObj = valutazioneDAO.getValutazioniUtente(utenteAutenticato.userID());
-            List<Map<String, Object>> valutazioniData = new ArrayList<>();
-            if (valutazioniObj.isEmpty()) {
-                return ResponseFormatter.successoJson("Non hai ancora valutato nessun libro.", ResponseFormatter.singletonMap("valutazioni", valutazioniData));
-            }
-            for (Valutazione val : valutazioniObj) {
-                Map<String, Object> valMap = new HashMap<>();
-                valMap.put("valutazioneID", val.valutazioneID());
-                valMap.put("userID", val.userID());
-                valMap.put("libroID", val.libroID());
-                libroDAO.getLibroById(val.libroID()).ifPresent(l -> valMap.put("titoloLibro", l.titolo()));
-                valMap.put("scoreStile", val.scoreStile());
-                valMap.put("noteStile", val.noteStile());
-                valMap.put("scoreContenuto", val.scoreContenuto());
-                valMap.put("noteContenuto", val.noteContenuto());
-                valMap.put("scoreGradevolezza", val.scoreGradevolezza());
-                valMap.put("noteGradevolezza", val.noteGradevolezza());
-                valMap.put("scoreOriginalita", val.scoreOriginalita());
-                valMap.put("noteOriginalita", val.noteOriginalita());
-                valMap.put("scoreEdizione", val.scoreEdizione());
-                valMap.put("noteEdizione", val.noteEdizione());
-                valMap.put("dataValutazione", val.dataValutazione().toString());
-                valutazioniData.add(valMap);
-            }
-            return ResponseFormatter.successoJson("Le tue valutazioni.", ResponseFormatter.singletonMap("valutazioni", valutazioniData));
+            String[] parti = parametri.trim().isEmpty() ? new String[0] : parametri.trim().split("\\s+");
+            Paginazione paginazione = leggiPaginazione(richiesta, PAGINA_ELENCO,
+                    parti.length > 0 ? parti[0] : null, parti.length > 1 ? parti[1] : null);
+            int userID = utenteAutenticato.userID();
+            return rispostaInStreaming(dati -> {
+                dati.writeArrayFieldStart("valutazioni");
+                int[] numeroValutazioni = {0};
+                Cursore prossimo = valutazioneDAO.leggiValutazioniUtente(userID, paginazione.cursore(), paginazione.limite(), rs -> {
+                    scriviValutazione(dati, ValutazioneDAO.mappaValutazione(rs), rs.getString("TitoloLibro"));
+                    numeroValutazioni[0]++;
+                });
+                dati.writeEndArray();
+                scriviProssimoCursore(dati, prossimo);
+                return numeroValutazioni[0] == 0 && paginazione.cursore() == null
+                        ? "Non hai ancora valutato nessun libro." : "Le tue valutazioni.";
+            });
+        } catch (IllegalArgumentException e) {
+            return ResponseFormatter.erroreJson(e.getMessage());
         } catch (SQLException e) {
-            System.err.println("Errore durante il recupero delle tue valutazioni: " + e.getMessage());
+            Log.errore("Errore durante il recupero delle tue valutazioni: " + e.getMessage());
             return ResponseFormatter.erroreJson("Errore durante il recupero delle tue valutazioni. Riprova più tardi.");
         }
     }
@@ -1197,6 +1920,20 @@ public class ClientHandler implements Runnable {
         try {
             int libroID = Integer.parseInt(libroIDStr);
             List<Libro> consigliatiObj = consiglioDAO.generaConsigliPerLibro(libroID, 5);
+
+            // Dopo i consigli degli utenti, completo con i libri più simili secondo il modello
+            ModelloRaccomandazioni modello = ModelloRaccomandazioni.getCorrente();
+            if (modello != null && consigliatiObj.size() < 5) {
+                Set<Integer> giaConsigliati = new HashSet<>();
+                for (Libro libro : consigliatiObj) {
+                    giaConsigliati.add(libro.libroId());
+                }
+                List<Integer> simili = modello.getSimili(libroID, 5 - consigliatiObj.size(), giaConsigliati);
+                if (!simili.isEmpty()) {
+                    consigliatiObj = new ArrayList<>(consigliatiObj);
+                    consigliatiObj.addAll(libroDAO.getLibriByIds(simili));
+                }
+            }
             List<Map<String, Object>> libriConsigliatiData = new ArrayList<>();
             Map<String, Object> responseData = new HashMap<>();
             responseData.put("libroRiferimentoID", libroID);
@@ -1223,7 +1960,7 @@ public class ClientHandler implements Runnable {
         } catch (NumberFormatException e) {
             return ResponseFormatter.erroreJson("ID libro non valido. Assicurati di inserire un numero intero.");
         } catch (SQLException e) {
-            System.err.println("Errore durante la generazione dei consigli: " + e.getMessage());
+            Log.errore("Errore durante la generazione dei consigli: " + e.getMessage());
             return ResponseFormatter.erroreJson("Errore durante la generazione dei consigli. Riprova più tardi.");
         }
     }
@@ -1245,57 +1982,74 @@ public class ClientHandler implements Runnable {
             if (libroRiferimentoID == libroSuggeritoID) {
                 return ResponseFormatter.erroreJson("Un libro non può essere consigliato a se stesso.");
             }
-            // Ulteriori controlli: esistenza libri
-            if (libroDAO.getLibroById(libroRiferimentoID).isEmpty() || libroDAO.getLibroById(libroSuggeritoID).isEmpty()) {
-                return ResponseFormatter.erroreJson("Uno o entrambi i libri specificati non esistono.");
-            }
-            // Verifico se il libro ha già più di 3 consigli dallo stesso utente
-            // Prendo i miei consigli e conto
-            List<Consiglio> mieiConsigli = consiglioDAO.getConsigliUtente(utenteAutenticato.userID());
-            long conteggioConsigli = mieiConsigli.stream()
-                    .filter(c -> c.libroRiferimentoID() == libroRiferimentoID)
-                    .count();
-            if (conteggioConsigli >= 3) {
+            // Il limite per libro e l'esistenza dei libri vengono verificati dal database nello stesso salvataggio
+            Optional<Integer> consiglioID = consiglioDAO.salvaConsiglio(utenteAutenticato.userID(), libroRiferimentoID, libroSuggeritoID);
+            if (consiglioID.isEmpty()) {
                 return ResponseFormatter.erroreJson("Hai raggiunto il numero massimo di consigli per questo libro.");
             }
-
-
-            int consiglioID = consiglioDAO.salvaConsiglio(utenteAutenticato.userID(), libroRiferimentoID, libroSuggeritoID);
-            return ResponseFormatter.successoJson("Consiglio salvato con successo.", ResponseFormatter.singletonMap("consiglioID", consiglioID));
+            invalidaCache("GENERA_CONSIGLI", libroRiferimentoID);
+            return ResponseFormatter.successoJson("Consiglio salvato con successo.", ResponseFormatter.singletonMap("consiglioID", consiglioID.get()));
         } catch (NumberFormatException e) {
             return ResponseFormatter.erroreJson("ID non validi. Assicurati di inserire numeri interi.");
         } catch (SQLException e) {
-            System.err.println("Errore durante il salvataggio del consiglio: " + e.getMessage());
+            if (VIOLAZIONE_CHIAVE_ESTERNA.equals(e.getSQLState())) {
+                return ResponseFormatter.erroreJson("Uno o entrambi i libri specificati non esistono.");
+            }
+            Log.errore("Errore durante il salvataggio del consiglio: " + e.getMessage());
             return ResponseFormatter.erroreJson("Errore durante il salvataggio del consiglio. Potrebbe essere un duplicato o i libri non validi.");
         }
     }
 
     /**
-     * Visualizza i consigli salvati dall'utente autenticato.
+     * Visualizza una pagina dei consigli salvati dall'utente autenticato, dal più recente,
+     * e il cursore da passare per ottenere la pagina successiva.
      *
+     * @param parametri Opzionalmente il limite seguito dal cursore
+     * @param richiesta La richiesta, con limite e cursore della pagina se inviata in JSON
      * @return Messaggio di successo o errore in formato JSON con i consigli dell'utente
      */
-    private String visualizzaMieiConsigli() {
+    private String visualizzaMieiConsigli(String parametri, RequestParser.ParsedRequest richiesta) {
         try {
-            List<Consiglio> consigliObj = consiglioDAO.getConsigliUtente(utenteAutenticato.userID());
-            List<Map<String, Object>> consigliData = new ArrayList<>();
-            if (consigliObj.isEmpty()) {
-                return ResponseFormatter.successoJson("Non hai ancora salvato nessun consiglio.", ResponseFormatter.singletonMap("consigli", consigliData));
-            }
-            for (Consiglio consiglio : consigliObj) {
-                Map<String, Object> consiglioMap = new HashMap<>();
-                consiglioMap.put("consiglioID", consiglio.consiglioID());
-                consiglioMap.put("userID", consiglio.userID());
-                consiglioMap.put("libroRiferimentoID", consiglio.libroRiferimentoID());
-                libroDAO.getLibroById(consiglio.libroRiferimentoID()).ifPresent(l -> consiglioMap.put("titoloLibroRiferimento", l.titolo()));
-                consiglioMap.put("libroSuggeritoID", consiglio.libroSuggeritoID());
-                libroDAO.getLibroById(consiglio.libroSuggeritoID()).ifPresent(l -> consiglioMap.put("titoloLibroSuggerito", l.titolo()));
-                consiglioMap.put("dataSuggerimento", consiglio.dataSuggerimento().toString());
-                consigliData.add(consiglioMap);
-            }
-            return ResponseFormatter.successoJson("I tuoi consigli salvati.", ResponseFormatter.singletonMap("consigli", consigliData));
+            String[] parti = parametri.trim().isEmpty() ? new String[0] : parametri.trim().split("\\s+");
+            Paginazione paginazione = leggiPaginazione(richiesta, PAGINA_ELENCO,
+                    parti.length > 0 ? parti[0] : null, parti.length > 1 ? parti[1] : null);
+            int userID = utenteAutenticato.userID();
+            return rispostaInStreaming(dati -> {
+                dati.writeArrayFieldStart("consigli");
+                int[] numeroConsigli = {0};
+                Cursore prossimo = consiglioDAO.leggiConsigliUtente(userID, paginazione.cursore(), paginazione.limite(), rs -> {
+                    Consiglio consiglio = ConsiglioDAO.mappaConsiglio(rs);
+                    String titoloRiferimento = rs.getString("TitoloLibroRiferimento");
+                    String titoloSuggerito = rs.getString("TitoloLibroSuggerito");
+                    try {
+                        dati.writeStartObject();
+                        dati.writeNumberField("consiglioID", consiglio.consiglioID());
+                        dati.writeNumberField("userID", consiglio.userID());
+                        dati.writeNumberField("libroRiferimentoID", consiglio.libroRiferimentoID());
+                        if (titoloRiferimento != null) {
+                            dati.writeStringField("titoloLibroRiferimento", titoloRiferimento);
+                        }
+                        dati.writeNumberField("libroSuggeritoID", consiglio.libroSuggeritoID());
+                        if (titoloSuggerito != null) {
+                            dati.writeStringField("titoloLibroSuggerito", titoloSuggerito);
+                        }
+                        dati.writeStringField("dataSuggerimento",
+                                consiglio.dataSuggerimento() != null ? consiglio.dataSuggerimento().toString() : null);
+                        dati.writeEndObject();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    numeroConsigli[0]++;
+                });
+                dati.writeEndArray();
+                scriviProssimoCursore(dati, prossimo);
+                return numeroConsigli[0] == 0 && paginazione.cursore() == null
+                        ? "Non hai ancora salvato nessun consiglio." : "I tuoi consigli salvati.";
+            });
+        } catch (IllegalArgumentException e) {
+            return ResponseFormatter.erroreJson(e.getMessage());
         } catch (SQLException e) {
-            System.err.println("Errore durante il recupero dei tuoi consigli: " + e.getMessage());
+            Log.errore("Errore durante il recupero dei tuoi consigli: " + e.getMessage());
             return ResponseFormatter.erroreJson("Errore durante il recupero dei tuoi consigli. Riprova più tardi.");
         }
     }
@@ -1317,7 +2071,7 @@ public class ClientHandler implements Runnable {
             try {
                 paramsMap = new ObjectMapper().readValue(parametri, HashMap.class);
             } catch (JsonProcessingException e) {
-                System.err.println("Parametri per RINOMINA_LIBRERIA sembravano JSON ma non parsabili: " + e.getMessage());
+                Log.avviso("Parametri per RINOMINA_LIBRERIA sembravano JSON ma non parsabili: " + e.getMessage());
             }
         }
 
@@ -1368,7 +2122,7 @@ public class ClientHandler implements Runnable {
         } catch (NumberFormatException e) {
             return ResponseFormatter.erroreJson("ID libreria non valido. Assicurati di inserire un numero intero.");
         } catch (SQLException e) {
-            System.err.println("Errore durante la rinomina della libreria: " + e.getMessage());
+            Log.errore("Errore durante la rinomina della libreria: " + e.getMessage());
             return ResponseFormatter.erroreJson("Errore durante la rinomina della libreria. Riprova più tardi.");
         }
     }
@@ -0,0 +1,80 @@
+package me.labb.bookrecommender.server;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import me.labb.bookrecommender.server.log.Log;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Segnala i thread virtuali rimasti "pinned" al proprio carrier thread
+ * (ad esempio dentro blocchi synchronized o chiamate native durante operazioni bloccanti),
+ * ascoltando l'evento JFR jdk.VirtualThreadPinned.
+ * Ogni segnalazione riporta la durata e i primi frame dello stack.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class DiagnosticaPinning {
+
+    private static final int FRAME_MOSTRATI = 8;
+
+    private final Duration soglia;
+    private RecordingStream stream;
+
+    /**
+     * @param sogliaMs Durata minima del pinning da segnalare, in millisecondi
+     */
+    public DiagnosticaPinning(long sogliaMs) {
+        this.soglia = Duration.ofMillis(sogliaMs);
+    }
+
+    /**
+     * Avvia l'ascolto degli eventi in un thread di background.
+     */
+    public void avvia() {
+        try {
+            stream = new RecordingStream();
+            stream.enable("jdk.VirtualThreadPinned").withThreshold(soglia).withStackTrace();
+            stream.onEvent("jdk.VirtualThreadPinned", this::segnala);
+            stream.startAsync();
+            Log.info("Diagnostica pinning dei thread virtuali attiva (soglia " + soglia.toMillis() + " ms).");
+        } catch (RuntimeException e) {
+            // JFR può non essere disponibile su alcune JVM
+            Log.avviso("Impossibile avviare la diagnostica del pinning: " + e.getMessage());
+            stream = null;
+        }
+    }
+
+    /**
+     * Interrompe l'ascolto degli eventi.
+     */
+    public void arresta() {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+
+    private void segnala(RecordedEvent evento) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Thread virtuale pinned per ")
+                .append(evento.getDuration().toMillis()).append(" ms");
+        if (evento.getThread() != null) {
+            sb.append(" (").append(evento.getThread().getJavaName()).append(")");
+        }
+        if (evento.getStackTrace() != null) {
+            List<RecordedFrame> frames = evento.getStackTrace().getFrames();
+            for (int i = 0; i < Math.min(FRAME_MOSTRATI, frames.size()); i++) {
+                RecordedFrame frame = frames.get(i);
+                sb.append("\n    at ").append(frame.getMethod().getType().getName())
+                        .append('.').append(frame.getMethod().getName())
+                        .append(':').append(frame.getLineNumber());
+            }
+        }
+        Log.avviso(sb.toString());
+    }
+}
@@ -1,6 +1,8 @@
 package me.labb.bookrecommender.server;
 
 import me.labb.bookrecommender.server.db.DatabaseManager;
+import me.labb.bookrecommender.server.log.Log;
+import me.labb.bookrecommender.server.rete.ServerNIO;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -9,10 +11,24 @@ import java.net.Socket;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Classe Server che gestisce le connessioni client e le richieste per il sistema di raccomandazione libri.
  * Implementa il pattern Runnable per permettere l'esecuzione in thread separati.
+ * <p>
+ * Il trasporto è scelto con la proprietà server.transport di config.properties:
+ * "blocking" (default) usa un thread per client, "nio" usa un selector non bloccante
+ * con un pool limitato di worker (server.nio.workers, server.nio.queueSize).
+ * <p>
+ * Con server.executor=virtual client (o richieste, con NIO) vengono eseguiti su thread virtuali;
+ * in questo caso le richieste elaborate in contemporanea sono limitate da un semaforo
+ * dimensionato sul pool di connessioni al database (server.virtual.dbConcurrency).
  *
  * @author Caretti Gabriele 756564 VA
  * @author Como Riccardo 758697 VA
@@ -20,9 +36,24 @@ import java.util.concurrent.Executors;
  */
 public class Server implements Runnable {
     private static final int PORTA_DEFAULT = 8080;
+    private static final String TRASPORTO_BLOCCANTE = "blocking";
+    private static final String TRASPORTO_NIO = "nio";
+    private static final int WORKER_NIO_DEFAULT = 16;
+    private static final int CODA_NIO_DEFAULT = 10000;
+    private static final String ESECUTORE_PIATTAFORMA = "platform";
+    private static final String ESECUTORE_VIRTUALE = "virtual";
+    private static final int SOGLIA_PINNING_DEFAULT_MS = 20;
+
     private final int porta;
+    private final Properties config;
+    private final String trasporto;
+    private final boolean threadVirtuali;
+    private final Semaphore limitatoreDB;
+    private final int timeoutScritturaMs;
+    private DiagnosticaPinning diagnosticaPinning;
     private ServerSocket serverSocket;
-    private boolean attivo = false;
+    private ServerNIO serverNIO;
+    private volatile boolean attivo = false;
     private final ExecutorService threadPool;
     private final DatabaseManager dbManager;
 
@@ -38,33 +69,26 @@ public class Server implements Runnable {
      * Costruttore server con porta predefinita (o da config.properties).
      */
     public Server() {
+        this.config = caricaConfigurazione();
         int portaConfig = PORTA_DEFAULT;
 
-        try (InputStream input = getClass().getClassLoader().getResourceAsStream("config.properties")) {
-            if (input != null) {
-                Properties props = new Properties();
-                props.load(input);
-
-                String portaStr = props.getProperty("server.port");
-                if (portaStr != null && !portaStr.isEmpty()) {
-                    try {
-                        portaConfig = Integer.parseInt(portaStr);
-                        System.out.println("Porta letta da config.properties: " + portaConfig);
-                    } catch (NumberFormatException e) {
-                        System.err.println("Errore nel parsing della porta da config.properties. Usando porta di default: " + PORTA_DEFAULT);
-                    }
-                }
-            } else {
-                System.out.println("File config.properties non trovato. Usando porta di default: " + PORTA_DEFAULT);
+        String portaStr = config.getProperty("server.port");
+        if (portaStr != null && !portaStr.isEmpty()) {
+            try {
+                portaConfig = Integer.parseInt(portaStr);
+                Log.info("Porta letta da config.properties: " + portaConfig);
+            } catch (NumberFormatException e) {
+                Log.avviso("Errore nel parsing della porta da config.properties. Usando porta di default: " + PORTA_DEFAULT);
             }
-        } catch (IOException e) {
-            System.err.println("Errore nella lettura del file config.properties: " + e.getMessage());
-            System.out.println("Usando porta di default: " + PORTA_DEFAULT);
         }
 
         this.porta = portaConfig;
-        this.threadPool = Executors.newCachedThreadPool();
+        this.trasporto = leggiTrasporto();
         this.dbManager = DatabaseManager.getInstance();
+        this.threadVirtuali = leggiThreadVirtuali();
+        this.limitatoreDB = creaLimitatoreDB();
+        this.timeoutScritturaMs = leggiIntero("server.writeTimeoutMs", ClientHandler.TIMEOUT_SCRITTURA_DEFAULT_MS);
+        this.threadPool = creaThreadPool();
     }
 
     /**
@@ -73,9 +97,112 @@ public class Server implements Runnable {
      * @param porta La porta su cui il server ascolterà le connessioni
      */
     public Server(int porta) {
+        this(porta, new Properties());
+    }
+
+    /**
+     * Costruttore server con porta specifica e proprietà che sostituiscono quelle di config.properties,
+     * ad esempio per confrontare trasporti ed esecutori nelle prove di carico.
+     *
+     * @param porta        La porta su cui il server ascolterà le connessioni
+     * @param sostituzioni Le proprietà da usare al posto di quelle lette da config.properties
+     */
+    public Server(int porta, Properties sostituzioni) {
+        this.config = caricaConfigurazione();
+        this.config.putAll(sostituzioni);
         this.porta = porta;
-        this.threadPool = Executors.newCachedThreadPool();
+        this.trasporto = leggiTrasporto();
         this.dbManager = DatabaseManager.getInstance();
+        this.threadVirtuali = leggiThreadVirtuali();
+        this.limitatoreDB = creaLimitatoreDB();
+        this.timeoutScritturaMs = leggiIntero("server.writeTimeoutMs", ClientHandler.TIMEOUT_SCRITTURA_DEFAULT_MS);
+        this.threadPool = creaThreadPool();
+    }
+
+    /**
+     * Carica config.properties dal classpath.
+     *
+     * @return Le proprietà lette, vuote se il file non è disponibile
+     */
+    private Properties caricaConfigurazione() {
+        Properties props = new Properties();
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream("config.properties")) {
+            if (input != null) {
+                props.load(input);
+            } else {
+                Log.info("File config.properties non trovato. Usando la configurazione di default.");
+            }
+        } catch (IOException e) {
+            Log.errore("Errore nella lettura del file config.properties: " + e.getMessage());
+        }
+        return props;
+    }
+
+    private String leggiTrasporto() {
+        String valore = config.getProperty("server.transport", TRASPORTO_BLOCCANTE).trim().toLowerCase();
+        if (!valore.equals(TRASPORTO_BLOCCANTE) && !valore.equals(TRASPORTO_NIO)) {
+            Log.avviso("Trasporto non valido in config.properties: " + valore + ". Usando " + TRASPORTO_BLOCCANTE);
+            return TRASPORTO_BLOCCANTE;
+        }
+        return valore;
+    }
+
+    private boolean leggiThreadVirtuali() {
+        String valore = config.getProperty("server.executor", ESECUTORE_PIATTAFORMA).trim().toLowerCase();
+        if (!valore.equals(ESECUTORE_PIATTAFORMA) && !valore.equals(ESECUTORE_VIRTUALE)) {
+            Log.avviso("Esecutore non valido in config.properties: " + valore + ". Usando " + ESECUTORE_PIATTAFORMA);
+            return false;
+        }
+        return valore.equals(ESECUTORE_VIRTUALE);
+    }
+
+    /**
+     * Con i thread virtuali il numero di client attivi non è limitato dai thread:
+     * il semaforo evita che più richieste di quante connessioni ci siano competano per il database.
+     */
+    private Semaphore creaLimitatoreDB() {
+        if (!threadVirtuali) {
+            return null;
+        }
+        int permessi = leggiIntero("server.virtual.dbConcurrency", dbManager.getPool().getDimensioneMassima());
+        return new Semaphore(permessi, true);
+    }
+
+    /**
+     * Crea il pool di thread adatto al trasporto: illimitato per quello bloccante,
+     * dove ogni thread segue un client, limitato per NIO, dove i thread elaborano solo richieste.
+     * Con server.executor=virtual i thread sono virtuali.
+     */
+    private ExecutorService creaThreadPool() {
+        if (!TRASPORTO_NIO.equals(trasporto)) {
+            return threadVirtuali
+                    ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("client-", 1).factory())
+                    : Executors.newCachedThreadPool();
+        }
+        int worker = leggiIntero("server.nio.workers", WORKER_NIO_DEFAULT);
+        int coda = leggiIntero("server.nio.queueSize", CODA_NIO_DEFAULT);
+        ThreadFactory fabbrica;
+        if (threadVirtuali) {
+            fabbrica = Thread.ofVirtual().name("worker-nio-", 1).factory();
+        } else {
+            AtomicInteger contatore = new AtomicInteger();
+            fabbrica = r -> new Thread(r, "worker-nio-" + contatore.incrementAndGet());
+        }
+        return new ThreadPoolExecutor(worker, worker, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(coda), fabbrica);
+    }
+
+    private int leggiIntero(String chiave, int standard) {
+        String valore = config.getProperty(chiave);
+        if (valore == null || valore.isBlank()) {
+            return standard;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(valore.trim()));
+        } catch (NumberFormatException e) {
+            Log.avviso("Valore non valido per " + chiave + ": " + valore + ", uso " + standard);
+            return standard;
+        }
     }
 
     /**
@@ -83,34 +210,61 @@ public class Server implements Runnable {
      */
     public void avvia() {
         if (attivo) {
-            System.out.println("Il server è già in esecuzione sulla porta " + porta);
+            Log.info("Il server è già in esecuzione sulla porta " + porta);
+            return;
+        }
+
+        if (threadVirtuali) {
+            Log.info("Esecuzione su thread virtuali, richieste concorrenti limitate a "
+                    + limitatoreDB.availablePermits());
+            diagnosticaPinning = new DiagnosticaPinning(leggiIntero("server.virtual.pinnedThresholdMs", SOGLIA_PINNING_DEFAULT_MS));
+            diagnosticaPinning.avvia();
+        }
+
+        if (TRASPORTO_NIO.equals(trasporto)) {
+            avviaNIO();
             return;
         }
 
         try {
             serverSocket = new ServerSocket(porta);
             attivo = true;
-            System.out.println("Server avviato sulla porta " + porta);
+            Log.info("Server avviato sulla porta " + porta);
 
             // Ciclo principale del server
             while (attivo) {
                 try {
-                    System.out.println("In attesa di connessioni client...");
+                    Log.debug("In attesa di connessioni client...");
                     Socket clientSocket = serverSocket.accept();
-                    System.out.println("Nuovo client connesso: " + clientSocket.getInetAddress().getHostAddress());
+                    Log.debug(() -> "Nuovo client connesso: " + clientSocket.getInetAddress().getHostAddress());
 
                     // Gestione client in un thread separato
-                    threadPool.execute(new ClientHandler(clientSocket));
+                    threadPool.execute(new ClientHandler(clientSocket, limitatoreDB, timeoutScritturaMs));
 
                 } catch (IOException e) {
                     if (attivo) {
-                        System.err.println("Errore nell'accettare la connessione client: " + e.getMessage());
+                        Log.errore("Errore nell'accettare la connessione client: " + e.getMessage());
                     }
                 }
             }
 
         } catch (IOException e) {
-            System.err.println("Errore nell'avvio del server sulla porta " + porta + ": " + e.getMessage());
+            Log.errore("Errore nell'avvio del server sulla porta " + porta + ": " + e.getMessage());
+        } finally {
+            arresta();
+        }
+    }
+
+    /**
+     * Avvia il server con il trasporto non bloccante.
+     */
+    private void avviaNIO() {
+        serverNIO = new ServerNIO(porta, threadPool, limitatoreDB);
+        attivo = true;
+        try {
+            serverNIO.avvia();
+        } catch (IOException e) {
+            Log.errore("Errore nell'avvio del server sulla porta " + porta + ": " + e.getMessage());
         } finally {
             arresta();
         }
@@ -127,16 +281,37 @@ public class Server implements Runnable {
         attivo = false;
         threadPool.shutdown();
 
+        if (serverNIO != null) {
+            serverNIO.arresta();
+        }
+        if (diagnosticaPinning != null) {
+            diagnosticaPinning.arresta();
+        }
+
         try {
             if (serverSocket != null && !serverSocket.isClosed()) {
                 serverSocket.close();
-                System.out.println("Server arrestato.");
+                Log.info("Server arrestato.");
             }
         } catch (IOException e) {
-            System.err.println("Errore durante la chiusura del server: " + e.getMessage());
+            Log.errore("Errore durante la chiusura del server: " + e.getMessage());
         }
     }
 
+    /**
+     * @return I client (trasporto bloccante) o le richieste (NIO) in coda nel pool di thread, 0 se il pool non ha coda
+     */
+    public int getCodaEsecutore() {
+        return threadPool instanceof ThreadPoolExecutor pool ? pool.getQueue().size() : 0;
+    }
+
+    /**
+     * @return I thread del pool impegnati in questo momento, -1 con i thread virtuali del trasporto bloccante
+     */
+    public int getThreadEsecutoreAttivi() {
+        return threadPool instanceof ThreadPoolExecutor pool ? pool.getActiveCount() : -1;
+    }
+
     /**
      * Restituisce lo stato attuale del server.
      *
@@ -1,9 +1,25 @@
 package me.labb.bookrecommender.server;
 
+import me.labb.bookrecommender.server.cache.CacheRisposte;
 import me.labb.bookrecommender.server.db.DatabaseManager;
+import me.labb.bookrecommender.server.db.MigrazioniDB;
+import me.labb.bookrecommender.server.db.RegistroQuery;
+import me.labb.bookrecommender.server.log.Log;
+import me.labb.bookrecommender.server.log.LogRichieste;
+import me.labb.bookrecommender.server.metriche.EndpointMetriche;
+import me.labb.bookrecommender.server.metriche.MetricheComandi;
+import me.labb.bookrecommender.server.profilazione.RegistrazioneSuRichiesta;
+import me.labb.bookrecommender.server.raccomandazioni.ModelloRaccomandazioni;
+import me.labb.bookrecommender.server.ricerca.IndiceLibri;
+import me.labb.bookrecommender.server.utils.Compressione;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
 
 /**
  * Classe principale per l'avvio del server BookRecommender.
@@ -22,7 +38,7 @@ public class ServerMain {
      * @param args Argomenti da linea di comando (non utilizzati)
      */
     public static void main(String[] args) {
-        System.out.println("Avvio server...");
+        Log.info("Avvio server...");
 
         dbm = DatabaseManager.getInstance();
 
@@ -31,20 +47,144 @@ public class ServerMain {
             c.getSchema();
             c.close();
         } catch (SQLException e) {
-            System.err.println("Errore di connessione al database: " + e.getMessage());
+            Log.errore("Errore di connessione al database: " + e.getMessage());
             return;
-        }        // Creo e inizializzo il server
+        }
+
+        // Una migrazione fallita non impedisce l'avvio: le funzionalità che ne dipendono usano il comportamento precedente
+        try {
+            int applicate = new MigrazioniDB().applica();
+            Log.info("Migrazioni del database applicate: " + applicate);
+        } catch (SQLException e) {
+            Log.errore("Errore durante le migrazioni del database: " + e.getMessage());
+        }
+
+        Properties config = dbm.getDbProperties();
+
+        // Log asincrono: da qui in poi i messaggi vengono scritti da un thread dedicato
+        Log.Livello livelloLog = Log.Livello.INFO;
+        try {
+            livelloLog = Log.Livello.valueOf(config.getProperty("server.log.level", "INFO").trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            Log.avviso("Livello non valido per server.log.level, uso INFO.");
+        }
+        int capacitaLog = Log.CAPACITA_PREDEFINITA;
+        int limiteRichieste = LogRichieste.LIMITE_PREDEFINITO;
+        try {
+            capacitaLog = Integer.parseInt(config.getProperty("server.log.bufferSize", String.valueOf(capacitaLog)).trim());
+            limiteRichieste = Integer.parseInt(
+                    config.getProperty("server.log.requestsPerSecond", String.valueOf(limiteRichieste)).trim());
+        } catch (NumberFormatException e) {
+            Log.avviso("Valore non valido per server.log.bufferSize o server.log.requestsPerSecond, uso i valori predefiniti.");
+        }
+        Log.attiva(livelloLog, capacitaLog);
+        LogRichieste.attiva(limiteRichieste);
+
+        // Indice di ricerca in memoria opzionale: se non si carica le ricerche vanno sul database
+        if (Boolean.parseBoolean(config.getProperty("server.searchIndex", "false"))) {
+            try {
+                IndiceLibri.attiva();
+            } catch (SQLException e) {
+                Log.errore("Errore durante il caricamento dell'indice di ricerca: " + e.getMessage());
+            }
+        }
+
+        // Cache delle risposte dei comandi di lettura più frequenti
+        if (Boolean.parseBoolean(config.getProperty("server.cache.enabled", "true"))) {
+            try {
+                long maxMB = Long.parseLong(config.getProperty("server.cache.maxMB", "16").trim());
+                long durataSec = Long.parseLong(config.getProperty("server.cache.ttlSeconds", "60").trim());
+                CacheRisposte.attiva(maxMB * 1024 * 1024, durataSec * 1000);
+            } catch (NumberFormatException e) {
+                Log.avviso("Configurazione della cache non valida, cache disattivata: " + e.getMessage());
+            }
+        }
+
+        // Compressione delle risposte, attivata da ogni client con il comando COMPRESSIONE
+        if (Boolean.parseBoolean(config.getProperty("server.compression.enabled", "true"))) {
+            int soglia = Compressione.SOGLIA_DEFAULT;
+            try {
+                soglia = Integer.parseInt(config.getProperty("server.compression.minBytes", String.valueOf(soglia)).trim());
+            } catch (NumberFormatException e) {
+                Log.avviso("Valore non valido per server.compression.minBytes, uso " + soglia + " byte.");
+            }
+            Compressione.attiva(soglia);
+        }
+
+        // Metriche dei comandi: amministratori che possono usare STATS e riepilogo periodico nel log
+        Set<String> amministratori = new HashSet<>();
+        for (String username : config.getProperty("server.stats.admins", "").split(",")) {
+            if (!username.isBlank()) {
+                amministratori.add(username.trim());
+            }
+        }
+        long intervalloRiepilogo = 0;
+        try {
+            intervalloRiepilogo = Long.parseLong(config.getProperty("server.stats.dumpSeconds", "0").trim());
+        } catch (NumberFormatException e) {
+            Log.avviso("Valore non valido per server.stats.dumpSeconds, riepilogo delle metriche disattivato.");
+        }
+        MetricheComandi.attiva(amministratori, intervalloRiepilogo);
+        // Tempi delle istruzioni SQL, query lente nel log e piani EXPLAIN su file
+        if (Boolean.parseBoolean(config.getProperty("server.slowQuery.enabled", "true"))) {
+            long soglia = 200;
+            int explainPerQuery = 3;
+            long explainMaxMB = 10;
+            int explainFile = 3;
+            try {
+                soglia = Long.parseLong(config.getProperty("server.slowQuery.thresholdMs", "200").trim());
+                explainPerQuery = Integer.parseInt(config.getProperty("server.slowQuery.explainCount", "3").trim());
+                explainMaxMB = Long.parseLong(config.getProperty("server.slowQuery.explainMaxMB", "10").trim());
+                explainFile = Integer.parseInt(config.getProperty("server.slowQuery.explainFiles", "3").trim());
+            } catch (NumberFormatException e) {
+                Log.avviso("Configurazione del log delle query lente non valida, uso i valori predefiniti: " + e.getMessage());
+            }
+            RegistroQuery.attiva(soglia, explainPerQuery,
+                    Paths.get(config.getProperty("server.slowQuery.explainFile", "query-lente.log").trim()),
+                    explainMaxMB * 1024 * 1024, explainFile);
+        }
+        RegistrazioneSuRichiesta.attiva(Paths.get(config.getProperty("server.jfr.directory", "registrazioni").trim()));
+
+        // Modello di raccomandazione per GENERA_CONSIGLI, costruito e aggiornato in background
+        if (Boolean.parseBoolean(config.getProperty("server.recommender.enabled", "true"))) {
+            long intervallo = 30;
+            try {
+                intervallo = Long.parseLong(config.getProperty("server.recommender.refreshMinutes", "30").trim());
+            } catch (NumberFormatException e) {
+                Log.avviso("Valore non valido per server.recommender.refreshMinutes, uso 30 minuti.");
+            }
+            ModelloRaccomandazioni.attiva(intervallo);
+        }
+
+        // Creo e inizializzo il server
         Server server = new Server();
 
         Thread serverThread = new Thread(server);
         serverThread.start();
-        System.out.println("Server avviato con successo. Premi CTRL+C per terminare.");
+        Log.info("Server avviato con successo. Premi CTRL+C per terminare.");
+
+        // Endpoint HTTP per Prometheus e per le sonde di liveness/readiness, su una porta separata
+        EndpointMetriche endpoint = avviaEndpointMetriche(config, server);
 
         // Arresto del server
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            System.out.println("Arresto del server in corso...");
+            Log.info("Arresto del server in corso...");
+            if (endpoint != null) {
+                endpoint.arresta();
+            }
             server.arresta();
-            System.out.println("Server arrestato con successo (ServerMain).");
+            CacheRisposte cache = CacheRisposte.getCorrente();
+            if (cache != null) {
+                Log.info("Statistiche cache delle risposte: " + cache.descriviStato());
+            }
+            Log.info(MetricheComandi.descrivi());
+            if (RegistroQuery.isAttivo()) {
+                Log.info(RegistroQuery.descrivi(10));
+            }
+            RegistroQuery.arresta();
+            dbm.chiudi();
+            Log.info("Server arrestato con successo (ServerMain).");
+            Log.arresta();
         }));
 
         // Attendo il termine del thread del server
@@ -55,4 +195,26 @@ public class ServerMain {
         }
 
     }
+
+    /**
+     * Avvia l'endpoint delle metriche se server.metrics.port indica una porta.
+     *
+     * @return L'endpoint avviato, o null se non configurato o non avviabile
+     */
+    private static EndpointMetriche avviaEndpointMetriche(Properties config, Server server) {
+        String porta = config.getProperty("server.metrics.port", "").trim();
+        if (porta.isEmpty() || porta.equals("0")) {
+            return null;
+        }
+        try {
+            EndpointMetriche endpoint = new EndpointMetriche(Integer.parseInt(porta), server);
+            endpoint.avvia();
+            return endpoint;
+        } catch (NumberFormatException e) {
+            Log.avviso("Valore non valido per server.metrics.port, endpoint delle metriche disattivato.");
+        } catch (IOException e) {
+            Log.avviso("Impossibile avviare l'endpoint delle metriche: " + e.getMessage());
+        }
+        return null;
+    }
 }
@@ -0,0 +1,198 @@
+package me.labb.bookrecommender.server;
+
+import me.labb.bookrecommender.server.log.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uscita del trasporto bloccante per le risposte scritte mentre i dati vengono letti dal database.
+ * <p>
+ * I primi byte di ogni risposta restano in memoria: se la lettura fallisce prima di averli superati
+ * la risposta viene scartata e al client arriva il normale messaggio d'errore. Oltre quella soglia
+ * i byte passano direttamente alla connessione, quindi la memoria usata non dipende dalla dimensione
+ * della risposta; un errore a quel punto lascia la risposta incompleta e la connessione va chiusa.
+ * Una volta superata la soglia la connessione viene svuotata solo quando il suo buffer è pieno
+ * e da {@link #completa()}.
+ * <p>
+ * Mentre la risposta viene scritta il thread tiene la connessione al database da cui legge le righe
+ * (e, con i thread virtuali, il permesso del limitatore): un client che smette di leggere bloccherebbe
+ * entrambi finché il socket resta aperto, perché le scritture bloccanti non hanno un timeout.
+ * Per questo ogni scrittura sulla connessione è sorvegliata: se resta bloccata oltre il timeout
+ * la connessione viene chiusa, la scrittura fallisce e le risorse tornano disponibili.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+final class UscitaRisposta extends OutputStream {
+
+    // Un solo thread controlla le scritture di tutte le connessioni
+    private static final ScheduledThreadPoolExecutor CONTROLLO = creaControllo();
+
+    private final OutputStream connessione;
+    private final byte[] iniziale;
+    private int inMemoria = 0;
+    private boolean inviata = false;
+    private long byteScritti = 0;
+
+    private final long timeoutScritturaNanos;
+    private final Runnable interrompi;
+    // Istante di inizio della scrittura in corso sulla connessione, 0 se nessuna scrittura è in corso
+    private volatile long scritturaIniziata = 0;
+    private volatile ScheduledFuture<?> controllo;
+
+    /**
+     * @param connessione        L'uscita bufferizzata della connessione
+     * @param byteInMemoria      Byte di ogni risposta trattenuti prima di iniziare a inviarla
+     * @param timeoutScritturaMs Durata massima di una scrittura bloccata, 0 per nessun limite
+     * @param interrompi         Chiude la connessione quando una scrittura supera il timeout
+     */
+    UscitaRisposta(OutputStream connessione, int byteInMemoria, long timeoutScritturaMs, Runnable interrompi) {
+        this.connessione = connessione;
+        this.iniziale = new byte[byteInMemoria];
+        this.timeoutScritturaNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutScritturaMs));
+        this.interrompi = interrompi;
+    }
+
+    /**
+     * Inizia una nuova risposta, scartando quanto rimasto in memoria da una risposta non completata.
+     */
+    void inizia() {
+        inMemoria = 0;
+        inviata = false;
+        byteScritti = 0;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!inviata && inMemoria < iniziale.length) {
+            iniziale[inMemoria++] = (byte) b;
+        } else {
+            inviaIniziale();
+            iniziaScrittura();
+            try {
+                connessione.write(b);
+            } finally {
+                scritturaIniziata = 0;
+            }
+        }
+        byteScritti++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (!inviata && inMemoria + len <= iniziale.length) {
+            System.arraycopy(b, off, iniziale, inMemoria, len);
+            inMemoria += len;
+        } else {
+            inviaIniziale();
+            scriviSuConnessione(b, off, len);
+        }
+        byteScritti += len;
+    }
+
+    /**
+     * La connessione viene svuotata solo da {@link #completa()}: i generatori JSON chiamano flush
+     * anche a risposta incompleta.
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Invia la parte della risposta ancora in memoria e svuota il buffer della connessione.
+     *
+     * @throws IOException In caso di errore di scrittura sulla connessione
+     */
+    void completa() throws IOException {
+        inviaIniziale();
+        iniziaScrittura();
+        try {
+            connessione.flush();
+        } finally {
+            scritturaIniziata = 0;
+        }
+    }
+
+    /**
+     * Smette di sorvegliare le scritture. Da chiamare alla chiusura della connessione.
+     */
+    void termina() {
+        ScheduledFuture<?> corrente = controllo;
+        if (corrente != null) {
+            corrente.cancel(false);
+        }
+    }
+
+    /**
+     * @return true se nessun byte della risposta in corso è stato ancora inviato, e può quindi essere sostituita
+     */
+    boolean isScartabile() {
+        return !inviata;
+    }
+
+    /**
+     * @return I byte della risposta in corso scritti finora
+     */
+    long getByteScritti() {
+        return byteScritti;
+    }
+
+    private void inviaIniziale() throws IOException {
+        if (!inviata) {
+            inviata = true;
+            scriviSuConnessione(iniziale, 0, inMemoria);
+            inMemoria = 0;
+        }
+    }
+
+    private void scriviSuConnessione(byte[] b, int off, int len) throws IOException {
+        iniziaScrittura();
+        try {
+            connessione.write(b, off, len);
+        } finally {
+            scritturaIniziata = 0;
+        }
+    }
+
+    /**
+     * Segna l'inizio di una scrittura che può bloccarsi e, alla prima, avvia il controllo della connessione.
+     */
+    private void iniziaScrittura() {
+        if (timeoutScritturaNanos == 0) {
+            return;
+        }
+        if (controllo == null) {
+            // Il controllo passa almeno quattro volte per timeout: una scrittura bloccata viene interrotta
+            // tra una volta e una volta e un quarto il timeout
+            long periodo = Math.max(timeoutScritturaNanos / 4, TimeUnit.MILLISECONDS.toNanos(10));
+            controllo = CONTROLLO.scheduleWithFixedDelay(this::verifica, periodo, periodo, TimeUnit.NANOSECONDS);
+        }
+        scritturaIniziata = System.nanoTime() | 1;
+    }
+
+    private void verifica() {
+        long inizio = scritturaIniziata;
+        if (inizio != 0 && System.nanoTime() - inizio > timeoutScritturaNanos) {
+            Log.avviso("Scrittura della risposta bloccata da oltre " + TimeUnit.NANOSECONDS.toMillis(timeoutScritturaNanos)
+                    + " ms: il client non legge, connessione chiusa.");
+            termina();
+            interrompi.run();
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor creaControllo() {
+        ScheduledThreadPoolExecutor esecutore = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "uscita-risposta-controllo");
+            t.setDaemon(true);
+            return t;
+        });
+        // Le connessioni chiuse annullano il proprio controllo: non deve restare in coda
+        esecutore.setRemoveOnCancelPolicy(true);
+        return esecutore;
+    }
+}
@@ -0,0 +1,350 @@
+package me.labb.bookrecommender.server.cache;
+
+import me.labb.bookrecommender.server.db.LibroDAO;
+import me.labb.bookrecommender.server.log.Log;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Cache delle risposte già serializzate dei comandi di sola lettura più frequenti.
+ * Le voci sono indicizzate dal comando e dai parametri normalizzati, scadono dopo un tempo
+ * fisso e, superata la dimensione massima (stimata in byte), vengono scartate a partire
+ * da quella usata meno di recente.
+ * I comandi di scrittura invalidano le voci che modificano, trovate con un indice per comando
+ * e primo parametro (ad esempio l'ID del libro); le modifiche al catalogo svuotano l'intera cache.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class CacheRisposte {
+
+    // Stima dell'occupazione di una voce oltre ai caratteri di chiave e risposta
+    private static final int OVERHEAD_VOCE = 96;
+    // Comandi con parametri di testo libero, in cui "007" e "7" sono ricerche diverse
+    private static final Set<String> PARAMETRI_TESTUALI = Set.of("CERCA");
+
+    private static volatile CacheRisposte corrente = null;
+
+    private record Voce(String risposta, long scadenza, long dimensione, String comando, String primoParametro) {
+    }
+
+    private final long dimensioneMassima;
+    private final long durataMs;
+
+    // LinkedHashMap in ordine di accesso: il primo elemento è quello usato meno di recente
+    private final LinkedHashMap<String, Voce> voci = new LinkedHashMap<>(256, 0.75f, true);
+    private long dimensioneCorrente = 0;
+    // Chiavi delle voci per comando e primo parametro, aggiornato insieme a voci (con lo stesso lock)
+    private final HashMap<String, HashMap<String, HashSet<String>>> indice = new HashMap<>();
+
+    // Incrementata a ogni invalidazione: una risposta calcolata prima non viene salvata
+    private final AtomicLong generazione = new AtomicLong();
+
+    private final LongAdder hit = new LongAdder();
+    private final LongAdder miss = new LongAdder();
+    private final LongAdder evizioni = new LongAdder();
+    private final LongAdder scadute = new LongAdder();
+    private final LongAdder invalidazioni = new LongAdder();
+
+    private CacheRisposte(long dimensioneMassima, long durataMs) {
+        this.dimensioneMassima = dimensioneMassima;
+        this.durataMs = durataMs;
+    }
+
+    /**
+     * Attiva la cache. Da chiamare all'avvio del server.
+     *
+     * @param dimensioneMassima Dimensione massima stimata, in byte
+     * @param durataMs          Durata di una voce, in millisecondi
+     */
+    public static synchronized void attiva(long dimensioneMassima, long durataMs) {
+        if (corrente != null) {
+            return;
+        }
+        CacheRisposte cache = new CacheRisposte(dimensioneMassima, durataMs);
+        LibroDAO.registraOsservatoreCatalogo(cache::svuota);
+        corrente = cache;
+        Log.info("Cache delle risposte attiva: " + (dimensioneMassima / (1024 * 1024)) + " MB, durata "
+                + (durataMs / 1000) + " s.");
+    }
+
+    /**
+     * @return La cache, o null se non è attiva
+     */
+    public static CacheRisposte getCorrente() {
+        return corrente;
+    }
+
+    /**
+     * Restituisce la risposta in cache per il comando, oppure la calcola e la salva.
+     * Vengono salvate solo le risposte di successo, così un errore temporaneo non resta in cache.
+     *
+     * @param comando   Il comando richiesto
+     * @param parametri I parametri del comando
+     * @param calcolo   Calcola la risposta se non è in cache
+     * @return La risposta JSON
+     */
+    public String ottieni(String comando, String parametri, Supplier<String> calcolo) {
+        String normalizzati = normalizza(comando, parametri);
+        String chiave = chiave(comando, normalizzati);
+        long ora = System.currentTimeMillis();
+
+        synchronized (voci) {
+            Voce voce = voci.get(chiave);
+            if (voce != null) {
+                if (voce.scadenza() > ora) {
+                    hit.increment();
+                    return voce.risposta();
+                }
+                rimuovi(chiave);
+                scadute.increment();
+            }
+        }
+        miss.increment();
+
+        long generazioneLetta = generazione.get();
+        String risposta = calcolo.get();
+        if (risposta != null && isSuccesso(risposta)) {
+            salva(comando, normalizzati, chiave, risposta, ora + durataMs, generazioneLetta);
+        }
+        return risposta;
+    }
+
+    /**
+     * Invalida le risposte di un comando con i parametri indicati, comprese quelle
+     * con parametri aggiuntivi (ad esempio le pagine successive di un elenco).
+     *
+     * @param comando   Il comando
+     * @param parametri I parametri del comando
+     */
+    public void invalida(String comando, String parametri) {
+        generazione.incrementAndGet();
+        String normalizzati = normalizza(comando, parametri);
+        String chiave = chiave(comando, normalizzati);
+        String prefisso = chiave + ' ';
+        synchronized (voci) {
+            HashMap<String, HashSet<String>> perParametro = indice.get(comando);
+            HashSet<String> gruppo = perParametro != null ? perParametro.get(primoParametro(normalizzati)) : null;
+            if (gruppo == null) {
+                return;
+            }
+            for (String candidata : List.copyOf(gruppo)) {
+                if (candidata.equals(chiave) || candidata.startsWith(prefisso)) {
+                    rimuovi(candidata);
+                    invalidazioni.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Invalida tutte le risposte di un comando, qualunque siano i parametri.
+     *
+     * @param comando Il comando
+     */
+    public void invalidaComando(String comando) {
+        generazione.incrementAndGet();
+        synchronized (voci) {
+            HashMap<String, HashSet<String>> perParametro = indice.remove(comando);
+            if (perParametro == null) {
+                return;
+            }
+            for (HashSet<String> gruppo : perParametro.values()) {
+                for (String chiave : gruppo) {
+                    Voce voce = voci.remove(chiave);
+                    if (voce != null) {
+                        dimensioneCorrente -= voce.dimensione();
+                        invalidazioni.increment();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Svuota la cache, ad esempio dopo una modifica del catalogo.
+     */
+    public void svuota() {
+        generazione.incrementAndGet();
+        synchronized (voci) {
+            invalidazioni.add(voci.size());
+            voci.clear();
+            indice.clear();
+            dimensioneCorrente = 0;
+        }
+    }
+
+    /**
+     * @return Numero di richieste servite dalla cache
+     */
+    public long getHit() {
+        return hit.sum();
+    }
+
+    /**
+     * @return Numero di richieste non trovate in cache (o scadute)
+     */
+    public long getMiss() {
+        return miss.sum();
+    }
+
+    /**
+     * @return Numero di voci scartate per rispettare la dimensione massima
+     */
+    public long getEvizioni() {
+        return evizioni.sum();
+    }
+
+    /**
+     * @return Numero di voci scartate perché scadute
+     */
+    public long getScadute() {
+        return scadute.sum();
+    }
+
+    /**
+     * @return Numero di voci rimosse da comandi di scrittura o modifiche del catalogo
+     */
+    public long getInvalidazioni() {
+        return invalidazioni.sum();
+    }
+
+    /**
+     * @return Numero di voci attualmente in cache
+     */
+    public int getNumeroVoci() {
+        synchronized (voci) {
+            return voci.size();
+        }
+    }
+
+    /**
+     * @return Dimensione stimata delle voci in cache, in byte
+     */
+    public long getDimensioneCorrente() {
+        synchronized (voci) {
+            return dimensioneCorrente;
+        }
+    }
+
+    /**
+     * @return Riepilogo leggibile delle statistiche della cache, per i log
+     */
+    public String descriviStato() {
+        long h = getHit();
+        long m = getMiss();
+        long percentuale = h + m == 0 ? 0 : Math.round(100.0 * h / (h + m));
+        return "voci=" + getNumeroVoci() + ", byte=" + getDimensioneCorrente() + "/" + dimensioneMassima
+                + ", hit=" + h + ", miss=" + m + " (" + percentuale + "% hit), evizioni=" + getEvizioni()
+                + ", scadute=" + getScadute() + ", invalidazioni=" + getInvalidazioni();
+    }
+
+    private void salva(String comando, String normalizzati, String chiave, String risposta, long scadenza,
+                       long generazioneLetta) {
+        long dimensione = 2L * (chiave.length() + risposta.length()) + OVERHEAD_VOCE;
+        if (dimensione > dimensioneMassima) {
+            return;
+        }
+        synchronized (voci) {
+            // Se nel frattempo è avvenuta un'invalidazione la risposta potrebbe essere già vecchia
+            if (generazione.get() != generazioneLetta) {
+                return;
+            }
+            rimuovi(chiave);
+            String primo = primoParametro(normalizzati);
+            voci.put(chiave, new Voce(risposta, scadenza, dimensione, comando, primo));
+            indice.computeIfAbsent(comando, k -> new HashMap<>()).computeIfAbsent(primo, k -> new HashSet<>()).add(chiave);
+            dimensioneCorrente += dimensione;
+
+            Iterator<Map.Entry<String, Voce>> it = voci.entrySet().iterator();
+            while (dimensioneCorrente > dimensioneMassima && it.hasNext()) {
+                Map.Entry<String, Voce> voce = it.next();
+                dimensioneCorrente -= voce.getValue().dimensione();
+                rimuoviDaIndice(voce.getKey(), voce.getValue());
+                it.remove();
+                evizioni.increment();
+            }
+        }
+    }
+
+    // Da chiamare con il lock su voci
+    private Voce rimuovi(String chiave) {
+        Voce voce = voci.remove(chiave);
+        if (voce != null) {
+            dimensioneCorrente -= voce.dimensione();
+            rimuoviDaIndice(chiave, voce);
+        }
+        return voce;
+    }
+
+    // Da chiamare con il lock su voci
+    private void rimuoviDaIndice(String chiave, Voce voce) {
+        HashMap<String, HashSet<String>> perParametro = indice.get(voce.comando());
+        if (perParametro == null) {
+            return;
+        }
+        HashSet<String> gruppo = perParametro.get(voce.primoParametro());
+        if (gruppo != null && gruppo.remove(chiave) && gruppo.isEmpty()) {
+            perParametro.remove(voce.primoParametro());
+            if (perParametro.isEmpty()) {
+                indice.remove(voce.comando());
+            }
+        }
+    }
+
+    /**
+     * Normalizza i parametri: spazi superflui rimossi e, parametro per parametro, numeri interi
+     * senza zeri iniziali, così "7", " 7" e "007 50" usano le stesse voci di "7" e "7 50".
+     * I parametri di testo libero e quelli dopo il separatore di limite e cursore (un cursore
+     * è una stringa opaca) restano come sono.
+     */
+    private static String normalizza(String comando, String parametri) {
+        if (parametri == null || parametri.isBlank()) {
+            return "";
+        }
+        boolean numerici = !PARAMETRI_TESTUALI.contains(comando);
+        StringBuilder sb = new StringBuilder();
+        for (String parametro : parametri.trim().split("\\s+")) {
+            if (!sb.isEmpty()) {
+                sb.append(' ');
+            }
+            numerici &= parametro.charAt(0) != '\u0001';
+            if (numerici && parametro.length() < 10 && parametro.chars().allMatch(Character::isDigit)) {
+                sb.append(Integer.parseInt(parametro));
+            } else {
+                sb.append(parametro);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String chiave(String comando, String normalizzati) {
+        return comando + '\u0001' + normalizzati;
+    }
+
+    /**
+     * @return Il primo parametro normalizzato, con cui le voci sono raggruppate nell'indice
+     */
+    private static String primoParametro(String normalizzati) {
+        int spazio = normalizzati.indexOf(' ');
+        return spazio < 0 ? normalizzati : normalizzati.substring(0, spazio);
+    }
+
+    /**
+     * Le risposte sono prodotte da ResponseFormatter: i valori testuali hanno le virgolette
+     * protette, quindi la coppia chiave-valore dello stato non può comparire dentro i dati.
+     */
+    private static boolean isSuccesso(String risposta) {
+        return risposta.contains("\"status\":\"SUCCESS\"");
+    }
+}
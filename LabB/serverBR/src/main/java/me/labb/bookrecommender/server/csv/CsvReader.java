@@ -1,5 +1,6 @@
 package me.labb.bookrecommender.server.csv;
 
+import me.labb.bookrecommender.server.log.Log;
 import me.labb.bookrecommender.server.oggetti.Libro;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -50,7 +51,7 @@ public class CsvReader {
              CSVParser parser = (isr != null) ? csvFormat.parse(isr) : null) {
 
             if (parser == null) {
-                System.err.println("File non trovato o impossibile da leggere nella cartella resources: " + CSV_FILE_PATH);
+                Log.errore("File non trovato o impossibile da leggere nella cartella resources: " + CSV_FILE_PATH);
                 return libri;
             }
 
@@ -59,7 +60,7 @@ public class CsvReader {
                 recordNumber++;
                 try {
                     if (!record.isConsistent()) {
-                        System.out.println("Record CSV inconsistente saltato alla linea ~" + recordNumber + ". Colonne attese: " + HEADERS.length + ", trovate: " + record.size() + ". Contenuto: " + record);
+                        Log.info("Record CSV inconsistente saltato alla linea ~" + recordNumber + ". Colonne attese: " + HEADERS.length + ", trovate: " + record.size() + ". Contenuto: " + record);
                         continue;
                     }
 
@@ -77,28 +78,28 @@ public class CsvReader {
                     libri.add(libro);
 
                 } catch (IllegalArgumentException e) {
-                    System.out.println("Errore nel parsing del record CSV alla linea ~" + recordNumber + ". Record: " + record);
-                    System.out.println("Eccezione: " + e.getMessage());
+                    Log.info("Errore nel parsing del record CSV alla linea ~" + recordNumber + ". Record: " + record);
+                    Log.info("Eccezione: " + e.getMessage());
                 } catch (ArrayIndexOutOfBoundsException e) {
-                    System.out.println("Errore di indice del record CSV alla linea ~" + recordNumber + ". Record: " + record);
-                    System.out.println("Eccezione: " + e.getMessage());
+                    Log.info("Errore di indice del record CSV alla linea ~" + recordNumber + ". Record: " + record);
+                    Log.info("Eccezione: " + e.getMessage());
                 } catch (Exception e) {
-                    System.out.println("Errore imprevisto processando il record CSV alla linea ~" + recordNumber + ". Record: " + record);
-                    System.out.println("Eccezione: " + e.getMessage());
+                    Log.info("Errore imprevisto processando il record CSV alla linea ~" + recordNumber + ". Record: " + record);
+                    Log.info("Eccezione: " + e.getMessage());
                 }
             }
 
         } catch (IOException e) {
-            System.err.println("Errore di I/O durante la lettura o il parsing del file CSV: " + e.getMessage());
+            Log.errore("Errore di I/O durante la lettura o il parsing del file CSV: " + e.getMessage());
         } catch (IllegalArgumentException e) {
-            System.err.println("Errore di formato del file CSV: " + e.getMessage());
+            Log.errore("Errore di formato del file CSV: " + e.getMessage());
         } catch (NullPointerException e) {
-            System.err.println("Errore critico: Impossibile localizzare il file CSV nel classpath: " + CSV_FILE_PATH);
+            Log.errore("Errore critico: Impossibile localizzare il file CSV nel classpath: " + CSV_FILE_PATH);
         }
-        System.out.println("Parsing CSV completato. Numero di record letti con successo: " + libri.size() + " da " + CSV_FILE_PATH);
+        Log.info("Parsing CSV completato. Numero di record letti con successo: " + libri.size() + " da " + CSV_FILE_PATH);
 
         if (libri.isEmpty()) {
-            System.out.println("Nessun libro letto dal file CSV.");
+            Log.info("Nessun libro letto dal file CSV.");
         }
         return libri;
     }
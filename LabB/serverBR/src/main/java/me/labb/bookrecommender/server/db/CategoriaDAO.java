@@ -0,0 +1,197 @@
+package me.labb.bookrecommender.server.db;
+
+import me.labb.bookrecommender.server.log.Log;
+import me.labb.bookrecommender.server.oggetti.Libro;
+import me.labb.bookrecommender.server.oggetti.Pagina;
+import me.labb.bookrecommender.server.utils.Cursore;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Classe DAO per le categorie dei libri.
+ * Usa le tabelle normalizzate "Categorie" e "LibroCategoria" (migrazione V002) se presenti,
+ * altrimenti ricava le categorie dalla colonna "Categoria" dei libri.
+ * L'elenco delle categorie è tenuto in memoria e viene ricaricato quando il catalogo cambia.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class CategoriaDAO {
+    private static final String FILTRO_NORMALIZZATO = """
+            "LibroID" IN (SELECT "LibroID" FROM "LibroCategoria" WHERE "CategoriaID" = ANY(?))""";
+
+    // null finché non è stato verificato se le tabelle normalizzate esistono
+    private static volatile Boolean categorieNormalizzate = null;
+
+    // null finché non viene richiesto o dopo una modifica del catalogo
+    private static volatile List<String> elencoCategorie = null;
+
+    static {
+        LibroDAO.registraOsservatoreCatalogo(() -> elencoCategorie = null);
+    }
+
+    private final DatabaseManager dbManager;
+
+    /**
+     * Costruttore della classe CategoriaDAO.
+     */
+    public CategoriaDAO() {
+        this.dbManager = DatabaseManager.getInstance();
+    }
+
+    /**
+     * Ottiene tutte le categorie distinte, ordinate senza distinzione tra maiuscole e minuscole.
+     *
+     * @return Lista di categorie uniche (non modificabile)
+     * @throws SQLException In caso di errori SQL
+     */
+    public List<String> getCategorie() throws SQLException {
+        List<String> categorie = elencoCategorie;
+        if (categorie != null) {
+            return categorie;
+        }
+
+        try (Connection conn = dbManager.getConnection()) {
+            if (!isNormalizzata(conn)) {
+                categorie = List.copyOf(new LibroDAO().getAllCategorie());
+            } else {
+                String sql = """
+                        SELECT c."Nome" FROM "Categorie" c
+                        WHERE EXISTS (SELECT 1 FROM "LibroCategoria" lc WHERE lc."CategoriaID" = c."CategoriaID")
+                        """;
+                List<String> lette = new ArrayList<>();
+                try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+                    while (rs.next()) {
+                        lette.add(rs.getString("Nome"));
+                    }
+                }
+                lette.sort(String::compareToIgnoreCase);
+                categorie = List.copyOf(lette);
+            }
+        }
+
+        elencoCategorie = categorie;
+        return categorie;
+    }
+
+    /**
+     * Cerca i libri con una categoria che contiene il testo indicato e, opzionalmente,
+     * con il titolo che contiene il secondo testo, una pagina alla volta.
+     *
+     * @param categoria Testo da cercare nel nome della categoria
+     * @param titolo    Testo da cercare nel titolo, o stringa vuota
+     * @param cursore   Cursore della pagina precedente, o null per la prima pagina
+     * @param limite    Numero massimo di risultati
+     * @return La pagina di libri trovati, in ordine di titolo
+     * @throws SQLException             In caso di errori SQL
+     * @throws IllegalArgumentException Se il cursore non è valido
+     */
+    public Pagina<Libro> cercaLibri(String categoria, String titolo, String cursore, int limite) throws SQLException {
+        List<Libro> risultati = new ArrayList<>();
+
+        try (Connection conn = dbManager.getConnection()) {
+            StringBuilder sql = new StringBuilder("SELECT * FROM \"Libri\" WHERE ");
+            List<Object> parametri = new ArrayList<>();
+            if (isNormalizzata(conn)) {
+                Array idCategorie = getIdCategorie(conn, categoria);
+                if (idCategorie == null) {
+                    return new Pagina<>(risultati, null);
+                }
+                sql.append(FILTRO_NORMALIZZATO);
+                parametri.add(idCategorie);
+            } else {
+                sql.append("\"Categoria\" ILIKE ?");
+                parametri.add("%" + LibroDAO.escapeLike(categoria) + "%");
+            }
+            if (!titolo.isEmpty()) {
+                sql.append(" AND \"Titolo\" ILIKE ?");
+                parametri.add("%" + LibroDAO.escapeLike(titolo) + "%");
+            }
+            LibroDAO.aggiungiOrdineTitolo(sql, parametri, cursore);
+
+            Cursore prossimo = DatabaseManager.leggiPagina(conn, sql.toString(), limite,
+                    rs -> risultati.add(LibroDAO.mappaLibro(rs)), LibroDAO::cursoreTitolo, parametri.toArray());
+            return new Pagina<>(risultati, prossimo);
+        }
+    }
+
+    /**
+     * Ottiene gli ID di tutti i libri con una categoria che contiene il termine indicato.
+     *
+     * @param termine Testo da cercare nel nome della categoria
+     * @return Array degli ID dei libri trovati
+     * @throws SQLException In caso di errori SQL
+     */
+    public int[] getIdLibri(String termine) throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            PreparedStatement stmt;
+            if (isNormalizzata(conn)) {
+                Array idCategorie = getIdCategorie(conn, termine);
+                if (idCategorie == null) {
+                    return new int[0];
+                }
+                stmt = conn.prepareStatement("SELECT DISTINCT \"LibroID\" FROM \"LibroCategoria\" WHERE \"CategoriaID\" = ANY(?)");
+                stmt.setArray(1, idCategorie);
+            } else {
+                stmt = conn.prepareStatement("SELECT \"LibroID\" FROM \"Libri\" WHERE \"Categoria\" ILIKE ?");
+                stmt.setString(1, "%" + LibroDAO.escapeLike(termine) + "%");
+            }
+
+            try (stmt; ResultSet rs = stmt.executeQuery()) {
+                int[] id = new int[64];
+                int n = 0;
+                while (rs.next()) {
+                    if (n == id.length) {
+                        id = Arrays.copyOf(id, n * 2);
+                    }
+                    id[n++] = rs.getInt(1);
+                }
+                return Arrays.copyOf(id, n);
+            }
+        }
+    }
+
+    /**
+     * Trova le categorie il cui nome contiene il termine. Risolverle prima della query sui libri
+     * permette al planner di stimare quanti libri le hanno e scegliere l'indice giusto.
+     *
+     * @return Array SQL degli ID delle categorie, o null se nessuna categoria corrisponde
+     */
+    private static Array getIdCategorie(Connection conn, String termine) throws SQLException {
+        List<Integer> id = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT \"CategoriaID\" FROM \"Categorie\" WHERE \"Nome\" ILIKE ?")) {
+            stmt.setString(1, "%" + LibroDAO.escapeLike(termine) + "%");
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    id.add(rs.getInt(1));
+                }
+            }
+        }
+        return id.isEmpty() ? null : conn.createArrayOf("integer", id.toArray());
+    }
+
+    /**
+     * Verifica una sola volta se le tabelle create dalla migrazione V002 sono presenti.
+     */
+    private static boolean isNormalizzata(Connection conn) throws SQLException {
+        Boolean disponibile = categorieNormalizzate;
+        if (disponibile != null) {
+            return disponibile;
+        }
+        String sql = """
+                SELECT to_regclass('"Categorie"') IS NOT NULL AND to_regclass('"LibroCategoria"') IS NOT NULL
+                """;
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            disponibile = rs.next() && rs.getBoolean(1);
+        }
+        if (!disponibile) {
+            Log.avviso("Tabelle delle categorie non disponibili: uso la colonna Categoria dei libri.");
+        }
+        categorieNormalizzate = disponibile;
+        return disponibile;
+    }
+}
@@ -0,0 +1,161 @@
+package me.labb.bookrecommender.server.db;
+
+import me.labb.bookrecommender.server.log.Log;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Salva il piano di esecuzione delle query lente, ottenuto rieseguendole con EXPLAIN (ANALYZE, BUFFERS)
+ * e gli stessi parametri su una connessione del pool.
+ * <p>
+ * Le richieste vengono elaborate una alla volta da un thread dedicato, così il client che ha eseguito la query
+ * non attende; se la coda è piena la richiesta viene scartata. Vengono spiegate solo le SELECT senza
+ * FOR UPDATE/SHARE, dentro una transazione annullata al termine, perché EXPLAIN ANALYZE esegue davvero l'istruzione.
+ * Il file viene ruotato (file.1, file.2, ...) quando supera la dimensione massima.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+final class CatturaExplain {
+
+    private static final int RICHIESTE_IN_CODA = 16;
+    private static final int TIMEOUT_EXPLAIN_SEC = 30;
+    private static final Pattern SELECT = Pattern.compile("^\\s*(SELECT|WITH)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern MODIFICA = Pattern.compile(
+            "\\b(INSERT|UPDATE|DELETE|MERGE)\\b|\\bFOR\\s+(NO\\s+KEY\\s+)?(UPDATE|SHARE|KEY\\s+SHARE)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private final Path file;
+    private final long byteMassimi;
+    private final int numeroFile;
+    private final ThreadPoolExecutor esecutore;
+
+    /**
+     * @param file        File in cui salvare i piani
+     * @param byteMassimi Dimensione oltre la quale il file viene ruotato
+     * @param numeroFile  File da conservare, compreso quello corrente
+     */
+    CatturaExplain(Path file, long byteMassimi, int numeroFile) {
+        this.file = file;
+        this.byteMassimi = byteMassimi;
+        this.numeroFile = Math.max(numeroFile, 1);
+        this.esecutore = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(RICHIESTE_IN_CODA), r -> {
+                    Thread thread = new Thread(r, "cattura-explain");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * @return true se l'istruzione può essere rieseguita con EXPLAIN ANALYZE senza effetti
+     */
+    static boolean isSpiegabile(String sql) {
+        return SELECT.matcher(sql).find() && !MODIFICA.matcher(sql).find();
+    }
+
+    /**
+     * Accoda la cattura del piano di una query lenta.
+     */
+    void richiedi(String idSql, String sql, long durataNanos, TreeMap<Integer, Object[]> parametri) {
+        esecutore.execute(() -> cattura(idSql, sql, durataNanos, parametri));
+    }
+
+    /**
+     * Attende brevemente le catture in corso e ferma il thread.
+     */
+    void arresta() {
+        esecutore.shutdown();
+        try {
+            esecutore.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void cattura(String idSql, String sql, long durataNanos, TreeMap<Integer, Object[]> parametri) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("=== ").append(LocalDateTime.now()).append(" id ").append(idSql)
+                .append(", ").append(TimeUnit.NANOSECONDS.toMillis(durataNanos)).append(" ms")
+                .append(RegistroQuery.descriviParametri(parametri)).append(System.lineSeparator())
+                .append(sql.strip()).append(System.lineSeparator()).append("---").append(System.lineSeparator());
+
+        try (Connection connessione = DatabaseManager.getInstance().getConnection()) {
+            // La connessione fisica evita che l'EXPLAIN finisca a sua volta tra le query registrate
+            Connection fisica = connessione.unwrap(Connection.class);
+            fisica.setAutoCommit(false);
+            try (PreparedStatement ps = fisica.prepareStatement("EXPLAIN (ANALYZE, BUFFERS) " + sql)) {
+                ps.setQueryTimeout(TIMEOUT_EXPLAIN_SEC);
+                for (Map.Entry<Integer, Object[]> voce : parametri.entrySet()) {
+                    ((Method) voce.getValue()[0]).invoke(ps, (Object[]) voce.getValue()[1]);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        sb.append(rs.getString(1)).append(System.lineSeparator());
+                    }
+                }
+            } finally {
+                fisica.rollback();
+            }
+        } catch (SQLException | IllegalAccessException | InvocationTargetException e) {
+            Throwable causa = e instanceof InvocationTargetException ? e.getCause() : e;
+            sb.append("EXPLAIN non riuscito: ").append(causa.getMessage()).append(System.lineSeparator());
+        }
+        sb.append(System.lineSeparator());
+
+        try {
+            scrivi(sb.toString());
+        } catch (IOException e) {
+            Log.errore("Impossibile scrivere il piano della query " + idSql + " in " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void scrivi(String testo) throws IOException {
+        byte[] contenuto = testo.getBytes(StandardCharsets.UTF_8);
+        if (Files.exists(file) && Files.size(file) + contenuto.length > byteMassimi) {
+            ruota();
+        }
+        Path cartella = file.toAbsolutePath().getParent();
+        if (cartella != null) {
+            Files.createDirectories(cartella);
+        }
+        Files.write(file, contenuto, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void ruota() throws IOException {
+        if (numeroFile == 1) {
+            Files.delete(file);
+            return;
+        }
+        Files.deleteIfExists(precedente(numeroFile - 1));
+        for (int i = numeroFile - 2; i >= 1; i--) {
+            if (Files.exists(precedente(i))) {
+                Files.move(precedente(i), precedente(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, precedente(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path precedente(int indice) {
+        return file.resolveSibling(file.getFileName() + "." + indice);
+    }
+}
@@ -2,6 +2,7 @@ package me.labb.bookrecommender.server.db;
 
 import me.labb.bookrecommender.server.oggetti.Consiglio;
 import me.labb.bookrecommender.server.oggetti.Libro;
+import me.labb.bookrecommender.server.utils.Cursore;
 
 import java.sql.*;
 import java.time.ZoneId;
@@ -18,87 +19,51 @@ import java.util.Optional;
  * @author Manicone Giorgia 758716 VA
  */
 public class ConsiglioDAO {
+    /**
+     * Numero massimo di libri che un utente può consigliare per uno stesso libro.
+     */
+    public static final int CONSIGLI_MASSIMI_PER_LIBRO = 3;
+
+    // Righe lette dal database per volta negli elenchi di un utente
+    private static final int DIMENSIONE_BLOCCO_LETTURA = 500;
+
     private final DatabaseManager dbManager;
-    private final LibroDAO libroDAO;
 
     /**
      *
      */
     public ConsiglioDAO() {
         this.dbManager = DatabaseManager.getInstance();
-        this.libroDAO = new LibroDAO();
     }
 
     /**
+     * Salva un consiglio in un'unica istruzione, rispettando il limite di consigli per libro
+     * anche con salvataggi concorrenti dello stesso utente (funzione salva_consiglio, migrazione V006).
+     * Un consiglio già presente viene solo aggiornato nella data.
+     *
      * @param userID             ID dell'utente che ha ricevuto il consiglio
      * @param libroRiferimentoID ID del libro di riferimento
      * @param libroSuggeritoID   ID del libro suggerito
-     * @return ID del consiglio appena creato
-     * @throws SQLException In caso di errori SQL
+     * @return ID del consiglio creato o aggiornato, vuoto se il limite di consigli per il libro è raggiunto
+     * @throws SQLException In caso di errori SQL, compresi i libri inesistenti (violazione di chiave esterna)
      */
-    public int salvaConsiglio(int userID, int libroRiferimentoID, int libroSuggeritoID) throws SQLException {
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-
-        try {
-            conn = dbManager.getConnection();
-
-            // Verifica se esiste già un consiglio simile
-            String checkSql = """
-                    SELECT "ConsiglioID" FROM "ConsigliLibri"
-                    WHERE "UserID" = ? AND "LibroRiferimentoID" = ? AND "LibroSuggeritoID" = ?
-                    """;
-
-            try (PreparedStatement checkStmt = conn.prepareStatement(checkSql)) {
-                checkStmt.setInt(1, userID);
-                checkStmt.setInt(2, libroRiferimentoID);
-                checkStmt.setInt(3, libroSuggeritoID);
-
-                try (ResultSet checkRs = checkStmt.executeQuery()) {
-                    if (checkRs.next()) {
-                        // Aggiorna la data del consiglio esistente
-                        int consiglioID = checkRs.getInt("ConsiglioID");
-
-                        String updateSql = """
-                                UPDATE "ConsigliLibri" SET
-                                "DataSuggerimento" = CURRENT_TIMESTAMP
-                                WHERE "ConsiglioID" = ?
-                                """;
+    public Optional<Integer> salvaConsiglio(int userID, int libroRiferimentoID, int libroSuggeritoID) throws SQLException {
+        String sql = "SELECT salva_consiglio(?, ?, ?, ?)";
 
-                        try (PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
-                            updateStmt.setInt(1, consiglioID);
-                            updateStmt.executeUpdate();
-                            return consiglioID;
-                        }
-                    }
-                }
-            }
-
-            // Inserisci un nuovo consiglio
-            String insertSql = """
-                    INSERT INTO "ConsigliLibri" (
-                        "UserID", "LibroRiferimentoID", "LibroSuggeritoID", "DataSuggerimento"
-                    ) VALUES (?, ?, ?, CURRENT_TIMESTAMP)
-                    RETURNING "ConsiglioID"
-                    """;
-
-            stmt = conn.prepareStatement(insertSql);
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, userID);
             stmt.setInt(2, libroRiferimentoID);
             stmt.setInt(3, libroSuggeritoID);
+            stmt.setInt(4, CONSIGLI_MASSIMI_PER_LIBRO);
 
-            rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                return rs.getInt(1);
-            } else {
-                throw new SQLException("Errore nel salvataggio del consiglio, nessun ID ritornato");
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Errore nel salvataggio del consiglio, nessun risultato ritornato");
+                }
+                int consiglioID = rs.getInt(1);
+                return rs.wasNull() ? Optional.empty() : Optional.of(consiglioID);
             }
-        } finally {
-            if (rs != null) rs.close();
-            if (stmt != null) stmt.close();
-            if (conn != null) conn.close();
         }
     }
 
@@ -127,16 +92,7 @@ public class ConsiglioDAO {
             rs = stmt.executeQuery();
 
             if (rs.next()) {
-                Timestamp ts = rs.getTimestamp("DataSuggerimento");
-                ZonedDateTime dataSuggerimento = (ts != null) ? ts.toInstant().atZone(ZoneId.systemDefault()) : null;
-                Consiglio consiglio = new Consiglio(
-                        rs.getInt("ConsiglioID"),
-                        rs.getInt("UserID"),
-                        rs.getInt("LibroRiferimentoID"),
-                        rs.getInt("LibroSuggeritoID"),
-                        dataSuggerimento
-                );
-                return Optional.of(consiglio);
+                return Optional.of(mappaConsiglio(rs));
             }
 
             return Optional.empty();
@@ -155,48 +111,79 @@ public class ConsiglioDAO {
      * @throws SQLException In caso di errori SQL
      */
     public List<Consiglio> getConsigliUtente(int userID) throws SQLException {
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
         List<Consiglio> consigli = new ArrayList<>();
+        leggiConsigliUtente(userID, rs -> consigli.add(mappaConsiglio(rs)));
+        return consigli;
+    }
 
-        try {
-            conn = dbManager.getConnection();
-            String sql = """
-                    SELECT * FROM "ConsigliLibri"
-                    WHERE "UserID" = ?
-                    ORDER BY "DataSuggerimento" DESC
-                    """;
-
-            stmt = conn.prepareStatement(sql);
-            stmt.setInt(1, userID);
-
-            rs = stmt.executeQuery();
+    /**
+     * Legge i consigli di un utente, dal più recente, passandoli al lettore man mano che
+     * arrivano dal database. Oltre alle colonne di "ConsigliLibri" ogni riga contiene
+     * "TitoloLibroRiferimento" e "TitoloLibroSuggerito" (null se il libro non esiste più).
+     *
+     * @param userID  ID dell'utente
+     * @param lettore Riceve ogni riga
+     * @throws SQLException In caso di errori SQL
+     */
+    public void leggiConsigliUtente(int userID, LettoreRiga lettore) throws SQLException {
+        String sql = """
+                SELECT c.*, lr."Titolo" AS "TitoloLibroRiferimento", ls."Titolo" AS "TitoloLibroSuggerito"
+                FROM "ConsigliLibri" c
+                LEFT JOIN "Libri" lr ON lr."LibroID" = c."LibroRiferimentoID"
+                LEFT JOIN "Libri" ls ON ls."LibroID" = c."LibroSuggeritoID"
+                WHERE c."UserID" = ?
+                ORDER BY c."DataSuggerimento" DESC
+                """;
+        dbManager.leggiABlocchi(sql, DIMENSIONE_BLOCCO_LETTURA, lettore, userID);
+    }
 
-            while (rs.next()) {
-                Timestamp ts = rs.getTimestamp("DataSuggerimento");
-                ZonedDateTime dataSuggerimento = (ts != null) ? ts.toInstant().atZone(ZoneId.systemDefault()) : null;
-                Consiglio consiglio = new Consiglio(
-                        rs.getInt("ConsiglioID"),
-                        rs.getInt("UserID"),
-                        rs.getInt("LibroRiferimentoID"),
-                        rs.getInt("LibroSuggeritoID"),
-                        dataSuggerimento
-                );
-                consigli.add(consiglio);
-            }
+    /**
+     * Legge una pagina dei consigli di un utente, dal più recente.
+     * Le righe hanno le stesse colonne di {@link #leggiConsigliUtente(int, LettoreRiga)}.
+     *
+     * @param userID  ID dell'utente
+     * @param cursore Cursore della pagina precedente, o null per la prima pagina
+     * @param limite  Numero massimo di consigli
+     * @param lettore Riceve ogni riga
+     * @return Il cursore della pagina successiva, o null se questa è l'ultima
+     * @throws SQLException             In caso di errori SQL
+     * @throws IllegalArgumentException Se il cursore non è valido
+     */
+    public Cursore leggiConsigliUtente(int userID, String cursore, int limite, LettoreRiga lettore) throws SQLException {
+        String sql = """
+                SELECT c.*, lr."Titolo" AS "TitoloLibroRiferimento", ls."Titolo" AS "TitoloLibroSuggerito"
+                FROM "ConsigliLibri" c
+                LEFT JOIN "Libri" lr ON lr."LibroID" = c."LibroRiferimentoID"
+                LEFT JOIN "Libri" ls ON ls."LibroID" = c."LibroSuggeritoID"
+                WHERE c."UserID" = ?
+                """;
+        return dbManager.leggiPaginaRecenti(sql, "c", "DataSuggerimento", "ConsiglioID", cursore, limite, lettore, userID);
+    }
 
-            return consigli;
-        } finally {
-            if (rs != null) rs.close();
-            if (stmt != null) stmt.close();
-            if (conn != null) conn.close();
-        }
+    /**
+     * Crea un consiglio dalla riga corrente di un ResultSet con le colonne di "ConsigliLibri".
+     *
+     * @param rs Il ResultSet posizionato sulla riga
+     * @return Il consiglio letto
+     * @throws SQLException In caso di errori SQL
+     */
+    public static Consiglio mappaConsiglio(ResultSet rs) throws SQLException {
+        Timestamp ts = rs.getTimestamp("DataSuggerimento");
+        ZonedDateTime dataSuggerimento = (ts != null) ? ts.toInstant().atZone(ZoneId.systemDefault()) : null;
+        return new Consiglio(
+                rs.getInt("ConsiglioID"),
+                rs.getInt("UserID"),
+                rs.getInt("LibroRiferimentoID"),
+                rs.getInt("LibroSuggeritoID"),
+                dataSuggerimento
+        );
     }
 
     /**
      * Genera consigli di libri basati su un libro di riferimento.
-     * Questo metodo cerca libri nella stessa categoria del libro di riferimento.
+     * I libri suggeriti dagli utenti per il libro di riferimento sono ordinati per numero di utenti
+     * diversi che li hanno suggeriti e, a parità, per suggerimento più recente.
+     * Libri e conteggi sono letti con un'unica query.
      *
      * @param libroRiferimentoID ID del libro di riferimento
      * @param limit              Numero massimo di consigli da generare
@@ -212,12 +199,20 @@ public class ConsiglioDAO {
         try {
             conn = dbManager.getConnection();
 
-            // Prendo dai ConsigliLibri i libri consigliati per il libro di riferimento
             String sql = """
-                    SELECT * FROM "ConsigliLibri"
-                    WHERE "LibroRiferimentoID" = ?
-                    ORDER BY "DataSuggerimento" DESC
-                    LIMIT ?
+                    SELECT l.*
+                    FROM (
+                        SELECT "LibroSuggeritoID",
+                               COUNT(DISTINCT "UserID") AS "NumeroUtenti",
+                               MAX("DataSuggerimento") AS "UltimoSuggerimento"
+                        FROM "ConsigliLibri"
+                        WHERE "LibroRiferimentoID" = ?
+                        GROUP BY "LibroSuggeritoID"
+                        ORDER BY "NumeroUtenti" DESC, "UltimoSuggerimento" DESC, "LibroSuggeritoID"
+                        LIMIT ?
+                    ) s
+                    JOIN "Libri" l ON l."LibroID" = s."LibroSuggeritoID"
+                    ORDER BY s."NumeroUtenti" DESC, s."UltimoSuggerimento" DESC, s."LibroSuggeritoID"
                     """;
 
             stmt = conn.prepareStatement(sql);
@@ -226,16 +221,8 @@ public class ConsiglioDAO {
 
             rs = stmt.executeQuery();
 
-            // Per ogni consiglio trovato, prendo il libro suggerito
             while (rs.next()) {
-                int libroSuggeritoID = rs.getInt("LibroSuggeritoID");
-                Optional<Libro> libroOpt = libroDAO.getLibroById(libroSuggeritoID);
-                libroOpt.ifPresent(libriConsigliati::add);
-            }
-
-            // Se non ho trovato libri consigliati, ritorno una lista vuota
-            if (libriConsigliati.isEmpty()) {
-                return libriConsigliati;
+                libriConsigliati.add(LibroDAO.mappaLibro(rs));
             }
 
             return libriConsigliati;
@@ -1,15 +1,23 @@
 package me.labb.bookrecommender.server.db;
 
+import me.labb.bookrecommender.server.log.Log;
+import me.labb.bookrecommender.server.utils.Cursore;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Properties;
 
 /**
  * Singleton per la gestione delle connessioni al database Postgres.
  * Usare getInstance() per inizializzare e ottenere un'instanza.
+ * Le connessioni sono fornite da un {@link PoolConnessioni} configurabile
+ * tramite le proprietà db.pool.* di config.properties.
  *
  * @author Caretti Gabriele 756564 VA
  * @author Como Riccardo 758697 VA
@@ -23,6 +31,7 @@ public class DatabaseManager {
     private final String dbUrl;
     private final String dbUser;
     private final String dbPassword;
+    private final PoolConnessioni pool;
 
     /**
      * Costruttore privato (Singleton).
@@ -31,7 +40,7 @@ public class DatabaseManager {
         dbProperties = new Properties();
         try (InputStream input = getClass().getClassLoader().getResourceAsStream("config.properties")) {
             if (input == null) {
-                System.err.println("ERRORE: Impossibile trovare il file config.properties nel classpath.");
+                Log.errore("Impossibile trovare il file config.properties nel classpath.");
                 throw new RuntimeException("File config.properties non trovato.");
             }
 
@@ -45,11 +54,20 @@ public class DatabaseManager {
                 throw new RuntimeException("Proprietà del database mancanti in config.properties (db.url, db.username, db.password)");
             }
 
+            this.pool = new PoolConnessioni(dbUrl, dbUser, dbPassword,
+                    leggiIntero("db.pool.maxSize", 10),
+                    leggiIntero("db.pool.minIdle", 2),
+                    leggiIntero("db.pool.acquireTimeoutMs", 5000),
+                    leggiIntero("db.pool.idleTimeoutMs", 600000),
+                    leggiIntero("db.pool.maxLifetimeMs", 1800000),
+                    leggiIntero("db.pool.validationTimeoutSec", 2));
+            this.pool.avvia();
+
         } catch (IOException e) {
-            System.err.println("Errore durante la lettura del file config.properties.");
+            Log.errore("Errore durante la lettura del file config.properties.");
             throw new RuntimeException("Errore I/O durante la lettura di config.properties", e);
         } catch (Exception e) {
-            System.err.println("Errore imprevisto durante l'inizializzazione di DatabaseManager.");
+            Log.errore("Errore imprevisto durante l'inizializzazione di DatabaseManager.");
             throw new RuntimeException("Errore inizializzazione DatabaseManager", e);
         }
     }
@@ -71,17 +89,167 @@ public class DatabaseManager {
     }
 
     /**
-     * Restituisce una nuova connessione al database utilizzando le credenziali
-     * caricate durante l'inizializzazione dell'istanza.
+     * Restituisce una connessione al database presa dal pool.
+     * Chiamare close() sulla connessione la riconsegna al pool.
      *
      * @return Una connessione SQL al database.
-     * @throws SQLException Se si verifica un errore durante la connessione al database.
+     * @throws SQLException Se si verifica un errore durante la connessione al database
+     *                      o se nessuna connessione si libera entro il timeout di acquisizione.
      */
     public Connection getConnection() throws SQLException {
-        System.out.println("Tentativo connessione a: " + this.dbUrl + " con utente: " + this.dbUser);
-        Connection conn = DriverManager.getConnection(this.dbUrl, this.dbUser, this.dbPassword);
-        System.out.println("Connessione al database stabilita.");
-        return conn;
+        return pool.acquisisci();
+    }
+
+    /**
+     * Esegue una query leggendo il risultato a blocchi, senza caricarlo tutto nel driver:
+     * con l'autocommit disattivato il driver PostgreSQL usa un cursore e tiene in memoria
+     * al massimo dimensioneBlocco righe alla volta.
+     *
+     * @param sql              La query, con parametri interi
+     * @param dimensioneBlocco Numero di righe lette dal database a ogni richiesta
+     * @param lettore          Riceve ogni riga
+     * @param parametri        I valori dei parametri della query, nell'ordine
+     * @throws SQLException In caso di errori SQL o di errori del lettore
+     */
+    public void leggiABlocchi(String sql, int dimensioneBlocco, LettoreRiga lettore, int... parametri) throws SQLException {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < parametri.length; i++) {
+                    stmt.setInt(i + 1, parametri[i]);
+                }
+                stmt.setFetchSize(dimensioneBlocco);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        lettore.leggi(rs);
+                    }
+                }
+                conn.commit();
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Calcola il cursore di un elenco dalla riga corrente, con i valori delle colonne di ordinamento.
+     */
+    @FunctionalInterface
+    public interface ChiaveCursore {
+        Cursore da(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Legge una pagina di un elenco ordinato. La query deve terminare con "LIMIT ?": viene chiesta
+     * una riga in più del limite, che non è passata al lettore ma indica che esiste una pagina successiva.
+     *
+     * @param sql       La query, con "LIMIT ?" come ultimo parametro
+     * @param limite    Numero massimo di righe da passare al lettore
+     * @param lettore   Riceve ogni riga della pagina
+     * @param chiave    Calcola il cursore dall'ultima riga della pagina
+     * @param parametri I valori degli altri parametri della query, nell'ordine
+     * @return Il cursore della pagina successiva, o null se questa è l'ultima
+     * @throws SQLException In caso di errori SQL o di errori del lettore
+     */
+    public Cursore leggiPagina(String sql, int limite, LettoreRiga lettore, ChiaveCursore chiave,
+                               Object... parametri) throws SQLException {
+        try (Connection conn = getConnection()) {
+            return leggiPagina(conn, sql, limite, lettore, chiave, parametri);
+        }
+    }
+
+    /**
+     * Legge una pagina di un elenco dal più recente, ordinato per data e, a parità di data, per ID decrescenti.
+     * Le righe senza data vengono per ultime: ordinamento e condizione del cursore usano
+     * COALESCE(data, '-infinity'), la stessa espressione degli indici della paginazione.
+     * Alla query, che deve terminare con una condizione WHERE, vengono aggiunti la condizione del cursore,
+     * l'ordinamento e il limite. Il cursore contiene data (eventualmente null) e ID dell'ultimo elemento.
+     *
+     * @param sql         La query, terminata da una condizione WHERE
+     * @param alias       L'alias della tabella che contiene data e ID
+     * @param colonnaData La colonna con la data
+     * @param colonnaID   La colonna con l'ID
+     * @param cursore     Il cursore della pagina precedente, o null per la prima pagina
+     * @param limite      Numero massimo di righe da passare al lettore
+     * @param lettore     Riceve ogni riga della pagina
+     * @param parametri   I valori dei parametri della query, nell'ordine
+     * @return Il cursore della pagina successiva, o null se questa è l'ultima
+     * @throws SQLException             In caso di errori SQL o di errori del lettore
+     * @throws IllegalArgumentException Se il cursore non è valido
+     */
+    public Cursore leggiPaginaRecenti(String sql, String alias, String colonnaData, String colonnaID, String cursore,
+                                      int limite, LettoreRiga lettore, Object... parametri) throws SQLException {
+        String data = "COALESCE(" + alias + ".\"" + colonnaData + "\", '-infinity'::timestamptz)";
+        String id = alias + ".\"" + colonnaID + "\"";
+        StringBuilder query = new StringBuilder(sql.stripTrailing());
+        Object[] tuttiParametri = parametri;
+        if (cursore != null) {
+            Cursore dopo = Cursore.decodifica(cursore, 2);
+            query.append(" AND (").append(data).append(", ").append(id)
+                    .append(") < (COALESCE(?::timestamptz, '-infinity'::timestamptz), ?)");
+            tuttiParametri = Arrays.copyOf(parametri, parametri.length + 2);
+            tuttiParametri[parametri.length] = dopo.istante(0);
+            tuttiParametri[parametri.length + 1] = dopo.intero(1);
+        }
+        query.append(" ORDER BY ").append(data).append(" DESC, ").append(id).append(" DESC LIMIT ?");
+
+        return leggiPagina(query.toString(), limite, lettore, rs -> {
+            Timestamp ts = rs.getTimestamp(colonnaData);
+            return new Cursore(ts != null ? ts.toInstant() : null, rs.getInt(colonnaID));
+        }, tuttiParametri);
+    }
+
+    /**
+     * Come {@link #leggiPagina(String, int, LettoreRiga, ChiaveCursore, Object...)}, su una connessione
+     * già aperta (ad esempio quando i parametri sono array creati dalla connessione).
+     *
+     * @param conn      La connessione da usare, che resta aperta
+     * @param sql       La query, con "LIMIT ?" come ultimo parametro
+     * @param limite    Numero massimo di righe da passare al lettore
+     * @param lettore   Riceve ogni riga della pagina
+     * @param chiave    Calcola il cursore dall'ultima riga della pagina
+     * @param parametri I valori degli altri parametri della query, nell'ordine
+     * @return Il cursore della pagina successiva, o null se questa è l'ultima
+     * @throws SQLException In caso di errori SQL o di errori del lettore
+     */
+    public static Cursore leggiPagina(Connection conn, String sql, int limite, LettoreRiga lettore, ChiaveCursore chiave,
+                                      Object... parametri) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < parametri.length; i++) {
+                stmt.setObject(i + 1, parametri[i]);
+            }
+            stmt.setInt(parametri.length + 1, limite + 1);
+            try (ResultSet rs = stmt.executeQuery()) {
+                Cursore ultimo = null;
+                int lette = 0;
+                while (rs.next()) {
+                    if (lette == limite) {
+                        return ultimo;
+                    }
+                    lettore.leggi(rs);
+                    if (++lette == limite) {
+                        ultimo = chiave.da(rs);
+                    }
+                }
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Restituisce il pool di connessioni, ad esempio per leggerne le metriche.
+     *
+     * @return Il pool di connessioni del database.
+     */
+    public PoolConnessioni getPool() {
+        return pool;
+    }
+
+    /**
+     * Chiude il pool di connessioni. Da chiamare all'arresto del server.
+     */
+    public void chiudi() {
+        pool.chiudi();
     }
 
     /**
@@ -100,4 +268,24 @@ public class DatabaseManager {
     public String getDbUsername() {
         return dbUser;
     }
+
+    /**
+     * Legge una proprietà intera da config.properties.
+     *
+     * @param chiave   Nome della proprietà
+     * @param standard Valore usato se la proprietà è assente o non valida
+     * @return Il valore della proprietà
+     */
+    private int leggiIntero(String chiave, int standard) {
+        String valore = dbProperties.getProperty(chiave);
+        if (valore == null || valore.isBlank()) {
+            return standard;
+        }
+        try {
+            return Integer.parseInt(valore.trim());
+        } catch (NumberFormatException e) {
+            Log.avviso("Valore non valido per " + chiave + ": " + valore + ", uso " + standard);
+            return standard;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package me.labb.bookrecommender.server.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Riceve le righe di una query una alla volta, mentre vengono lette dal database,
+ * così che il chiamante non debba tenere in memoria l'intero risultato.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+@FunctionalInterface
+public interface LettoreRiga {
+
+    /**
+     * @param rs Il ResultSet posizionato sulla riga corrente
+     * @throws SQLException In caso di errori nella lettura della riga
+     */
+    void leggi(ResultSet rs) throws SQLException;
+}
@@ -1,14 +1,19 @@
 package me.labb.bookrecommender.server.db;
 
+import me.labb.bookrecommender.server.log.Log;
 import me.labb.bookrecommender.server.oggetti.Libreria;
 import me.labb.bookrecommender.server.oggetti.Libro;
+import me.labb.bookrecommender.server.utils.Cursore;
 
 import java.sql.*;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Classe DAO per operazioni CRUD sulle librerie personali degli utenti.
@@ -19,6 +24,27 @@ import java.util.Optional;
  * @author Manicone Giorgia 758716 VA
  */
 public class LibreriaDAO {
+
+    /**
+     * Risultato di uno spostamento di libri tra due librerie.
+     *
+     * @param nomeOrigine      Nome della libreria di origine
+     * @param nomeDestinazione Nome della libreria di destinazione
+     * @param spostati         ID dei libri spostati (quelli presenti nella libreria di origine)
+     */
+    public record EsitoSpostamento(String nomeOrigine, String nomeDestinazione, List<Integer> spostati) {
+    }
+
+    /**
+     * Esito di un singolo libro in un'operazione su più libri.
+     */
+    public enum EsitoLibro {
+        AGGIUNTO, GIA_PRESENTE, RIMOSSO, NON_PRESENTE, INESISTENTE
+    }
+
+    // Righe lette dal database per volta negli elenchi di un utente
+    private static final int DIMENSIONE_BLOCCO_LETTURA = 500;
+
     private final DatabaseManager dbManager;
 
     /**
@@ -108,7 +134,7 @@ public class LibreriaDAO {
                 try {
                     conn.rollback(); // Annulla la transazione in caso di errore
                 } catch (SQLException rollbackEx) {
-                    System.err.println("Errore durante il rollback: " + rollbackEx.getMessage());
+                    Log.errore("Errore durante il rollback: " + rollbackEx.getMessage());
                 }
             }
             throw e;
@@ -119,7 +145,7 @@ public class LibreriaDAO {
                 try {
                     conn.setAutoCommit(true); // Ripristina l'auto-commit
                 } catch (SQLException autoCommitEx) {
-                    System.err.println("Errore nel ripristino auto-commit: " + autoCommitEx.getMessage());
+                    Log.errore("Errore nel ripristino auto-commit: " + autoCommitEx.getMessage());
                 }
                 conn.close();
             }
@@ -277,55 +303,208 @@ public class LibreriaDAO {
     }
 
     /**
-     * Ottiene tutti i libri in una libreria.
+     * Aggiunge più libri a una libreria dell'utente con un'unica istruzione.
      *
+     * @param userID     ID dell'utente che deve possedere la libreria
      * @param libreriaID ID della libreria
-     * @return Lista di libri nella libreria
+     * @param libriID    ID dei libri da aggiungere, senza duplicati
+     * @return L'esito di ogni libro, nell'ordine della richiesta, o vuoto se la libreria non esiste o non è dell'utente
      * @throws SQLException In caso di errori SQL
      */
-    public List<Libro> getLibriInLibreria(int libreriaID) throws SQLException {
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-        List<Libro> libri = new ArrayList<>();
+    public Optional<Map<Integer, EsitoLibro>> aggiungiLibri(int userID, int libreriaID, List<Integer> libriID) throws SQLException {
+        String sql = """
+                WITH libreria AS (
+                    SELECT 1 FROM "Librerie" WHERE "LibreriaID" = ? AND "UserID" = ?
+                ), richiesti AS (
+                    SELECT DISTINCT unnest(?::int[]) AS "LibroID"
+                ), aggiunti AS (
+                    INSERT INTO "ContenutoLibreria" ("LibreriaID", "LibroID", "DataAggiunta")
+                    SELECT ?, r."LibroID", CURRENT_TIMESTAMP
+                    FROM richiesti r JOIN "Libri" l ON l."LibroID" = r."LibroID"
+                    WHERE EXISTS (SELECT 1 FROM libreria)
+                    ON CONFLICT ("LibreriaID", "LibroID") DO NOTHING
+                    RETURNING "LibroID"
+                )
+                SELECT EXISTS (SELECT 1 FROM libreria) AS "Autorizzato",
+                       ARRAY(SELECT "LibroID" FROM aggiunti) AS "Eseguiti",
+                       ARRAY(SELECT r."LibroID" FROM richiesti r
+                             WHERE NOT EXISTS (SELECT 1 FROM "Libri" l WHERE l."LibroID" = r."LibroID")) AS "Inesistenti"
+                """;
+        return eseguiOperazioneLibri(sql, userID, libreriaID, libriID, EsitoLibro.AGGIUNTO, EsitoLibro.GIA_PRESENTE);
+    }
 
-        try {
-            conn = dbManager.getConnection();
-            String sql = """
-                    SELECT l.* FROM "Libri" l
-                    JOIN "ContenutoLibreria" lil ON l."LibroID" = lil."LibroID"
-                    WHERE lil."LibreriaID" = ?
-                    ORDER BY lil."DataAggiunta" DESC
-                    """;
+    /**
+     * Rimuove più libri da una libreria dell'utente con un'unica istruzione.
+     *
+     * @param userID     ID dell'utente che deve possedere la libreria
+     * @param libreriaID ID della libreria
+     * @param libriID    ID dei libri da rimuovere, senza duplicati
+     * @return L'esito di ogni libro, nell'ordine della richiesta, o vuoto se la libreria non esiste o non è dell'utente
+     * @throws SQLException In caso di errori SQL
+     */
+    public Optional<Map<Integer, EsitoLibro>> rimuoviLibri(int userID, int libreriaID, List<Integer> libriID) throws SQLException {
+        String sql = """
+                WITH libreria AS (
+                    SELECT 1 FROM "Librerie" WHERE "LibreriaID" = ? AND "UserID" = ?
+                ), richiesti AS (
+                    SELECT DISTINCT unnest(?::int[]) AS "LibroID"
+                ), rimossi AS (
+                    DELETE FROM "ContenutoLibreria"
+                    WHERE "LibreriaID" = ? AND "LibroID" IN (SELECT "LibroID" FROM richiesti)
+                      AND EXISTS (SELECT 1 FROM libreria)
+                    RETURNING "LibroID"
+                )
+                SELECT EXISTS (SELECT 1 FROM libreria) AS "Autorizzato",
+                       ARRAY(SELECT "LibroID" FROM rimossi) AS "Eseguiti",
+                       ARRAY(SELECT r."LibroID" FROM richiesti r
+                             WHERE NOT EXISTS (SELECT 1 FROM "Libri" l WHERE l."LibroID" = r."LibroID")) AS "Inesistenti"
+                """;
+        return eseguiOperazioneLibri(sql, userID, libreriaID, libriID, EsitoLibro.RIMOSSO, EsitoLibro.NON_PRESENTE);
+    }
 
-            stmt = conn.prepareStatement(sql);
+    /**
+     * Esegue un'istruzione di aggiunta o rimozione e ricava l'esito di ogni libro richiesto:
+     * eseguito, inesistente nel catalogo, oppure già nello stato richiesto.
+     */
+    private Optional<Map<Integer, EsitoLibro>> eseguiOperazioneLibri(String sql, int userID, int libreriaID, List<Integer> libriID,
+                                                                     EsitoLibro eseguito, EsitoLibro altrimenti) throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, libreriaID);
+            stmt.setInt(2, userID);
+            stmt.setArray(3, conn.createArrayOf("integer", libriID.toArray()));
+            stmt.setInt(4, libreriaID);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                if (!rs.getBoolean("Autorizzato")) {
+                    return Optional.empty();
+                }
+                Set<Integer> eseguiti = Set.of((Integer[]) rs.getArray("Eseguiti").getArray());
+                Set<Integer> inesistenti = Set.of((Integer[]) rs.getArray("Inesistenti").getArray());
 
-            rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                Libro libro = new Libro(
-                        rs.getInt("LibroID"),
-                        rs.getString("Titolo"),
-                        rs.getString("Autori"),
-                        rs.getString("Descrizione"),
-                        rs.getString("Categoria"),
-                        rs.getString("Editore"),
-                        rs.getFloat("Prezzo"),
-                        rs.getString("MesePubblicazione"),
-                        rs.getInt("AnnoPubblicazione")
-                );
-                libri.add(libro);
+                Map<Integer, EsitoLibro> esiti = new LinkedHashMap<>();
+                for (Integer libroID : libriID) {
+                    esiti.put(libroID, eseguiti.contains(libroID) ? eseguito
+                            : inesistenti.contains(libroID) ? EsitoLibro.INESISTENTE : altrimenti);
+                }
+                return Optional.of(esiti);
             }
+        }
+    }
 
-            return libri;
-        } finally {
-            if (rs != null) rs.close();
-            if (stmt != null) stmt.close();
-            if (conn != null) conn.close();
+    /**
+     * Sposta dei libri da una libreria all'altra dello stesso utente con un'unica istruzione:
+     * verifica che entrambe le librerie appartengano all'utente, rimuove i libri dall'origine e li
+     * aggiunge alla destinazione. Un libro già presente nella destinazione viene solo rimosso dall'origine.
+     *
+     * @param userID                 ID dell'utente che deve possedere entrambe le librerie
+     * @param libreriaOrigineID      ID della libreria di origine
+     * @param libreriaDestinazioneID ID della libreria di destinazione (diversa dall'origine)
+     * @param libriID                ID dei libri da spostare
+     * @return L'esito dello spostamento, o vuoto se una delle librerie non esiste o non è dell'utente
+     * @throws SQLException In caso di errori SQL
+     */
+    public Optional<EsitoSpostamento> spostaLibri(int userID, int libreriaOrigineID, int libreriaDestinazioneID,
+                                                  List<Integer> libriID) throws SQLException {
+        String sql = """
+                WITH librerie AS (
+                    SELECT "LibreriaID", "NomeLibreria" FROM "Librerie"
+                    WHERE "LibreriaID" IN (?, ?) AND "UserID" = ?
+                ), rimossi AS (
+                    DELETE FROM "ContenutoLibreria"
+                    WHERE "LibreriaID" = ? AND "LibroID" = ANY(?)
+                      AND (SELECT COUNT(*) FROM librerie) = 2
+                    RETURNING "LibroID"
+                ), aggiunti AS (
+                    INSERT INTO "ContenutoLibreria" ("LibreriaID", "LibroID", "DataAggiunta")
+                    SELECT ?, "LibroID", CURRENT_TIMESTAMP FROM rimossi
+                    ON CONFLICT ("LibreriaID", "LibroID") DO NOTHING
+                )
+                SELECT (SELECT "NomeLibreria" FROM librerie WHERE "LibreriaID" = ?) AS "NomeOrigine",
+                       (SELECT "NomeLibreria" FROM librerie WHERE "LibreriaID" = ?) AS "NomeDestinazione",
+                       ARRAY(SELECT "LibroID" FROM rimossi) AS "Spostati"
+                """;
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, libreriaOrigineID);
+            stmt.setInt(2, libreriaDestinazioneID);
+            stmt.setInt(3, userID);
+            stmt.setInt(4, libreriaOrigineID);
+            stmt.setArray(5, conn.createArrayOf("integer", libriID.toArray()));
+            stmt.setInt(6, libreriaDestinazioneID);
+            stmt.setInt(7, libreriaOrigineID);
+            stmt.setInt(8, libreriaDestinazioneID);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                String nomeOrigine = rs.getString("NomeOrigine");
+                String nomeDestinazione = rs.getString("NomeDestinazione");
+                if (nomeOrigine == null || nomeDestinazione == null) {
+                    return Optional.empty();
+                }
+                List<Integer> spostati = new ArrayList<>();
+                for (Integer libroID : (Integer[]) rs.getArray("Spostati").getArray()) {
+                    spostati.add(libroID);
+                }
+                return Optional.of(new EsitoSpostamento(nomeOrigine, nomeDestinazione, spostati));
+            }
         }
     }
 
+    /**
+     * Ottiene tutti i libri in una libreria.
+     *
+     * @param libreriaID ID della libreria
+     * @return Lista di libri nella libreria
+     * @throws SQLException In caso di errori SQL
+     */
+    public List<Libro> getLibriInLibreria(int libreriaID) throws SQLException {
+        List<Libro> libri = new ArrayList<>();
+        leggiLibriInLibreria(libreriaID, rs -> libri.add(LibroDAO.mappaLibro(rs)));
+        return libri;
+    }
+
+    /**
+     * Legge i libri di una libreria, dal più recente, passandoli al lettore man mano che
+     * arrivano dal database. Ogni riga contiene tutte le colonne di "Libri".
+     *
+     * @param libreriaID ID della libreria
+     * @param lettore    Riceve ogni riga
+     * @throws SQLException In caso di errori SQL
+     */
+    public void leggiLibriInLibreria(int libreriaID, LettoreRiga lettore) throws SQLException {
+        String sql = """
+                SELECT l.* FROM "Libri" l
+                JOIN "ContenutoLibreria" lil ON l."LibroID" = lil."LibroID"
+                WHERE lil."LibreriaID" = ?
+                ORDER BY lil."DataAggiunta" DESC
+                """;
+        dbManager.leggiABlocchi(sql, DIMENSIONE_BLOCCO_LETTURA, lettore, libreriaID);
+    }
+
+    /**
+     * Legge una pagina dei libri di una libreria, dal più recente. Ogni riga contiene
+     * tutte le colonne di "Libri".
+     *
+     * @param libreriaID ID della libreria
+     * @param cursore    Cursore della pagina precedente, o null per la prima pagina
+     * @param limite     Numero massimo di libri
+     * @param lettore    Riceve ogni riga
+     * @return Il cursore della pagina successiva, o null se questa è l'ultima
+     * @throws SQLException             In caso di errori SQL
+     * @throws IllegalArgumentException Se il cursore non è valido
+     */
+    public Cursore leggiLibriInLibreria(int libreriaID, String cursore, int limite, LettoreRiga lettore) throws SQLException {
+        String sql = """
+                SELECT l.*, lil."DataAggiunta" FROM "Libri" l
+                JOIN "ContenutoLibreria" lil ON l."LibroID" = lil."LibroID"
+                WHERE lil."LibreriaID" = ?
+                """;
+        return dbManager.leggiPaginaRecenti(sql, "lil", "DataAggiunta", "LibroID", cursore, limite, lettore, libreriaID);
+    }
+
     /**
      * Rinomina una libreria esistente.
      *
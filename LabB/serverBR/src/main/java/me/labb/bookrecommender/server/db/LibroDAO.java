@@ -1,11 +1,17 @@
 package me.labb.bookrecommender.server.db;
 
+import me.labb.bookrecommender.server.log.Log;
 import me.labb.bookrecommender.server.oggetti.Libro;
+import me.labb.bookrecommender.server.oggetti.Pagina;
+import me.labb.bookrecommender.server.utils.Cursore;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Classe DAO per operazioni CRUD sui libri nel database.
@@ -16,6 +22,12 @@ import java.util.Optional;
  * @author Manicone Giorgia 758716 VA
  */
 public class LibroDAO {
+    // null finché non è stato verificato se gli indici di ricerca esistono
+    private static volatile Boolean ricercaIndicizzata = null;
+
+    // Notificati dopo ogni modifica al catalogo dei libri
+    private static final List<Runnable> osservatoriCatalogo = new CopyOnWriteArrayList<>();
+
     private final DatabaseManager dbManager;
 
     /**
@@ -47,17 +59,7 @@ public class LibroDAO {
             rs = stmt.executeQuery();
 
             if (rs.next()) {
-                Libro libro = new Libro(
-                        rs.getInt("LibroID"),
-                        rs.getString("Titolo"),
-                        rs.getString("Autori"),
-                        rs.getString("Descrizione"),
-                        rs.getString("Categoria"),
-                        rs.getString("Editore"),
-                        rs.getFloat("Prezzo"),
-                        rs.getString("MesePubblicazione"),
-                        rs.getInt("AnnoPubblicazione")
-                );
+                Libro libro = mappaLibro(rs);
                 return Optional.of(libro);
             }
 
@@ -69,6 +71,37 @@ public class LibroDAO {
         }
     }
 
+    /**
+     * Ottiene più libri dal database con una sola query, nell'ordine degli ID indicati.
+     * Gli ID che non corrispondono a nessun libro vengono ignorati.
+     *
+     * @param libriID ID dei libri da caricare
+     * @return Lista dei libri trovati, nello stesso ordine di libriID
+     * @throws SQLException In caso di errori SQL
+     */
+    public List<Libro> getLibriByIds(List<Integer> libriID) throws SQLException {
+        List<Libro> risultati = new ArrayList<>();
+        if (libriID.isEmpty()) {
+            return risultati;
+        }
+
+        String sql = """
+                SELECT l.* FROM unnest(?::int[]) WITH ORDINALITY AS richiesti("LibroID", "Posizione")
+                JOIN "Libri" l ON l."LibroID" = richiesti."LibroID"
+                ORDER BY richiesti."Posizione"
+                """;
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setArray(1, conn.createArrayOf("integer", libriID.toArray()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    risultati.add(mappaLibro(rs));
+                }
+            }
+        }
+        return risultati;
+    }
+
     /**
      * Cerca libri per titolo o autore.
      *
@@ -76,48 +109,254 @@ public class LibroDAO {
      * @param limit Numero massimo di risultati
      * @return Lista di libri trovati
      * @throws SQLException In caso di errori SQL
+     * @see #cercaLibri(String, String, int)
      */
     public List<Libro> cercaLibri(String query, int limit) throws SQLException {
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
+        return cercaLibri(query, null, limit).elementi();
+    }
+
+    /**
+     * Cerca libri per titolo o autore, una pagina alla volta: prima i libri con il termine nel titolo, poi gli altri.
+     * Se sono disponibili gli indici di ricerca (migrazione V001) all'interno dei due gruppi i risultati sono ordinati
+     * per rango full-text e somiglianza del titolo, altrimenti per titolo.
+     *
+     * @param query   Testo da cercare nel titolo o autore
+     * @param cursore Cursore della pagina precedente, o null per la prima pagina
+     * @param limite  Numero massimo di risultati
+     * @return La pagina di libri trovati
+     * @throws SQLException             In caso di errori SQL
+     * @throws IllegalArgumentException Se il cursore non è valido
+     */
+    public Pagina<Libro> cercaLibri(String query, String cursore, int limite) throws SQLException {
+        String pattern = "%" + escapeLike(query) + "%";
         List<Libro> risultati = new ArrayList<>();
+        LettoreRiga lettore = rs -> risultati.add(mappaLibro(rs));
 
-        try {
-            conn = dbManager.getConnection();
-            String sql = """
-                    SELECT * FROM "Libri" 
-                    WHERE "Titolo" ILIKE ? OR "Autori" ILIKE ?
-                    ORDER BY "Titolo" ASC
-                    LIMIT ?
-                    """;
-            stmt = conn.prepareStatement(sql);
-            stmt.setString(1, "%" + query + "%");
-            stmt.setString(2, "%" + query + "%");
-            stmt.setInt(3, limit);
-            rs = stmt.executeQuery();
+        try (Connection conn = dbManager.getConnection()) {
+            Cursore prossimo;
+            if (isRicercaIndicizzata(conn)) {
+                // Rango e somiglianza sono negati per ordinare tutte le colonne in modo crescente;
+                // nel cursore sono confrontati come real, il tipo con cui sono calcolati
+                String sql = """
+                        SELECT * FROM (
+                            SELECT *,
+                                   CASE WHEN "Titolo" ILIKE ? THEN 0 ELSE 1 END AS "Fase",
+                                   -ts_rank("RicercaTesto", plainto_tsquery('simple', ?)) AS "Rango",
+                                   -similarity("Titolo", ?) AS "Somiglianza"
+                            FROM "Libri"
+                            WHERE "Titolo" ILIKE ? OR "Autori" ILIKE ?
+                               OR "RicercaTesto" @@ plainto_tsquery('simple', ?)
+                        ) r
+                        """;
+                DatabaseManager.ChiaveCursore chiave = rs -> new Cursore(rs.getInt("Fase"), rs.getFloat("Rango"),
+                        rs.getFloat("Somiglianza"), rs.getString("Titolo"), rs.getInt("LibroID"));
+                String ordine = " ORDER BY \"Fase\", \"Rango\", \"Somiglianza\", \"Titolo\", \"LibroID\" LIMIT ?";
+                if (cursore == null) {
+                    prossimo = DatabaseManager.leggiPagina(conn, sql + ordine, limite, lettore, chiave,
+                            pattern, query, query, pattern, pattern, query);
+                } else {
+                    Cursore dopo = Cursore.decodifica(cursore, 5);
+                    prossimo = DatabaseManager.leggiPagina(conn,
+                            sql + " WHERE (\"Fase\", \"Rango\", \"Somiglianza\", \"Titolo\", \"LibroID\") > (?, ?::real, ?::real, ?, ?)" + ordine,
+                            limite, lettore, chiave, pattern, query, query, pattern, pattern, query,
+                            dopo.intero(0), dopo.decimale(1), dopo.decimale(2), dopo.testo(3), dopo.intero(4));
+                }
+            } else {
+                String sql = """
+                        SELECT * FROM (
+                            SELECT *, CASE WHEN "Titolo" ILIKE ? THEN 0 ELSE 1 END AS "Fase"
+                            FROM "Libri"
+                            WHERE "Titolo" ILIKE ? OR "Autori" ILIKE ?
+                        ) r
+                        """;
+                DatabaseManager.ChiaveCursore chiave = rs -> new Cursore(rs.getInt("Fase"), rs.getString("Titolo"),
+                        rs.getInt("LibroID"));
+                String ordine = " ORDER BY \"Fase\", \"Titolo\", \"LibroID\" LIMIT ?";
+                if (cursore == null) {
+                    prossimo = DatabaseManager.leggiPagina(conn, sql + ordine, limite, lettore, chiave,
+                            pattern, pattern, pattern);
+                } else {
+                    Cursore dopo = Cursore.decodifica(cursore, 3);
+                    prossimo = DatabaseManager.leggiPagina(conn,
+                            sql + " WHERE (\"Fase\", \"Titolo\", \"LibroID\") > (?, ?, ?)" + ordine,
+                            limite, lettore, chiave, pattern, pattern, pattern,
+                            dopo.intero(0), dopo.testo(1), dopo.intero(2));
+                }
+            }
+            return new Pagina<>(risultati, prossimo);
+        }
+    }
 
-            while (rs.next()) {
-                Libro libro = new Libro(
-                        rs.getInt("LibroID"),
-                        rs.getString("Titolo"),
-                        rs.getString("Autori"),
-                        rs.getString("Descrizione"),
-                        rs.getString("Categoria"),
-                        rs.getString("Editore"),
-                        rs.getFloat("Prezzo"),
-                        rs.getString("MesePubblicazione"),
-                        rs.getInt("AnnoPubblicazione")
-                );
-                risultati.add(libro);
+    /**
+     * Cerca libri per autore, per anno di pubblicazione o per entrambi, una pagina alla volta in ordine di titolo.
+     *
+     * @param autore  Testo da cercare negli autori, o null
+     * @param anno    Anno di pubblicazione, o null
+     * @param cursore Cursore della pagina precedente, o null per la prima pagina
+     * @param limite  Numero massimo di risultati
+     * @return La pagina di libri trovati
+     * @throws SQLException             In caso di errori SQL
+     * @throws IllegalArgumentException Se il cursore non è valido
+     */
+    public Pagina<Libro> cercaLibriPerAutoreEAnno(String autore, Integer anno, String cursore, int limite) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT * FROM \"Libri\" WHERE TRUE");
+        List<Object> parametri = new ArrayList<>();
+        if (autore != null) {
+            sql.append(" AND \"Autori\" ILIKE ?");
+            parametri.add("%" + escapeLike(autore) + "%");
+        }
+        if (anno != null) {
+            sql.append(" AND \"AnnoPubblicazione\" = ?");
+            parametri.add(anno);
+        }
+        aggiungiOrdineTitolo(sql, parametri, cursore);
+
+        List<Libro> risultati = new ArrayList<>();
+        Cursore prossimo = dbManager.leggiPagina(sql.toString(), limite, rs -> risultati.add(mappaLibro(rs)),
+                LibroDAO::cursoreTitolo, parametri.toArray());
+        return new Pagina<>(risultati, prossimo);
+    }
+
+    /**
+     * Completa una query sui libri con la condizione del cursore e l'ordinamento per titolo,
+     * terminando con "LIMIT ?" come richiesto da {@link DatabaseManager#leggiPagina}.
+     *
+     * @throws IllegalArgumentException Se il cursore non è valido
+     */
+    static void aggiungiOrdineTitolo(StringBuilder sql, List<Object> parametri, String cursore) {
+        if (cursore != null) {
+            Cursore dopo = Cursore.decodifica(cursore, 2);
+            sql.append(" AND (\"Titolo\", \"LibroID\") > (?, ?)");
+            parametri.add(dopo.testo(0));
+            parametri.add(dopo.intero(1));
+        }
+        sql.append(" ORDER BY \"Titolo\", \"LibroID\" LIMIT ?");
+    }
+
+    /**
+     * Cursore degli elenchi di libri in ordine di titolo: titolo e ID dell'ultimo libro.
+     */
+    static Cursore cursoreTitolo(ResultSet rs) throws SQLException {
+        return new Cursore(rs.getString("Titolo"), rs.getInt("LibroID"));
+    }
+
+    /**
+     * Legge l'intero catalogo per costruire l'indice di ricerca in memoria.
+     * Non vengono letti descrizione, editore e mese di pubblicazione, che restano null.
+     *
+     * @return Lista di tutti i libri
+     * @throws SQLException In caso di errori SQL
+     */
+    public List<Libro> getTuttiLibriPerIndice() throws SQLException {
+        List<Libro> libri = new ArrayList<>();
+        String sql = """
+                SELECT "LibroID", "Titolo", "Autori", "Categoria", "Prezzo", "AnnoPubblicazione" FROM "Libri"
+                """;
+
+        try (Connection conn = dbManager.getConnection()) {
+            // Con autocommit disattivato il driver legge a blocchi invece di caricare tutto il risultato
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setFetchSize(5000);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        libri.add(new Libro(
+                                rs.getInt("LibroID"),
+                                rs.getString("Titolo"),
+                                rs.getString("Autori"),
+                                null,
+                                rs.getString("Categoria"),
+                                null,
+                                rs.getFloat("Prezzo"),
+                                null,
+                                rs.getInt("AnnoPubblicazione")
+                        ));
+                    }
+                }
+                conn.commit();
+            } finally {
+                conn.setAutoCommit(true);
             }
+        }
+        return libri;
+    }
 
-            return risultati;
-        } finally {
-            if (rs != null) rs.close();
-            if (stmt != null) stmt.close();
-            if (conn != null) conn.close();
+    /**
+     * Registra un'azione da eseguire dopo ogni modifica al catalogo dei libri
+     * (ad esempio per aggiornare indici o cache in memoria).
+     *
+     * @param osservatore Azione da eseguire, deve essere veloce o delegare a un altro thread
+     */
+    public static void registraOsservatoreCatalogo(Runnable osservatore) {
+        osservatoriCatalogo.add(osservatore);
+    }
+
+    /**
+     * Notifica gli osservatori che il catalogo dei libri è cambiato.
+     */
+    public static void notificaCatalogoModificato() {
+        for (Runnable osservatore : osservatoriCatalogo) {
+            try {
+                osservatore.run();
+            } catch (RuntimeException e) {
+                Log.errore("Errore nella notifica della modifica del catalogo: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Verifica una sola volta se la colonna full-text e l'estensione pg_trgm
+     * create dalla migrazione V001 sono presenti.
+     */
+    private static boolean isRicercaIndicizzata(Connection conn) throws SQLException {
+        Boolean disponibile = ricercaIndicizzata;
+        if (disponibile != null) {
+            return disponibile;
+        }
+        String sql = """
+                SELECT EXISTS (SELECT 1 FROM pg_extension WHERE extname = 'pg_trgm')
+                   AND EXISTS (SELECT 1 FROM information_schema.columns
+                               WHERE table_name = 'Libri' AND column_name = 'RicercaTesto')
+                """;
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            disponibile = rs.next() && rs.getBoolean(1);
         }
+        if (!disponibile) {
+            Log.avviso("Indici di ricerca non disponibili: uso la ricerca ILIKE senza ordinamento per rilevanza.");
+        }
+        ricercaIndicizzata = disponibile;
+        return disponibile;
+    }
+
+    /**
+     * Protegge i caratteri speciali di LIKE, così che il termine cercato sia trattato come testo.
+     *
+     * @param testo Il testo inserito dall'utente
+     * @return Il testo con i caratteri %, _ e la barra rovesciata protetti
+     */
+    static String escapeLike(String testo) {
+        return testo.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Costruisce un libro dalla riga corrente di un ResultSet che contiene tutte le colonne di "Libri".
+     *
+     * @param rs ResultSet posizionato sulla riga da leggere
+     * @return Il libro letto
+     * @throws SQLException In caso di errori SQL
+     */
+    public static Libro mappaLibro(ResultSet rs) throws SQLException {
+        return new Libro(
+                rs.getInt("LibroID"),
+                rs.getString("Titolo"),
+                rs.getString("Autori"),
+                rs.getString("Descrizione"),
+                rs.getString("Categoria"),
+                rs.getString("Editore"),
+                rs.getFloat("Prezzo"),
+                rs.getString("MesePubblicazione"),
+                rs.getInt("AnnoPubblicazione")
+        );
     }
 
     /**
@@ -148,17 +387,7 @@ public class LibroDAO {
             rs = stmt.executeQuery();
 
             while (rs.next()) {
-                Libro libro = new Libro(
-                        rs.getInt("LibroID"),
-                        rs.getString("Titolo"),
-                        rs.getString("Autori"),
-                        rs.getString("Descrizione"),
-                        rs.getString("Categoria"),
-                        rs.getString("Editore"),
-                        rs.getFloat("Prezzo"),
-                        rs.getString("MesePubblicazione"),
-                        rs.getInt("AnnoPubblicazione")
-                );
+                Libro libro = mappaLibro(rs);
                 risultati.add(libro);
             }
 
@@ -212,21 +441,22 @@ public class LibroDAO {
      * @return Lista di categorie processate e uniche
      */
     private List<String> processCategorie(List<String> categorieRaw) {
-        List<String> categorieProcessate = new ArrayList<>();
+        Set<String> categorieProcessate = new HashSet<>();
 
         for (String categoria : categorieRaw) {
             if (categoria != null && !categoria.trim().isEmpty()) {
                 String[] parti = categoria.split(",");
                 for (String parte : parti) {
                     String categoriaProcessata = parte.trim();
-                    if (!categoriaProcessata.isEmpty() && !categorieProcessate.contains(categoriaProcessata)) {
+                    if (!categoriaProcessata.isEmpty()) {
                         categorieProcessate.add(categoriaProcessata);
                     }
                 }
             }
         }
 
-        categorieProcessate.sort(String::compareToIgnoreCase);
-        return categorieProcessate;
+        List<String> risultato = new ArrayList<>(categorieProcessate);
+        risultato.sort(String::compareToIgnoreCase);
+        return risultato;
     }
 }
\ No newline at end of file
@@ -0,0 +1,133 @@
+package me.labb.bookrecommender.server.db;
+
+import me.labb.bookrecommender.server.log.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Applica all'avvio del server le migrazioni dello schema del database.
+ * Le migrazioni sono file SQL in resources/db/migrazioni, eseguiti nell'ordine
+ * della lista {@link #MIGRAZIONI}; quelle già applicate sono registrate nella
+ * tabella "MigrazioniSchema" e non vengono rieseguite.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class MigrazioniDB {
+
+    private static final String PERCORSO = "db/migrazioni/";
+
+    // Da aggiornare aggiungendo in fondo ogni nuova migrazione
+    private static final List<String> MIGRAZIONI = List.of(
+            "V001__ricerca_trigram.sql",
+            "V002__categorie_normalizzate.sql",
+            "V003__aggregati_valutazioni.sql",
+            "V004__trigger_aggregati_valutazioni.sql",
+            "V005__indici_paginazione.sql",
+            "V006__salvataggio_consigli.sql",
+            "V007__paginazione_date_nulle.sql"
+    );
+
+    // Chiave del lock advisory che impedisce a due server di migrare in contemporanea
+    private static final long CHIAVE_LOCK = 756_564_758_697L;
+
+    private final DatabaseManager dbManager;
+
+    /**
+     * Costruttore della classe MigrazioniDB.
+     */
+    public MigrazioniDB() {
+        this.dbManager = DatabaseManager.getInstance();
+    }
+
+    /**
+     * Applica le migrazioni mancanti, ognuna nella propria transazione.
+     *
+     * @return Numero di migrazioni applicate
+     * @throws SQLException In caso di errori SQL (la migrazione fallita viene annullata)
+     */
+    public int applica() throws SQLException {
+        int applicate = 0;
+
+        try (Connection conn = dbManager.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("""
+                        CREATE TABLE IF NOT EXISTS "MigrazioniSchema" (
+                            "Versione" VARCHAR(255) PRIMARY KEY,
+                            "DataApplicazione" TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+                        )
+                        """);
+            }
+
+            for (String migrazione : MIGRAZIONI) {
+                conn.setAutoCommit(false);
+                try {
+                    try (PreparedStatement lock = conn.prepareStatement("SELECT pg_advisory_xact_lock(?)")) {
+                        lock.setLong(1, CHIAVE_LOCK);
+                        lock.execute();
+                    }
+
+                    if (getMigrazioniApplicate(conn).contains(migrazione)) {
+                        conn.commit();
+                        continue;
+                    }
+
+                    Log.info("Applicazione migrazione " + migrazione + "...");
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.execute(leggiMigrazione(migrazione));
+                    }
+                    try (PreparedStatement stmt = conn.prepareStatement("""
+                            INSERT INTO "MigrazioniSchema" ("Versione") VALUES (?)
+                            """)) {
+                        stmt.setString(1, migrazione);
+                        stmt.executeUpdate();
+                    }
+
+                    conn.commit();
+                    applicate++;
+                    Log.info("Migrazione " + migrazione + " applicata.");
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw new SQLException("Migrazione " + migrazione + " fallita: " + e.getMessage(), e);
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+        }
+
+        return applicate;
+    }
+
+    private Set<String> getMigrazioniApplicate(Connection conn) throws SQLException {
+        Set<String> applicate = new HashSet<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT \"Versione\" FROM \"MigrazioniSchema\"")) {
+            while (rs.next()) {
+                applicate.add(rs.getString("Versione"));
+            }
+        }
+        return applicate;
+    }
+
+    private String leggiMigrazione(String nome) throws SQLException {
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(PERCORSO + nome)) {
+            if (input == null) {
+                throw new SQLException("File di migrazione non trovato nel classpath: " + PERCORSO + nome);
+            }
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new SQLException("Errore nella lettura della migrazione " + nome, e);
+        }
+    }
+}
@@ -0,0 +1,569 @@
+package me.labb.bookrecommender.server.db;
+
+import me.labb.bookrecommender.server.log.Log;
+import me.labb.bookrecommender.server.metriche.MetricheComandi;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool limitato di connessioni JDBC verso il database Postgres.
+ * Le connessioni restituite da {@link #acquisisci()} sono proxy: chiamare close()
+ * le riconsegna al pool invece di chiudere la connessione fisica.
+ * <p>
+ * Gestisce validazione delle connessioni inattive, rimozione di quelle inattive da troppo tempo,
+ * durata massima di ogni connessione fisica e timeout di acquisizione.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class PoolConnessioni {
+
+    // Sotto questa soglia di inattività la connessione viene riusata senza validarla
+    private static final long SOGLIA_VALIDAZIONE_MS = 500;
+    // Oltre questo numero di Statement aperti su un proxy quelli già chiusi vengono tolti dall'elenco
+    private static final int STATEMENT_PRIMA_DI_PULIRE = 64;
+    private static final long INTERVALLO_MANUTENZIONE_MS = 30_000;
+
+    private final String url;
+    private final String utente;
+    private final String password;
+
+    private final int dimensioneMassima;
+    private final int minimoInattive;
+    private final long timeoutAcquisizioneMs;
+    private final long timeoutInattivitaMs;
+    private final long durataMassimaMs;
+    private final int timeoutValidazioneSec;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition disponibile = lock.newCondition();
+    private final Deque<ConnessioneFisica> inattive = new ArrayDeque<>();
+    private int totali = 0;
+    private int attive = 0;
+    private int inAttesa = 0;
+    private boolean chiuso = false;
+
+    private final AtomicLong connessioniCreate = new AtomicLong();
+    private final AtomicLong timeoutAcquisizione = new AtomicLong();
+
+    private final ScheduledExecutorService manutenzione;
+
+    /**
+     * Connessione fisica al database con i dati necessari a valutarne la scadenza
+     * e lo stato iniziale da ripristinare prima di riusarla.
+     */
+    private static final class ConnessioneFisica {
+        private final Connection connessione;
+        private final long creataIl;
+        private final boolean readOnlyIniziale;
+        private final int isolamentoIniziale;
+        private long ultimoUtilizzo;
+
+        private ConnessioneFisica(Connection connessione) throws SQLException {
+            this.connessione = connessione;
+            this.creataIl = System.currentTimeMillis();
+            this.readOnlyIniziale = connessione.isReadOnly();
+            this.isolamentoIniziale = connessione.getTransactionIsolation();
+            this.ultimoUtilizzo = this.creataIl;
+        }
+    }
+
+    /**
+     * @param url                   URL JDBC del database
+     * @param utente                Utente del database
+     * @param password              Password del database
+     * @param dimensioneMassima     Numero massimo di connessioni fisiche aperte
+     * @param minimoInattive        Numero di connessioni inattive da mantenere pronte
+     * @param timeoutAcquisizioneMs Attesa massima per ottenere una connessione
+     * @param timeoutInattivitaMs   Inattività oltre la quale una connessione viene chiusa
+     * @param durataMassimaMs       Durata massima di una connessione fisica
+     * @param timeoutValidazioneSec Timeout per la validazione di una connessione
+     */
+    public PoolConnessioni(String url, String utente, String password,
+                           int dimensioneMassima, int minimoInattive,
+                           long timeoutAcquisizioneMs, long timeoutInattivitaMs,
+                           long durataMassimaMs, int timeoutValidazioneSec) {
+        if (dimensioneMassima < 1) {
+            throw new IllegalArgumentException("La dimensione massima del pool deve essere almeno 1");
+        }
+        this.url = url;
+        this.utente = utente;
+        this.password = password;
+        this.dimensioneMassima = dimensioneMassima;
+        this.minimoInattive = Math.max(0, Math.min(minimoInattive, dimensioneMassima));
+        this.timeoutAcquisizioneMs = timeoutAcquisizioneMs;
+        this.timeoutInattivitaMs = timeoutInattivitaMs;
+        this.durataMassimaMs = durataMassimaMs;
+        this.timeoutValidazioneSec = timeoutValidazioneSec;
+
+        this.manutenzione = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pool-connessioni-manutenzione");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Avvia la manutenzione periodica delle connessioni inattive. Da chiamare una volta, dopo la costruzione:
+     * pianificarla nel costruttore esporrebbe il pool al thread di manutenzione prima che sia inizializzato.
+     */
+    public void avvia() {
+        manutenzione.scheduleWithFixedDelay(this::eseguiManutenzione,
+                INTERVALLO_MANUTENZIONE_MS, INTERVALLO_MANUTENZIONE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ottiene una connessione dal pool, creandone una nuova se il limite lo consente.
+     * Se tutte le connessioni sono occupate attende fino al timeout di acquisizione.
+     *
+     * @return Una connessione da chiudere con close() al termine dell'utilizzo
+     * @throws SQLException Se il pool è chiuso, scade il timeout o la connessione non può essere creata
+     */
+    public Connection acquisisci() throws SQLException {
+        long inizio = System.nanoTime();
+        long scadenza = inizio + TimeUnit.MILLISECONDS.toNanos(timeoutAcquisizioneMs);
+
+        while (true) {
+            ConnessioneFisica fisica;
+            boolean daCreare = false;
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (chiuso) {
+                        throw new SQLException("Il pool di connessioni è chiuso.");
+                    }
+                    fisica = inattive.pollFirst();
+                    if (fisica != null) {
+                        attive++;
+                        break;
+                    }
+                    if (totali < dimensioneMassima) {
+                        totali++;
+                        attive++;
+                        daCreare = true;
+                        break;
+                    }
+                    long restante = scadenza - System.nanoTime();
+                    if (restante <= 0) {
+                        timeoutAcquisizione.incrementAndGet();
+                        throw new SQLTimeoutException("Timeout nell'acquisizione di una connessione dal pool dopo "
+                                + timeoutAcquisizioneMs + " ms (" + descriviStato() + ")");
+                    }
+                    inAttesa++;
+                    try {
+                        disponibile.awaitNanos(restante);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Attesa di una connessione interrotta.", e);
+                    } finally {
+                        inAttesa--;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (daCreare) {
+                try {
+                    return avvolgi(creaConnessioneFisica(), System.nanoTime() - inizio);
+                } catch (SQLException | RuntimeException e) {
+                    lock.lock();
+                    try {
+                        totali--;
+                        attive--;
+                        disponibile.signal();
+                    } finally {
+                        lock.unlock();
+                    }
+                    throw e;
+                }
+            }
+
+            // Validazione fuori dal lock: una connessione non valida viene scartata e si riprova
+            if (isScaduta(fisica, System.currentTimeMillis()) || !isValida(fisica)) {
+                scarta(fisica, true);
+                continue;
+            }
+            return avvolgi(fisica, System.nanoTime() - inizio);
+        }
+    }
+
+    /**
+     * Chiude il pool: le connessioni inattive vengono chiuse subito,
+     * quelle in uso alla loro restituzione.
+     */
+    public void chiudi() {
+        List<ConnessioneFisica> daChiudere;
+        lock.lock();
+        try {
+            if (chiuso) {
+                return;
+            }
+            chiuso = true;
+            daChiudere = new ArrayList<>(inattive);
+            totali -= inattive.size();
+            inattive.clear();
+            disponibile.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        manutenzione.shutdownNow();
+        daChiudere.forEach(this::chiudiFisica);
+    }
+
+    /**
+     * @return Numero di connessioni attualmente in uso
+     */
+    public int getConnessioniAttive() {
+        lock.lock();
+        try {
+            return attive;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Numero di connessioni aperte e pronte all'uso
+     */
+    public int getConnessioniInattive() {
+        lock.lock();
+        try {
+            return inattive.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Numero di thread in attesa di una connessione
+     */
+    public int getThreadInAttesa() {
+        lock.lock();
+        try {
+            return inAttesa;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Numero di connessioni fisiche aperte (in uso e inattive)
+     */
+    public int getConnessioniTotali() {
+        lock.lock();
+        try {
+            return totali;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Numero di connessioni fisiche aperte dall'avvio del pool
+     */
+    public long getConnessioniCreate() {
+        return connessioniCreate.get();
+    }
+
+    /**
+     * @return Numero di acquisizioni fallite per timeout dall'avvio del pool
+     */
+    public long getTimeoutAcquisizione() {
+        return timeoutAcquisizione.get();
+    }
+
+    /**
+     * @return Numero massimo di connessioni fisiche del pool
+     */
+    public int getDimensioneMassima() {
+        return dimensioneMassima;
+    }
+
+    /**
+     * @return Descrizione sintetica dello stato del pool
+     */
+    public String descriviStato() {
+        lock.lock();
+        try {
+            return "attive=" + attive + ", inattive=" + inattive.size() + ", inAttesa=" + inAttesa
+                    + ", totali=" + totali + "/" + dimensioneMassima;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ConnessioneFisica creaConnessioneFisica() throws SQLException {
+        Log.debug(() -> "Tentativo connessione a: " + url + " con utente: " + utente);
+        Connection conn = DriverManager.getConnection(url, utente, password);
+        ConnessioneFisica fisica;
+        try {
+            fisica = new ConnessioneFisica(conn);
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        connessioniCreate.incrementAndGet();
+        Log.info("Connessione al database stabilita (" + descriviStato() + ").");
+        return fisica;
+    }
+
+    private boolean isScaduta(ConnessioneFisica fisica, long adesso) {
+        return durataMassimaMs > 0 && adesso - fisica.creataIl >= durataMassimaMs;
+    }
+
+    private boolean isValida(ConnessioneFisica fisica) {
+        if (System.currentTimeMillis() - fisica.ultimoUtilizzo < SOGLIA_VALIDAZIONE_MS) {
+            return true;
+        }
+        try {
+            return fisica.connessione.isValid(timeoutValidazioneSec);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Riconsegna una connessione al pool dopo averne ripristinato lo stato: chiude gli Statement
+     * lasciati aperti, annulla la transazione in corso e riporta autocommit, sola lettura e
+     * livello di isolamento ai valori che la connessione aveva alla creazione.
+     *
+     * @param fisica          La connessione fisica da restituire
+     * @param statement       Gli Statement creati tramite il proxy
+     * @param ripristinaStato true se sola lettura o livello di isolamento sono stati modificati
+     */
+    private void restituisci(ConnessioneFisica fisica, List<Statement> statement, boolean ripristinaStato) {
+        boolean riutilizzabile;
+        try {
+            for (Statement aperto : statement) {
+                aperto.close();
+            }
+            if (!fisica.connessione.getAutoCommit()) {
+                fisica.connessione.rollback();
+                fisica.connessione.setAutoCommit(true);
+            }
+            // Fuori da una transazione, perché Postgres non consente di cambiarli a transazione iniziata
+            if (ripristinaStato) {
+                fisica.connessione.setReadOnly(fisica.readOnlyIniziale);
+                fisica.connessione.setTransactionIsolation(fisica.isolamentoIniziale);
+            }
+            riutilizzabile = !fisica.connessione.isClosed();
+        } catch (SQLException e) {
+            riutilizzabile = false;
+        }
+
+        fisica.ultimoUtilizzo = System.currentTimeMillis();
+        if (!riutilizzabile || isScaduta(fisica, fisica.ultimoUtilizzo)) {
+            scarta(fisica, true);
+            return;
+        }
+
+        lock.lock();
+        try {
+            attive--;
+            if (chiuso) {
+                totali--;
+            } else {
+                // LIFO: la connessione usata più di recente è la più probabilmente valida
+                inattive.offerFirst(fisica);
+                disponibile.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        chiudiFisica(fisica);
+    }
+
+    private void scarta(ConnessioneFisica fisica, boolean eraAttiva) {
+        lock.lock();
+        try {
+            totali--;
+            if (eraAttiva) {
+                attive--;
+            }
+            disponibile.signal();
+        } finally {
+            lock.unlock();
+        }
+        chiudiFisica(fisica);
+    }
+
+    private void chiudiFisica(ConnessioneFisica fisica) {
+        try {
+            fisica.connessione.close();
+        } catch (SQLException e) {
+            Log.errore("Errore nella chiusura di una connessione del pool: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Chiude le connessioni inattive scadute o in eccesso e
+     * riporta le connessioni pronte al minimo configurato.
+     */
+    private void eseguiManutenzione() {
+        List<ConnessioneFisica> daChiudere = new ArrayList<>();
+        int daCreare;
+        lock.lock();
+        try {
+            if (chiuso) {
+                return;
+            }
+            long adesso = System.currentTimeMillis();
+            // Le più vecchie sono in fondo alla coda
+            Iterator<ConnessioneFisica> it = inattive.descendingIterator();
+            while (it.hasNext()) {
+                ConnessioneFisica fisica = it.next();
+                boolean inEccesso = inattive.size() > minimoInattive
+                        && timeoutInattivitaMs > 0 && adesso - fisica.ultimoUtilizzo >= timeoutInattivitaMs;
+                if (inEccesso || isScaduta(fisica, adesso)) {
+                    it.remove();
+                    totali--;
+                    daChiudere.add(fisica);
+                }
+            }
+            daCreare = Math.min(minimoInattive - inattive.size(), dimensioneMassima - totali);
+            if (daCreare > 0) {
+                totali += daCreare;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        daChiudere.forEach(this::chiudiFisica);
+
+        for (int i = 0; i < daCreare; i++) {
+            ConnessioneFisica nuova = null;
+            try {
+                nuova = creaConnessioneFisica();
+            } catch (SQLException e) {
+                Log.errore("Impossibile creare una connessione per il pool: " + e.getMessage());
+            }
+            lock.lock();
+            try {
+                if (nuova == null || chiuso) {
+                    totali--;
+                } else {
+                    inattive.offerLast(nuova);
+                    disponibile.signal();
+                    nuova = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (nuova != null) {
+                chiudiFisica(nuova);
+            }
+        }
+    }
+
+    private static boolean isChiuso(Statement statement) {
+        try {
+            return statement.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Crea il proxy della connessione da consegnare al chiamante.
+     */
+    private Connection avvolgi(ConnessioneFisica fisica, long attesaNanos) {
+        return (Connection) Proxy.newProxyInstance(
+                PoolConnessioni.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new ConnessionePool(fisica, attesaNanos));
+    }
+
+    /**
+     * Intercetta close() per riconsegnare la connessione al pool.
+     * Dopo la restituzione ogni altra chiamata fallisce.
+     * Tiene l'elenco degli Statement creati, chiusi alla restituzione se il chiamante non l'ha fatto,
+     * e registra se sola lettura o livello di isolamento sono stati modificati.
+     * Se il registro delle query è attivo, o durante una registrazione JFR con l'evento delle istruzioni SQL
+     * abilitato, gli Statement creati vengono avvolti da {@link StatementProfilato}.
+     */
+    private final class ConnessionePool implements InvocationHandler {
+        private final ConnessioneFisica fisica;
+        private final long attesaNanos;
+        private final long acquisita = System.nanoTime();
+        private final List<Statement> statement = new ArrayList<>();
+        private boolean statoModificato = false;
+        private boolean restituita = false;
+
+        private ConnessionePool(ConnessioneFisica fisica, long attesaNanos) {
+            this.fisica = fisica;
+            this.attesaNanos = attesaNanos;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!restituita) {
+                        restituita = true;
+                        MetricheComandi.aggiungiTempoDatabase(System.nanoTime() - acquisita);
+                        restituisci(fisica, statement, statoModificato);
+                        statement.clear();
+                    }
+                    return null;
+                case "isClosed":
+                    return restituita || fisica.connessione.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "ConnessionePool[" + fisica.connessione + (restituita ? ", restituita" : "") + "]";
+                default:
+                    break;
+            }
+
+            if (restituita) {
+                throw new SQLException("Connessione già restituita al pool.");
+            }
+            if (method.getName().equals("setReadOnly") || method.getName().equals("setTransactionIsolation")) {
+                statoModificato = true;
+            }
+            Object risultato;
+            try {
+                risultato = method.invoke(fisica.connessione, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (!(risultato instanceof Statement creato)) {
+                return risultato;
+            }
+            if (statement.size() >= STATEMENT_PRIMA_DI_PULIRE) {
+                statement.removeIf(PoolConnessioni::isChiuso);
+            }
+            statement.add(creato);
+            if (StatementProfilato.isAttivo()) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String testo ? testo : null;
+                return StatementProfilato.avvolgi(creato, method.getReturnType(), sql, attesaNanos);
+            }
+            return creato;
+        }
+    }
+}
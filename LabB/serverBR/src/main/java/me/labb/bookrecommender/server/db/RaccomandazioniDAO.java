@@ -0,0 +1,120 @@
+package me.labb.bookrecommender.server.db;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Classe DAO che legge i dati usati per costruire il modello di raccomandazione:
+ * valutazioni, contenuto delle librerie e consigli degli utenti.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class RaccomandazioniDAO {
+    private static final int DIMENSIONE_BLOCCO = 10000;
+
+    private final DatabaseManager dbManager;
+
+    /**
+     * Valutazione media (sui cinque criteri) data da un utente a un libro.
+     *
+     * @param userID  ID dell'utente
+     * @param libroID ID del libro
+     * @param media   Media dei punteggi presenti
+     */
+    public record VotoMedio(int userID, int libroID, double media) {
+    }
+
+    /**
+     * Presenza di un libro in una libreria.
+     *
+     * @param libreriaID ID della libreria
+     * @param libroID    ID del libro
+     */
+    public record ElementoLibreria(int libreriaID, int libroID) {
+    }
+
+    /**
+     * Consigli tra due libri, aggregati sugli utenti.
+     *
+     * @param libroRiferimentoID ID del libro di riferimento
+     * @param libroSuggeritoID   ID del libro suggerito
+     * @param numeroUtenti       Numero di utenti diversi che hanno dato il consiglio
+     */
+    public record ArcoConsiglio(int libroRiferimentoID, int libroSuggeritoID, int numeroUtenti) {
+    }
+
+    /**
+     * Costruttore della classe RaccomandazioniDAO.
+     */
+    public RaccomandazioniDAO() {
+        this.dbManager = DatabaseManager.getInstance();
+    }
+
+    /**
+     * Ottiene la media dei punteggi di ogni valutazione, ordinate per utente.
+     *
+     * @return Lista delle valutazioni medie
+     * @throws SQLException In caso di errori SQL
+     */
+    public List<VotoMedio> getVotiMedi() throws SQLException {
+        String sql = """
+                SELECT "UserID", "LibroID",
+                       (SELECT AVG(s) FROM (VALUES ("ScoreStile"), ("ScoreContenuto"), ("ScoreGradevolezza"),
+                                                   ("ScoreOriginalita"), ("ScoreEdizione")) AS p(s)) AS "Media"
+                FROM "ValutazioniLibri"
+                ORDER BY "UserID"
+                """;
+        List<VotoMedio> voti = new ArrayList<>();
+        leggi(sql, rs -> {
+            double media = rs.getDouble("Media");
+            if (!rs.wasNull()) {
+                voti.add(new VotoMedio(rs.getInt("UserID"), rs.getInt("LibroID"), media));
+            }
+        });
+        return voti;
+    }
+
+    /**
+     * Ottiene il contenuto di tutte le librerie, ordinato per libreria.
+     *
+     * @return Lista delle coppie libreria-libro
+     * @throws SQLException In caso di errori SQL
+     */
+    public List<ElementoLibreria> getContenutiLibrerie() throws SQLException {
+        String sql = """
+                SELECT "LibreriaID", "LibroID" FROM "ContenutoLibreria"
+                ORDER BY "LibreriaID"
+                """;
+        List<ElementoLibreria> elementi = new ArrayList<>();
+        leggi(sql, rs -> elementi.add(new ElementoLibreria(rs.getInt("LibreriaID"), rs.getInt("LibroID"))));
+        return elementi;
+    }
+
+    /**
+     * Ottiene i consigli tra libri, con il numero di utenti che li hanno dati.
+     *
+     * @return Lista degli archi di consiglio
+     * @throws SQLException In caso di errori SQL
+     */
+    public List<ArcoConsiglio> getArchiConsigli() throws SQLException {
+        String sql = """
+                SELECT "LibroRiferimentoID", "LibroSuggeritoID", COUNT(DISTINCT "UserID") AS "NumeroUtenti"
+                FROM "ConsigliLibri"
+                GROUP BY "LibroRiferimentoID", "LibroSuggeritoID"
+                """;
+        List<ArcoConsiglio> archi = new ArrayList<>();
+        leggi(sql, rs -> archi.add(new ArcoConsiglio(
+                rs.getInt("LibroRiferimentoID"), rs.getInt("LibroSuggeritoID"), rs.getInt("NumeroUtenti"))));
+        return archi;
+    }
+
+    /**
+     * Esegue una query leggendo il risultato a blocchi, senza caricarlo tutto nel driver.
+     */
+    private void leggi(String sql, LettoreRiga lettore) throws SQLException {
+        dbManager.leggiABlocchi(sql, DIMENSIONE_BLOCCO, lettore);
+    }
+}
@@ -0,0 +1,267 @@
+package me.labb.bookrecommender.server.db;
+
+import me.labb.bookrecommender.server.log.Log;
+
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tempi delle istruzioni SQL eseguite sulle connessioni del pool, aggregati per testo SQL.
+ * <p>
+ * Il tempo di un'istruzione è quello passato nelle chiamate JDBC: l'esecuzione più, per le query,
+ * le chiamate a next() sul ResultSet (esclusa l'elaborazione delle righe tra una chiamata e l'altra).
+ * Le istruzioni oltre la soglia vengono scritte nel log con i parametri oscurati (solo il tipo)
+ * e, per le prime occorrenze di ogni SELECT, il piano di EXPLAIN (ANALYZE, BUFFERS) viene salvato
+ * in un file a rotazione da {@link CatturaExplain}.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public final class RegistroQuery {
+
+    // Oltre questo numero di testi SQL diversi le nuove istruzioni non vengono aggregate
+    private static final int QUERY_MASSIME = 256;
+    private static final int LUNGHEZZA_MASSIMA_SQL = 500;
+
+    private static final ConcurrentHashMap<String, StatisticheQuery> query = new ConcurrentHashMap<>();
+    private static final LongAdder nonAggregate = new LongAdder();
+
+    private static volatile boolean attivo = false;
+    private static volatile long sogliaNanos = Long.MAX_VALUE;
+    private static volatile int explainPerQuery = 0;
+    private static CatturaExplain cattura = null;
+
+    private static final class StatisticheQuery {
+        private final String idSql;
+        private final LongAdder esecuzioni = new LongAdder();
+        private final LongAdder errori = new LongAdder();
+        private final LongAdder lente = new LongAdder();
+        private final LongAdder righe = new LongAdder();
+        private final LongAdder tempoTotale = new LongAdder();
+        private final LongAccumulator massimo = new LongAccumulator(Math::max, 0);
+        private final AtomicInteger explainRichiesti = new AtomicInteger();
+
+        private StatisticheQuery(String idSql) {
+            this.idSql = idSql;
+        }
+    }
+
+    /**
+     * Vista in sola lettura delle statistiche di un'istruzione SQL.
+     *
+     * @param idSql            Identificativo del testo SQL, lo stesso degli eventi JFR
+     * @param sql              Il testo SQL, con gli spazi compattati
+     * @param esecuzioni       Numero di esecuzioni
+     * @param errori           Esecuzioni terminate con un'eccezione
+     * @param lente            Esecuzioni oltre la soglia
+     * @param righe            Righe lette o modificate in totale
+     * @param tempoTotaleNanos Tempo complessivo nelle chiamate JDBC
+     * @param massimoNanos     Esecuzione più lunga
+     */
+    public record Query(String idSql, String sql, long esecuzioni, long errori, long lente, long righe,
+                        long tempoTotaleNanos, long massimoNanos) {
+    }
+
+    private RegistroQuery() {
+    }
+
+    /**
+     * Attiva la registrazione dei tempi. Da chiamare all'avvio del server.
+     *
+     * @param sogliaMs        Durata oltre la quale un'istruzione viene scritta nel log
+     * @param explainPerQuery Per quante occorrenze lente di ogni SELECT salvare il piano, 0 per nessuna
+     * @param fileExplain     File in cui salvare i piani
+     * @param byteMassimi     Dimensione oltre la quale il file viene ruotato
+     * @param numeroFile      File da conservare, compreso quello corrente
+     */
+    public static synchronized void attiva(long sogliaMs, int explainPerQuery, Path fileExplain,
+                                           long byteMassimi, int numeroFile) {
+        sogliaNanos = TimeUnit.MILLISECONDS.toNanos(sogliaMs);
+        RegistroQuery.explainPerQuery = explainPerQuery;
+        if (explainPerQuery > 0 && cattura == null) {
+            cattura = new CatturaExplain(fileExplain, byteMassimi, numeroFile);
+        }
+        attivo = true;
+        Log.info("Log delle query lente attivo (soglia " + sogliaMs + " ms"
+                + (explainPerQuery > 0 ? ", piani EXPLAIN in " + fileExplain.toAbsolutePath() : "") + ").");
+    }
+
+    /**
+     * Ferma la cattura dei piani ancora in coda. Da chiamare all'arresto del server.
+     */
+    public static synchronized void arresta() {
+        attivo = false;
+        if (cattura != null) {
+            cattura.arresta();
+            cattura = null;
+        }
+    }
+
+    /**
+     * @return true se le istruzioni SQL vanno cronometrate
+     */
+    public static boolean isAttivo() {
+        return attivo;
+    }
+
+    /**
+     * Registra un'istruzione eseguita.
+     *
+     * @param sql         Il testo SQL
+     * @param durataNanos Il tempo passato nelle chiamate JDBC
+     * @param righe       Righe lette o modificate, -1 se non note
+     * @param errore      true se l'esecuzione è terminata con un'eccezione
+     * @param parametri   I parametri impostati, per indice: metodo setXxx e argomenti
+     */
+    static void registra(String sql, long durataNanos, long righe, boolean errore, TreeMap<Integer, Object[]> parametri) {
+        if (!attivo) {
+            return;
+        }
+        StatisticheQuery statistiche = statistiche(sql);
+        if (statistiche != null) {
+            statistiche.esecuzioni.increment();
+            statistiche.tempoTotale.add(durataNanos);
+            statistiche.massimo.accumulate(durataNanos);
+            if (righe > 0) {
+                statistiche.righe.add(righe);
+            }
+            if (errore) {
+                statistiche.errori.increment();
+            }
+        }
+        if (durataNanos < sogliaNanos) {
+            return;
+        }
+
+        String idSql = statistiche != null ? statistiche.idSql : StatementProfilato.idSql(sql);
+        if (statistiche != null) {
+            statistiche.lente.increment();
+        }
+        Log.avviso("Query lenta: " + TimeUnit.NANOSECONDS.toMillis(durataNanos) + " ms, "
+                + (righe >= 0 ? righe + " righe" : "righe non note") + (errore ? ", con errore" : "")
+                + ", id " + idSql + ": " + compatta(sql) + descriviParametri(parametri));
+
+        CatturaExplain corrente = cattura;
+        if (corrente != null && !errore && statistiche != null && CatturaExplain.isSpiegabile(sql)
+                && statistiche.explainRichiesti.getAndIncrement() < explainPerQuery) {
+            corrente.richiedi(idSql, sql, durataNanos, new TreeMap<>(parametri));
+        }
+    }
+
+    /**
+     * @param numero Quante istruzioni restituire al massimo
+     * @return Le istruzioni con il maggior tempo complessivo, in ordine decrescente
+     */
+    public static List<Query> piuCostose(int numero) {
+        List<Query> elenco = new ArrayList<>();
+        for (Map.Entry<String, StatisticheQuery> voce : query.entrySet()) {
+            StatisticheQuery statistiche = voce.getValue();
+            elenco.add(new Query(statistiche.idSql, compatta(voce.getKey()), statistiche.esecuzioni.sum(),
+                    statistiche.errori.sum(), statistiche.lente.sum(), statistiche.righe.sum(),
+                    statistiche.tempoTotale.sum(), statistiche.massimo.get()));
+        }
+        elenco.sort(Comparator.comparingLong(Query::tempoTotaleNanos).reversed());
+        return elenco.size() > numero ? elenco.subList(0, numero) : elenco;
+    }
+
+    /**
+     * @param numero Quante istruzioni restituire al massimo
+     * @return Le istruzioni più costose e la soglia, per la risposta di STATS
+     */
+    public static Map<String, Object> istantanea(int numero) {
+        List<Map<String, Object>> elenco = new ArrayList<>();
+        for (Query q : piuCostose(numero)) {
+            Map<String, Object> dati = new LinkedHashMap<>();
+            dati.put("idSql", q.idSql());
+            dati.put("sql", q.sql());
+            dati.put("esecuzioni", q.esecuzioni());
+            dati.put("errori", q.errori());
+            dati.put("lente", q.lente());
+            dati.put("righe", q.righe());
+            dati.put("tempoTotaleMs", TimeUnit.NANOSECONDS.toMillis(q.tempoTotaleNanos()));
+            dati.put("mediaMicros", q.esecuzioni() == 0 ? 0 : q.tempoTotaleNanos() / q.esecuzioni() / 1000);
+            dati.put("maxMicros", q.massimoNanos() / 1000);
+            elenco.add(dati);
+        }
+
+        Map<String, Object> dati = new LinkedHashMap<>();
+        dati.put("sogliaMs", TimeUnit.NANOSECONDS.toMillis(sogliaNanos));
+        dati.put("istruzioniDistinte", query.size());
+        dati.put("nonAggregate", nonAggregate.sum());
+        dati.put("piuCostose", elenco);
+        return dati;
+    }
+
+    /**
+     * @return Riepilogo testuale per il log, una riga per istruzione
+     */
+    public static String descrivi(int numero) {
+        StringBuilder sb = new StringBuilder("Query con il maggior tempo complessivo:");
+        for (Query q : piuCostose(numero)) {
+            sb.append("\n    ").append(q.idSql())
+                    .append(" esecuzioni=").append(q.esecuzioni())
+                    .append(" totale=").append(TimeUnit.NANOSECONDS.toMillis(q.tempoTotaleNanos()))
+                    .append("ms max=").append(TimeUnit.NANOSECONDS.toMillis(q.massimoNanos()))
+                    .append("ms lente=").append(q.lente())
+                    .append(' ').append(q.sql().length() > 120 ? q.sql().substring(0, 120) + "..." : q.sql());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return Il testo SQL su una riga, troncato se troppo lungo
+     */
+    static String compatta(String sql) {
+        String riga = sql.strip().replaceAll("\\s+", " ");
+        return riga.length() > LUNGHEZZA_MASSIMA_SQL ? riga.substring(0, LUNGHEZZA_MASSIMA_SQL) + "..." : riga;
+    }
+
+    /**
+     * @return I tipi dei parametri, senza i valori: possono contenere dati personali
+     */
+    static String descriviParametri(TreeMap<Integer, Object[]> parametri) {
+        if (parametri.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(" [");
+        for (Map.Entry<Integer, Object[]> voce : parametri.entrySet()) {
+            if (sb.length() > 2) {
+                sb.append(", ");
+            }
+            Method metodo = (Method) voce.getValue()[0];
+            Object[] argomenti = (Object[]) voce.getValue()[1];
+            String tipo = metodo.getName().substring(3);
+            if (tipo.equals("Null") || argomenti[1] == null) {
+                tipo = "NULL";
+            } else if (tipo.equals("Object")) {
+                tipo = argomenti[1].getClass().getSimpleName();
+            }
+            sb.append('$').append(voce.getKey()).append('=').append(tipo);
+        }
+        return sb.append(']').toString();
+    }
+
+    private static StatisticheQuery statistiche(String sql) {
+        StatisticheQuery statistiche = query.get(sql);
+        if (statistiche != null) {
+            return statistiche;
+        }
+        if (query.size() >= QUERY_MASSIME) {
+            nonAggregate.increment();
+            return null;
+        }
+        return query.computeIfAbsent(sql, k -> new StatisticheQuery(StatementProfilato.idSql(k)));
+    }
+}
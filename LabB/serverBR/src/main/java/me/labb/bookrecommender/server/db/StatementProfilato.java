@@ -0,0 +1,195 @@
+package me.labb.bookrecommender.server.db;
+
+import me.labb.bookrecommender.server.profilazione.EventoStatement;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.TreeMap;
+
+/**
+ * Avvolge gli Statement di una connessione del pool per cronometrare ogni esecuzione:
+ * il tempo passato nelle chiamate JDBC va a {@link RegistroQuery} e, durante una registrazione JFR,
+ * viene emesso un {@link EventoStatement}. Le query restano aperte finché il ResultSet (o lo Statement)
+ * non viene chiuso, contando le righe lette con next(). I parametri impostati con i metodi setXxx
+ * vengono conservati per descriverli nel log e per rieseguire la query con EXPLAIN.
+ * Il pool avvolge gli Statement solo se il registro delle query è attivo o l'evento è abilitato:
+ * altrimenti le chiamate JDBC non passano da alcun proxy.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+final class StatementProfilato implements InvocationHandler {
+
+    private final Statement statement;
+    private final String sqlPreparato;
+    private final long attesaConnessione;
+
+    // Parametri per indice: metodo setXxx e relativi argomenti
+    private final TreeMap<Integer, Object[]> parametri = new TreeMap<>();
+
+    // Query eseguita il cui ResultSet non è ancora stato chiuso
+    private EventoStatement queryAperta;
+    private String sqlQueryAperta;
+    private long righeLette;
+    private long tempoQuery;
+
+    private StatementProfilato(Statement statement, String sqlPreparato, long attesaConnessione) {
+        this.statement = statement;
+        this.sqlPreparato = sqlPreparato;
+        this.attesaConnessione = attesaConnessione;
+    }
+
+    /**
+     * @return true se il registro delle query è attivo o una registrazione JFR raccoglie gli eventi delle istruzioni SQL
+     */
+    static boolean isAttivo() {
+        return RegistroQuery.isAttivo() || new EventoStatement().isEnabled();
+    }
+
+    /**
+     * @param statement         Lo Statement restituito dalla connessione fisica
+     * @param interfaccia       Il tipo restituito dal metodo della connessione (Statement, PreparedStatement, ...)
+     * @param sqlPreparato      Il testo SQL per prepareStatement e prepareCall, null per createStatement
+     * @param attesaConnessione Nanosecondi impiegati per ottenere la connessione dal pool
+     * @return Lo Statement avvolto
+     */
+    static Object avvolgi(Statement statement, Class<?> interfaccia, String sqlPreparato, long attesaConnessione) {
+        return Proxy.newProxyInstance(StatementProfilato.class.getClassLoader(), new Class<?>[]{interfaccia},
+                new StatementProfilato(statement, sqlPreparato, attesaConnessione));
+    }
+
+    /**
+     * @return Identificativo breve e stabile di un testo SQL
+     */
+    static String idSql(String sql) {
+        return Integer.toHexString(sql.hashCode());
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String nome = method.getName();
+        if (nome.equals("close")) {
+            chiudiQuery();
+        } else if (nome.startsWith("execute")) {
+            return esegui(method, args);
+        } else if (nome.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer indice) {
+            parametri.put(indice, new Object[]{method, args});
+        } else if (nome.equals("clearParameters")) {
+            parametri.clear();
+        } else if (nome.equals("equals")) {
+            return proxy == args[0];
+        } else if (nome.equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        }
+        return chiama(statement, method, args);
+    }
+
+    private Object esegui(Method method, Object[] args) throws Throwable {
+        chiudiQuery();
+        String sql = sqlPreparato != null ? sqlPreparato
+                : args != null && args.length > 0 && args[0] instanceof String testo ? testo : "";
+        EventoStatement evento = new EventoStatement();
+        evento.begin();
+        long inizio = System.nanoTime();
+        Object risultato;
+        try {
+            risultato = chiama(statement, method, args);
+        } catch (Throwable e) {
+            termina(evento, sql, -1, System.nanoTime() - inizio, true);
+            throw e;
+        }
+        long durata = System.nanoTime() - inizio;
+
+        if (risultato instanceof ResultSet resultSet) {
+            queryAperta = evento;
+            sqlQueryAperta = sql;
+            righeLette = 0;
+            tempoQuery = durata;
+            return Proxy.newProxyInstance(StatementProfilato.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                    new ResultSetProfilato(resultSet));
+        }
+
+        long righe = -1;
+        if (risultato instanceof Integer n) {
+            righe = n;
+        } else if (risultato instanceof Long n) {
+            righe = n;
+        } else if (risultato instanceof int[] conteggi) {
+            righe = 0;
+            for (int n : conteggi) {
+                righe += Math.max(n, 0);
+            }
+        }
+        termina(evento, sql, righe, durata, false);
+        return risultato;
+    }
+
+    private void chiudiQuery() {
+        if (queryAperta != null) {
+            EventoStatement evento = queryAperta;
+            queryAperta = null;
+            termina(evento, sqlQueryAperta, righeLette, tempoQuery, false);
+        }
+    }
+
+    private void termina(EventoStatement evento, String sql, long righe, long durataNanos, boolean errore) {
+        evento.end();
+        if (evento.shouldCommit()) {
+            evento.idSql = idSql(sql);
+            evento.sql = sql;
+            evento.righe = righe;
+            evento.attesaConnessione = attesaConnessione;
+            evento.errore = errore;
+            evento.commit();
+        }
+        RegistroQuery.registra(sql, durataNanos, righe, errore, parametri);
+    }
+
+    /**
+     * Conta le righe lette e il tempo passato in next(), e chiude l'evento della query alla chiusura del ResultSet.
+     */
+    private final class ResultSetProfilato implements InvocationHandler {
+        private final ResultSet resultSet;
+
+        private ResultSetProfilato(ResultSet resultSet) {
+            this.resultSet = resultSet;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next":
+                    long inizio = System.nanoTime();
+                    Object successiva = chiama(resultSet, method, args);
+                    tempoQuery += System.nanoTime() - inizio;
+                    if (Boolean.TRUE.equals(successiva)) {
+                        righeLette++;
+                    }
+                    return successiva;
+                case "close":
+                    chiudiQuery();
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            return chiama(resultSet, method, args);
+        }
+    }
+
+    private static Object chiama(Object destinazione, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(destinazione, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
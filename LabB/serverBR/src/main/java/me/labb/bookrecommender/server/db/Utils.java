@@ -1,5 +1,6 @@
 package me.labb.bookrecommender.server.db;
 
+import me.labb.bookrecommender.server.log.Log;
 import me.labb.bookrecommender.server.oggetti.Libro;
 
 import java.sql.Connection;
@@ -34,7 +35,7 @@ public class Utils {
      */
     public int salvaLibri(List<Libro> libri) throws SQLException {
         if (libri == null || libri.isEmpty()) {
-            System.out.println("Nessun libro da salvare nel database.");
+            Log.info("Nessun libro da salvare nel database.");
             return 0;
         }
 
@@ -74,26 +75,27 @@ public class Utils {
                 }
             }
 
-            System.out.println("Inseriti " + contatoreSalvati + " libri nel database su " + libri.size() + " totali.");
+            Log.info("Inseriti " + contatoreSalvati + " libri nel database su " + libri.size() + " totali.");
+            LibroDAO.notificaCatalogoModificato();
             return contatoreSalvati;
 
         } catch (SQLException e) {
             if (connection != null) {
                 try {
                     connection.rollback();
-                    System.err.println("Transazione annullata a causa di un errore.");
+                    Log.errore("Transazione annullata a causa di un errore.");
                 } catch (SQLException ex) {
-                    System.err.println("Errore durante il rollback: " + ex.getMessage());
+                    Log.errore("Errore durante il rollback: " + ex.getMessage());
                 }
             }
-            System.err.println("Errore durante il salvataggio dei libri: " + e.getMessage());
+            Log.errore("Errore durante il salvataggio dei libri: " + e.getMessage());
             throw e;
         } finally {
             if (statement != null) {
                 try {
                     statement.close();
                 } catch (SQLException e) {
-                    System.err.println("Errore durante la chiusura dello statement: " + e.getMessage());
+                    Log.errore("Errore durante la chiusura dello statement: " + e.getMessage());
                 }
             }
             if (connection != null) {
@@ -101,7 +103,7 @@ public class Utils {
                     connection.setAutoCommit(true);
                     connection.close();
                 } catch (SQLException e) {
-                    System.err.println("Errore durante la chiusura della connessione: " + e.getMessage());
+                    Log.errore("Errore durante la chiusura della connessione: " + e.getMessage());
                 }
             }
         }
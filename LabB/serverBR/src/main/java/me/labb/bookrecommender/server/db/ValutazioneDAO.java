@@ -1,6 +1,9 @@
 package me.labb.bookrecommender.server.db;
 
+import me.labb.bookrecommender.server.log.Log;
+import me.labb.bookrecommender.server.oggetti.RiepilogoValutazioni;
 import me.labb.bookrecommender.server.oggetti.Valutazione;
+import me.labb.bookrecommender.server.utils.Cursore;
 
 import java.sql.*;
 import java.time.ZoneId;
@@ -18,6 +21,12 @@ import java.util.Optional;
  * @author Manicone Giorgia 758716 VA
  */
 public class ValutazioneDAO {
+    // null finché non è stato verificato se gli aggregati delle valutazioni sono disponibili
+    private static volatile Boolean aggregatiDisponibili = null;
+
+    // Righe lette dal database per volta negli elenchi di un utente
+    private static final int DIMENSIONE_BLOCCO_LETTURA = 500;
+
     private final DatabaseManager dbManager;
 
     /**
@@ -28,6 +37,10 @@ public class ValutazioneDAO {
     }
 
     /**
+     * Salva la valutazione di un utente per un libro, sostituendo quella precedente se esiste.
+     * Il salvataggio è un'unica istruzione INSERT ... ON CONFLICT sul vincolo (UserID, LibroID),
+     * quindi due salvataggi concorrenti dello stesso utente non possono creare duplicati.
+     *
      * @param userID            ID dell'utente che valuta
      * @param libroID           ID del libro valutato
      * @param scoreStile        Punteggio per lo stile (1-5)
@@ -40,7 +53,7 @@ public class ValutazioneDAO {
      * @param noteOriginalita   Note sull'originalità
      * @param scoreEdizione     Punteggio per l'edizione (1-5)
      * @param noteEdizione      Note sull'edizione
-     * @return ID della valutazione appena creata
+     * @return ID della valutazione creata o aggiornata
      * @throws SQLException In caso di errori SQL
      */
     public int salvaValutazione(int userID, int libroID,
@@ -49,87 +62,28 @@ public class ValutazioneDAO {
                                 short scoreGradevolezza, String noteGradevolezza,
                                 short scoreOriginalita, String noteOriginalita,
                                 short scoreEdizione, String noteEdizione) throws SQLException {
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-
-        try {
-            conn = dbManager.getConnection();
-
-            // Disabilita autocommit per gestire la transazione manualmente
-            conn.setAutoCommit(false);
-
-            System.out.println("INFO: Salvando valutazione per userID=" + userID + ", libroID=" + libroID);
-
-            // Verifica se esiste già una valutazione per questo utente e libro
-            String checkSql = """
-                    SELECT "ValutazioneID" FROM "ValutazioniLibri"
-                    WHERE "UserID" = ? AND "LibroID" = ?
-                    """;
-
-            try (PreparedStatement checkStmt = conn.prepareStatement(checkSql)) {
-                checkStmt.setInt(1, userID);
-                checkStmt.setInt(2, libroID);
-
-                try (ResultSet checkRs = checkStmt.executeQuery()) {
-                    if (checkRs.next()) {
-                        // Aggiorna la valutazione esistente
-                        int valutazioneID = checkRs.getInt("ValutazioneID");
-                        System.out.println("INFO: Aggiornando valutazione esistente ID=" + valutazioneID);
-
-                        String updateSql = """
-                                UPDATE "ValutazioniLibri" SET
-                                "ScoreStile" = ?, "NoteStile" = ?,
-                                "ScoreContenuto" = ?, "NoteContenuto" = ?,
-                                "ScoreGradevolezza" = ?, "NoteGradevolezza" = ?,
-                                "ScoreOriginalita" = ?, "NoteOriginalita" = ?,
-                                "ScoreEdizione" = ?, "NoteEdizione" = ?,
-                                "DataValutazione" = CURRENT_TIMESTAMP
-                                WHERE "ValutazioneID" = ?
-                                """;
-
-                        try (PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
-                            updateStmt.setShort(1, scoreStile);
-                            updateStmt.setString(2, noteStile);
-                            updateStmt.setShort(3, scoreContenuto);
-                            updateStmt.setString(4, noteContenuto);
-                            updateStmt.setShort(5, scoreGradevolezza);
-                            updateStmt.setString(6, noteGradevolezza);
-                            updateStmt.setShort(7, scoreOriginalita);
-                            updateStmt.setString(8, noteOriginalita);
-                            updateStmt.setShort(9, scoreEdizione);
-                            updateStmt.setString(10, noteEdizione);
-                            updateStmt.setInt(11, valutazioneID);
-
-                            int rowsAffected = updateStmt.executeUpdate();
-                            System.out.println("INFO: Update eseguito, righe modificate: " + rowsAffected);
-
-                            // Commit della transazione
-                            conn.commit();
-                            System.out.println("INFO: Transazione di aggiornamento committata con successo");
-
-                            return valutazioneID;
-                        }
-                    }
-                }
-            }
-
-            // Inserisci una nuova valutazione
-            System.out.println("INFO: Inserendo nuova valutazione");
-            String insertSql = """
-                    INSERT INTO "ValutazioniLibri" (
-                        "UserID", "LibroID",
-                        "ScoreStile", "NoteStile",
-                        "ScoreContenuto", "NoteContenuto",
-                        "ScoreGradevolezza", "NoteGradevolezza",
-                        "ScoreOriginalita", "NoteOriginalita",
-                        "ScoreEdizione", "NoteEdizione",
-                        "DataValutazione"
-                    ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)
-                    RETURNING "ValutazioneID"
-                    """;
-
-            stmt = conn.prepareStatement(insertSql);
+        String sql = """
+                INSERT INTO "ValutazioniLibri" (
+                    "UserID", "LibroID",
+                    "ScoreStile", "NoteStile",
+                    "ScoreContenuto", "NoteContenuto",
+                    "ScoreGradevolezza", "NoteGradevolezza",
+                    "ScoreOriginalita", "NoteOriginalita",
+                    "ScoreEdizione", "NoteEdizione",
+                    "DataValutazione"
+                ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)
+                ON CONFLICT ("UserID", "LibroID") DO UPDATE SET
+                    "ScoreStile" = EXCLUDED."ScoreStile", "NoteStile" = EXCLUDED."NoteStile",
+                    "ScoreContenuto" = EXCLUDED."ScoreContenuto", "NoteContenuto" = EXCLUDED."NoteContenuto",
+                    "ScoreGradevolezza" = EXCLUDED."ScoreGradevolezza", "NoteGradevolezza" = EXCLUDED."NoteGradevolezza",
+                    "ScoreOriginalita" = EXCLUDED."ScoreOriginalita", "NoteOriginalita" = EXCLUDED."NoteOriginalita",
+                    "ScoreEdizione" = EXCLUDED."ScoreEdizione", "NoteEdizione" = EXCLUDED."NoteEdizione",
+                    "DataValutazione" = CURRENT_TIMESTAMP
+                RETURNING "ValutazioneID"
+                """;
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, userID);
             stmt.setInt(2, libroID);
             stmt.setShort(3, scoreStile);
@@ -143,43 +97,15 @@ public class ValutazioneDAO {
             stmt.setShort(11, scoreEdizione);
             stmt.setString(12, noteEdizione);
 
-            rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                int newValutazioneID = rs.getInt(1);
-                System.out.println("INFO: Nuova valutazione inserita con ID=" + newValutazioneID);
-
-                // Commit della transazione
-                conn.commit();
-                System.out.println("INFO: Transazione di inserimento committata con successo");
-
-                return newValutazioneID;
-            } else {
-                conn.rollback();
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
                 throw new SQLException("Errore nel salvataggio della valutazione, nessun ID ritornato");
             }
         } catch (SQLException e) {
-            System.err.println("ERRORE: Eccezione SQL durante il salvataggio della valutazione: " + e.getMessage());
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                    System.out.println("INFO: Transazione rollback eseguito");
-                } catch (SQLException rollbackEx) {
-                    System.err.println("ERRORE: Impossibile eseguire rollback: " + rollbackEx.getMessage());
-                }
-            }
+            Log.errore("Eccezione SQL durante il salvataggio della valutazione: " + e.getMessage());
             throw e;
-        } finally {
-            try {
-                if (rs != null) rs.close();
-                if (stmt != null) stmt.close();
-                if (conn != null) {
-                    conn.setAutoCommit(true); // Ripristina autocommit
-                    conn.close();
-                }
-            } catch (SQLException e) {
-                System.err.println("ERRORE: Errore nella chiusura delle risorse: " + e.getMessage());
-            }
         }
     }
 
@@ -208,24 +134,7 @@ public class ValutazioneDAO {
             rs = stmt.executeQuery();
 
             if (rs.next()) {
-                Timestamp ts = rs.getTimestamp("DataValutazione");
-                ZonedDateTime dataValutazione = (ts != null) ? ts.toInstant().atZone(ZoneId.systemDefault()) : null;
-                Valutazione valutazione = new Valutazione(
-                        rs.getInt("ValutazioneID"),
-                        rs.getInt("UserID"),
-                        rs.getInt("LibroID"),
-                        rs.getShort("ScoreStile"),
-                        rs.getString("NoteStile"),
-                        rs.getShort("ScoreContenuto"),
-                        rs.getString("NoteContenuto"),
-                        rs.getShort("ScoreGradevolezza"),
-                        rs.getString("NoteGradevolezza"),
-                        rs.getShort("ScoreOriginalita"),
-                        rs.getString("NoteOriginalita"),
-                        rs.getShort("ScoreEdizione"),
-                        rs.getString("NoteEdizione"),
-                        dataValutazione
-                );
+                Valutazione valutazione = mappaValutazione(rs);
                 return Optional.of(valutazione);
             }
 
@@ -245,52 +154,51 @@ public class ValutazioneDAO {
      * @throws SQLException In caso di errori SQL
      */
     public List<Valutazione> getValutazioniUtente(int userID) throws SQLException {
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
         List<Valutazione> valutazioni = new ArrayList<>();
+        leggiValutazioniUtente(userID, rs -> valutazioni.add(mappaValutazione(rs)));
+        return valutazioni;
+    }
 
-        try {
-            conn = dbManager.getConnection();
-            String sql = """
-                    SELECT * FROM "ValutazioniLibri"
-                    WHERE "UserID" = ?
-                    ORDER BY "DataValutazione" DESC
-                    """;
-
-            stmt = conn.prepareStatement(sql);
-            stmt.setInt(1, userID);
-
-            rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                Timestamp ts = rs.getTimestamp("DataValutazione");
-                ZonedDateTime dataValutazione = (ts != null) ? ts.toInstant().atZone(ZoneId.systemDefault()) : null;
-                Valutazione valutazione = new Valutazione(
-                        rs.getInt("ValutazioneID"),
-                        rs.getInt("UserID"),
-                        rs.getInt("LibroID"),
-                        rs.getShort("ScoreStile"),
-                        rs.getString("NoteStile"),
-                        rs.getShort("ScoreContenuto"),
-                        rs.getString("NoteContenuto"),
-                        rs.getShort("ScoreGradevolezza"),
-                        rs.getString("NoteGradevolezza"),
-                        rs.getShort("ScoreOriginalita"),
-                        rs.getString("NoteOriginalita"),
-                        rs.getShort("ScoreEdizione"),
-                        rs.getString("NoteEdizione"),
-                        dataValutazione
-                );
-                valutazioni.add(valutazione);
-            }
+    /**
+     * Legge le valutazioni di un utente, dalla più recente, passandole al lettore man mano che
+     * arrivano dal database. Oltre alle colonne di "ValutazioniLibri" ogni riga contiene
+     * "TitoloLibro" (null se il libro non esiste più).
+     *
+     * @param userID  ID dell'utente
+     * @param lettore Riceve ogni riga
+     * @throws SQLException In caso di errori SQL
+     */
+    public void leggiValutazioniUtente(int userID, LettoreRiga lettore) throws SQLException {
+        String sql = """
+                SELECT v.*, l."Titolo" AS "TitoloLibro"
+                FROM "ValutazioniLibri" v
+                LEFT JOIN "Libri" l ON l."LibroID" = v."LibroID"
+                WHERE v."UserID" = ?
+                ORDER BY v."DataValutazione" DESC
+                """;
+        dbManager.leggiABlocchi(sql, DIMENSIONE_BLOCCO_LETTURA, lettore, userID);
+    }
 
-            return valutazioni;
-        } finally {
-            if (rs != null) rs.close();
-            if (stmt != null) stmt.close();
-            if (conn != null) conn.close();
-        }
+    /**
+     * Legge una pagina delle valutazioni di un utente, dalla più recente.
+     * Le righe hanno le stesse colonne di {@link #leggiValutazioniUtente(int, LettoreRiga)}.
+     *
+     * @param userID  ID dell'utente
+     * @param cursore Cursore della pagina precedente, o null per la prima pagina
+     * @param limite  Numero massimo di valutazioni
+     * @param lettore Riceve ogni riga
+     * @return Il cursore della pagina successiva, o null se questa è l'ultima
+     * @throws SQLException             In caso di errori SQL
+     * @throws IllegalArgumentException Se il cursore non è valido
+     */
+    public Cursore leggiValutazioniUtente(int userID, String cursore, int limite, LettoreRiga lettore) throws SQLException {
+        String sql = """
+                SELECT v.*, l."Titolo" AS "TitoloLibro"
+                FROM "ValutazioniLibri" v
+                LEFT JOIN "Libri" l ON l."LibroID" = v."LibroID"
+                WHERE v."UserID" = ?
+                """;
+        return dbManager.leggiPaginaRecenti(sql, "v", "DataValutazione", "ValutazioneID", cursore, limite, lettore, userID);
     }
 
     /**
@@ -320,24 +228,7 @@ public class ValutazioneDAO {
             rs = stmt.executeQuery();
 
             while (rs.next()) {
-                Timestamp ts = rs.getTimestamp("DataValutazione");
-                ZonedDateTime dataValutazione = (ts != null) ? ts.toInstant().atZone(ZoneId.systemDefault()) : null;
-                Valutazione valutazione = new Valutazione(
-                        rs.getInt("ValutazioneID"),
-                        rs.getInt("UserID"),
-                        rs.getInt("LibroID"),
-                        rs.getShort("ScoreStile"),
-                        rs.getString("NoteStile"),
-                        rs.getShort("ScoreContenuto"),
-                        rs.getString("NoteContenuto"),
-                        rs.getShort("ScoreGradevolezza"),
-                        rs.getString("NoteGradevolezza"),
-                        rs.getShort("ScoreOriginalita"),
-                        rs.getString("NoteOriginalita"),
-                        rs.getShort("ScoreEdizione"),
-                        rs.getString("NoteEdizione"),
-                        dataValutazione
-                );
+                Valutazione valutazione = mappaValutazione(rs);
                 valutazioni.add(valutazione);
             }
 
@@ -349,6 +240,75 @@ public class ValutazioneDAO {
         }
     }
 
+    /**
+     * Legge una pagina delle valutazioni di un libro, dalla più recente.
+     *
+     * @param libroID ID del libro
+     * @param cursore Cursore della pagina precedente, o null per la prima pagina
+     * @param limite  Numero massimo di valutazioni
+     * @param lettore Riceve ogni riga, con le colonne di "ValutazioniLibri"
+     * @return Il cursore della pagina successiva, o null se questa è l'ultima
+     * @throws SQLException             In caso di errori SQL
+     * @throws IllegalArgumentException Se il cursore non è valido
+     */
+    public Cursore leggiValutazioniLibro(int libroID, String cursore, int limite, LettoreRiga lettore) throws SQLException {
+        String sql = """
+                SELECT v.* FROM "ValutazioniLibri" v
+                WHERE v."LibroID" = ?
+                """;
+        return dbManager.leggiPaginaRecenti(sql, "v", "DataValutazione", "ValutazioneID", cursore, limite, lettore, libroID);
+    }
+
+    /**
+     * Ottiene il riepilogo delle valutazioni di un libro (numero, somma e somma dei quadrati per criterio).
+     * Se gli aggregati (migrazioni V003 e V004) non sono presenti il riepilogo viene calcolato dalle valutazioni.
+     *
+     * @param libroID ID del libro
+     * @return Il riepilogo, con tutti i valori a zero se il libro non ha valutazioni
+     * @throws SQLException In caso di errori SQL
+     */
+    public RiepilogoValutazioni getRiepilogo(int libroID) throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            String sql = isAggregatiDisponibili(conn)
+                    ? """
+                    SELECT * FROM "AggregatiValutazioni" WHERE "LibroID" = ?
+                    """
+                    : """
+                    SELECT COUNT(*) AS "NumeroValutazioni",
+                           COUNT("ScoreStile") AS "NumeroStile", COALESCE(SUM("ScoreStile"), 0) AS "SommaStile",
+                           COALESCE(SUM("ScoreStile" * "ScoreStile"), 0) AS "SommaQuadratiStile",
+                           COUNT("ScoreContenuto") AS "NumeroContenuto", COALESCE(SUM("ScoreContenuto"), 0) AS "SommaContenuto",
+                           COALESCE(SUM("ScoreContenuto" * "ScoreContenuto"), 0) AS "SommaQuadratiContenuto",
+                           COUNT("ScoreGradevolezza") AS "NumeroGradevolezza", COALESCE(SUM("ScoreGradevolezza"), 0) AS "SommaGradevolezza",
+                           COALESCE(SUM("ScoreGradevolezza" * "ScoreGradevolezza"), 0) AS "SommaQuadratiGradevolezza",
+                           COUNT("ScoreOriginalita") AS "NumeroOriginalita", COALESCE(SUM("ScoreOriginalita"), 0) AS "SommaOriginalita",
+                           COALESCE(SUM("ScoreOriginalita" * "ScoreOriginalita"), 0) AS "SommaQuadratiOriginalita",
+                           COUNT("ScoreEdizione") AS "NumeroEdizione", COALESCE(SUM("ScoreEdizione"), 0) AS "SommaEdizione",
+                           COALESCE(SUM("ScoreEdizione" * "ScoreEdizione"), 0) AS "SommaQuadratiEdizione"
+                    FROM "ValutazioniLibri" WHERE "LibroID" = ?
+                    """;
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, libroID);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        RiepilogoValutazioni.Criterio vuoto = new RiepilogoValutazioni.Criterio(0, 0, 0);
+                        return new RiepilogoValutazioni(libroID, 0, vuoto, vuoto, vuoto, vuoto, vuoto);
+                    }
+                    return new RiepilogoValutazioni(
+                            libroID,
+                            rs.getInt("NumeroValutazioni"),
+                            leggiCriterio(rs, "Stile"),
+                            leggiCriterio(rs, "Contenuto"),
+                            leggiCriterio(rs, "Gradevolezza"),
+                            leggiCriterio(rs, "Originalita"),
+                            leggiCriterio(rs, "Edizione")
+                    );
+                }
+            }
+        }
+    }
+
     /**
      * Elimina una valutazione.
      *
@@ -356,23 +316,72 @@ public class ValutazioneDAO {
      * @throws SQLException In caso di errori SQL
      */
     public void eliminaValutazione(int valutazioneID) throws SQLException {
-        Connection conn = null;
-        PreparedStatement stmt = null;
-
-        try {
-            conn = dbManager.getConnection();
-            String sql = """
-                    DELETE FROM "ValutazioniLibri"
-                    WHERE "ValutazioneID" = ?
-                    """;
+        String sql = """
+                DELETE FROM "ValutazioniLibri"
+                WHERE "ValutazioneID" = ?
+                """;
 
-            stmt = conn.prepareStatement(sql);
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, valutazioneID);
-
             stmt.executeUpdate();
-        } finally {
-            if (stmt != null) stmt.close();
-            if (conn != null) conn.close();
         }
     }
-}
\ No newline at end of file
+
+    private static RiepilogoValutazioni.Criterio leggiCriterio(ResultSet rs, String criterio) throws SQLException {
+        return new RiepilogoValutazioni.Criterio(
+                rs.getInt("Numero" + criterio),
+                rs.getLong("Somma" + criterio),
+                rs.getLong("SommaQuadrati" + criterio));
+    }
+
+    /**
+     * Crea una valutazione dalla riga corrente di un ResultSet con le colonne di "ValutazioniLibri".
+     *
+     * @param rs Il ResultSet posizionato sulla riga
+     * @return La valutazione letta
+     * @throws SQLException In caso di errori SQL
+     */
+    public static Valutazione mappaValutazione(ResultSet rs) throws SQLException {
+        Timestamp ts = rs.getTimestamp("DataValutazione");
+        ZonedDateTime dataValutazione = (ts != null) ? ts.toInstant().atZone(ZoneId.systemDefault()) : null;
+        return new Valutazione(
+                rs.getInt("ValutazioneID"),
+                rs.getInt("UserID"),
+                rs.getInt("LibroID"),
+                rs.getShort("ScoreStile"),
+                rs.getString("NoteStile"),
+                rs.getShort("ScoreContenuto"),
+                rs.getString("NoteContenuto"),
+                rs.getShort("ScoreGradevolezza"),
+                rs.getString("NoteGradevolezza"),
+                rs.getShort("ScoreOriginalita"),
+                rs.getString("NoteOriginalita"),
+                rs.getShort("ScoreEdizione"),
+                rs.getString("NoteEdizione"),
+                dataValutazione
+        );
+    }
+
+    /**
+     * Verifica una sola volta se gli aggregati sono presenti e mantenuti dal trigger (migrazioni V003 e V004).
+     */
+    private static boolean isAggregatiDisponibili(Connection conn) throws SQLException {
+        Boolean disponibile = aggregatiDisponibili;
+        if (disponibile != null) {
+            return disponibile;
+        }
+        String sql = """
+                SELECT to_regclass('"AggregatiValutazioni"') IS NOT NULL
+                   AND EXISTS (SELECT 1 FROM pg_trigger WHERE tgname = 'trg_valutazioni_aggregati')
+                """;
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            disponibile = rs.next() && rs.getBoolean(1);
+        }
+        if (!disponibile) {
+            Log.avviso("Aggregati delle valutazioni non disponibili: i riepiloghi vengono calcolati dalle valutazioni.");
+        }
+        aggregatiDisponibili = disponibile;
+        return disponibile;
+    }
+}
@@ -0,0 +1,174 @@
+package me.labb.bookrecommender.server.log;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Buffer circolare di messaggi di log con più produttori e un solo consumatore.
+ * Ogni posizione ha un numero di sequenza che indica se è libera o pubblicata (come nella coda limitata di Vyukov):
+ * un produttore prenota una posizione con un compareAndSet sulla coda e la pubblica scrivendo la sequenza,
+ * senza lock e senza allocare oltre al messaggio stesso. Il thread consumatore formatta le righe e le scrive
+ * con un buffer, svuotandolo quando la coda è vuota.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+final class AppenderAsincrono implements Runnable {
+
+    // Pausa del consumatore quando non ci sono messaggi
+    private static final long ATTESA_NANOS = 1_000_000;
+    private static final int BUFFER_SCRITTURA = 64 * 1024;
+
+    private static final class Voce {
+        private volatile long sequenza;
+        private long istante;
+        private Log.Livello livello;
+        private String thread;
+        private String messaggio;
+        private Throwable causa;
+    }
+
+    private final Voce[] voci;
+    private final int maschera;
+    private final AtomicLong coda = new AtomicLong();
+    private final LongAdder scartati = new LongAdder();
+    private long testa = 0;
+    private long scartatiSegnalati = 0;
+
+    private final Writer uscita;
+    private final Writer errori;
+    private final Thread consumatore;
+    private volatile boolean attivo = true;
+
+    AppenderAsincrono(int capacita) {
+        int dimensione = Integer.highestOneBit(Math.max(capacita - 1, 1)) << 1;
+        voci = new Voce[dimensione];
+        for (int i = 0; i < dimensione; i++) {
+            voci[i] = new Voce();
+            voci[i].sequenza = i;
+        }
+        maschera = dimensione - 1;
+        uscita = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), System.out.charset()),
+                BUFFER_SCRITTURA);
+        errori = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.err), System.err.charset()),
+                BUFFER_SCRITTURA);
+        consumatore = new Thread(this, "log-asincrono");
+        consumatore.setDaemon(true);
+    }
+
+    void avvia() {
+        consumatore.start();
+    }
+
+    /**
+     * Ferma il consumatore dopo che ha scritto tutti i messaggi in coda.
+     */
+    void arresta() {
+        attivo = false;
+        LockSupport.unpark(consumatore);
+        try {
+            consumatore.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    long getScartati() {
+        return scartati.sum();
+    }
+
+    /**
+     * @return false se il messaggio va scritto dal chiamante, perché l'appender è stato arrestato
+     * o il consumatore non riesce più a scrivere
+     */
+    boolean accoda(long istante, Log.Livello livello, String thread, String messaggio, Throwable causa) {
+        while (attivo) {
+            long posizione = coda.get();
+            Voce voce = voci[(int) posizione & maschera];
+            long differenza = voce.sequenza - posizione;
+            if (differenza == 0) {
+                if (coda.compareAndSet(posizione, posizione + 1)) {
+                    voce.istante = istante;
+                    voce.livello = livello;
+                    voce.thread = thread;
+                    voce.messaggio = messaggio;
+                    voce.causa = causa;
+                    voce.sequenza = posizione + 1;
+                    return true;
+                }
+            } else if (differenza < 0) {
+                // Buffer pieno: si sveglia il consumatore e solo gli errori lo attendono
+                LockSupport.unpark(consumatore);
+                if (livello != Log.Livello.ERRORE) {
+                    scartati.increment();
+                    return true;
+                }
+                LockSupport.parkNanos(ATTESA_NANOS / 10);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            boolean fermo = !attivo;
+            try {
+                if (svuota() == 0) {
+                    uscita.flush();
+                    errori.flush();
+                    if (fermo) {
+                        return;
+                    }
+                    LockSupport.parkNanos(ATTESA_NANOS);
+                }
+            } catch (IOException e) {
+                // Lo standard output non è più scrivibile: non c'è altro posto dove segnalarlo.
+                // Senza consumatore il buffer non si svuoterebbe più: i produttori tornano alla scrittura diretta
+                attivo = false;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Scrive i messaggi pubblicati, fino al primo posto non ancora pubblicato.
+     *
+     * @return Il numero di messaggi scritti
+     */
+    private int svuota() throws IOException {
+        int scritti = 0;
+        while (true) {
+            Voce voce = voci[(int) testa & maschera];
+            if (voce.sequenza != testa + 1) {
+                break;
+            }
+            Writer destinazione = voce.livello.compareTo(Log.Livello.AVVISO) >= 0 ? errori : uscita;
+            destinazione.write(Log.formatta(voce.istante, voce.livello, voce.thread, voce.messaggio, voce.causa));
+            destinazione.write(System.lineSeparator());
+            voce.messaggio = null;
+            voce.causa = null;
+            voce.thread = null;
+            voce.sequenza = testa + voci.length;
+            testa++;
+            scritti++;
+        }
+
+        long totaleScartati = scartati.sum();
+        if (totaleScartati != scartatiSegnalati) {
+            errori.write(Log.formatta(System.currentTimeMillis(), Log.Livello.AVVISO, consumatore.getName(),
+                    (totaleScartati - scartatiSegnalati) + " messaggi di log scartati: buffer pieno.", null));
+            errori.write(System.lineSeparator());
+            scartatiSegnalati = totaleScartati;
+        }
+        return scritti;
+    }
+}
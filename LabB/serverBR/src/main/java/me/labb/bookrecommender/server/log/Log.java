@@ -0,0 +1,166 @@
+package me.labb.bookrecommender.server.log;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.function.Supplier;
+
+/**
+ * Log del server, con livelli e scrittura asincrona.
+ * <p>
+ * Dopo {@link #attiva(Livello, int)} i messaggi vengono accodati in un buffer circolare e scritti su
+ * standard output (DEBUG e INFO) o standard error (AVVISO ed ERRORE) da un thread dedicato: il thread che
+ * elabora una richiesta non attende più il lock di System.out né la scrittura sul terminale.
+ * Se il buffer è pieno i messaggi DEBUG, INFO e AVVISO vengono scartati e contati; gli ERRORE attendono
+ * che si liberi un posto. Prima di {@link #attiva(Livello, int)} e dopo {@link #arresta()} la scrittura è diretta.
+ * <p>
+ * I messaggi sotto il livello impostato non vengono accodati; per quelli costosi da costruire si può
+ * passare un {@link Supplier}, valutato solo se il livello è abilitato.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public final class Log {
+
+    /**
+     * Livelli dei messaggi, dal meno al più grave.
+     */
+    public enum Livello {
+        DEBUG, INFO, AVVISO, ERRORE
+    }
+
+    public static final int CAPACITA_PREDEFINITA = 8192;
+
+    private static final DateTimeFormatter FORMATO_ORA =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    // Data e ora dell'ultimo secondo formattato: le righe dello stesso secondo aggiungono solo i millisecondi
+    private record Secondo(long secondo, String testo) {
+    }
+
+    private static volatile Secondo ultimoSecondo = new Secondo(-1, "");
+
+    private static volatile Livello livelloMinimo = Livello.INFO;
+    private static volatile AppenderAsincrono appender = null;
+
+    private Log() {
+    }
+
+    /**
+     * Imposta il livello e avvia la scrittura asincrona. Da chiamare all'avvio del server.
+     *
+     * @param livello  Il livello minimo dei messaggi da scrivere
+     * @param capacita Numero di messaggi che il buffer può contenere, arrotondato alla potenza di due successiva
+     */
+    public static synchronized void attiva(Livello livello, int capacita) {
+        livelloMinimo = livello;
+        if (appender == null) {
+            AppenderAsincrono nuovo = new AppenderAsincrono(capacita);
+            nuovo.avvia();
+            appender = nuovo;
+        }
+    }
+
+    /**
+     * Scrive i messaggi ancora in coda e torna alla scrittura diretta. Da chiamare all'arresto del server.
+     */
+    public static synchronized void arresta() {
+        AppenderAsincrono corrente = appender;
+        appender = null;
+        if (corrente != null) {
+            corrente.arresta();
+        }
+    }
+
+    /**
+     * @param livello Il livello da verificare
+     * @return true se i messaggi di quel livello vengono scritti
+     */
+    public static boolean isAbilitato(Livello livello) {
+        return livello.compareTo(livelloMinimo) >= 0;
+    }
+
+    /**
+     * @return I messaggi scartati perché il buffer era pieno
+     */
+    public static long getScartati() {
+        AppenderAsincrono corrente = appender;
+        return corrente == null ? 0 : corrente.getScartati();
+    }
+
+    public static void debug(String messaggio) {
+        scrivi(Livello.DEBUG, messaggio, null);
+    }
+
+    public static void debug(Supplier<String> messaggio) {
+        if (isAbilitato(Livello.DEBUG)) {
+            scrivi(Livello.DEBUG, messaggio.get(), null);
+        }
+    }
+
+    public static void info(String messaggio) {
+        scrivi(Livello.INFO, messaggio, null);
+    }
+
+    public static void avviso(String messaggio) {
+        scrivi(Livello.AVVISO, messaggio, null);
+    }
+
+    public static void errore(String messaggio) {
+        scrivi(Livello.ERRORE, messaggio, null);
+    }
+
+    public static void errore(String messaggio, Throwable causa) {
+        scrivi(Livello.ERRORE, messaggio, causa);
+    }
+
+    private static void scrivi(Livello livello, String messaggio, Throwable causa) {
+        if (!isAbilitato(livello)) {
+            return;
+        }
+        long istante = System.currentTimeMillis();
+        String thread = Thread.currentThread().getName();
+        AppenderAsincrono corrente = appender;
+        if (corrente == null || !corrente.accoda(istante, livello, thread, messaggio, causa)) {
+            String riga = formatta(istante, livello, thread, messaggio, causa);
+            if (livello.compareTo(Livello.AVVISO) >= 0) {
+                System.err.println(riga);
+            } else {
+                System.out.println(riga);
+            }
+        }
+    }
+
+    /**
+     * @return La riga di log, senza terminatore
+     */
+    static String formatta(long istante, Livello livello, String thread, String messaggio, Throwable causa) {
+        long secondo = Math.floorDiv(istante, 1000);
+        Secondo ora = ultimoSecondo;
+        if (ora.secondo() != secondo) {
+            ora = new Secondo(secondo, FORMATO_ORA.format(Instant.ofEpochSecond(secondo)));
+            ultimoSecondo = ora;
+        }
+        int millisecondi = Math.floorMod(istante, 1000);
+
+        StringBuilder sb = new StringBuilder(64 + messaggio.length());
+        sb.append(ora.testo()).append('.');
+        if (millisecondi < 100) {
+            sb.append(millisecondi < 10 ? "00" : "0");
+        }
+        sb.append(millisecondi).append(' ').append(livello.name());
+        for (int i = livello.name().length(); i < 6; i++) {
+            sb.append(' ');
+        }
+        sb.append(" [").append(thread).append("] ").append(messaggio);
+        if (causa != null) {
+            StringWriter traccia = new StringWriter();
+            causa.printStackTrace(new PrintWriter(traccia));
+            sb.append(System.lineSeparator()).append(traccia.toString().stripTrailing());
+        }
+        return sb.toString();
+    }
+}
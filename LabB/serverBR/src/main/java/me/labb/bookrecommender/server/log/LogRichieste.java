@@ -0,0 +1,99 @@
+package me.labb.bookrecommender.server.log;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Log delle richieste ricevute dai client, limitato a un numero di righe al secondo.
+ * Le richieste oltre il limite vengono solo contate e riassunte in una riga all'inizio del secondo successivo.
+ * <p>
+ * I parametri dei comandi con credenziali o dati personali vengono oscurati (per LOGIN resta visibile
+ * solo lo username) e quelli troppo lunghi troncati.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public final class LogRichieste {
+
+    public static final int LIMITE_PREDEFINITO = 20;
+
+    // Numero di parametri che restano visibili per i comandi con dati riservati
+    private static final Map<String, Integer> PARAMETRI_VISIBILI = Map.of(
+            "LOGIN", 1,
+            "REGISTRA", 0);
+    private static final String OSCURATO = "***";
+    private static final int LUNGHEZZA_MASSIMA = 200;
+
+    private static volatile int limitePerSecondo = LIMITE_PREDEFINITO;
+    private static final AtomicLong secondoCorrente = new AtomicLong();
+    private static final AtomicInteger registrate = new AtomicInteger();
+    private static final AtomicInteger saltate = new AtomicInteger();
+
+    private LogRichieste() {
+    }
+
+    /**
+     * Imposta il limite di righe al secondo. Da chiamare all'avvio del server.
+     *
+     * @param limite Righe al secondo, 0 per non registrare le richieste
+     */
+    public static void attiva(int limite) {
+        limitePerSecondo = Math.max(limite, 0);
+    }
+
+    /**
+     * Registra una richiesta ricevuta, se il limite del secondo corrente lo consente.
+     *
+     * @param comando   Il comando richiesto
+     * @param parametri I parametri, in chiaro
+     * @param json      true se la richiesta era in formato JSON
+     */
+    public static void registra(String comando, String parametri, boolean json) {
+        int limite = limitePerSecondo;
+        if (limite == 0 || !Log.isAbilitato(Log.Livello.INFO)) {
+            return;
+        }
+
+        long secondo = System.nanoTime() / 1_000_000_000L;
+        long precedente = secondoCorrente.get();
+        if (secondo != precedente && secondoCorrente.compareAndSet(precedente, secondo)) {
+            registrate.set(0);
+            int nonRegistrate = saltate.getAndSet(0);
+            if (nonRegistrate > 0) {
+                Log.info(nonRegistrate + " richieste non registrate (limite di " + limite + " al secondo).");
+            }
+        }
+        if (registrate.incrementAndGet() > limite) {
+            saltate.incrementAndGet();
+            return;
+        }
+
+        Log.info((json ? "Ricevuta richiesta JSON: comando=" : "Ricevuta richiesta: comando=") + comando
+                + ", parametri=" + oscura(comando, parametri));
+    }
+
+    /**
+     * @return I parametri con le parti riservate sostituite da *** e troncati se troppo lunghi
+     */
+    static String oscura(String comando, String parametri) {
+        Integer visibili = PARAMETRI_VISIBILI.get(comando);
+        String risultato = parametri;
+        if (visibili != null && !parametri.isBlank()) {
+            String[] parti = parametri.trim().split("\\s+");
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < parti.length; i++) {
+                if (i > 0) {
+                    sb.append(' ');
+                }
+                sb.append(i < visibili ? parti[i] : OSCURATO);
+            }
+            risultato = sb.toString();
+        }
+        if (risultato.length() > LUNGHEZZA_MASSIMA) {
+            risultato = risultato.substring(0, LUNGHEZZA_MASSIMA) + "... (" + risultato.length() + " caratteri)";
+        }
+        return risultato;
+    }
+}
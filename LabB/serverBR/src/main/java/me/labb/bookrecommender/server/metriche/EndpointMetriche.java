@@ -0,0 +1,205 @@
+package me.labb.bookrecommender.server.metriche;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import me.labb.bookrecommender.server.Server;
+import me.labb.bookrecommender.server.cache.CacheRisposte;
+import me.labb.bookrecommender.server.db.DatabaseManager;
+import me.labb.bookrecommender.server.db.PoolConnessioni;
+import me.labb.bookrecommender.server.log.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Endpoint HTTP per il monitoraggio del server, separato dalla porta dei client:
+ * <ul>
+ *     <li>{@code /metrics}: contatori e indicatori nel formato testuale di Prometheus;</li>
+ *     <li>{@code /health/live}: risponde 200 finché il processo è in esecuzione;</li>
+ *     <li>{@code /health/ready}: risponde 200 se il server accetta connessioni, altrimenti 503.</li>
+ * </ul>
+ * Le risposte leggono solo contatori già in memoria: nessuna interroga il database o passa
+ * dagli handler dei client, e vengono servite da un proprio thread.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class EndpointMetriche {
+
+    private static final String TIPO_PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String PREFISSO = "bookrecommender_";
+    private static final double[] QUANTILI = {0.5, 0.99, 0.999};
+
+    private final int porta;
+    private final Server server;
+    private HttpServer http;
+    private ExecutorService esecutore;
+
+    /**
+     * @param porta  Porta HTTP dell'endpoint
+     * @param server Il server di cui esporre lo stato
+     */
+    public EndpointMetriche(int porta, Server server) {
+        this.porta = porta;
+        this.server = server;
+    }
+
+    /**
+     * Avvia l'endpoint.
+     *
+     * @throws IOException Se la porta non è disponibile
+     */
+    public void avvia() throws IOException {
+        http = HttpServer.create(new InetSocketAddress(porta), 0);
+        esecutore = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "endpoint-metriche");
+            thread.setDaemon(true);
+            return thread;
+        });
+        http.setExecutor(esecutore);
+        http.createContext("/metrics", scambio -> rispondi(scambio, 200, TIPO_PROMETHEUS, metriche()));
+        http.createContext("/health/live", scambio -> rispondi(scambio, 200, "text/plain", "OK\n"));
+        http.createContext("/health/ready", scambio -> {
+            boolean pronto = server.isAttivo();
+            rispondi(scambio, pronto ? 200 : 503, "text/plain", pronto ? "OK\n" : "NON PRONTO\n");
+        });
+        http.start();
+        Log.info("Endpoint delle metriche attivo sulla porta " + porta + " (/metrics, /health/live, /health/ready).");
+    }
+
+    /**
+     * Arresta l'endpoint.
+     */
+    public void arresta() {
+        if (http != null) {
+            http.stop(0);
+            esecutore.shutdownNow();
+            http = null;
+        }
+    }
+
+    private static void rispondi(HttpExchange scambio, int stato, String tipo, String corpo) throws IOException {
+        try (scambio) {
+            if (!"GET".equals(scambio.getRequestMethod()) && !"HEAD".equals(scambio.getRequestMethod())) {
+                scambio.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] byteCorpo = corpo.getBytes(StandardCharsets.UTF_8);
+            scambio.getResponseHeaders().set("Content-Type", tipo);
+            if ("HEAD".equals(scambio.getRequestMethod())) {
+                scambio.sendResponseHeaders(stato, -1);
+                return;
+            }
+            scambio.sendResponseHeaders(stato, byteCorpo.length);
+            try (OutputStream uscita = scambio.getResponseBody()) {
+                uscita.write(byteCorpo);
+            }
+        }
+    }
+
+    /**
+     * @return Le metriche correnti nel formato testuale di Prometheus
+     */
+    String metriche() {
+        StringBuilder sb = new StringBuilder(4096);
+
+        indicatore(sb, "attivo", "gauge", "1 se il server accetta connessioni.", server.isAttivo() ? 1 : 0);
+        indicatore(sb, "secondi_attivita", "gauge", "Secondi dall'avvio del server.", MetricheComandi.getSecondiAttivita());
+        indicatore(sb, "connessioni_aperte", "gauge", "Connessioni client aperte.", MetricheConnessioni.getAperte());
+        indicatore(sb, "connessioni_accettate_total", "counter", "Connessioni client accettate dall'avvio.",
+                MetricheConnessioni.getAccettate());
+        indicatore(sb, "handler_attivi", "gauge", "Thread ClientHandler in esecuzione (trasporto bloccante).",
+                MetricheConnessioni.getHandlerAttivi());
+        indicatore(sb, "esecutore_coda", "gauge", "Client o richieste in coda nel pool di thread.", server.getCodaEsecutore());
+        int threadAttivi = server.getThreadEsecutoreAttivi();
+        if (threadAttivi >= 0) {
+            indicatore(sb, "esecutore_thread_attivi", "gauge", "Thread del pool impegnati.", threadAttivi);
+        }
+
+        PoolConnessioni pool = DatabaseManager.getInstance().getPool();
+        indicatore(sb, "db_connessioni_attive", "gauge", "Connessioni al database in uso.", pool.getConnessioniAttive());
+        indicatore(sb, "db_connessioni_inattive", "gauge", "Connessioni al database libere nel pool.", pool.getConnessioniInattive());
+        indicatore(sb, "db_thread_in_attesa", "gauge", "Thread in attesa di una connessione al database.", pool.getThreadInAttesa());
+        indicatore(sb, "db_connessioni_massime", "gauge", "Dimensione massima del pool.", pool.getDimensioneMassima());
+        indicatore(sb, "db_connessioni_create_total", "counter", "Connessioni al database aperte dall'avvio.",
+                pool.getConnessioniCreate());
+        indicatore(sb, "db_timeout_acquisizione_total", "counter", "Richieste di connessione scadute.",
+                pool.getTimeoutAcquisizione());
+
+        CacheRisposte cache = CacheRisposte.getCorrente();
+        if (cache != null) {
+            indicatore(sb, "cache_hit_total", "counter", "Risposte servite dalla cache.", cache.getHit());
+            indicatore(sb, "cache_miss_total", "counter", "Risposte calcolate e non trovate in cache.", cache.getMiss());
+            indicatore(sb, "cache_evizioni_total", "counter", "Voci scartate per liberare spazio.", cache.getEvizioni());
+            indicatore(sb, "cache_voci", "gauge", "Voci presenti nella cache.", cache.getNumeroVoci());
+            indicatore(sb, "cache_byte", "gauge", "Dimensione stimata della cache in byte.", cache.getDimensioneCorrente());
+        }
+
+        intestazione(sb, "richieste_total", "counter", "Richieste elaborate per comando.");
+        for (MetricheComandi.Comando comando : MetricheComandi.elencoComandi()) {
+            sb.append(PREFISSO).append("richieste_total{comando=\"").append(etichetta(comando.nome())).append("\"} ")
+                    .append(comando.richieste()).append('\n');
+        }
+        intestazione(sb, "errori_total", "counter", "Richieste terminate con un errore per comando.");
+        for (MetricheComandi.Comando comando : MetricheComandi.elencoComandi()) {
+            sb.append(PREFISSO).append("errori_total{comando=\"").append(etichetta(comando.nome())).append("\"} ")
+                    .append(comando.errori()).append('\n');
+        }
+
+        riepilogo(sb, "durata_secondi", "Durata delle richieste per comando.", MetricheComandi.Comando::durata);
+        riepilogo(sb, "database_secondi", "Tempo sul database delle richieste per comando.", MetricheComandi.Comando::database);
+        riepilogo(sb, "serializzazione_secondi", "Tempo di serializzazione delle risposte per comando.",
+                MetricheComandi.Comando::serializzazione);
+
+        Istogramma codifica = MetricheComandi.getCodifica();
+        intestazione(sb, "codifica_secondi", "summary", "Tempo di codifica delle risposte per la connessione.");
+        quantili(sb, "codifica_secondi", "", codifica);
+        return sb.toString();
+    }
+
+    private static void riepilogo(StringBuilder sb, String nome, String descrizione,
+                                  Function<MetricheComandi.Comando, Istogramma> parte) {
+        intestazione(sb, nome, "summary", descrizione);
+        for (MetricheComandi.Comando comando : MetricheComandi.elencoComandi()) {
+            quantili(sb, nome, "comando=\"" + etichetta(comando.nome()) + "\",", parte.apply(comando));
+        }
+    }
+
+    private static void quantili(StringBuilder sb, String nome, String etichette, Istogramma istogramma) {
+        long[] valori = istogramma.percentili(QUANTILI[0] * 100, QUANTILI[1] * 100, QUANTILI[2] * 100);
+        for (int i = 0; i < QUANTILI.length; i++) {
+            sb.append(PREFISSO).append(nome).append('{').append(etichette).append("quantile=\"").append(QUANTILI[i])
+                    .append("\"} ").append(secondi(valori[i])).append('\n');
+        }
+        String senzaVirgola = etichette.isEmpty() ? "" : "{" + etichette.substring(0, etichette.length() - 1) + "}";
+        sb.append(PREFISSO).append(nome).append("_sum").append(senzaVirgola).append(' ')
+                .append(secondi(istogramma.getSomma())).append('\n');
+        sb.append(PREFISSO).append(nome).append("_count").append(senzaVirgola).append(' ')
+                .append(istogramma.getConteggio()).append('\n');
+    }
+
+    private static void indicatore(StringBuilder sb, String nome, String tipo, String descrizione, long valore) {
+        intestazione(sb, nome, tipo, descrizione);
+        sb.append(PREFISSO).append(nome).append(' ').append(valore).append('\n');
+    }
+
+    private static void intestazione(StringBuilder sb, String nome, String tipo, String descrizione) {
+        sb.append("# HELP ").append(PREFISSO).append(nome).append(' ').append(descrizione).append('\n');
+        sb.append("# TYPE ").append(PREFISSO).append(nome).append(' ').append(tipo).append('\n');
+    }
+
+    private static String secondi(long micros) {
+        return Double.toString(micros / 1_000_000.0);
+    }
+
+    // I nomi dei comandi arrivano dai client: vanno protetti i caratteri speciali del formato
+    private static String etichetta(String valore) {
+        return valore.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,136 @@
+package me.labb.bookrecommender.server.metriche;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Istogramma di durate in microsecondi con precisione relativa costante, come gli istogrammi HDR:
+ * fino a 127 µs ogni valore ha il suo contatore, oltre ogni potenza di due è divisa in 64 intervalli
+ * (errore massimo di circa l'1,6%). I valori oltre {@link #VALORE_MASSIMO} vengono registrati nell'ultimo intervallo.
+ * <p>
+ * La registrazione è un incremento atomico senza lock né allocazioni, quindi può restare attiva
+ * con il server sotto carico; la lettura dei percentili scorre i contatori senza bloccare le registrazioni.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class Istogramma {
+
+    // Circa 71 minuti: nessuna richiesta legittima dura di più
+    public static final long VALORE_MASSIMO = (1L << 32) - 1;
+
+    private static final int BIT_SOTTOINTERVALLI = 6;
+    private static final int META = 1 << BIT_SOTTOINTERVALLI;
+    private static final int LINEARI = 2 * META;
+
+    private final AtomicLongArray contatori = new AtomicLongArray(indice(VALORE_MASSIMO) + 1);
+    private final LongAdder conteggio = new LongAdder();
+    private final LongAdder somma = new LongAdder();
+    private final LongAccumulator massimo = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Registra una durata.
+     *
+     * @param nanosecondi La durata in nanosecondi
+     */
+    public void registra(long nanosecondi) {
+        long micro = Math.min(Math.max(nanosecondi / 1000, 0), VALORE_MASSIMO);
+        contatori.incrementAndGet(indice(micro));
+        conteggio.increment();
+        somma.add(micro);
+        massimo.accumulate(micro);
+    }
+
+    /**
+     * @return Il numero di valori registrati
+     */
+    public long getConteggio() {
+        return conteggio.sum();
+    }
+
+    /**
+     * @return La somma dei valori registrati, in microsecondi
+     */
+    public long getSomma() {
+        return somma.sum();
+    }
+
+    /**
+     * Calcola un percentile.
+     *
+     * @param percentile Il percentile, tra 0 e 100
+     * @return Il valore in microsecondi sotto cui cade la percentuale indicata delle registrazioni, 0 se vuoto
+     */
+    public long percentile(double percentile) {
+        return percentili(percentile)[0];
+    }
+
+    /**
+     * Calcola più percentili con una sola lettura dei contatori.
+     *
+     * @param percentili I percentili in ordine crescente, tra 0 e 100
+     * @return I valori in microsecondi, nello stesso ordine
+     */
+    public long[] percentili(double... percentili) {
+        long[] risultato = new long[percentili.length];
+        long totale = 0;
+        long[] copia = new long[contatori.length()];
+        for (int i = 0; i < copia.length; i++) {
+            copia[i] = contatori.get(i);
+            totale += copia[i];
+        }
+        if (totale == 0) {
+            return risultato;
+        }
+        long max = massimo.get();
+        long cumulato = 0;
+        int i = 0;
+        for (int p = 0; p < percentili.length; p++) {
+            long soglia = Math.max(1, (long) Math.ceil(totale * percentili[p] / 100.0));
+            while (i < copia.length && cumulato + copia[i] < soglia) {
+                cumulato += copia[i];
+                i++;
+            }
+            risultato[p] = i < copia.length ? Math.min(limiteSuperiore(i), max) : max;
+        }
+        return risultato;
+    }
+
+    /**
+     * @return Riepilogo in microsecondi: conteggio, media, p50, p99, p999 e massimo
+     */
+    public Map<String, Object> riepilogo() {
+        long n = getConteggio();
+        long[] valori = percentili(50, 99, 99.9);
+        Map<String, Object> dati = new LinkedHashMap<>();
+        dati.put("conteggio", n);
+        dati.put("mediaMicros", n == 0 ? 0 : somma.sum() / n);
+        dati.put("p50Micros", valori[0]);
+        dati.put("p99Micros", valori[1]);
+        dati.put("p999Micros", valori[2]);
+        dati.put("maxMicros", massimo.get());
+        return dati;
+    }
+
+    private static int indice(long valore) {
+        if (valore < LINEARI) {
+            return (int) valore;
+        }
+        // Spostamento che porta il valore tra META e LINEARI - 1
+        int spostamento = 63 - Long.numberOfLeadingZeros(valore) - BIT_SOTTOINTERVALLI;
+        return LINEARI + (spostamento - 1) * META + (int) ((valore >>> spostamento) - META);
+    }
+
+    private static long limiteSuperiore(int indice) {
+        if (indice < LINEARI) {
+            return indice;
+        }
+        int spostamento = (indice - LINEARI) / META + 1;
+        long sottointervallo = (indice - LINEARI) % META + META;
+        return ((sottointervallo + 1) << spostamento) - 1;
+    }
+}
@@ -0,0 +1,257 @@
+package me.labb.bookrecommender.server.metriche;
+
+import me.labb.bookrecommender.server.log.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metriche delle richieste elaborate dal server, per comando: numero di richieste e di errori
+ * e istogrammi della durata complessiva, del tempo passato sul database e del tempo di serializzazione.
+ * <p>
+ * I tempi parziali di una richiesta si accumulano nel thread che la elabora: il tempo sul database è quello
+ * in cui il thread tiene una connessione del pool (per gli elenchi scritti in streaming comprende la scrittura
+ * delle righe), la serializzazione è il tempo passato in {@code ResponseFormatter} al netto del database.
+ * La codifica per la connessione (formato binario e compressione) ha un istogramma a parte, non legato al comando.
+ * <p>
+ * La registrazione è sempre attiva; {@link #attiva(Set, long)} imposta gli amministratori che possono
+ * leggere le metriche con STATS e il riepilogo periodico nel log.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public final class MetricheComandi {
+
+    /**
+     * Nome sotto cui registrare i comandi non riconosciuti dal server.
+     */
+    public static final String ALTRO = "ALTRO";
+
+    private static final long AVVIO = System.currentTimeMillis();
+
+    private static final ConcurrentHashMap<String, StatisticheComando> comandi = new ConcurrentHashMap<>();
+    private static final Istogramma codifica = new Istogramma();
+
+    // Tempi della richiesta in corso sul thread, in nanosecondi: [0] database, [1] serializzazione; [2] 1 se errore
+    private static final ThreadLocal<long[]> richiestaCorrente = ThreadLocal.withInitial(() -> new long[3]);
+
+    private static volatile Set<String> amministratori = Set.of();
+    private static ScheduledExecutorService riepilogo = null;
+
+    private static final class StatisticheComando {
+        private final LongAdder richieste = new LongAdder();
+        private final LongAdder errori = new LongAdder();
+        private final Istogramma durata = new Istogramma();
+        private final Istogramma database = new Istogramma();
+        private final Istogramma serializzazione = new Istogramma();
+    }
+
+    /**
+     * Vista in sola lettura delle metriche di un comando.
+     *
+     * @param nome            Il nome del comando
+     * @param richieste       Il numero di richieste elaborate
+     * @param errori          Il numero di richieste terminate con un errore
+     * @param durata          Durata complessiva delle richieste
+     * @param database        Tempo passato sul database
+     * @param serializzazione Tempo di costruzione delle risposte
+     */
+    public record Comando(String nome, long richieste, long errori,
+                          Istogramma durata, Istogramma database, Istogramma serializzazione) {
+    }
+
+    private MetricheComandi() {
+    }
+
+    /**
+     * Imposta gli amministratori e avvia il riepilogo periodico. Da chiamare all'avvio del server.
+     *
+     * @param usernameAmministratori Username degli utenti che possono usare STATS
+     * @param intervalloSecondi      Secondi tra un riepilogo nel log e il successivo, 0 per nessun riepilogo
+     */
+    public static synchronized void attiva(Set<String> usernameAmministratori, long intervalloSecondi) {
+        amministratori = Set.copyOf(usernameAmministratori);
+        if (intervalloSecondi <= 0 || riepilogo != null) {
+            return;
+        }
+        riepilogo = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "riepilogo-metriche");
+            thread.setDaemon(true);
+            return thread;
+        });
+        riepilogo.scheduleAtFixedRate(() -> Log.info(descrivi()),
+                intervalloSecondi, intervalloSecondi, TimeUnit.SECONDS);
+        Log.info("Riepilogo delle metriche nel log ogni " + intervalloSecondi + " s.");
+    }
+
+    /**
+     * @param username Username dell'utente autenticato
+     * @return true se l'utente può leggere le metriche
+     */
+    public static boolean isAmministratore(String username) {
+        return username != null && amministratori.contains(username);
+    }
+
+    /**
+     * Azzera i tempi parziali del thread corrente. Da chiamare prima di elaborare una richiesta.
+     */
+    public static void inizioRichiesta() {
+        long[] tempi = richiestaCorrente.get();
+        tempi[0] = 0;
+        tempi[1] = 0;
+        tempi[2] = 0;
+    }
+
+    /**
+     * Registra una richiesta elaborata dal thread corrente con i tempi parziali accumulati.
+     *
+     * @param comando      Il comando richiesto, tra quelli riconosciuti dal server o {@link #ALTRO}:
+     *                     ogni nome diverso ha una voce propria che non viene mai rimossa
+     * @param durataNanos  La durata complessiva dell'elaborazione
+     */
+    public static void fineRichiesta(String comando, long durataNanos) {
+        long[] tempi = richiestaCorrente.get();
+        StatisticheComando statistiche = statistiche(comando);
+        statistiche.richieste.increment();
+        if (tempi[2] != 0) {
+            statistiche.errori.increment();
+        }
+        statistiche.durata.registra(durataNanos);
+        statistiche.database.registra(tempi[0]);
+        statistiche.serializzazione.registra(tempi[1]);
+    }
+
+    /**
+     * Aggiunge alla richiesta in corso il tempo in cui il thread ha tenuto una connessione al database.
+     *
+     * @param nanos Il tempo in nanosecondi
+     */
+    public static void aggiungiTempoDatabase(long nanos) {
+        richiestaCorrente.get()[0] += nanos;
+    }
+
+    /**
+     * @return Il tempo sul database accumulato finora dalla richiesta in corso, in nanosecondi
+     */
+    public static long getTempoDatabase() {
+        return richiestaCorrente.get()[0];
+    }
+
+    /**
+     * Aggiunge alla richiesta in corso il tempo di costruzione della risposta.
+     *
+     * @param nanos Il tempo in nanosecondi
+     */
+    public static void aggiungiTempoSerializzazione(long nanos) {
+        richiestaCorrente.get()[1] += nanos;
+    }
+
+    /**
+     * Segna la richiesta in corso come terminata con un errore.
+     */
+    public static void segnalaErrore() {
+        richiestaCorrente.get()[2] = 1;
+    }
+
+    /**
+     * @return true se la richiesta in corso sul thread è stata segnata come terminata con un errore
+     */
+    public static boolean isErrore() {
+        return richiestaCorrente.get()[2] != 0;
+    }
+
+    /**
+     * Registra il tempo di codifica di una risposta per la connessione.
+     *
+     * @param nanos Il tempo in nanosecondi
+     */
+    public static void registraCodifica(long nanos) {
+        codifica.registra(nanos);
+    }
+
+    /**
+     * @return Le metriche dei comandi ricevuti finora, ordinati per nome
+     */
+    public static List<Comando> elencoComandi() {
+        List<Comando> elenco = new ArrayList<>();
+        for (Map.Entry<String, StatisticheComando> voce : new TreeMap<>(comandi).entrySet()) {
+            StatisticheComando statistiche = voce.getValue();
+            elenco.add(new Comando(voce.getKey(), statistiche.richieste.sum(), statistiche.errori.sum(),
+                    statistiche.durata, statistiche.database, statistiche.serializzazione));
+        }
+        return elenco;
+    }
+
+    /**
+     * @return L'istogramma dei tempi di codifica delle risposte per la connessione
+     */
+    public static Istogramma getCodifica() {
+        return codifica;
+    }
+
+    /**
+     * @return I secondi trascorsi dall'avvio del server
+     */
+    public static long getSecondiAttivita() {
+        return (System.currentTimeMillis() - AVVIO) / 1000;
+    }
+
+    /**
+     * @return Le metriche di tutti i comandi, ordinati per nome, e della codifica delle risposte
+     */
+    public static Map<String, Object> istantanea() {
+        List<Map<String, Object>> elenco = new ArrayList<>();
+        for (Comando comando : elencoComandi()) {
+            Map<String, Object> dati = new LinkedHashMap<>();
+            dati.put("comando", comando.nome());
+            dati.put("richieste", comando.richieste());
+            dati.put("errori", comando.errori());
+            dati.put("durata", comando.durata().riepilogo());
+            dati.put("database", comando.database().riepilogo());
+            dati.put("serializzazione", comando.serializzazione().riepilogo());
+            elenco.add(dati);
+        }
+
+        Map<String, Object> dati = new LinkedHashMap<>();
+        dati.put("secondiAttivita", getSecondiAttivita());
+        dati.put("comandi", elenco);
+        dati.put("codificaRisposte", codifica.riepilogo());
+        return dati;
+    }
+
+    /**
+     * @return Riepilogo testuale per il log, una riga per comando
+     */
+    public static String descrivi() {
+        StringBuilder sb = new StringBuilder("Metriche dei comandi (")
+                .append(getSecondiAttivita()).append(" s di attività):");
+        for (Comando comando : elencoComandi()) {
+            long[] durata = comando.durata().percentili(50, 99, 99.9);
+            sb.append("\n    ").append(comando.nome())
+                    .append(" richieste=").append(comando.richieste())
+                    .append(" errori=").append(comando.errori())
+                    .append(" p50=").append(durata[0])
+                    .append("us p99=").append(durata[1])
+                    .append("us p999=").append(durata[2])
+                    .append("us db.p99=").append(comando.database().percentile(99))
+                    .append("us ser.p99=").append(comando.serializzazione().percentile(99)).append("us");
+        }
+        return sb.toString();
+    }
+
+    private static StatisticheComando statistiche(String comando) {
+        String nome = comando == null || comando.isBlank() ? ALTRO : comando;
+        StatisticheComando statistiche = comandi.get(nome);
+        return statistiche != null ? statistiche : comandi.computeIfAbsent(nome, k -> new StatisticheComando());
+    }
+}
@@ -0,0 +1,73 @@
+package me.labb.bookrecommender.server.metriche;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contatori delle connessioni client, aggiornati da entrambi i trasporti:
+ * connessioni aperte in questo momento, connessioni accettate dall'avvio e,
+ * con il trasporto bloccante, thread di ClientHandler in esecuzione.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public final class MetricheConnessioni {
+
+    private static final AtomicInteger aperte = new AtomicInteger();
+    private static final LongAdder accettate = new LongAdder();
+    private static final AtomicInteger handlerAttivi = new AtomicInteger();
+
+    private MetricheConnessioni() {
+    }
+
+    /**
+     * Da chiamare quando il server accetta una connessione.
+     */
+    public static void connessioneAperta() {
+        aperte.incrementAndGet();
+        accettate.increment();
+    }
+
+    /**
+     * Da chiamare una sola volta per ogni connessione chiusa.
+     */
+    public static void connessioneChiusa() {
+        aperte.decrementAndGet();
+    }
+
+    /**
+     * Da chiamare all'inizio del run() di un ClientHandler.
+     */
+    public static void handlerAvviato() {
+        handlerAttivi.incrementAndGet();
+    }
+
+    /**
+     * Da chiamare alla fine del run() di un ClientHandler.
+     */
+    public static void handlerTerminato() {
+        handlerAttivi.decrementAndGet();
+    }
+
+    /**
+     * @return Le connessioni client aperte
+     */
+    public static int getAperte() {
+        return aperte.get();
+    }
+
+    /**
+     * @return Le connessioni accettate dall'avvio del server
+     */
+    public static long getAccettate() {
+        return accettate.sum();
+    }
+
+    /**
+     * @return I thread di ClientHandler in esecuzione (solo trasporto bloccante)
+     */
+    public static int getHandlerAttivi() {
+        return handlerAttivi.get();
+    }
+}
@@ -0,0 +1,21 @@
+package me.labb.bookrecommender.server.oggetti;
+
+import me.labb.bookrecommender.server.utils.Cursore;
+
+import java.util.List;
+
+/**
+ * Record che rappresenta una pagina di un elenco.
+ *
+ * @param elementi Gli elementi della pagina
+ * @param prossimo Il cursore della pagina successiva, o null se questa è l'ultima
+ * @param <T>      Tipo degli elementi
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public record Pagina<T>(
+        List<T> elementi,
+        Cursore prossimo
+) {
+}
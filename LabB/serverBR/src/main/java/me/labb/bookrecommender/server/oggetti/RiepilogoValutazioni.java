@@ -0,0 +1,70 @@
+package me.labb.bookrecommender.server.oggetti;
+
+/**
+ * Record per rappresentare il riepilogo delle valutazioni di un libro:
+ * per ogni criterio il numero di punteggi, la loro somma e la somma dei quadrati.
+ *
+ * @param libroID           Identificativo del libro
+ * @param numeroValutazioni Numero di valutazioni del libro
+ * @param stile             Aggregato dei punteggi sullo stile
+ * @param contenuto         Aggregato dei punteggi sul contenuto
+ * @param gradevolezza      Aggregato dei punteggi sulla gradevolezza
+ * @param originalita       Aggregato dei punteggi sull'originalità
+ * @param edizione          Aggregato dei punteggi sull'edizione
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public record RiepilogoValutazioni(
+        int libroID,
+        int numeroValutazioni,
+        Criterio stile,
+        Criterio contenuto,
+        Criterio gradevolezza,
+        Criterio originalita,
+        Criterio edizione
+) {
+
+    /**
+     * Aggregato dei punteggi di un singolo criterio.
+     *
+     * @param numero        Numero di punteggi presenti
+     * @param somma         Somma dei punteggi
+     * @param sommaQuadrati Somma dei quadrati dei punteggi
+     */
+    public record Criterio(int numero, long somma, long sommaQuadrati) {
+
+        /**
+         * @return Media dei punteggi, 0 se non ce ne sono
+         */
+        public double media() {
+            return numero == 0 ? 0 : (double) somma / numero;
+        }
+
+        /**
+         * @return Deviazione standard (della popolazione) dei punteggi, 0 se non ce ne sono
+         */
+        public double deviazioneStandard() {
+            if (numero == 0) {
+                return 0;
+            }
+            double media = media();
+            return Math.sqrt(Math.max(0, (double) sommaQuadrati / numero - media * media));
+        }
+    }
+
+    /**
+     * @return Media delle medie dei criteri che hanno almeno un punteggio, 0 se non ce ne sono
+     */
+    public double mediaComplessiva() {
+        double somma = 0;
+        int criteri = 0;
+        for (Criterio criterio : new Criterio[]{stile, contenuto, gradevolezza, originalita, edizione}) {
+            if (criterio.numero() > 0) {
+                somma += criterio.media();
+                criteri++;
+            }
+        }
+        return criteri == 0 ? 0 : somma / criteri;
+    }
+}
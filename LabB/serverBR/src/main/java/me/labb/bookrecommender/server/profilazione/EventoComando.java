@@ -0,0 +1,45 @@
+package me.labb.bookrecommender.server.profilazione;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento JFR per ogni comando elaborato da un ClientHandler: la durata dell'evento è quella
+ * dell'elaborazione, così in una registrazione GC, contese sui lock e query si possono
+ * attribuire alla richiesta in corso sullo stesso thread.
+ * I byte sono quelli del testo JSON di richiesta e risposta, prima di formato binario e compressione.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+@Name("bookrecommender.Comando")
+@Label("Comando")
+@Category({"BookRecommender", "Server"})
+@Description("Comando di un client elaborato dal server")
+@StackTrace(false)
+public class EventoComando extends Event {
+
+    @Label("Comando")
+    public String comando;
+
+    @Label("ID utente")
+    @Description("ID dell'utente autenticato alla fine del comando, -1 se nessuno")
+    public int userID;
+
+    @Label("Byte ricevuti")
+    @DataAmount(DataAmount.BYTES)
+    public long byteRicevuti;
+
+    @Label("Byte inviati")
+    @DataAmount(DataAmount.BYTES)
+    public long byteInviati;
+
+    @Label("Errore")
+    public boolean errore;
+}
@@ -0,0 +1,43 @@
+package me.labb.bookrecommender.server.profilazione;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Evento JFR per ogni istruzione SQL eseguita su una connessione del pool.
+ * Per le query la durata va dall'esecuzione alla chiusura del ResultSet, quindi comprende
+ * la lettura delle righe; per gli aggiornamenti è la sola esecuzione.
+ * L'ID è un hash del testo SQL, uguale tra un'esecuzione e l'altra della stessa istruzione.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+@Name("bookrecommender.Statement")
+@Label("Istruzione SQL")
+@Category({"BookRecommender", "Database"})
+@Description("Istruzione SQL eseguita su una connessione del pool")
+public class EventoStatement extends Event {
+
+    @Label("ID SQL")
+    public String idSql;
+
+    @Label("SQL")
+    public String sql;
+
+    @Label("Righe")
+    @Description("Righe lette o modificate, -1 se non note")
+    public long righe;
+
+    @Label("Attesa connessione")
+    @Description("Tempo impiegato per ottenere dal pool la connessione usata")
+    @Timespan(Timespan.NANOSECONDS)
+    public long attesaConnessione;
+
+    @Label("Errore")
+    public boolean errore;
+}
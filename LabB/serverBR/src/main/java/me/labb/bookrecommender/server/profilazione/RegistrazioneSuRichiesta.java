@@ -0,0 +1,101 @@
+package me.labb.bookrecommender.server.profilazione;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import me.labb.bookrecommender.server.log.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registrazioni JFR avviate a richiesta di un amministratore, senza riavviare il server con
+ * -XX:StartFlightRecording. Usa le impostazioni predefinite del JDK più quelle di {@code jfr/bookrecommender.jfc}
+ * e salva il file nella cartella indicata da server.jfr.directory allo scadere della durata.
+ * È possibile una sola registrazione alla volta.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public final class RegistrazioneSuRichiesta {
+
+    public static final int SECONDI_PREDEFINITI = 60;
+    public static final int SECONDI_MASSIMI = 600;
+
+    private static final String IMPOSTAZIONI = "/jfr/bookrecommender.jfc";
+    private static final DateTimeFormatter FORMATO_NOME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private static Path directory = Paths.get("registrazioni");
+    private static Recording corrente = null;
+
+    private RegistrazioneSuRichiesta() {
+    }
+
+    /**
+     * Imposta la cartella delle registrazioni. Da chiamare all'avvio del server.
+     *
+     * @param cartella La cartella in cui salvare i file .jfr
+     */
+    public static synchronized void attiva(Path cartella) {
+        directory = cartella;
+    }
+
+    /**
+     * Avvia una registrazione che si ferma da sola dopo la durata indicata.
+     *
+     * @param secondi Durata della registrazione, tra 1 e {@link #SECONDI_MASSIMI}
+     * @return Il file in cui verrà salvata la registrazione
+     * @throws IllegalStateException Se c'è già una registrazione in corso
+     * @throws IOException           Se non è possibile creare la cartella o leggere le impostazioni
+     */
+    public static synchronized Path avvia(int secondi) throws IOException {
+        if (secondi < 1 || secondi > SECONDI_MASSIMI) {
+            throw new IllegalArgumentException("La durata deve essere tra 1 e " + SECONDI_MASSIMI + " secondi.");
+        }
+        if (corrente != null && corrente.getState() == RecordingState.RUNNING) {
+            throw new IllegalStateException("C'è già una registrazione in corso.");
+        }
+
+        Files.createDirectories(directory);
+        Path file = directory.resolve("bookrecommender-" + LocalDateTime.now().format(FORMATO_NOME) + ".jfr")
+                .toAbsolutePath();
+
+        Recording registrazione = new Recording(impostazioni());
+        registrazione.setName("BookRecommender");
+        registrazione.setToDisk(true);
+        registrazione.setDuration(Duration.ofSeconds(secondi));
+        registrazione.setDestination(file);
+        registrazione.start();
+        corrente = registrazione;
+        Log.info("Registrazione JFR avviata per " + secondi + " s: " + file);
+        return file;
+    }
+
+    private static Map<String, String> impostazioni() throws IOException {
+        try (InputStream in = RegistrazioneSuRichiesta.class.getResourceAsStream(IMPOSTAZIONI)) {
+            if (in == null) {
+                throw new IOException("Impostazioni JFR non trovate: " + IMPOSTAZIONI);
+            }
+            Map<String, String> impostazioni = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+            try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                impostazioni.putAll(Configuration.create(reader).getSettings());
+            }
+            return impostazioni;
+        } catch (ParseException e) {
+            throw new IOException("Impostazioni JFR non valide: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package me.labb.bookrecommender.server.raccomandazioni;
+
+import me.labb.bookrecommender.server.db.CategoriaDAO;
+import me.labb.bookrecommender.server.db.LibroDAO;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Estrae libri casuali di una categoria senza ordinare a caso tutta la tabella a ogni richiesta.
+ * Per ogni termine cercato conserva in memoria l'array degli ID dei libri corrispondenti
+ * (al massimo {@link #MAX_TERMINI} termini, i meno usati vengono scartati), e ne estrae
+ * gli elementi con l'algoritmo di Floyd: il costo di un'estrazione dipende solo dal numero
+ * di libri richiesti, non dalla dimensione della categoria.
+ * Gli array scadono dopo {@link #DURATA_MS} e vengono scartati quando il catalogo cambia.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class CampionatoreCategorie {
+
+    private static final int MAX_TERMINI = 256;
+    private static final long DURATA_MS = 10 * 60 * 1000L;
+
+    private static volatile CampionatoreCategorie instance;
+
+    private record Voce(int[] libri, long scadenza) {
+    }
+
+    private final CategoriaDAO categoriaDAO = new CategoriaDAO();
+
+    // LinkedHashMap in ordine di accesso: il primo elemento è il termine usato meno di recente
+    private final Map<String, Voce> voci = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Voce> eldest) {
+            return size() > MAX_TERMINI;
+        }
+    };
+
+    private CampionatoreCategorie() {
+        LibroDAO.registraOsservatoreCatalogo(this::svuota);
+    }
+
+    /**
+     * @return L'istanza condivisa del campionatore
+     */
+    public static CampionatoreCategorie getInstance() {
+        if (instance == null) {
+            synchronized (CampionatoreCategorie.class) {
+                if (instance == null) {
+                    instance = new CampionatoreCategorie();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Restituisce gli ID di libri scelti a caso tra quelli la cui categoria contiene il termine.
+     *
+     * @param termine Termine da cercare nella categoria
+     * @param quanti  Numero di libri da estrarre
+     * @return Lista di ID distinti in ordine casuale, più corta di quanti se la categoria ha meno libri
+     * @throws SQLException In caso di errori SQL durante il caricamento della categoria
+     */
+    public List<Integer> estrai(String termine, int quanti) throws SQLException {
+        int[] libri = getLibri(termine.trim().toLowerCase(Locale.ROOT));
+        int n = libri.length;
+        int k = Math.min(quanti, n);
+
+        // Algoritmo di Floyd: k posizioni distinte e uniformi con k iterazioni
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Set<Integer> posizioni = new HashSet<>();
+        List<Integer> estratti = new ArrayList<>(k);
+        for (int j = n - k; j < n; j++) {
+            int t = random.nextInt(j + 1);
+            int scelta = posizioni.contains(t) ? j : t;
+            posizioni.add(scelta);
+            estratti.add(libri[scelta]);
+        }
+        Collections.shuffle(estratti, random);
+        return estratti;
+    }
+
+    /**
+     * Scarta tutti gli array in memoria, ad esempio dopo una modifica del catalogo.
+     */
+    public void svuota() {
+        synchronized (voci) {
+            voci.clear();
+        }
+    }
+
+    private int[] getLibri(String termine) throws SQLException {
+        long ora = System.currentTimeMillis();
+        synchronized (voci) {
+            Voce voce = voci.get(termine);
+            if (voce != null && voce.scadenza() > ora) {
+                return voce.libri();
+            }
+        }
+
+        // Caricamento fuori dal lock: due richieste concorrenti possono caricare lo stesso termine, senza conseguenze
+        int[] libri = categoriaDAO.getIdLibri(termine);
+        synchronized (voci) {
+            voci.put(termine, new Voce(libri, ora + DURATA_MS));
+        }
+        return libri;
+    }
+}
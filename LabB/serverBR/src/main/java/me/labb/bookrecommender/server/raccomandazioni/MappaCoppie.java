@@ -0,0 +1,108 @@
+package me.labb.bookrecommender.server.raccomandazioni;
+
+import java.util.Arrays;
+
+/**
+ * Mappa ad indirizzamento aperto da coppie di indici di libri (i &lt; j) a quattro accumulatori float,
+ * uno per ogni grandezza raccolta dal modello. Evita il boxing di chiavi e valori durante la costruzione.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+class MappaCoppie {
+    static final int VALUTAZIONI = 0;
+    static final int UTENTI_COMUNI = 1;
+    static final int LIBRERIE = 2;
+    static final int CONSIGLI = 3;
+
+    private static final long VUOTA = -1L;
+    private static final float FATTORE_CARICO = 0.6f;
+
+    private long[] chiavi;
+    private float[][] valori;
+    private int dimensione = 0;
+
+    MappaCoppie(int capacitaIniziale) {
+        int capacita = Integer.highestOneBit(Math.max(16, capacitaIniziale) * 2 - 1);
+        alloca(capacita);
+    }
+
+    /**
+     * Somma un valore all'accumulatore indicato della coppia (i, j), in qualsiasi ordine.
+     */
+    void aggiungi(int i, int j, int sorgente, float valore) {
+        long chiave = i < j ? ((long) i << 32) | j : ((long) j << 32) | i;
+        int slot = trovaSlot(chiave);
+        if (chiavi[slot] == VUOTA) {
+            chiavi[slot] = chiave;
+            dimensione++;
+            if (dimensione > chiavi.length * FATTORE_CARICO) {
+                ingrandisci();
+                slot = trovaSlot(chiave);
+            }
+        }
+        valori[sorgente][slot] += valore;
+    }
+
+    int capacita() {
+        return chiavi.length;
+    }
+
+    boolean occupato(int slot) {
+        return chiavi[slot] != VUOTA;
+    }
+
+    int primo(int slot) {
+        return (int) (chiavi[slot] >>> 32);
+    }
+
+    int secondo(int slot) {
+        return (int) chiavi[slot];
+    }
+
+    float valore(int slot, int sorgente) {
+        return valori[sorgente][slot];
+    }
+
+    int dimensione() {
+        return dimensione;
+    }
+
+    private int trovaSlot(long chiave) {
+        int maschera = chiavi.length - 1;
+        int slot = (int) (mescola(chiave) & maschera);
+        while (chiavi[slot] != VUOTA && chiavi[slot] != chiave) {
+            slot = (slot + 1) & maschera;
+        }
+        return slot;
+    }
+
+    private void alloca(int capacita) {
+        chiavi = new long[capacita];
+        Arrays.fill(chiavi, VUOTA);
+        valori = new float[4][capacita];
+    }
+
+    private void ingrandisci() {
+        long[] vecchieChiavi = chiavi;
+        float[][] vecchiValori = valori;
+        alloca(vecchieChiavi.length * 2);
+        for (int s = 0; s < vecchieChiavi.length; s++) {
+            if (vecchieChiavi[s] != VUOTA) {
+                int slot = trovaSlot(vecchieChiavi[s]);
+                chiavi[slot] = vecchieChiavi[s];
+                for (int v = 0; v < valori.length; v++) {
+                    valori[v][slot] = vecchiValori[v][s];
+                }
+            }
+        }
+    }
+
+    private static long mescola(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        return x;
+    }
+}
@@ -0,0 +1,319 @@
+package me.labb.bookrecommender.server.raccomandazioni;
+
+import me.labb.bookrecommender.server.cache.CacheRisposte;
+import me.labb.bookrecommender.server.db.RaccomandazioniDAO;
+import me.labb.bookrecommender.server.db.RaccomandazioniDAO.ArcoConsiglio;
+import me.labb.bookrecommender.server.db.RaccomandazioniDAO.ElementoLibreria;
+import me.labb.bookrecommender.server.db.RaccomandazioniDAO.VotoMedio;
+import me.labb.bookrecommender.server.log.Log;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Modello di raccomandazione item-item, costruito da tre sorgenti:
+ * <ul>
+ *     <li>le valutazioni degli utenti (similarità del coseno sui voti centrati sulla media di ogni utente);</li>
+ *     <li>la presenza degli stessi libri nelle librerie degli utenti;</li>
+ *     <li>i consigli espliciti tra libri.</li>
+ * </ul>
+ * Per ogni libro vengono conservati solo i {@link #VICINI_PER_LIBRO} libri più simili, già ordinati,
+ * in array primitivi in formato CSR (offset di riga e ID dei vicini), quindi una richiesta costa O(K).
+ * Il modello è immutabile e viene ricostruito periodicamente in background.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class ModelloRaccomandazioni {
+
+    static final int VICINI_PER_LIBRO = 20;
+
+    // Oltre questa soglia un utente o una libreria contribuisce solo con i primi elementi, per limitare le coppie
+    private static final int MAX_ELEMENTI_PER_GRUPPO = 200;
+
+    // Riduce la similarità delle coppie valutate da pochi utenti in comune
+    private static final float RIDUZIONE_SUPPORTO = 5f;
+
+    private static final float PESO_VALUTAZIONI = 1.0f;
+    private static final float PESO_LIBRERIE = 0.5f;
+    private static final float PESO_CONSIGLI = 1.0f;
+
+    private static volatile ModelloRaccomandazioni corrente = null;
+    private static ScheduledExecutorService aggiornamento = null;
+
+    // ID dei libri presenti nel modello, ordinati: la posizione è l'indice di riga
+    private final int[] libri;
+    private final int[] offset;
+    private final int[] vicini;
+
+    private ModelloRaccomandazioni(int[] libri, int[] offset, int[] vicini) {
+        this.libri = libri;
+        this.offset = offset;
+        this.vicini = vicini;
+    }
+
+    /**
+     * Attiva il modello: lo costruisce subito in background e poi lo ricostruisce a intervalli regolari.
+     * Finché la prima costruzione non termina {@link #getCorrente()} restituisce null.
+     *
+     * @param intervalloMinuti Minuti tra una ricostruzione e la successiva
+     */
+    public static synchronized void attiva(long intervalloMinuti) {
+        if (aggiornamento != null) {
+            return;
+        }
+        aggiornamento = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "aggiornamento-raccomandazioni");
+            thread.setDaemon(true);
+            return thread;
+        });
+        aggiornamento.scheduleWithFixedDelay(() -> {
+            try {
+                ricarica();
+            } catch (SQLException | RuntimeException e) {
+                Log.errore("Errore durante la costruzione del modello di raccomandazione: " + e.getMessage());
+            }
+        }, 0, Math.max(1, intervalloMinuti), TimeUnit.MINUTES);
+    }
+
+    /**
+     * Ricostruisce il modello dai dati correnti del database.
+     * Durante la ricostruzione le richieste continuano a usare il modello precedente.
+     *
+     * @throws SQLException In caso di errori SQL durante il caricamento
+     */
+    public static void ricarica() throws SQLException {
+        long inizio = System.currentTimeMillis();
+        RaccomandazioniDAO dao = new RaccomandazioniDAO();
+        ModelloRaccomandazioni nuovo = costruisci(dao.getVotiMedi(), dao.getContenutiLibrerie(), dao.getArchiConsigli());
+        corrente = nuovo;
+        CacheRisposte cache = CacheRisposte.getCorrente();
+        if (cache != null) {
+            cache.invalidaComando("GENERA_CONSIGLI");
+        }
+        Log.info("Modello di raccomandazione costruito: " + nuovo.libri.length + " libri, "
+                + nuovo.vicini.length + " vicini in " + (System.currentTimeMillis() - inizio) + " ms.");
+    }
+
+    /**
+     * @return Il modello corrente, o null se non è attivo o non è ancora stato costruito
+     */
+    public static ModelloRaccomandazioni getCorrente() {
+        return corrente;
+    }
+
+    /**
+     * Restituisce i libri più simili a quello indicato, in ordine di similarità decrescente.
+     *
+     * @param libroID  ID del libro di riferimento
+     * @param limite   Numero massimo di libri da restituire
+     * @param esclusi  ID dei libri da non restituire (ad esempio quelli già consigliati)
+     * @return Lista di ID dei libri simili, eventualmente vuota
+     */
+    public List<Integer> getSimili(int libroID, int limite, Collection<Integer> esclusi) {
+        List<Integer> risultato = new ArrayList<>();
+        int riga = Arrays.binarySearch(libri, libroID);
+        if (riga < 0) {
+            return risultato;
+        }
+        for (int k = offset[riga]; k < offset[riga + 1] && risultato.size() < limite; k++) {
+            if (!esclusi.contains(vicini[k])) {
+                risultato.add(vicini[k]);
+            }
+        }
+        return risultato;
+    }
+
+    /**
+     * Costruisce il modello dai dati letti dal database.
+     *
+     * @param voti     Valutazioni medie, ordinate per utente
+     * @param librerie Contenuto delle librerie, ordinato per libreria
+     * @param consigli Consigli aggregati tra libri
+     * @return Il nuovo modello
+     */
+    static ModelloRaccomandazioni costruisci(List<VotoMedio> voti, List<ElementoLibreria> librerie,
+                                             List<ArcoConsiglio> consigli) {
+        int[] libri = raccogliLibri(voti, librerie, consigli);
+        int n = libri.length;
+        MappaCoppie coppie = new MappaCoppie(voti.size() + librerie.size() + consigli.size());
+
+        // Valutazioni: prodotto scalare dei voti centrati sulla media dell'utente
+        float[] norme = new float[n];
+        int[] gruppo = new int[MAX_ELEMENTI_PER_GRUPPO];
+        float[] centrati = new float[MAX_ELEMENTI_PER_GRUPPO];
+        for (int inizio = 0; inizio < voti.size(); ) {
+            int fine = inizio;
+            double somma = 0;
+            while (fine < voti.size() && voti.get(fine).userID() == voti.get(inizio).userID()) {
+                somma += voti.get(fine).media();
+                fine++;
+            }
+            double mediaUtente = somma / (fine - inizio);
+            int dimensione = Math.min(fine - inizio, MAX_ELEMENTI_PER_GRUPPO);
+            for (int a = 0; a < dimensione; a++) {
+                VotoMedio voto = voti.get(inizio + a);
+                gruppo[a] = Arrays.binarySearch(libri, voto.libroID());
+                centrati[a] = (float) (voto.media() - mediaUtente);
+                norme[gruppo[a]] += centrati[a] * centrati[a];
+            }
+            for (int a = 0; a < dimensione; a++) {
+                for (int b = a + 1; b < dimensione; b++) {
+                    if (gruppo[a] == gruppo[b]) {
+                        continue;
+                    }
+                    coppie.aggiungi(gruppo[a], gruppo[b], MappaCoppie.UTENTI_COMUNI, 1f);
+                    float prodotto = centrati[a] * centrati[b];
+                    if (prodotto != 0f) {
+                        coppie.aggiungi(gruppo[a], gruppo[b], MappaCoppie.VALUTAZIONI, prodotto);
+                    }
+                }
+            }
+            inizio = fine;
+        }
+
+        // Librerie: numero di librerie in cui i due libri compaiono insieme
+        int[] presenze = new int[n];
+        for (int inizio = 0; inizio < librerie.size(); ) {
+            int fine = inizio;
+            while (fine < librerie.size() && librerie.get(fine).libreriaID() == librerie.get(inizio).libreriaID()) {
+                fine++;
+            }
+            int dimensione = Math.min(fine - inizio, MAX_ELEMENTI_PER_GRUPPO);
+            for (int a = 0; a < dimensione; a++) {
+                gruppo[a] = Arrays.binarySearch(libri, librerie.get(inizio + a).libroID());
+                presenze[gruppo[a]]++;
+            }
+            for (int a = 0; a < dimensione; a++) {
+                for (int b = a + 1; b < dimensione; b++) {
+                    if (gruppo[a] != gruppo[b]) {
+                        coppie.aggiungi(gruppo[a], gruppo[b], MappaCoppie.LIBRERIE, 1f);
+                    }
+                }
+            }
+            inizio = fine;
+        }
+
+        // Consigli: numero di utenti che hanno collegato i due libri, in entrambe le direzioni
+        for (ArcoConsiglio arco : consigli) {
+            int a = Arrays.binarySearch(libri, arco.libroRiferimentoID());
+            int b = Arrays.binarySearch(libri, arco.libroSuggeritoID());
+            if (a != b) {
+                coppie.aggiungi(a, b, MappaCoppie.CONSIGLI, arco.numeroUtenti());
+            }
+        }
+
+        // Selezione dei K vicini migliori per ogni libro
+        int[] migliori = new int[n * VICINI_PER_LIBRO];
+        float[] punteggiMigliori = new float[n * VICINI_PER_LIBRO];
+        int[] quanti = new int[n];
+        for (int slot = 0; slot < coppie.capacita(); slot++) {
+            if (!coppie.occupato(slot)) {
+                continue;
+            }
+            int i = coppie.primo(slot);
+            int j = coppie.secondo(slot);
+            float punteggio = similarita(coppie, slot, norme[i], norme[j], presenze[i], presenze[j]);
+            if (punteggio > 0f) {
+                inserisciVicino(migliori, punteggiMigliori, quanti, i, j, punteggio);
+                inserisciVicino(migliori, punteggiMigliori, quanti, j, i, punteggio);
+            }
+        }
+
+        // Compattazione in formato CSR, con i vicini di ogni libro in ordine decrescente
+        int[] offset = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            offset[i + 1] = offset[i] + quanti[i];
+        }
+        int[] vicini = new int[offset[n]];
+        float[] punteggi = new float[offset[n]];
+        for (int i = 0; i < n; i++) {
+            int base = i * VICINI_PER_LIBRO;
+            for (int k = 0; k < quanti[i]; k++) {
+                int pos = offset[i] + k;
+                float p = punteggiMigliori[base + k];
+                int v = libri[migliori[base + k]];
+                while (pos > offset[i] && punteggi[pos - 1] < p) {
+                    punteggi[pos] = punteggi[pos - 1];
+                    vicini[pos] = vicini[pos - 1];
+                    pos--;
+                }
+                punteggi[pos] = p;
+                vicini[pos] = v;
+            }
+        }
+
+        return new ModelloRaccomandazioni(libri, offset, vicini);
+    }
+
+    private static float similarita(MappaCoppie coppie, int slot, float normaI, float normaJ,
+                                    int presenzeI, int presenzeJ) {
+        float punteggio = 0f;
+
+        float prodotto = coppie.valore(slot, MappaCoppie.VALUTAZIONI);
+        if (prodotto > 0f && normaI > 0f && normaJ > 0f) {
+            float comuni = coppie.valore(slot, MappaCoppie.UTENTI_COMUNI);
+            double coseno = prodotto / Math.sqrt((double) normaI * normaJ);
+            punteggio += (float) (PESO_VALUTAZIONI * coseno * comuni / (comuni + RIDUZIONE_SUPPORTO));
+        }
+
+        float insieme = coppie.valore(slot, MappaCoppie.LIBRERIE);
+        if (insieme > 0f) {
+            punteggio += (float) (PESO_LIBRERIE * insieme / Math.sqrt((double) presenzeI * presenzeJ));
+        }
+
+        float utenti = coppie.valore(slot, MappaCoppie.CONSIGLI);
+        if (utenti > 0f) {
+            punteggio += PESO_CONSIGLI * utenti / (utenti + 1f);
+        }
+
+        return punteggio;
+    }
+
+    /**
+     * Inserisce j tra i vicini di i se rientra tra i K migliori, sostituendo il peggiore.
+     */
+    private static void inserisciVicino(int[] migliori, float[] punteggi, int[] quanti, int i, int j, float punteggio) {
+        int base = i * VICINI_PER_LIBRO;
+        if (quanti[i] < VICINI_PER_LIBRO) {
+            migliori[base + quanti[i]] = j;
+            punteggi[base + quanti[i]] = punteggio;
+            quanti[i]++;
+            return;
+        }
+        int peggiore = base;
+        for (int k = base + 1; k < base + VICINI_PER_LIBRO; k++) {
+            if (punteggi[k] < punteggi[peggiore]) {
+                peggiore = k;
+            }
+        }
+        if (punteggio > punteggi[peggiore]) {
+            migliori[peggiore] = j;
+            punteggi[peggiore] = punteggio;
+        }
+    }
+
+    private static int[] raccogliLibri(List<VotoMedio> voti, List<ElementoLibreria> librerie,
+                                       List<ArcoConsiglio> consigli) {
+        int[] tutti = new int[voti.size() + librerie.size() + 2 * consigli.size()];
+        int n = 0;
+        for (VotoMedio voto : voti) {
+            tutti[n++] = voto.libroID();
+        }
+        for (ElementoLibreria elemento : librerie) {
+            tutti[n++] = elemento.libroID();
+        }
+        for (ArcoConsiglio arco : consigli) {
+            tutti[n++] = arco.libroRiferimentoID();
+            tutti[n++] = arco.libroSuggeritoID();
+        }
+        return Arrays.stream(tutti).sorted().distinct().toArray();
+    }
+}
@@ -0,0 +1,532 @@
+package me.labb.bookrecommender.server.rete;
+
+import me.labb.bookrecommender.server.ClientHandler;
+import me.labb.bookrecommender.server.log.Log;
+import me.labb.bookrecommender.server.metriche.MetricheConnessioni;
+import me.labb.bookrecommender.server.utils.FormatoBinario;
+import me.labb.bookrecommender.server.utils.RequestParser;
+import me.labb.bookrecommender.server.utils.ResponseFormatter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Trasporto non bloccante basato su {@link Selector}.
+ * Un solo thread gestisce accettazione, lettura e scrittura di tutte le connessioni;
+ * le righe complete del protocollo (JSON o TEXT terminati da newline) vengono
+ * elaborate dagli worker, una alla volta per connessione per mantenere l'ordine delle risposte.
+ * Dopo FORMAT BINARY la connessione usa frame con la lunghezza in testa invece delle righe; finché un worker
+ * non ha elaborato una riga FORMAT o COMPRESSIONE la connessione non viene letta oltre quella riga.
+ * I client inattivi non occupano alcun thread.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class ServerNIO {
+
+    private static final int DIMENSIONE_BUFFER_LETTURA = 8 * 1024;
+    private static final int LUNGHEZZA_MASSIMA_RIGA = 1024 * 1024;
+    // Oltre questo numero di richieste in coda si smette di leggere dalla connessione
+    private static final int MASSIMO_RICHIESTE_IN_CODA = 32;
+    // Oltre questi byte di risposte non ancora scritte si smette di leggere dalla connessione
+    private static final long MASSIMO_BYTE_IN_USCITA = 4L * 1024 * 1024;
+
+    private final int porta;
+    private final ExecutorService worker;
+    private final Semaphore limitatoreDB;
+    private final Queue<Sessione> aggiornamentiInteresse = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer bufferLettura = ByteBuffer.allocateDirect(DIMENSIONE_BUFFER_LETTURA);
+
+    private Selector selector;
+    private ServerSocketChannel canaleServer;
+    private volatile boolean attivo = false;
+
+    /**
+     * Stato di una connessione gestita dal selector.
+     */
+    private final class Sessione {
+        private final SocketChannel canale;
+        private final String indirizzo;
+        private final ClientHandler handler = new ClientHandler(null, limitatoreDB);
+        private final ByteArrayOutputStream rigaCorrente = new ByteArrayOutputStream();
+
+        // Frame binario in lettura: prima i 4 byte della lunghezza, poi il contenuto
+        private final ByteBuffer intestazioneFrame = ByteBuffer.allocate(FormatoBinario.LUNGHEZZA_INTESTAZIONE);
+        private ByteBuffer contenutoFrame;
+
+        // Byte ricevuti dopo una riga FORMAT o COMPRESSIONE, da separare quando un worker l'ha elaborata
+        private ByteBuffer inAttesa;
+
+        // Accesso sincronizzato su this: usate sia dal selector che dagli worker
+        private final ArrayDeque<String> richieste = new ArrayDeque<>();
+        private boolean inElaborazione = false;
+        private boolean sospesa = false;
+
+        private final Queue<ByteBuffer> uscita = new ConcurrentLinkedQueue<>();
+        private final AtomicLong byteInUscita = new AtomicLong();
+        private volatile boolean chiudiDopoScrittura = false;
+        private volatile boolean chiusa = false;
+        private SelectionKey chiave;
+
+        private Sessione(SocketChannel canale, String indirizzo) {
+            this.canale = canale;
+            this.indirizzo = indirizzo;
+        }
+    }
+
+    /**
+     * @param porta  La porta su cui ascoltare
+     * @param worker Pool limitato che elabora le richieste
+     */
+    public ServerNIO(int porta, ExecutorService worker) {
+        this(porta, worker, null);
+    }
+
+    /**
+     * @param porta        La porta su cui ascoltare
+     * @param worker       Pool che elabora le richieste
+     * @param limitatoreDB Semaforo che limita le richieste elaborate in contemporanea, o null
+     */
+    public ServerNIO(int porta, ExecutorService worker, Semaphore limitatoreDB) {
+        this.porta = porta;
+        this.worker = worker;
+        this.limitatoreDB = limitatoreDB;
+    }
+
+    /**
+     * Avvia il ciclo del selector nel thread corrente. Ritorna all'arresto del server.
+     *
+     * @throws IOException Se non è possibile aprire la porta
+     */
+    public void avvia() throws IOException {
+        selector = Selector.open();
+        canaleServer = ServerSocketChannel.open();
+        canaleServer.bind(new InetSocketAddress(porta));
+        canaleServer.configureBlocking(false);
+        canaleServer.register(selector, SelectionKey.OP_ACCEPT);
+        attivo = true;
+        Log.info("Server NIO avviato sulla porta " + porta);
+
+        try {
+            while (attivo) {
+                selector.select();
+                applicaAggiornamentiInteresse();
+
+                Iterator<SelectionKey> chiavi = selector.selectedKeys().iterator();
+                while (chiavi.hasNext()) {
+                    SelectionKey chiave = chiavi.next();
+                    chiavi.remove();
+
+                    if (!chiave.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (chiave.isAcceptable()) {
+                            accetta();
+                            continue;
+                        }
+                        Sessione sessione = (Sessione) chiave.attachment();
+                        if (chiave.isReadable()) {
+                            leggi(sessione);
+                        }
+                        if (chiave.isValid() && chiave.isWritable()) {
+                            scrivi(sessione);
+                        }
+                    } catch (IOException e) {
+                        Object allegato = chiave.attachment();
+                        if (allegato instanceof Sessione sessione) {
+                            Log.errore("Errore nella gestione del client " + sessione.indirizzo + ": " + e.getMessage());
+                            chiudiSessione(sessione);
+                        } else {
+                            Log.errore("Errore nell'accettare la connessione client: " + e.getMessage());
+                        }
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // Selector chiuso da arresta()
+        } finally {
+            arresta();
+        }
+    }
+
+    /**
+     * Arresta il selector e chiude tutte le connessioni.
+     */
+    public void arresta() {
+        attivo = false;
+        if (selector == null || !selector.isOpen()) {
+            return;
+        }
+        try {
+            for (SelectionKey chiave : selector.keys()) {
+                if (chiave.attachment() instanceof Sessione sessione) {
+                    sessione.chiusa = true;
+                }
+                chiave.channel().close();
+            }
+            selector.close();
+            Log.info("Server NIO arrestato.");
+        } catch (IOException e) {
+            Log.errore("Errore durante la chiusura del server NIO: " + e.getMessage());
+        }
+    }
+
+    private void accetta() throws IOException {
+        SocketChannel canale = canaleServer.accept();
+        if (canale == null) {
+            return;
+        }
+        canale.configureBlocking(false);
+        canale.socket().setTcpNoDelay(true);
+        String indirizzo = canale.socket().getInetAddress().getHostAddress();
+
+        Sessione sessione = new Sessione(canale, indirizzo);
+        sessione.chiave = canale.register(selector, SelectionKey.OP_READ, sessione);
+        MetricheConnessioni.connessioneAperta();
+        accoda(sessione, ClientHandler.MESSAGGIO_BENVENUTO);
+        aggiornaInteresse(sessione);
+        Log.debug(() -> "Nuovo client connesso (NIO): " + indirizzo);
+    }
+
+    /**
+     * Legge i byte disponibili e separa le richieste complete.
+     */
+    private void leggi(Sessione sessione) throws IOException {
+        bufferLettura.clear();
+        int letti = sessione.canale.read(bufferLettura);
+        if (letti < 0) {
+            chiudiSessione(sessione);
+            return;
+        }
+        bufferLettura.flip();
+        separaRichieste(sessione, bufferLettura);
+    }
+
+    /**
+     * Separa righe o frame binari secondo il formato attuale della sessione.
+     * Dopo una riga FORMAT o COMPRESSIONE si ferma e la lettura resta sospesa: i byte che seguono,
+     * anche se arrivati nella stessa lettura, vengono conservati e separati da {@link #riprendi(Sessione)}
+     * solo dopo che un worker ha elaborato il comando, nel formato che ne risulta.
+     */
+    private void separaRichieste(Sessione sessione, ByteBuffer dati) {
+        while (dati.hasRemaining()) {
+            // Il formato cambia solo tra una riga e l'altra, quando nessuna riga è a metà
+            if (sessione.handler.isFormatoBinario()) {
+                if (!leggiFrame(sessione, dati)) {
+                    return;
+                }
+                continue;
+            }
+
+            byte b = dati.get();
+            if (b != '\n') {
+                if (sessione.rigaCorrente.size() >= LUNGHEZZA_MASSIMA_RIGA) {
+                    Log.avviso("Richiesta troppo lunga dal client " + sessione.indirizzo + ", connessione chiusa.");
+                    chiudiSessione(sessione);
+                    return;
+                }
+                sessione.rigaCorrente.write(b);
+                continue;
+            }
+
+            String riga = sessione.rigaCorrente.toString(StandardCharsets.UTF_8);
+            sessione.rigaCorrente.reset();
+            if (riga.endsWith("\r")) {
+                riga = riga.substring(0, riga.length() - 1);
+            }
+            boolean cambioFormato = ClientHandler.isComandoFormato(riga);
+            if (cambioFormato) {
+                // Prima di accodare la riga, così il worker non può riprendere prima della sospensione
+                synchronized (sessione) {
+                    sessione.sospesa = true;
+                }
+            }
+            if (!ricevutaRiga(sessione, riga)) {
+                return;
+            }
+            if (cambioFormato) {
+                if (dati.hasRemaining()) {
+                    ByteBuffer resto = ByteBuffer.allocate(dati.remaining());
+                    resto.put(dati).flip();
+                    sessione.inAttesa = resto;
+                }
+                break;
+            }
+        }
+        aggiornaInteresse(sessione);
+    }
+
+    /**
+     * Separa i byte rimasti in attesa dopo una riga FORMAT o COMPRESSIONE, ora che è stata elaborata.
+     */
+    private void riprendi(Sessione sessione) {
+        ByteBuffer dati = sessione.inAttesa;
+        sessione.inAttesa = null;
+        separaRichieste(sessione, dati);
+    }
+
+    /**
+     * Consuma i byte disponibili del frame corrente e, se è completo, lo accoda come richiesta.
+     *
+     * @return false se la sessione non deve più leggere
+     */
+    private boolean leggiFrame(Sessione sessione, ByteBuffer dati) {
+        if (sessione.contenutoFrame == null) {
+            while (sessione.intestazioneFrame.hasRemaining() && dati.hasRemaining()) {
+                sessione.intestazioneFrame.put(dati.get());
+            }
+            if (sessione.intestazioneFrame.hasRemaining()) {
+                return true;
+            }
+            int lunghezza = sessione.intestazioneFrame.getInt(0);
+            sessione.intestazioneFrame.clear();
+            if (lunghezza < 0 || lunghezza > LUNGHEZZA_MASSIMA_RIGA) {
+                Log.avviso("Frame di " + lunghezza + " byte dal client " + sessione.indirizzo + ", connessione chiusa.");
+                chiudiSessione(sessione);
+                return false;
+            }
+            sessione.contenutoFrame = ByteBuffer.allocate(lunghezza);
+        }
+
+        int daCopiare = Math.min(sessione.contenutoFrame.remaining(), dati.remaining());
+        sessione.contenutoFrame.put(dati.slice(dati.position(), daCopiare));
+        dati.position(dati.position() + daCopiare);
+        if (sessione.contenutoFrame.hasRemaining()) {
+            return true;
+        }
+
+        byte[] contenuto = sessione.contenutoFrame.array();
+        sessione.contenutoFrame = null;
+        String richiesta;
+        try {
+            richiesta = FormatoBinario.decodifica(contenuto);
+        } catch (IOException e) {
+            Log.avviso("Frame non valido dal client " + sessione.indirizzo + ": " + e.getMessage());
+            chiudiSessione(sessione);
+            return false;
+        }
+        return ricevutaRiga(sessione, richiesta);
+    }
+
+    /**
+     * Gestisce una riga completa ricevuta dal client.
+     *
+     * @return false se la sessione non deve più leggere
+     */
+    private boolean ricevutaRiga(Sessione sessione, String riga) {
+        boolean daAvviare;
+        synchronized (sessione) {
+            if (ClientHandler.isComandoUscita(riga) && sessione.richieste.isEmpty() && !sessione.inElaborazione) {
+                sessione.chiudiDopoScrittura = true;
+                accoda(sessione, ClientHandler.MESSAGGIO_ARRIVEDERCI);
+                aggiornaInteresse(sessione);
+                return false;
+            }
+            sessione.richieste.addLast(riga);
+            daAvviare = !sessione.inElaborazione;
+            sessione.inElaborazione = true;
+        }
+        if (daAvviare) {
+            pianifica(sessione);
+        }
+        return true;
+    }
+
+    /**
+     * Affida agli worker la prossima richiesta della sessione.
+     */
+    private void pianifica(Sessione sessione) {
+        try {
+            worker.execute(() -> elaboraProssima(sessione));
+        } catch (RejectedExecutionException e) {
+            // Pool saturo: si risponde a tutte le richieste in coda per non perdere la corrispondenza richiesta/risposta
+            synchronized (sessione) {
+                while (!sessione.richieste.isEmpty()) {
+                    String riga = sessione.richieste.pollFirst();
+                    accoda(sessione, ResponseFormatter.conId(ResponseFormatter.erroreJson("Server sovraccarico. Riprova più tardi."),
+                            RequestParser.parseRequest(riga).getId()), sessione.handler.isFormatoBinario(), sessione.handler.isCompressione());
+                }
+                sessione.inElaborazione = false;
+                sessione.sospesa = false;
+            }
+            richiediAggiornamento(sessione);
+        }
+    }
+
+    /**
+     * Eseguito da un worker: elabora una richiesta e ripianifica la sessione se ne restano altre,
+     * così che una connessione molto attiva non monopolizzi un worker.
+     */
+    private void elaboraProssima(Sessione sessione) {
+        String riga;
+        synchronized (sessione) {
+            riga = sessione.richieste.pollFirst();
+            if (riga == null || sessione.chiusa) {
+                sessione.richieste.clear();
+                sessione.inElaborazione = false;
+                sessione.sospesa = false;
+                return;
+            }
+        }
+
+        if (ClientHandler.isComandoUscita(riga)) {
+            sessione.chiudiDopoScrittura = true;
+            accoda(sessione, ClientHandler.MESSAGGIO_ARRIVEDERCI);
+            synchronized (sessione) {
+                sessione.richieste.clear();
+                sessione.inElaborazione = false;
+            }
+            richiediAggiornamento(sessione);
+            return;
+        }
+
+        // Le risposte a FORMAT BINARY e COMPRESSIONE sono ancora righe: lo stato si legge prima di elaborare
+        boolean binaria = sessione.handler.isFormatoBinario();
+        boolean compressa = sessione.handler.isCompressione();
+        String risposta;
+        try {
+            risposta = sessione.handler.elaboraComando(riga);
+        } catch (RuntimeException e) {
+            Log.errore("Errore nell'elaborazione della richiesta del client " + sessione.indirizzo + ": " + e.getMessage());
+            risposta = ResponseFormatter.conId(ResponseFormatter.erroreJson("Errore interno del server."),
+                    RequestParser.parseRequest(riga).getId());
+        }
+        accoda(sessione, risposta, binaria, compressa);
+
+        boolean altre;
+        synchronized (sessione) {
+            altre = !sessione.richieste.isEmpty();
+            sessione.inElaborazione = altre;
+            if (ClientHandler.isComandoFormato(riga)) {
+                sessione.sospesa = false;
+            }
+        }
+        richiediAggiornamento(sessione);
+        if (altre) {
+            pianifica(sessione);
+        }
+    }
+
+    private void accoda(Sessione sessione, String messaggio) {
+        accoda(sessione, messaggio, false, sessione.handler.isCompressione());
+    }
+
+    private void accoda(Sessione sessione, String messaggio, boolean binaria, boolean compressa) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(ClientHandler.codificaRisposta(messaggio, binaria, compressa));
+            sessione.byteInUscita.addAndGet(buffer.remaining());
+            sessione.uscita.add(buffer);
+        } catch (IOException e) {
+            Log.errore("Errore nella codifica della risposta per il client " + sessione.indirizzo + ": " + e.getMessage());
+            sessione.chiudiDopoScrittura = true;
+        }
+    }
+
+    private void scrivi(Sessione sessione) throws IOException {
+        ByteBuffer buffer;
+        while ((buffer = sessione.uscita.peek()) != null) {
+            sessione.byteInUscita.addAndGet(-sessione.canale.write(buffer));
+            if (buffer.hasRemaining()) {
+                // Buffer di invio del socket pieno: si riprova quando torna scrivibile
+                break;
+            }
+            sessione.uscita.poll();
+        }
+        if (sessione.uscita.isEmpty() && sessione.chiudiDopoScrittura) {
+            chiudiSessione(sessione);
+            return;
+        }
+        aggiornaInteresse(sessione);
+    }
+
+    /**
+     * Chiede al thread del selector di ricalcolare gli interessi della sessione.
+     * Chiamato dagli worker, che non possono modificare le chiavi direttamente in modo efficiente.
+     */
+    private void richiediAggiornamento(Sessione sessione) {
+        aggiornamentiInteresse.add(sessione);
+        selector.wakeup();
+    }
+
+    private void applicaAggiornamentiInteresse() {
+        Sessione sessione;
+        while ((sessione = aggiornamentiInteresse.poll()) != null) {
+            if (sessione.inAttesa != null && !sessione.chiusa && !isSospesa(sessione)) {
+                riprendi(sessione);
+            } else {
+                aggiornaInteresse(sessione);
+            }
+        }
+    }
+
+    private boolean isSospesa(Sessione sessione) {
+        synchronized (sessione) {
+            return sessione.sospesa;
+        }
+    }
+
+    /**
+     * Legge solo se la lettura non è sospesa da un cambio di formato, la coda delle richieste non è piena
+     * e il client sta leggendo le risposte,
+     * scrive solo se ci sono dati in uscita. Un client che invia richieste senza leggere le risposte
+     * smette così di essere letto quando le sue risposte superano {@link #MASSIMO_BYTE_IN_USCITA}:
+     * oltre la soglia si accodano al più le risposte alle richieste già ricevute.
+     */
+    private void aggiornaInteresse(Sessione sessione) {
+        if (sessione.chiusa || !sessione.chiave.isValid()) {
+            return;
+        }
+        int interesse = 0;
+        if (!sessione.chiudiDopoScrittura) {
+            synchronized (sessione) {
+                if (!sessione.sospesa && sessione.richieste.size() < MASSIMO_RICHIESTE_IN_CODA
+                        && sessione.byteInUscita.get() < MASSIMO_BYTE_IN_USCITA) {
+                    interesse |= SelectionKey.OP_READ;
+                }
+            }
+        }
+        if (!sessione.uscita.isEmpty()) {
+            interesse |= SelectionKey.OP_WRITE;
+        }
+        if (sessione.chiudiDopoScrittura && sessione.uscita.isEmpty()) {
+            chiudiSessione(sessione);
+            return;
+        }
+        sessione.chiave.interestOps(interesse);
+    }
+
+    private void chiudiSessione(Sessione sessione) {
+        if (sessione.chiusa) {
+            return;
+        }
+        sessione.chiusa = true;
+        MetricheConnessioni.connessioneChiusa();
+        if (sessione.chiave != null) {
+            sessione.chiave.cancel();
+        }
+        try {
+            sessione.canale.close();
+            Log.debug(() -> "Connessione client chiusa: " + sessione.indirizzo);
+        } catch (IOException e) {
+            Log.errore("Errore durante la chiusura della connessione client: " + e.getMessage());
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package me.labb.bookrecommender.server.rete;
 
+import me.labb.bookrecommender.server.db.CategoriaDAO;
 import me.labb.bookrecommender.server.db.LibroDAO;
 import me.labb.bookrecommender.server.db.UtenteDAO;
+import me.labb.bookrecommender.server.log.Log;
 import me.labb.bookrecommender.server.oggetti.Libro;
 import me.labb.bookrecommender.server.oggetti.Utente;
 
@@ -49,12 +51,12 @@ public class ServerThread extends Thread {
             out.flush();
             in = new ObjectInputStream(socket.getInputStream());
 
-            System.out.println("Client #" + clientID + " connesso da " + socket.getInetAddress().getHostAddress());
+            Log.debug(() -> "Client #" + clientID + " connesso da " + socket.getInetAddress().getHostAddress());
 
             boolean running = true;
             while (running) {
                 String comando = (String) in.readObject();
-                System.out.println("Client #" + clientID + " ha inviato il comando: " + comando);
+                Log.debug(() -> "Client #" + clientID + " ha inviato il comando: " + comando);
 
                 switch (comando) {
                     case "LOGIN" -> gestisciLogin();
@@ -69,9 +71,9 @@ public class ServerThread extends Thread {
             }
 
         } catch (EOFException e) {
-            System.out.println("Client #" + clientID + " si è disconnesso");
+            Log.info("Client #" + clientID + " si è disconnesso");
         } catch (IOException | ClassNotFoundException | SQLException e) {
-            System.err.println("Errore con il client #" + clientID + ": " + e.getMessage());
+            Log.errore("Errore con il client #" + clientID + ": " + e.getMessage());
             e.printStackTrace();
         } finally {
             chiudiConnessione();
@@ -128,7 +130,7 @@ public class ServerThread extends Thread {
     }
 
     private void gestisciGetCategorie() throws IOException, SQLException {
-        List<String> categorie = libroDAO.getAllCategorie();
+        List<String> categorie = new CategoriaDAO().getCategorie();
         inviaRisposta("CATEGORIE", categorie);
     }
 
@@ -156,9 +158,9 @@ public class ServerThread extends Thread {
             if (in != null) in.close();
             if (out != null) out.close();
             if (socket != null && !socket.isClosed()) socket.close();
-            System.out.println("Connessione con client #" + clientID + " chiusa");
+            Log.info("Connessione con client #" + clientID + " chiusa");
         } catch (IOException e) {
-            System.err.println("Errore durante la chiusura della connessione con client #" + clientID);
+            Log.errore("Errore durante la chiusura della connessione con client #" + clientID);
         }
     }
 }
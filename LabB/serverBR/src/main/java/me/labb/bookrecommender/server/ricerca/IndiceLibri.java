@@ -0,0 +1,582 @@
+package me.labb.bookrecommender.server.ricerca;
+
+import me.labb.bookrecommender.server.db.LibroDAO;
+import me.labb.bookrecommender.server.log.Log;
+import me.labb.bookrecommender.server.oggetti.Libro;
+import me.labb.bookrecommender.server.oggetti.Pagina;
+import me.labb.bookrecommender.server.utils.Cursore;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Indice invertito in memoria del catalogo dei libri, usato per rispondere ai comandi
+ * di ricerca senza interrogare il database.
+ * <p>
+ * I libri sono numerati in ordine di titolo (e di ID a parità di titolo), così che le liste di posting
+ * (array di int ordinati) restituiscano i risultati già ordinati e un cursore di paginazione (titolo e ID
+ * dell'ultimo libro) individui con una ricerca binaria la posizione da cui continuare, anche dopo una ricostruzione. Sono indicizzati i token di titolo e autori,
+ * l'anno di pubblicazione e le categorie. Le ricerche mantengono la semantica degli ILIKE '%termine%'
+ * usati sul database: i token servono a restringere i candidati, che vengono poi verificati sul testo completo.
+ * <p>
+ * L'indice è immutabile: un aggiornamento ne costruisce uno nuovo e lo sostituisce atomicamente.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class IndiceLibri {
+
+    private static volatile IndiceLibri corrente = null;
+    private static volatile boolean attivo = false;
+    private static final AtomicBoolean aggiornamentoInCorso = new AtomicBoolean(false);
+    private static volatile boolean aggiornamentoRichiesto = false;
+
+    // Dati dei libri, indicizzati per posizione (ordine di titolo)
+    private final int[] id;
+    private final String[] titoli;
+    private final String[] autori;
+    private final String[] categorie;
+    private final float[] prezzi;
+    private final int[] anni;
+
+    // Vocabolari con le liste di posting e l'indice degli n-grammi dei termini
+    private final Vocabolario vocabolarioTitoli;
+    private final Vocabolario vocabolarioAutori;
+    private final Vocabolario vocabolarioCategorie;
+    private final Map<Integer, int[]> postingAnni;
+
+    private final List<String> elencoCategorie;
+
+    private static final Comparator<String> ORDINE_TITOLI = Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER);
+
+    private IndiceLibri(List<Libro> libri) {
+        List<Libro> ordinati = new ArrayList<>(libri);
+        ordinati.sort(Comparator.comparing(Libro::titolo, ORDINE_TITOLI).thenComparingInt(Libro::libroId));
+
+        int n = ordinati.size();
+        id = new int[n];
+        titoli = new String[n];
+        autori = new String[n];
+        categorie = new String[n];
+        prezzi = new float[n];
+        anni = new int[n];
+
+        Map<String, ListaInteri> tokenTitoli = new HashMap<>();
+        Map<String, ListaInteri> tokenAutori = new HashMap<>();
+        Map<String, ListaInteri> valoriCategorie = new HashMap<>();
+        Map<Integer, ListaInteri> valoriAnni = new HashMap<>();
+        TreeSet<String> categorieDistinte = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+        for (int i = 0; i < n; i++) {
+            Libro libro = ordinati.get(i);
+            id[i] = libro.libroId();
+            titoli[i] = libro.titolo();
+            autori[i] = libro.autori();
+            categorie[i] = libro.categoria();
+            prezzi[i] = libro.prezzo();
+            anni[i] = libro.annoPubblicazione();
+
+            for (String token : tokenizza(libro.titolo())) {
+                tokenTitoli.computeIfAbsent(token, k -> new ListaInteri()).aggiungiUnico(i);
+            }
+            for (String token : tokenizza(libro.autori())) {
+                tokenAutori.computeIfAbsent(token, k -> new ListaInteri()).aggiungiUnico(i);
+            }
+            if (libro.categoria() != null && !libro.categoria().isBlank()) {
+                valoriCategorie.computeIfAbsent(libro.categoria().toLowerCase(Locale.ROOT), k -> new ListaInteri()).aggiungiUnico(i);
+                for (String parte : libro.categoria().split(",")) {
+                    if (!parte.trim().isEmpty()) {
+                        categorieDistinte.add(parte.trim());
+                    }
+                }
+            }
+            valoriAnni.computeIfAbsent(libro.annoPubblicazione(), k -> new ListaInteri()).aggiungiUnico(i);
+        }
+
+        vocabolarioTitoli = new Vocabolario(tokenTitoli);
+        vocabolarioAutori = new Vocabolario(tokenAutori);
+        vocabolarioCategorie = new Vocabolario(valoriCategorie);
+
+        postingAnni = new HashMap<>();
+        valoriAnni.forEach((anno, lista) -> postingAnni.put(anno, lista.toArray()));
+
+        elencoCategorie = List.copyOf(categorieDistinte);
+    }
+
+    /**
+     * Attiva l'indice e lo carica dal database. Da chiamare all'avvio del server.
+     * L'indice si ricostruisce automaticamente quando il catalogo cambia.
+     *
+     * @throws SQLException In caso di errori SQL durante il caricamento
+     */
+    public static void attiva() throws SQLException {
+        attivo = true;
+        LibroDAO.registraOsservatoreCatalogo(IndiceLibri::aggiornaInBackground);
+        ricarica();
+    }
+
+    /**
+     * Ricostruisce l'indice leggendo l'intero catalogo dal database.
+     * Durante la ricostruzione le ricerche continuano a usare l'indice precedente.
+     *
+     * @throws SQLException In caso di errori SQL durante il caricamento
+     */
+    public static void ricarica() throws SQLException {
+        if (!attivo) {
+            return;
+        }
+        long inizio = System.currentTimeMillis();
+        List<Libro> libri = new LibroDAO().getTuttiLibriPerIndice();
+        IndiceLibri nuovo = new IndiceLibri(libri);
+        corrente = nuovo;
+        Log.info("Indice di ricerca in memoria caricato: " + nuovo.id.length + " libri, "
+                + nuovo.vocabolarioTitoli.dimensione() + " token nei titoli, "
+                + nuovo.vocabolarioAutori.dimensione() + " token negli autori in "
+                + (System.currentTimeMillis() - inizio) + " ms.");
+    }
+
+    /**
+     * Avvia una ricostruzione dell'indice in un thread separato.
+     * Se ne è già in corso una, ne viene eseguita un'altra al suo termine,
+     * perché quella in corso potrebbe aver letto il catalogo prima della modifica.
+     */
+    public static void aggiornaInBackground() {
+        if (!attivo) {
+            return;
+        }
+        aggiornamentoRichiesto = true;
+        if (!aggiornamentoInCorso.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                while (aggiornamentoRichiesto) {
+                    aggiornamentoRichiesto = false;
+                    ricarica();
+                }
+            } catch (SQLException e) {
+                aggiornamentoRichiesto = false;
+                Log.errore("Errore durante l'aggiornamento dell'indice di ricerca: " + e.getMessage());
+            } finally {
+                aggiornamentoInCorso.set(false);
+                if (aggiornamentoRichiesto) {
+                    aggiornaInBackground();
+                }
+            }
+        }, "aggiornamento-indice-libri");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return L'indice corrente, o null se l'indice non è attivo o non è ancora stato caricato
+     */
+    public static IndiceLibri getCorrente() {
+        return corrente;
+    }
+
+    /**
+     * Cerca il termine nel titolo o negli autori: prima i libri con il termine nel titolo, poi gli altri.
+     * Il cursore contiene il gruppo (0 titolo, 1 autori), il titolo e l'ID dell'ultimo libro.
+     *
+     * @param termine Testo da cercare
+     * @param cursore Cursore della pagina precedente, o null per la prima pagina
+     * @param limite  Numero massimo di risultati
+     * @return La pagina di libri trovati
+     * @throws IllegalArgumentException Se il cursore non è valido
+     */
+    public Pagina<Libro> cerca(String termine, String cursore, int limite) {
+        String cercato = termine.toLowerCase(Locale.ROOT);
+        int fase = 0;
+        int inizio = 0;
+        if (cursore != null) {
+            Cursore dopo = Cursore.decodifica(cursore, 3);
+            fase = dopo.intero(0);
+            inizio = posizioneDopo(dopo.testo(1), dopo.intero(2));
+        }
+
+        List<Libro> risultati = new ArrayList<>();
+        if (fase == 0) {
+            BitSet nelTitolo = candidati(cercato, vocabolarioTitoli);
+            aggiungiVerificati(risultati, nelTitolo, titoli, cercato, inizio, limite + 1);
+            inizio = 0;
+        }
+        if (risultati.size() <= limite) {
+            // I libri con il termine anche nel titolo sono già stati aggiunti
+            BitSet negliAutori = candidati(cercato, vocabolarioAutori);
+            for (int i = negliAutori.nextSetBit(inizio); i >= 0 && risultati.size() <= limite; i = negliAutori.nextSetBit(i + 1)) {
+                if (contiene(autori[i], cercato) && !contiene(titoli[i], cercato)) {
+                    risultati.add(libroInPosizione(i));
+                }
+            }
+        }
+        return pagina(risultati, limite, l -> new Cursore(contiene(l.titolo(), cercato) ? 0 : 1, l.titolo(), l.libroId()));
+    }
+
+    /**
+     * Cerca il termine negli autori.
+     *
+     * @param autore  Testo da cercare negli autori
+     * @param cursore Cursore della pagina precedente, o null per la prima pagina
+     * @param limite  Numero massimo di risultati
+     * @return La pagina di libri trovati, in ordine di titolo
+     * @throws IllegalArgumentException Se il cursore non è valido
+     */
+    public Pagina<Libro> cercaPerAutore(String autore, String cursore, int limite) {
+        String cercato = autore.toLowerCase(Locale.ROOT);
+        List<Libro> risultati = new ArrayList<>();
+        aggiungiVerificati(risultati, candidati(cercato, vocabolarioAutori), autori, cercato,
+                posizioneDopo(cursore), limite + 1);
+        return pagina(risultati, limite, IndiceLibri::cursoreTitolo);
+    }
+
+    /**
+     * Cerca i libri pubblicati nell'anno indicato.
+     *
+     * @param anno    Anno di pubblicazione
+     * @param cursore Cursore della pagina precedente, o null per la prima pagina
+     * @param limite  Numero massimo di risultati
+     * @return La pagina di libri trovati, in ordine di titolo
+     * @throws IllegalArgumentException Se il cursore non è valido
+     */
+    public Pagina<Libro> cercaPerAnno(int anno, String cursore, int limite) {
+        List<Libro> risultati = new ArrayList<>();
+        aggiungiVerificati(risultati, bitSetDi(postingAnni.get(anno)), null, null, posizioneDopo(cursore), limite + 1);
+        return pagina(risultati, limite, IndiceLibri::cursoreTitolo);
+    }
+
+    /**
+     * Cerca il termine negli autori dei libri pubblicati nell'anno indicato.
+     *
+     * @param autore  Testo da cercare negli autori
+     * @param anno    Anno di pubblicazione
+     * @param cursore Cursore della pagina precedente, o null per la prima pagina
+     * @param limite  Numero massimo di risultati
+     * @return La pagina di libri trovati, in ordine di titolo
+     * @throws IllegalArgumentException Se il cursore non è valido
+     */
+    public Pagina<Libro> cercaPerAutoreEAnno(String autore, int anno, String cursore, int limite) {
+        String cercato = autore.toLowerCase(Locale.ROOT);
+        BitSet candidati = candidati(cercato, vocabolarioAutori);
+        candidati.and(bitSetDi(postingAnni.get(anno)));
+        List<Libro> risultati = new ArrayList<>();
+        aggiungiVerificati(risultati, candidati, autori, cercato, posizioneDopo(cursore), limite + 1);
+        return pagina(risultati, limite, IndiceLibri::cursoreTitolo);
+    }
+
+    /**
+     * Cerca i libri la cui categoria contiene il testo indicato e, opzionalmente, il cui titolo contiene il secondo testo.
+     *
+     * @param categoria Testo da cercare nella categoria
+     * @param titolo    Testo da cercare nel titolo, o stringa vuota
+     * @param cursore   Cursore della pagina precedente, o null per la prima pagina
+     * @param limite    Numero massimo di risultati
+     * @return La pagina di libri trovati, in ordine di titolo
+     * @throws IllegalArgumentException Se il cursore non è valido
+     */
+    public Pagina<Libro> cercaPerCategoria(String categoria, String titolo, String cursore, int limite) {
+        String categoriaCercata = categoria.toLowerCase(Locale.ROOT);
+        String titoloCercato = titolo.toLowerCase(Locale.ROOT);
+        // Se la categoria è in troppi libri per restringere i candidati viene verificata sul testo
+        BitSet candidati = vocabolarioCategorie.libriCon(categoriaCercata, id.length);
+        boolean daVerificare = candidati == null;
+        if (daVerificare) {
+            candidati = new BitSet(id.length);
+            candidati.set(0, id.length);
+        }
+        if (!titoloCercato.isEmpty()) {
+            candidati.and(candidati(titoloCercato, vocabolarioTitoli));
+        }
+
+        List<Libro> risultati = new ArrayList<>();
+        for (int i = candidati.nextSetBit(posizioneDopo(cursore)); i >= 0 && risultati.size() <= limite; i = candidati.nextSetBit(i + 1)) {
+            if ((!daVerificare || contiene(categorie[i], categoriaCercata))
+                    && (titoloCercato.isEmpty() || contiene(titoli[i], titoloCercato))) {
+                risultati.add(libroInPosizione(i));
+            }
+        }
+        return pagina(risultati, limite, IndiceLibri::cursoreTitolo);
+    }
+
+    /**
+     * @return Le categorie distinte del catalogo, divise per virgola e ordinate
+     */
+    public List<String> getCategorie() {
+        return elencoCategorie;
+    }
+
+    /**
+     * @return Numero di libri nell'indice
+     */
+    public int getNumeroLibri() {
+        return id.length;
+    }
+
+    /**
+     * Calcola i libri che possono contenere il testo cercato: per ogni token del testo,
+     * i libri con un termine del vocabolario che lo contiene; poi l'intersezione tra i token.
+     * I token presenti in troppi libri non restringono i candidati, e un testo senza token (solo punteggiatura)
+     * restituisce tutti i libri: in entrambi i casi i candidati vengono comunque verificati sul testo.
+     */
+    private BitSet candidati(String cercato, Vocabolario vocabolario) {
+        BitSet risultato = null;
+        for (String token : tokenizza(cercato)) {
+            BitSet perToken = vocabolario.libriCon(token, id.length);
+            if (perToken == null) {
+                continue;
+            }
+            if (risultato == null) {
+                risultato = perToken;
+            } else {
+                risultato.and(perToken);
+            }
+            if (risultato.isEmpty()) {
+                break;
+            }
+        }
+        if (risultato == null) {
+            risultato = new BitSet(id.length);
+            risultato.set(0, id.length);
+        }
+        return risultato;
+    }
+
+    /**
+     * Aggiunge ai risultati, in ordine di posizione a partire da inizio, i candidati il cui testo contiene davvero il termine.
+     */
+    private void aggiungiVerificati(List<Libro> risultati, BitSet candidati, String[] testi, String cercato, int inizio, int limite) {
+        for (int i = candidati.nextSetBit(inizio); i >= 0 && risultati.size() < limite; i = candidati.nextSetBit(i + 1)) {
+            if (testi == null || contiene(testi[i], cercato)) {
+                risultati.add(libroInPosizione(i));
+            }
+        }
+    }
+
+    /**
+     * Posizione del primo libro che segue titolo e ID del cursore, o 0 senza cursore.
+     */
+    private int posizioneDopo(String cursore) {
+        if (cursore == null) {
+            return 0;
+        }
+        Cursore dopo = Cursore.decodifica(cursore, 2);
+        return posizioneDopo(dopo.testo(0), dopo.intero(1));
+    }
+
+    private int posizioneDopo(String titolo, int libroId) {
+        int basso = 0;
+        int alto = id.length;
+        while (basso < alto) {
+            int medio = (basso + alto) >>> 1;
+            int confronto = ORDINE_TITOLI.compare(titoli[medio], titolo);
+            if (confronto < 0 || (confronto == 0 && id[medio] <= libroId)) {
+                basso = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return basso;
+    }
+
+    /**
+     * Riduce i risultati, letti con un elemento in più del limite, a una pagina con il cursore della successiva.
+     */
+    private static Pagina<Libro> pagina(List<Libro> risultati, int limite, Function<Libro, Cursore> cursore) {
+        if (risultati.size() <= limite) {
+            return new Pagina<>(risultati, null);
+        }
+        List<Libro> elementi = risultati.subList(0, limite);
+        return new Pagina<>(elementi, cursore.apply(elementi.get(limite - 1)));
+    }
+
+    private static Cursore cursoreTitolo(Libro libro) {
+        return new Cursore(libro.titolo(), libro.libroId());
+    }
+
+    private static boolean contiene(String testo, String cercato) {
+        return testo != null && testo.toLowerCase(Locale.ROOT).contains(cercato);
+    }
+
+    private Libro libroInPosizione(int i) {
+        return new Libro(id[i], titoli[i], autori[i], null, categorie[i], null, prezzi[i], null, anni[i]);
+    }
+
+    private BitSet bitSetDi(int[] posting) {
+        BitSet risultato = new BitSet(id.length);
+        if (posting != null) {
+            for (int posizione : posting) {
+                risultato.set(posizione);
+            }
+        }
+        return risultato;
+    }
+
+    /**
+     * Divide un testo in token minuscoli di lettere e cifre.
+     */
+    static List<String> tokenizza(String testo) {
+        List<String> token = new ArrayList<>();
+        if (testo == null) {
+            return token;
+        }
+        String minuscolo = testo.toLowerCase(Locale.ROOT);
+        int inizio = -1;
+        for (int i = 0; i <= minuscolo.length(); i++) {
+            boolean parte = i < minuscolo.length() && Character.isLetterOrDigit(minuscolo.charAt(i));
+            if (parte && inizio < 0) {
+                inizio = i;
+            } else if (!parte && inizio >= 0) {
+                token.add(minuscolo.substring(inizio, i));
+                inizio = -1;
+            }
+        }
+        return token;
+    }
+
+    /**
+     * Termini di un campo con le posizioni dei libri che li contengono. Per trovare i termini che contengono
+     * una sottostringa senza scorrere tutto il vocabolario, ogni n-gramma di 1, 2 e 3 caratteri dei termini
+     * ha la lista crescente dei termini in cui compare: una sottostringa corta si risolve con una sola lista,
+     * una più lunga intersecando le liste dei suoi trigrammi e verificando i pochi termini rimasti.
+     */
+    private static final class Vocabolario {
+        private static final int LUNGHEZZA_GRAMMI = 3;
+        // Oltre questa frazione del catalogo una sottostringa non restringe i candidati
+        private static final int FRAZIONE_MASSIMA_LIBRI = 4;
+        private static final int[] NESSUNO = new int[0];
+
+        private final String[] termini;
+        private final int[][] posting;
+        private final Map<String, int[]> grammi;
+
+        private Vocabolario(Map<String, ListaInteri> mappa) {
+            termini = mappa.keySet().toArray(new String[0]);
+            Arrays.sort(termini);
+            posting = new int[termini.length][];
+            Map<String, ListaInteri> perGramma = new HashMap<>();
+            for (int t = 0; t < termini.length; t++) {
+                posting[t] = mappa.get(termini[t]).toArray();
+                String termine = termini[t];
+                for (int lunghezza = 1; lunghezza <= LUNGHEZZA_GRAMMI; lunghezza++) {
+                    for (int i = 0; i + lunghezza <= termine.length(); i++) {
+                        perGramma.computeIfAbsent(termine.substring(i, i + lunghezza), k -> new ListaInteri()).aggiungiUnico(t);
+                    }
+                }
+            }
+            grammi = new HashMap<>(perGramma.size() * 4 / 3 + 1);
+            perGramma.forEach((gramma, lista) -> grammi.put(gramma, lista.toArray()));
+        }
+
+        private int dimensione() {
+            return termini.length;
+        }
+
+        /**
+         * @param sottostringa Testo minuscolo da cercare nei termini
+         * @param numeroLibri  Numero di libri del catalogo
+         * @return Le posizioni dei libri con un termine che contiene la sottostringa, o null se sono più
+         * di una frazione del catalogo (o la sottostringa è vuota) e conviene verificare direttamente il testo
+         */
+        private BitSet libriCon(String sottostringa, int numeroLibri) {
+            if (sottostringa.isEmpty()) {
+                return null;
+            }
+            int[] trovati = terminiCon(sottostringa);
+            long totale = 0;
+            for (int t : trovati) {
+                totale += posting[t].length;
+            }
+            if (totale > numeroLibri / FRAZIONE_MASSIMA_LIBRI) {
+                return null;
+            }
+            BitSet libri = new BitSet(numeroLibri);
+            for (int t : trovati) {
+                for (int posizione : posting[t]) {
+                    libri.set(posizione);
+                }
+            }
+            return libri;
+        }
+
+        /**
+         * @return Gli indici crescenti dei termini che contengono la sottostringa
+         */
+        private int[] terminiCon(String sottostringa) {
+            if (sottostringa.length() <= LUNGHEZZA_GRAMMI) {
+                return grammi.getOrDefault(sottostringa, NESSUNO);
+            }
+            int[] comuni = null;
+            for (int i = 0; i + LUNGHEZZA_GRAMMI <= sottostringa.length(); i++) {
+                int[] lista = grammi.get(sottostringa.substring(i, i + LUNGHEZZA_GRAMMI));
+                if (lista == null) {
+                    return NESSUNO;
+                }
+                comuni = comuni == null ? lista : interseca(comuni, lista);
+                if (comuni.length == 0) {
+                    return NESSUNO;
+                }
+            }
+            // I trigrammi possono comparire in punti diversi del termine: si verifica la sottostringa intera
+            int[] verificati = new int[comuni.length];
+            int n = 0;
+            for (int t : comuni) {
+                if (termini[t].contains(sottostringa)) {
+                    verificati[n++] = t;
+                }
+            }
+            return Arrays.copyOf(verificati, n);
+        }
+
+        private static int[] interseca(int[] a, int[] b) {
+            int[] risultato = new int[Math.min(a.length, b.length)];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] < b[j]) {
+                    i++;
+                } else if (a[i] > b[j]) {
+                    j++;
+                } else {
+                    risultato[n++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(risultato, n);
+        }
+    }
+
+    /**
+     * Lista di interi crescenti senza boxing, usata durante la costruzione dei posting.
+     */
+    private static final class ListaInteri {
+        private int[] valori = new int[4];
+        private int dimensione = 0;
+
+        private void aggiungiUnico(int valore) {
+            if (dimensione > 0 && valori[dimensione - 1] == valore) {
+                return;
+            }
+            if (dimensione == valori.length) {
+                valori = Arrays.copyOf(valori, dimensione * 2);
+            }
+            valori[dimensione++] = valore;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(valori, dimensione);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package me.labb.bookrecommender.server.utils;
+
+import me.labb.bookrecommender.server.log.Log;
+
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Compressione delle risposte, attivata da ogni client con il comando COMPRESSIONE.
+ * Con la compressione attiva ogni risposta è un frame: 4 byte di intestazione (big endian)
+ * seguiti dal contenuto, il testo JSON in UTF-8 o il documento Smile con il formato BINARY.
+ * Il bit più alto dell'intestazione indica un contenuto compresso, gli altri 31 la lunghezza del contenuto.
+ * Un contenuto compresso inizia con 4 byte con la lunghezza originale, seguiti dai dati deflate (zlib).
+ * <p>
+ * Le risposte più corte della soglia, o che non si riducono, viaggiano non compresse:
+ * per pochi byte il costo della compressione supera il risparmio.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public final class Compressione {
+
+    public static final String ALGORITMO = "DEFLATE";
+    public static final int SOGLIA_DEFAULT = 1024;
+    public static final int FLAG_COMPRESSO = 0x80000000;
+
+    private static final int LUNGHEZZA_INTESTAZIONE = 4;
+
+    // Il livello più veloce: sulle risposte JSON ottiene quasi tutta la riduzione con circa metà del tempo
+    private static final int LIVELLO = Deflater.BEST_SPEED;
+
+    // Soglia in byte, o -1 se il server non offre la compressione
+    private static volatile int soglia = -1;
+
+    private Compressione() {
+    }
+
+    /**
+     * Rende disponibile il comando COMPRESSIONE.
+     *
+     * @param sogliaByte Dimensione minima di una risposta per essere compressa
+     */
+    public static void attiva(int sogliaByte) {
+        soglia = Math.max(0, sogliaByte);
+        Log.info("Compressione delle risposte disponibile (" + ALGORITMO + ", soglia " + soglia + " byte).");
+    }
+
+    /**
+     * @return true se i client possono attivare la compressione
+     */
+    public static boolean isDisponibile() {
+        return soglia >= 0;
+    }
+
+    /**
+     * @return La dimensione minima di una risposta per essere compressa
+     */
+    public static int getSoglia() {
+        return soglia;
+    }
+
+    /**
+     * Costruisce il frame di un contenuto, compresso se supera la soglia e se la compressione lo riduce.
+     *
+     * @param contenuto Il contenuto della risposta
+     * @return Il frame completo di intestazione
+     */
+    public static byte[] frame(byte[] contenuto) {
+        if (contenuto.length >= Math.max(soglia, 1)) {
+            byte[] compresso = comprimi(contenuto);
+            if (compresso != null) {
+                return compresso;
+            }
+        }
+        byte[] frame = new byte[LUNGHEZZA_INTESTAZIONE + contenuto.length];
+        scriviIntero(frame, 0, contenuto.length);
+        System.arraycopy(contenuto, 0, frame, LUNGHEZZA_INTESTAZIONE, contenuto.length);
+        return frame;
+    }
+
+    /**
+     * @return Il frame compresso, o null se la compressione non riduce il contenuto
+     */
+    private static byte[] comprimi(byte[] contenuto) {
+        // Spazio per intestazione e lunghezza originale più un contenuto compresso più corto dell'originale
+        byte[] frame = new byte[2 * LUNGHEZZA_INTESTAZIONE + contenuto.length];
+        Deflater deflater = new Deflater(LIVELLO);
+        try {
+            deflater.setInput(contenuto);
+            deflater.finish();
+            int scritti = deflater.deflate(frame, 2 * LUNGHEZZA_INTESTAZIONE, contenuto.length);
+            if (!deflater.finished() || scritti >= contenuto.length) {
+                return null;
+            }
+            scriviIntero(frame, 0, (LUNGHEZZA_INTESTAZIONE + scritti) | FLAG_COMPRESSO);
+            scriviIntero(frame, LUNGHEZZA_INTESTAZIONE, contenuto.length);
+            return Arrays.copyOf(frame, 2 * LUNGHEZZA_INTESTAZIONE + scritti);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void scriviIntero(byte[] destinazione, int posizione, int valore) {
+        destinazione[posizione] = (byte) (valore >>> 24);
+        destinazione[posizione + 1] = (byte) (valore >>> 16);
+        destinazione[posizione + 2] = (byte) (valore >>> 8);
+        destinazione[posizione + 3] = (byte) valore;
+    }
+}
@@ -0,0 +1,121 @@
+package me.labb.bookrecommender.server.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Cursore per la paginazione keyset degli elenchi.
+ * Contiene i valori delle colonne di ordinamento dell'ultimo elemento di una pagina:
+ * la pagina successiva parte dal primo elemento che segue quei valori, senza OFFSET
+ * e senza risultati saltati o ripetuti se nel frattempo vengono aggiunti o rimossi elementi.
+ * <p>
+ * Per il client il cursore è una stringa opaca da restituire così com'è.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public final class Cursore {
+
+    // Non può comparire nei testi letti dal database (PostgreSQL non ammette il carattere nullo)
+    private static final char SEPARATORE = '\u0000';
+    // Un valore null (ad esempio una data mancante) è scritto come testo vuoto: per gli istanti
+    // non è ambiguo, perché nessun istante valido ha una rappresentazione vuota
+    private static final String NULLO = "";
+
+    private final String[] valori;
+
+    /**
+     * @param valori I valori di ordinamento dell'ultimo elemento, nell'ordine delle colonne (anche null)
+     */
+    public Cursore(Object... valori) {
+        this.valori = new String[valori.length];
+        for (int i = 0; i < valori.length; i++) {
+            this.valori[i] = valori[i] != null ? String.valueOf(valori[i]) : NULLO;
+        }
+    }
+
+    /**
+     * Legge un cursore ricevuto dal client.
+     *
+     * @param testo         Il cursore codificato
+     * @param numeroValori  Il numero di valori atteso per l'elenco richiesto
+     * @return Il cursore
+     * @throws IllegalArgumentException Se il testo non è un cursore valido per l'elenco
+     */
+    public static Cursore decodifica(String testo, int numeroValori) {
+        String decodificato;
+        try {
+            decodificato = new String(Base64.getUrlDecoder().decode(testo), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursore non valido.");
+        }
+        String[] parti = decodificato.split(String.valueOf(SEPARATORE), -1);
+        if (parti.length != numeroValori) {
+            throw new IllegalArgumentException("Cursore non valido.");
+        }
+        return new Cursore((Object[]) parti);
+    }
+
+    /**
+     * @return Il cursore codificato da inviare al client
+     */
+    public String codifica() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(String.join(String.valueOf(SEPARATORE), valori).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param indice Posizione del valore
+     * @return Il valore come testo
+     */
+    public String testo(int indice) {
+        return valori[indice];
+    }
+
+    /**
+     * @param indice Posizione del valore
+     * @return Il valore come intero
+     * @throws IllegalArgumentException Se il valore non è un intero
+     */
+    public int intero(int indice) {
+        try {
+            return Integer.parseInt(valori[indice]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursore non valido.");
+        }
+    }
+
+    /**
+     * @param indice Posizione del valore
+     * @return Il valore come numero decimale
+     * @throws IllegalArgumentException Se il valore non è un numero
+     */
+    public float decimale(int indice) {
+        try {
+            return Float.parseFloat(valori[indice]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursore non valido.");
+        }
+    }
+
+    /**
+     * @param indice Posizione del valore
+     * @return Il valore come istante, scritto da Instant.toString() (il Timestamp del database convertito con toInstant()),
+     * o null se il valore era null
+     * @throws IllegalArgumentException Se il valore non è un istante
+     */
+    public Timestamp istante(int indice) {
+        if (valori[indice].equals(NULLO)) {
+            return null;
+        }
+        try {
+            return Timestamp.from(Instant.parse(valori[indice]));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Cursore non valido.");
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package me.labb.bookrecommender.server.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+
+/**
+ * Codifica dei messaggi per il formato BINARY.
+ * Ogni messaggio è un frame: 4 byte con la lunghezza (big endian) seguiti dal documento
+ * in formato Smile, la codifica binaria di JSON. Il contenuto è lo stesso delle richieste
+ * e risposte JSON, ma i nomi dei campi ripetuti in ogni elemento di un elenco (titolo, autori, ...)
+ * sono scritti una volta sola e poi richiamati con un byte, i numeri sono in binario
+ * e le stringhe non hanno caratteri di escape.
+ * La conversione dal testo JSON avviene token per token, senza costruire alberi o mappe intermedie;
+ * le risposte scritte con un generatore possono anche produrre il documento Smile direttamente
+ * ({@link #creaGeneratore(OutputStream)}), senza passare dal testo.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class FormatoBinario {
+
+    public static final int LUNGHEZZA_INTESTAZIONE = 4;
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final SmileFactory SMILE = SmileFactory.builder()
+            .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+            .build();
+
+    private FormatoBinario() {
+    }
+
+    /**
+     * Converte un messaggio JSON in un frame completo di intestazione.
+     *
+     * @param json Il messaggio JSON
+     * @return Il frame da scrivere sulla connessione
+     * @throws IOException Se il messaggio non è JSON valido
+     */
+    public static byte[] codificaFrame(String json) throws IOException {
+        ByteArrayOutputStream frame = apriFrame(Math.max(64, json.length() / 2));
+        scriviSmile(json, frame);
+        return chiudiFrame(frame);
+    }
+
+    /**
+     * Crea il buffer di un frame, con lo spazio per l'intestazione già riservato.
+     *
+     * @param capacita Dimensione iniziale prevista del contenuto
+     * @return Il buffer in cui scrivere il documento Smile
+     */
+    public static ByteArrayOutputStream apriFrame(int capacita) {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(LUNGHEZZA_INTESTAZIONE + capacita);
+        frame.writeBytes(new byte[LUNGHEZZA_INTESTAZIONE]);
+        return frame;
+    }
+
+    /**
+     * Completa un frame creato con {@link #apriFrame(int)} scrivendo la lunghezza nell'intestazione.
+     *
+     * @param buffer Il buffer con il documento Smile completo
+     * @return Il frame da scrivere sulla connessione
+     */
+    public static byte[] chiudiFrame(ByteArrayOutputStream buffer) {
+        byte[] frame = buffer.toByteArray();
+        int lunghezza = frame.length - LUNGHEZZA_INTESTAZIONE;
+        frame[0] = (byte) (lunghezza >>> 24);
+        frame[1] = (byte) (lunghezza >>> 16);
+        frame[2] = (byte) (lunghezza >>> 8);
+        frame[3] = (byte) lunghezza;
+        return frame;
+    }
+
+    /**
+     * Crea un generatore che scrive un documento Smile, con le stesse opzioni dei frame
+     * convertiti dal testo JSON.
+     *
+     * @param uscita Dove scrivere il documento, ad esempio il buffer di {@link #apriFrame(int)}
+     * @return Il generatore, da chiudere al termine del documento
+     * @throws IOException In caso di errori nella scrittura dell'intestazione Smile
+     */
+    public static JsonGenerator creaGeneratore(OutputStream uscita) throws IOException {
+        return SMILE.createGenerator(uscita);
+    }
+
+    /**
+     * Converte un messaggio JSON nel documento Smile, senza intestazione.
+     *
+     * @param json Il messaggio JSON
+     * @return Il documento Smile
+     * @throws IOException Se il messaggio non è JSON valido
+     */
+    public static byte[] codifica(String json) throws IOException {
+        ByteArrayOutputStream uscita = new ByteArrayOutputStream(Math.max(64, json.length() / 2));
+        scriviSmile(json, uscita);
+        return uscita.toByteArray();
+    }
+
+    private static void scriviSmile(String json, ByteArrayOutputStream uscita) throws IOException {
+        try (JsonParser parser = JSON.createParser(json);
+             JsonGenerator generatore = SMILE.createGenerator(uscita)) {
+            while (parser.nextToken() != null) {
+                generatore.copyCurrentEvent(parser);
+            }
+        }
+    }
+
+    /**
+     * Converte il contenuto di un frame (senza intestazione) nel messaggio JSON corrispondente.
+     *
+     * @param contenuto Il documento Smile ricevuto
+     * @return Il messaggio JSON
+     * @throws IOException Se il contenuto non è un documento Smile valido
+     */
+    public static String decodifica(byte[] contenuto) throws IOException {
+        StringWriter json = new StringWriter(contenuto.length * 2);
+        try (JsonParser parser = SMILE.createParser(contenuto);
+             JsonGenerator generatore = JSON.createGenerator(json)) {
+            while (parser.nextToken() != null) {
+                generatore.copyCurrentEvent(parser);
+            }
+        }
+        return json.toString();
+    }
+}
@@ -3,6 +3,7 @@ package me.labb.bookrecommender.server.utils;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import me.labb.bookrecommender.server.log.Log;
 
 /**
  * Utility per analizzare le richieste in arrivo dai client.
@@ -22,10 +23,24 @@ public class RequestParser {
     public static class ParsedRequest {
         private final String comando;
         private final String parametri;
+        private final String id;
+        private final String limite;
+        private final String cursore;
 
         public ParsedRequest(String comando, String parametri) {
+            this(comando, parametri, null);
+        }
+
+        public ParsedRequest(String comando, String parametri, String id) {
+            this(comando, parametri, id, null, null);
+        }
+
+        public ParsedRequest(String comando, String parametri, String id, String limite, String cursore) {
             this.comando = comando;
             this.parametri = parametri != null ? parametri : "";
+            this.id = id;
+            this.limite = limite;
+            this.cursore = cursore;
         }
 
         public String getComando() {
@@ -35,6 +50,27 @@ public class RequestParser {
         public String getParametri() {
             return parametri;
         }
+
+        /**
+         * @return L'identificativo della richiesta già in formato JSON (numero o stringa), o null se assente
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return La dimensione di pagina richiesta per i comandi che restituiscono elenchi, o null se assente
+         */
+        public String getLimite() {
+            return limite;
+        }
+
+        /**
+         * @return Il cursore della pagina precedente per i comandi che restituiscono elenchi, o null se assente
+         */
+        public String getCursore() {
+            return cursore;
+        }
     }
 
     /**
@@ -119,15 +155,27 @@ public class RequestParser {
                         case "VALUTA_LIBRO" -> formatValutaLibroParams(paramsNode);
                         case "AGGIUNGI_LIBRO", "RIMUOVI_LIBRO" -> formatLibroParams(paramsNode);
                         case "SPOSTA_LIBRO" -> formatSpostaLibroParams(paramsNode);
+                        case "AGGIUNGI_LIBRI", "RIMUOVI_LIBRI" -> formatLibriParams(paramsNode);
+                        case "SPOSTA_LIBRI" -> formatSpostaLibriParams(paramsNode);
                         case "SALVA_CONSIGLIO" -> formatConsiglioParams(paramsNode);
                         default -> objectMapper.writeValueAsString(paramsNode);
                     };
                 }
             }
 
-            return new ParsedRequest(comando, parametri);
+            // Identificativo scelto dal client, restituito nella risposta per abbinarla alla richiesta
+            JsonNode idNode = rootNode.get("id");
+            String id = idNode != null && (idNode.isIntegralNumber() || idNode.isTextual()) ? idNode.toString() : null;
+
+            // Paginazione degli elenchi: dimensione della pagina e cursore ricevuto con la pagina precedente
+            JsonNode limiteNode = rootNode.get("limite");
+            String limite = limiteNode != null && !limiteNode.isNull() ? limiteNode.asText() : null;
+            JsonNode cursoreNode = rootNode.get("cursore");
+            String cursore = cursoreNode != null && cursoreNode.isTextual() ? cursoreNode.asText() : null;
+
+            return new ParsedRequest(comando, parametri, id, limite, cursore);
         } catch (JsonProcessingException e) {
-            System.err.println("Errore nell'analisi della richiesta JSON: " + e.getMessage());
+            Log.errore("Errore nell'analisi della richiesta JSON: " + e.getMessage());
             return new ParsedRequest("", "");
         }
     }
@@ -206,6 +254,42 @@ public class RequestParser {
         return libreriaOrigineID + " " + libreriaDestinazioneID + " " + libroID;
     }
 
+    /**
+     * Formatta i parametri per i comandi AGGIUNGI_LIBRI e RIMUOVI_LIBRI, con gli ID dei libri nell'array "libriID".
+     *
+     * @param paramsNode JSON dei parametri
+     * @return Stringa formattata dei parametri
+     */
+    private static String formatLibriParams(JsonNode paramsNode) {
+        StringBuilder params = new StringBuilder();
+        params.append(paramsNode.has("libreriaID") ? paramsNode.get("libreriaID").asText() : "");
+        appendLibriID(params, paramsNode);
+        return params.toString();
+    }
+
+    /**
+     * Formatta i parametri per il comando SPOSTA_LIBRI, con gli ID dei libri nell'array "libriID".
+     *
+     * @param paramsNode JSON dei parametri
+     * @return Stringa formattata dei parametri
+     */
+    private static String formatSpostaLibriParams(JsonNode paramsNode) {
+        StringBuilder params = new StringBuilder();
+        params.append(paramsNode.has("libreriaOrigineID") ? paramsNode.get("libreriaOrigineID").asText() : "").append(" ");
+        params.append(paramsNode.has("libreriaDestinazioneID") ? paramsNode.get("libreriaDestinazioneID").asText() : "");
+        appendLibriID(params, paramsNode);
+        return params.toString();
+    }
+
+    private static void appendLibriID(StringBuilder params, JsonNode paramsNode) {
+        JsonNode libriID = paramsNode.get("libriID");
+        if (libriID != null && libriID.isArray()) {
+            for (JsonNode libroID : libriID) {
+                params.append(" ").append(libroID.asText());
+            }
+        }
+    }
+
     /**
      * @param paramsNode JSON dei parametri
      * @return Stringa formattata dei parametri
@@ -1,8 +1,18 @@
 package me.labb.bookrecommender.server.utils;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-
+import me.labb.bookrecommender.server.log.Log;
+import me.labb.bookrecommender.server.metriche.MetricheComandi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,10 +33,28 @@ public class ResponseFormatter {
 
     public static final String FORMAT_TEXT = "TEXT";
     public static final String FORMAT_JSON = "JSON";
+    // Stesse risposte JSON, trasmesse come frame binari (vedi FormatoBinario)
+    public static final String FORMAT_BINARY = "BINARY";
 
     private static String defaultFormat = FORMAT_JSON;
 
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final JsonFactory jsonFactory = objectMapper.getFactory();
+
+    /**
+     * Scrive i campi dell'oggetto "data" di una risposta direttamente su un JsonGenerator,
+     * ad esempio leggendo le righe di un ResultSet una alla volta.
+     */
+    @FunctionalInterface
+    public interface ScrittoreDati {
+        /**
+         * @param dati Generatore posizionato dentro l'oggetto "data"
+         * @return Il messaggio della risposta, scelto in base ai dati scritti
+         * @throws IOException  In caso di errori di scrittura
+         * @throws SQLException In caso di errori nella lettura dei dati
+         */
+        String scrivi(JsonGenerator dati) throws IOException, SQLException;
+    }
 
     /**
      * @param message Messaggio di successo
@@ -185,6 +213,15 @@ public class ResponseFormatter {
      * @return String in formato JSON
      */
     public static String successoJson(String message, Map<String, Object> data) {
+        long inizio = System.nanoTime();
+        try {
+            return serializzaSuccesso(message, data);
+        } finally {
+            MetricheComandi.aggiungiTempoSerializzazione(System.nanoTime() - inizio);
+        }
+    }
+
+    private static String serializzaSuccesso(String message, Map<String, Object> data) {
         Map<String, Object> response = new HashMap<>();
         response.put("status", STATUS_SUCCESS);
         response.put("message", message);
@@ -196,11 +233,82 @@ public class ResponseFormatter {
         try {
             return objectMapper.writeValueAsString(response);
         } catch (JsonProcessingException e) {
-            System.err.println("Error serializing JSON response: " + e.getMessage());
+            Log.errore("Error serializing JSON response: " + e.getMessage());
             return successo(message, data);
         }
     }
 
+    /**
+     * Costruisce una risposta di successo scrivendo i dati man mano che vengono prodotti,
+     * senza liste o mappe intermedie: gli elenchi letti dal database vanno direttamente
+     * dal ResultSet al testo della risposta. Il messaggio è scritto dopo i dati.
+     *
+     * @param scrittore Scrive i campi di "data" e restituisce il messaggio
+     * @return String in formato JSON
+     * @throws SQLException In caso di errori nella lettura dei dati
+     */
+    public static String successoJson(ScrittoreDati scrittore) throws SQLException {
+        StringWriter risposta = new StringWriter(256);
+        try (JsonGenerator generatore = jsonFactory.createGenerator(risposta)) {
+            scriviSuccesso(generatore, null, scrittore);
+        } catch (IOException | UncheckedIOException e) {
+            Log.errore("Error serializing JSON response: " + e.getMessage());
+            return erroreJson("Errore durante la preparazione della risposta.");
+        }
+        return risposta.toString();
+    }
+
+    /**
+     * Crea un generatore JSON in UTF-8, ad esempio per scrivere una risposta direttamente sulla connessione
+     * con {@link #scriviSuccesso(JsonGenerator, String, ScrittoreDati)}.
+     *
+     * @param uscita Dove scrivere il testo JSON
+     * @return Il generatore, da chiudere al termine della risposta
+     * @throws IOException In caso di errori nella creazione del generatore
+     */
+    public static JsonGenerator creaGeneratore(OutputStream uscita) throws IOException {
+        return jsonFactory.createGenerator(uscita);
+    }
+
+    /**
+     * Scrive una risposta di successo su un generatore già aperto, JSON o Smile
+     * (vedi {@link FormatoBinario#creaGeneratore(java.io.OutputStream)}): i dati letti
+     * dal database non passano mai da un testo intermedio. Il messaggio è scritto dopo i dati.
+     *
+     * @param generatore Il generatore su cui scrivere la risposta, che non viene chiuso
+     * @param id         L'identificativo della richiesta in formato JSON, scritto come primo campo, o null
+     * @param scrittore  Scrive i campi di "data" e restituisce il messaggio
+     * @throws IOException  In caso di errori di scrittura
+     * @throws SQLException In caso di errori nella lettura dei dati
+     */
+    public static void scriviSuccesso(JsonGenerator generatore, String id, ScrittoreDati scrittore)
+            throws IOException, SQLException {
+        // Il tempo passato sul database mentre si scrivono i dati non è serializzazione
+        long inizio = System.nanoTime();
+        long databasePrima = MetricheComandi.getTempoDatabase();
+        try {
+            generatore.writeStartObject();
+            if (id != null) {
+                generatore.writeFieldName("id");
+                try (JsonParser parser = jsonFactory.createParser(id)) {
+                    parser.nextToken();
+                    generatore.copyCurrentStructure(parser);
+                }
+            }
+            generatore.writeStringField("status", STATUS_SUCCESS);
+            generatore.writeObjectFieldStart("data");
+            String message = scrittore.scrivi(generatore);
+            generatore.writeEndObject();
+            generatore.writeStringField("message", message);
+            generatore.writeEndObject();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            MetricheComandi.aggiungiTempoSerializzazione(System.nanoTime() - inizio
+                    - (MetricheComandi.getTempoDatabase() - databasePrima));
+        }
+    }
+
     /**
      * @param message Messaggio di successo
      * @return String in formato JSON
@@ -214,6 +322,8 @@ public class ResponseFormatter {
      * @return String in formato JSON
      */
     public static String erroreJson(String message) {
+        MetricheComandi.segnalaErrore();
+        long inizio = System.nanoTime();
         Map<String, Object> response = new HashMap<>();
         response.put("status", STATUS_ERROR);
         response.put("message", message);
@@ -221,8 +331,25 @@ public class ResponseFormatter {
         try {
             return objectMapper.writeValueAsString(response);
         } catch (JsonProcessingException e) {
-            System.err.println("Error serializing JSON response: " + e.getMessage());
+            Log.errore("Error serializing JSON response: " + e.getMessage());
             return errore(message);
+        } finally {
+            MetricheComandi.aggiungiTempoSerializzazione(System.nanoTime() - inizio);
+        }
+    }
+
+    /**
+     * Aggiunge a una risposta JSON l'identificativo della richiesta a cui risponde.
+     *
+     * @param risposta La risposta JSON
+     * @param id       L'identificativo in formato JSON, o null
+     * @return La risposta con il campo "id" come primo campo, o la risposta invariata se id è null
+     */
+    public static String conId(String risposta, String id) {
+        if (id == null || risposta == null || !risposta.startsWith("{")) {
+            return risposta;
         }
+        String resto = risposta.substring(1);
+        return "{\"id\":" + id + (resto.startsWith("}") ? "" : ",") + resto;
     }
 }
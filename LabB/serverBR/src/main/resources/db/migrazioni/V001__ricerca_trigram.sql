@@ -0,0 +1,19 @@
+-- Indici per la ricerca di libri per titolo e autore.
+-- Gli indici B-tree idx_libri_titolo e idx_libri_autori non possono servire
+-- un ILIKE con wildcard iniziale: gli indici trigram (pg_trgm) sì.
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX IF NOT EXISTS idx_libri_titolo_trgm ON "Libri" USING gin ("Titolo" gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_libri_autori_trgm ON "Libri" USING gin ("Autori" gin_trgm_ops);
+
+-- Vettore full-text con il titolo pesato più degli autori, usato per ordinare i risultati.
+-- Configurazione 'simple': i titoli sono in più lingue, niente stemming.
+ALTER TABLE "Libri" ADD COLUMN IF NOT EXISTS "RicercaTesto" tsvector
+    GENERATED ALWAYS AS (
+        setweight(to_tsvector('simple', coalesce("Titolo", '')), 'A') ||
+        setweight(to_tsvector('simple', coalesce("Autori", '')), 'B')
+    ) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_libri_ricerca_testo ON "Libri" USING gin ("RicercaTesto");
+
+ANALYZE "Libri";
@@ -0,0 +1,63 @@
+-- Categorie normalizzate: "Libri"."Categoria" contiene più categorie separate da virgola,
+-- quindi elencarle o cercare i libri di una categoria richiedeva una scansione di tutta la tabella.
+-- La colonna originale resta la fonte dei dati: queste tabelle ne sono una copia indicizzata.
+CREATE TABLE IF NOT EXISTS "Categorie" (
+    "CategoriaID" SERIAL PRIMARY KEY,
+    "Nome" VARCHAR(255) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS "LibroCategoria" (
+    "CategoriaID" INTEGER NOT NULL REFERENCES "Categorie"("CategoriaID") ON DELETE CASCADE,
+    "LibroID" INTEGER NOT NULL REFERENCES "Libri"("LibroID") ON DELETE CASCADE,
+    PRIMARY KEY ("CategoriaID", "LibroID")
+);
+
+CREATE INDEX IF NOT EXISTS idx_libro_categoria_libro ON "LibroCategoria" ("LibroID");
+
+-- Le ricerche per categoria sono per sottostringa: l'indice trigram evita di scorrere tutti i nomi
+CREATE INDEX IF NOT EXISTS idx_categorie_nome_trgm ON "Categorie" USING gin ("Nome" gin_trgm_ops);
+
+-- Popolamento dai libri già presenti
+INSERT INTO "Categorie" ("Nome")
+SELECT DISTINCT btrim(parte)
+FROM "Libri", unnest(string_to_array("Categoria", ',')) AS parte
+WHERE btrim(parte) <> ''
+ON CONFLICT ("Nome") DO NOTHING;
+
+INSERT INTO "LibroCategoria" ("CategoriaID", "LibroID")
+SELECT DISTINCT c."CategoriaID", l."LibroID"
+FROM "Libri" l
+CROSS JOIN LATERAL unnest(string_to_array(l."Categoria", ',')) AS parte
+JOIN "Categorie" c ON c."Nome" = btrim(parte)
+ON CONFLICT DO NOTHING;
+
+-- Mantiene le tabelle allineate quando un libro viene inserito o la sua categoria cambia
+CREATE OR REPLACE FUNCTION sincronizza_categorie_libro() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'UPDATE' THEN
+        DELETE FROM "LibroCategoria" WHERE "LibroID" = NEW."LibroID";
+    END IF;
+
+    INSERT INTO "Categorie" ("Nome")
+    SELECT DISTINCT btrim(parte)
+    FROM unnest(string_to_array(NEW."Categoria", ',')) AS parte
+    WHERE btrim(parte) <> ''
+    ON CONFLICT ("Nome") DO NOTHING;
+
+    INSERT INTO "LibroCategoria" ("CategoriaID", "LibroID")
+    SELECT DISTINCT c."CategoriaID", NEW."LibroID"
+    FROM unnest(string_to_array(NEW."Categoria", ',')) AS parte
+    JOIN "Categorie" c ON c."Nome" = btrim(parte)
+    ON CONFLICT DO NOTHING;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_libri_categorie ON "Libri";
+CREATE TRIGGER trg_libri_categorie
+    AFTER INSERT OR UPDATE OF "Categoria" ON "Libri"
+    FOR EACH ROW EXECUTE FUNCTION sincronizza_categorie_libro();
+
+ANALYZE "Categorie";
+ANALYZE "LibroCategoria";
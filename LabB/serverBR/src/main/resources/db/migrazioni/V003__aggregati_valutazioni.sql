@@ -0,0 +1,38 @@
+-- Aggregati delle valutazioni per libro: numero, somma e somma dei quadrati di ogni criterio,
+-- da cui si ricavano media e deviazione standard senza leggere tutte le valutazioni.
+-- Vengono aggiornati dal trigger della migrazione V004 nella stessa transazione che salva o elimina la valutazione.
+CREATE TABLE IF NOT EXISTS "AggregatiValutazioni" (
+    "LibroID" INTEGER PRIMARY KEY REFERENCES "Libri"("LibroID") ON DELETE CASCADE,
+    "NumeroValutazioni" INTEGER NOT NULL DEFAULT 0,
+    "NumeroStile" INTEGER NOT NULL DEFAULT 0,
+    "SommaStile" BIGINT NOT NULL DEFAULT 0,
+    "SommaQuadratiStile" BIGINT NOT NULL DEFAULT 0,
+    "NumeroContenuto" INTEGER NOT NULL DEFAULT 0,
+    "SommaContenuto" BIGINT NOT NULL DEFAULT 0,
+    "SommaQuadratiContenuto" BIGINT NOT NULL DEFAULT 0,
+    "NumeroGradevolezza" INTEGER NOT NULL DEFAULT 0,
+    "SommaGradevolezza" BIGINT NOT NULL DEFAULT 0,
+    "SommaQuadratiGradevolezza" BIGINT NOT NULL DEFAULT 0,
+    "NumeroOriginalita" INTEGER NOT NULL DEFAULT 0,
+    "SommaOriginalita" BIGINT NOT NULL DEFAULT 0,
+    "SommaQuadratiOriginalita" BIGINT NOT NULL DEFAULT 0,
+    "NumeroEdizione" INTEGER NOT NULL DEFAULT 0,
+    "SommaEdizione" BIGINT NOT NULL DEFAULT 0,
+    "SommaQuadratiEdizione" BIGINT NOT NULL DEFAULT 0
+);
+
+-- Popolamento dalle valutazioni già presenti
+INSERT INTO "AggregatiValutazioni"
+SELECT "LibroID", COUNT(*),
+       COUNT("ScoreStile"), COALESCE(SUM("ScoreStile"), 0), COALESCE(SUM("ScoreStile" * "ScoreStile"), 0),
+       COUNT("ScoreContenuto"), COALESCE(SUM("ScoreContenuto"), 0), COALESCE(SUM("ScoreContenuto" * "ScoreContenuto"), 0),
+       COUNT("ScoreGradevolezza"), COALESCE(SUM("ScoreGradevolezza"), 0), COALESCE(SUM("ScoreGradevolezza" * "ScoreGradevolezza"), 0),
+       COUNT("ScoreOriginalita"), COALESCE(SUM("ScoreOriginalita"), 0), COALESCE(SUM("ScoreOriginalita" * "ScoreOriginalita"), 0),
+       COUNT("ScoreEdizione"), COALESCE(SUM("ScoreEdizione"), 0), COALESCE(SUM("ScoreEdizione" * "ScoreEdizione"), 0)
+FROM "ValutazioniLibri"
+GROUP BY "LibroID"
+ON CONFLICT ("LibroID") DO NOTHING;
+
+-- Paginazione delle valutazioni di un libro, dalla più recente
+CREATE INDEX IF NOT EXISTS idx_valutazioni_libro_data
+    ON "ValutazioniLibri" ("LibroID", "DataValutazione" DESC, "ValutazioneID" DESC);
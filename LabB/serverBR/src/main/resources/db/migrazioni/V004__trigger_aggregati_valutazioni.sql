@@ -0,0 +1,76 @@
+-- Gli aggregati delle valutazioni vengono mantenuti da un trigger invece che da ValutazioneDAO:
+-- il salvataggio di una valutazione diventa un unico INSERT ... ON CONFLICT DO UPDATE, e il trigger
+-- vede i punteggi vecchi e nuovi della riga anche quando due salvataggi dello stesso utente sono concorrenti.
+CREATE OR REPLACE FUNCTION applica_delta_valutazione(v "ValutazioniLibri", segno INTEGER) RETURNS void AS $$
+BEGIN
+    INSERT INTO "AggregatiValutazioni" AS a (
+        "LibroID", "NumeroValutazioni",
+        "NumeroStile", "SommaStile", "SommaQuadratiStile",
+        "NumeroContenuto", "SommaContenuto", "SommaQuadratiContenuto",
+        "NumeroGradevolezza", "SommaGradevolezza", "SommaQuadratiGradevolezza",
+        "NumeroOriginalita", "SommaOriginalita", "SommaQuadratiOriginalita",
+        "NumeroEdizione", "SommaEdizione", "SommaQuadratiEdizione"
+    ) VALUES (
+        v."LibroID", segno,
+        segno * (v."ScoreStile" IS NOT NULL)::int, segno * COALESCE(v."ScoreStile", 0), segno * COALESCE(v."ScoreStile" * v."ScoreStile", 0),
+        segno * (v."ScoreContenuto" IS NOT NULL)::int, segno * COALESCE(v."ScoreContenuto", 0), segno * COALESCE(v."ScoreContenuto" * v."ScoreContenuto", 0),
+        segno * (v."ScoreGradevolezza" IS NOT NULL)::int, segno * COALESCE(v."ScoreGradevolezza", 0), segno * COALESCE(v."ScoreGradevolezza" * v."ScoreGradevolezza", 0),
+        segno * (v."ScoreOriginalita" IS NOT NULL)::int, segno * COALESCE(v."ScoreOriginalita", 0), segno * COALESCE(v."ScoreOriginalita" * v."ScoreOriginalita", 0),
+        segno * (v."ScoreEdizione" IS NOT NULL)::int, segno * COALESCE(v."ScoreEdizione", 0), segno * COALESCE(v."ScoreEdizione" * v."ScoreEdizione", 0)
+    )
+    ON CONFLICT ("LibroID") DO UPDATE SET
+        "NumeroValutazioni" = a."NumeroValutazioni" + EXCLUDED."NumeroValutazioni",
+        "NumeroStile" = a."NumeroStile" + EXCLUDED."NumeroStile",
+        "SommaStile" = a."SommaStile" + EXCLUDED."SommaStile",
+        "SommaQuadratiStile" = a."SommaQuadratiStile" + EXCLUDED."SommaQuadratiStile",
+        "NumeroContenuto" = a."NumeroContenuto" + EXCLUDED."NumeroContenuto",
+        "SommaContenuto" = a."SommaContenuto" + EXCLUDED."SommaContenuto",
+        "SommaQuadratiContenuto" = a."SommaQuadratiContenuto" + EXCLUDED."SommaQuadratiContenuto",
+        "NumeroGradevolezza" = a."NumeroGradevolezza" + EXCLUDED."NumeroGradevolezza",
+        "SommaGradevolezza" = a."SommaGradevolezza" + EXCLUDED."SommaGradevolezza",
+        "SommaQuadratiGradevolezza" = a."SommaQuadratiGradevolezza" + EXCLUDED."SommaQuadratiGradevolezza",
+        "NumeroOriginalita" = a."NumeroOriginalita" + EXCLUDED."NumeroOriginalita",
+        "SommaOriginalita" = a."SommaOriginalita" + EXCLUDED."SommaOriginalita",
+        "SommaQuadratiOriginalita" = a."SommaQuadratiOriginalita" + EXCLUDED."SommaQuadratiOriginalita",
+        "NumeroEdizione" = a."NumeroEdizione" + EXCLUDED."NumeroEdizione",
+        "SommaEdizione" = a."SommaEdizione" + EXCLUDED."SommaEdizione",
+        "SommaQuadratiEdizione" = a."SommaQuadratiEdizione" + EXCLUDED."SommaQuadratiEdizione";
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION aggiorna_aggregati_valutazioni() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'UPDATE' AND
+       (OLD."LibroID", OLD."ScoreStile", OLD."ScoreContenuto", OLD."ScoreGradevolezza", OLD."ScoreOriginalita", OLD."ScoreEdizione")
+       IS NOT DISTINCT FROM
+       (NEW."LibroID", NEW."ScoreStile", NEW."ScoreContenuto", NEW."ScoreGradevolezza", NEW."ScoreOriginalita", NEW."ScoreEdizione") THEN
+        RETURN NULL;
+    END IF;
+
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM applica_delta_valutazione(OLD, -1);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM applica_delta_valutazione(NEW, 1);
+    END IF;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_valutazioni_aggregati ON "ValutazioniLibri";
+CREATE TRIGGER trg_valutazioni_aggregati
+    AFTER INSERT OR UPDATE OR DELETE ON "ValutazioniLibri"
+    FOR EACH ROW EXECUTE FUNCTION aggiorna_aggregati_valutazioni();
+
+-- Ricalcolo completo, nel caso le valutazioni siano state modificate senza aggiornare gli aggregati
+DELETE FROM "AggregatiValutazioni";
+INSERT INTO "AggregatiValutazioni"
+SELECT "LibroID", COUNT(*),
+       COUNT("ScoreStile"), COALESCE(SUM("ScoreStile"), 0), COALESCE(SUM("ScoreStile" * "ScoreStile"), 0),
+       COUNT("ScoreContenuto"), COALESCE(SUM("ScoreContenuto"), 0), COALESCE(SUM("ScoreContenuto" * "ScoreContenuto"), 0),
+       COUNT("ScoreGradevolezza"), COALESCE(SUM("ScoreGradevolezza"), 0), COALESCE(SUM("ScoreGradevolezza" * "ScoreGradevolezza"), 0),
+       COUNT("ScoreOriginalita"), COALESCE(SUM("ScoreOriginalita"), 0), COALESCE(SUM("ScoreOriginalita" * "ScoreOriginalita"), 0),
+       COUNT("ScoreEdizione"), COALESCE(SUM("ScoreEdizione"), 0), COALESCE(SUM("ScoreEdizione" * "ScoreEdizione"), 0)
+FROM "ValutazioniLibri"
+GROUP BY "LibroID";
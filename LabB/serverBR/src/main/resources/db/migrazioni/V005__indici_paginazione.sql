@@ -0,0 +1,17 @@
+-- Indici per la paginazione keyset degli elenchi: ogni pagina riparte dall'ultima chiave
+-- ricevuta con un confronto tra righe, ad esempio ("Titolo", "LibroID") > (?, ?),
+-- e l'indice con le stesse colonne nello stesso ordine evita di ordinare tutto l'elenco.
+
+-- MIE_VALUTAZIONI e MIEI_CONSIGLI, dal più recente
+CREATE INDEX IF NOT EXISTS idx_valutazioni_utente_data
+    ON "ValutazioniLibri" ("UserID", "DataValutazione" DESC, "ValutazioneID" DESC);
+CREATE INDEX IF NOT EXISTS idx_consigli_utente_data
+    ON "ConsigliLibri" ("UserID", "DataSuggerimento" DESC, "ConsiglioID" DESC);
+
+-- VISUALIZZA_LIBRERIA, dall'ultimo libro aggiunto
+CREATE INDEX IF NOT EXISTS idx_contenuto_libreria_data
+    ON "ContenutoLibreria" ("LibreriaID", "DataAggiunta" DESC, "LibroID" DESC);
+
+-- Ricerche ordinate per titolo: CERCA_PER_ANNO usa il secondo indice, le altre il primo
+CREATE INDEX IF NOT EXISTS idx_libri_titolo_id ON "Libri" ("Titolo", "LibroID");
+CREATE INDEX IF NOT EXISTS idx_libri_anno_titolo_id ON "Libri" ("AnnoPubblicazione", "Titolo", "LibroID");
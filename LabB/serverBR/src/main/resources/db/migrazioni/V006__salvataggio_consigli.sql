@@ -0,0 +1,26 @@
+-- Salvataggio di un consiglio con il limite di consigli per libro controllato nella stessa transazione.
+-- Il lock advisory su (utente, libro di riferimento) serializza i salvataggi concorrenti dello stesso
+-- utente per lo stesso libro, così il conteggio non può essere superato da due inserimenti in parallelo;
+-- dentro la funzione ogni istruzione vede i dati confermati dopo il lock.
+-- Un consiglio già presente viene solo aggiornato nella data, anche se il limite è raggiunto.
+-- Restituisce l'ID del consiglio, NULL se il limite è raggiunto; i libri inesistenti
+-- vengono segnalati dalle chiavi esterne.
+CREATE OR REPLACE FUNCTION salva_consiglio(utente INTEGER, riferimento INTEGER, suggerito INTEGER, massimo INTEGER)
+RETURNS INTEGER AS $$
+DECLARE
+    id INTEGER;
+BEGIN
+    PERFORM pg_advisory_xact_lock(utente, riferimento);
+
+    INSERT INTO "ConsigliLibri" ("UserID", "LibroRiferimentoID", "LibroSuggeritoID", "DataSuggerimento")
+    SELECT utente, riferimento, suggerito, CURRENT_TIMESTAMP
+    WHERE (SELECT COUNT(*) FROM "ConsigliLibri"
+           WHERE "UserID" = utente AND "LibroRiferimentoID" = riferimento
+             AND "LibroSuggeritoID" <> suggerito) < massimo
+    ON CONFLICT ("UserID", "LibroRiferimentoID", "LibroSuggeritoID") DO UPDATE SET
+        "DataSuggerimento" = CURRENT_TIMESTAMP
+    RETURNING "ConsiglioID" INTO id;
+
+    RETURN id;
+END;
+$$ LANGUAGE plpgsql;
@@ -0,0 +1,21 @@
+-- Le colonne con la data di aggiunta, valutazione e suggerimento hanno solo un DEFAULT e possono
+-- essere NULL. Gli elenchi dal più recente ordinano e confrontano COALESCE(data, '-infinity'):
+-- le righe senza data vengono dopo tutte le altre, ordinate per ID, e il confronto tra righe
+-- del cursore non le salta (un confronto con NULL non è mai vero).
+-- Gli indici della paginazione vengono ricreati sulla stessa espressione.
+
+DROP INDEX IF EXISTS idx_valutazioni_utente_data;
+CREATE INDEX idx_valutazioni_utente_data
+    ON "ValutazioniLibri" ("UserID", COALESCE("DataValutazione", '-infinity'::timestamptz) DESC, "ValutazioneID" DESC);
+
+DROP INDEX IF EXISTS idx_valutazioni_libro_data;
+CREATE INDEX idx_valutazioni_libro_data
+    ON "ValutazioniLibri" ("LibroID", COALESCE("DataValutazione", '-infinity'::timestamptz) DESC, "ValutazioneID" DESC);
+
+DROP INDEX IF EXISTS idx_consigli_utente_data;
+CREATE INDEX idx_consigli_utente_data
+    ON "ConsigliLibri" ("UserID", COALESCE("DataSuggerimento", '-infinity'::timestamptz) DESC, "ConsiglioID" DESC);
+
+DROP INDEX IF EXISTS idx_contenuto_libreria_data;
+CREATE INDEX idx_contenuto_libreria_data
+    ON "ContenutoLibreria" ("LibreriaID", COALESCE("DataAggiunta", '-infinity'::timestamptz) DESC, "LibroID" DESC);
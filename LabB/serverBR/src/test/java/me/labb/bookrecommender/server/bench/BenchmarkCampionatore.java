@@ -0,0 +1,155 @@
+package me.labb.bookrecommender.server.bench;
+
+import me.labb.bookrecommender.server.db.DatabaseManager;
+import me.labb.bookrecommender.server.db.LibroDAO;
+import me.labb.bookrecommender.server.db.MigrazioniDB;
+import me.labb.bookrecommender.server.metriche.Istogramma;
+import me.labb.bookrecommender.server.raccomandazioni.CampionatoreCategorie;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Confronto dell'estrazione di cinque libri casuali di una categoria (comando CONSIGLIA) con
+ * {@link CampionatoreCategorie} e con la query precedente, {@code ILIKE ... ORDER BY RANDOM() LIMIT 5},
+ * al variare del numero di libri della categoria.
+ * <p>
+ * Per ogni dimensione aggiunge la categoria "Campione di N libri" ai primi N libri del catalogo, da eseguire
+ * quindi su un database di prova configurato in config.properties; al termine le categorie aggiunte vengono tolte.
+ * Per il campionatore misura sia l'estrazione a cache fredda (lettura degli ID della categoria dal database)
+ * sia quella a cache calda; in entrambi i casi è compreso il caricamento dei libri estratti, come nel comando.
+ * <p>
+ * Uso: {@code BenchmarkCampionatore [ripetizioni] [dimensioni ...]}, di default 50 ripetizioni e categorie
+ * di 10, 1000, 10000 e 100000 libri (limitate alla dimensione del catalogo).
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class BenchmarkCampionatore {
+
+    private static final int QUANTI = 5;
+    private static final String SQL_RANDOM = "SELECT \"LibroID\", \"Titolo\", \"Autori\", \"Categoria\", \"Prezzo\" "
+            + "FROM \"Libri\" WHERE \"Categoria\" ILIKE ? ORDER BY RANDOM() LIMIT " + QUANTI;
+
+    /**
+     * Un modo di estrarre i libri, misurato per una categoria.
+     */
+    @FunctionalInterface
+    private interface Estrazione {
+        int esegui(String categoria) throws SQLException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int ripetizioni = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        List<Integer> dimensioni = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            dimensioni.add(Integer.parseInt(args[i]));
+        }
+        if (dimensioni.isEmpty()) {
+            dimensioni = List.of(10, 1_000, 10_000, 100_000);
+        }
+
+        new MigrazioniDB().applica();
+        CampionatoreCategorie campionatore = CampionatoreCategorie.getInstance();
+        LibroDAO libroDAO = new LibroDAO();
+        Estrazione random = BenchmarkCampionatore::estraiConRandom;
+        Estrazione fredda = categoria -> {
+            campionatore.svuota();
+            return libroDAO.getLibriByIds(campionatore.estrai(categoria, QUANTI)).size();
+        };
+        Estrazione calda = categoria -> libroDAO.getLibriByIds(campionatore.estrai(categoria, QUANTI)).size();
+
+        try {
+            System.out.printf("%-10s %-18s %8s %10s %10s %10s%n",
+                    "libri", "estrazione", "estratti", "media us", "p50 us", "max us");
+            for (int dimensione : dimensioni) {
+                String categoria = "Campione di " + dimensione + " libri";
+                int libri = aggiungiCategoria(categoria, dimensione);
+                misura(libri, "ORDER BY RANDOM()", random, categoria, ripetizioni);
+                misura(libri, "campionatore fredda", fredda, categoria, ripetizioni);
+                campionatore.estrai(categoria, QUANTI);
+                misura(libri, "campionatore calda", calda, categoria, ripetizioni);
+            }
+        } finally {
+            rimuoviCategorie();
+            DatabaseManager.getInstance().chiudi();
+        }
+    }
+
+    private static void misura(int libri, String estrazione, Estrazione metodo, String categoria,
+                               int ripetizioni) throws SQLException {
+        metodo.esegui(categoria);
+        Istogramma latenza = new Istogramma();
+        int estratti = 0;
+        for (int i = 0; i < ripetizioni; i++) {
+            long t = System.nanoTime();
+            estratti = metodo.esegui(categoria);
+            latenza.registra(System.nanoTime() - t);
+        }
+        long[] p = latenza.percentili(50, 100);
+        System.out.printf("%-10d %-18s %8d %10d %10d %10d%n", libri, estrazione, estratti,
+                latenza.getSomma() / latenza.getConteggio(), p[0], p[1]);
+    }
+
+    /**
+     * La query usata da CONSIGLIA prima del campionatore.
+     *
+     * @return Il numero di libri estratti
+     */
+    private static int estraiConRandom(String categoria) throws SQLException {
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_RANDOM)) {
+            stmt.setString(1, "%" + categoria + "%");
+            int estratti = 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    estratti++;
+                }
+            }
+            return estratti;
+        }
+    }
+
+    /**
+     * Aggiunge la categoria ai primi libri del catalogo; il trigger della migrazione V002 aggiorna le tabelle
+     * normalizzate lette dal campionatore.
+     *
+     * @return Il numero di libri a cui è stata aggiunta
+     */
+    private static int aggiungiCategoria(String categoria, int dimensione) throws SQLException {
+        String sql = """
+                UPDATE "Libri"
+                SET "Categoria" = CASE WHEN "Categoria" IS NULL OR "Categoria" = '' THEN ? ELSE "Categoria" || ', ' || ? END
+                WHERE "LibroID" IN (SELECT "LibroID" FROM "Libri" ORDER BY "LibroID" LIMIT ?)
+                """;
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, categoria);
+            stmt.setString(2, categoria);
+            stmt.setInt(3, dimensione);
+            int libri = stmt.executeUpdate();
+            try (Statement analisi = conn.createStatement()) {
+                analisi.execute("ANALYZE \"LibroCategoria\"");
+            }
+            return libri;
+        }
+    }
+
+    private static void rimuoviCategorie() throws SQLException {
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("""
+                    UPDATE "Libri"
+                    SET "Categoria" = NULLIF(regexp_replace("Categoria", '(, )?Campione di [0-9]+ libri', '', 'g'), '')
+                    WHERE "Categoria" LIKE '%Campione di %'
+                    """);
+            stmt.executeUpdate("DELETE FROM \"Categorie\" WHERE \"Nome\" LIKE 'Campione di % libri'");
+        }
+    }
+}
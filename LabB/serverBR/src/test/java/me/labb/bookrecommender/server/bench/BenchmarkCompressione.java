@@ -0,0 +1,92 @@
+package me.labb.bookrecommender.server.bench;
+
+import me.labb.bookrecommender.server.ClientHandler;
+import me.labb.bookrecommender.server.utils.Compressione;
+import me.labb.bookrecommender.server.utils.ResponseFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Confronto JMH della codifica di una risposta con e senza compressione, per risposte con 1 e 5 libri
+ * (sotto la soglia di {@link Compressione#SOGLIA_DEFAULT} byte, inviate non compresse anche con la compressione
+ * attiva) e con 50 e 500 libri (sopra la soglia), nei formati JSON e BINARY:
+ * <ul>
+ *     <li>{@code semplice}: riga JSON o frame Smile, come senza il comando COMPRESSIONE</li>
+ *     <li>{@code compresso}: frame della compressione, compresso solo sopra la soglia</li>
+ * </ul>
+ * All'inizio di ogni prova stampa la dimensione in byte delle due codifiche della stessa risposta.
+ * <p>
+ * Uso, dopo {@code mvn test-compile}: {@code java -cp <classpath di test> org.openjdk.jmh.Main BenchmarkCompressione}
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchmarkCompressione {
+
+    @Param({"1", "5", "50", "500"})
+    private int righe;
+
+    @Param({"false", "true"})
+    private boolean binaria;
+
+    private String risposta;
+
+    @Setup
+    public void prepara() throws IOException, SQLException {
+        Compressione.attiva(Compressione.SOGLIA_DEFAULT);
+        String[] categorie = {"Fiction", "Fantasy", "History", "Romance", "Juvenile Fiction"};
+        risposta = ResponseFormatter.successoJson(dati -> {
+            dati.writeArrayFieldStart("libri");
+            for (int i = 0; i < righe; i++) {
+                dati.writeStartObject();
+                dati.writeNumberField("libroID", 1000 + i);
+                dati.writeStringField("titolo", "Titolo del libro numero " + i);
+                dati.writeStringField("autori", "Autore " + (i % 37) + ", Coautore " + (i % 11));
+                dati.writeStringField("categoria", categorie[i % categorie.length]);
+                dati.writeNumberField("prezzo", 5.0 + (i % 50) * 0.5);
+                dati.writeStringField("descrizione", "Descrizione del libro " + i + ": una storia di "
+                        + categorie[(i + 2) % categorie.length].toLowerCase() + " ambientata nel " + (1800 + i % 200) + ".");
+                dati.writeEndObject();
+            }
+            dati.writeEndArray();
+            return "Trovati " + righe + " libri.";
+        });
+
+        int semplice = ClientHandler.codificaRisposta(risposta, binaria, false).length;
+        byte[] frame = ClientHandler.codificaRisposta(risposta, binaria, true);
+        boolean compresso = (frame[0] & 0x80) != 0;
+        System.out.printf("%n%d libri, %s: semplice %d byte, frame %d byte (%s, %.0f%%)%n", righe,
+                binaria ? "BINARY" : "JSON", semplice, frame.length, compresso ? "compresso" : "non compresso",
+                100.0 * frame.length / semplice);
+    }
+
+    @Benchmark
+    public byte[] semplice() throws IOException {
+        return ClientHandler.codificaRisposta(risposta, binaria, false);
+    }
+
+    @Benchmark
+    public byte[] compresso() throws IOException {
+        return ClientHandler.codificaRisposta(risposta, binaria, true);
+    }
+}
@@ -0,0 +1,174 @@
+package me.labb.bookrecommender.server.bench;
+
+import me.labb.bookrecommender.server.db.ConsiglioDAO;
+import me.labb.bookrecommender.server.db.DatabaseManager;
+import me.labb.bookrecommender.server.db.LibroDAO;
+import me.labb.bookrecommender.server.db.MigrazioniDB;
+import me.labb.bookrecommender.server.db.PoolConnessioni;
+import me.labb.bookrecommender.server.metriche.Istogramma;
+import me.labb.bookrecommender.server.oggetti.Libro;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Confronto di {@link ConsiglioDAO#generaConsigliPerLibro} con la versione precedente, che leggeva le righe
+ * di "ConsigliLibri" e poi caricava ogni libro suggerito con {@link LibroDAO#getLibroById}, prendendo
+ * una seconda connessione dal pool per ogni riga mentre teneva ancora la prima.
+ * <p>
+ * Salva alcuni consigli per l'ultimo libro del catalogo da parte dei primi utenti, poi più thread generano
+ * i consigli per quel libro, prima con la query unica e poi con la versione a N+1 query. Per ogni versione
+ * stampa chiamate al secondo, percentili della latenza, connessioni aperte dal pool durante la prova
+ * ({@link PoolConnessioni#getConnessioniCreate()}), connessioni fisiche al termine e acquisizioni scadute.
+ * I consigli salvati vengono eliminati al termine.
+ * <p>
+ * Uso: {@code BenchmarkConsigli [thread] [chiamatePerThread]}
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class BenchmarkConsigli {
+
+    private static final int UTENTI = 4;
+    private static final int LIMITE = 5;
+    private static final int RISCALDAMENTO = 50;
+
+    /**
+     * Una delle due versioni della generazione dei consigli.
+     */
+    @FunctionalInterface
+    private interface Generatore {
+        List<Libro> genera(int libroRiferimentoID) throws SQLException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int thread = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int chiamatePerThread = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        new MigrazioniDB().applica();
+        List<Integer> utenti = leggiID("SELECT \"UserID\" FROM \"UtentiRegistrati\" ORDER BY \"UserID\" LIMIT ?", UTENTI);
+        List<Integer> libri = leggiID("SELECT \"LibroID\" FROM \"Libri\" ORDER BY \"LibroID\" DESC LIMIT ?",
+                1 + UTENTI * ConsiglioDAO.CONSIGLI_MASSIMI_PER_LIBRO);
+        if (utenti.size() < UTENTI || libri.size() < 1 + UTENTI * ConsiglioDAO.CONSIGLI_MASSIMI_PER_LIBRO) {
+            System.err.println("Servono almeno " + UTENTI + " utenti e "
+                    + (1 + UTENTI * ConsiglioDAO.CONSIGLI_MASSIMI_PER_LIBRO) + " libri.");
+            return;
+        }
+        int riferimento = libri.get(0);
+
+        ConsiglioDAO consiglioDAO = new ConsiglioDAO();
+        LibroDAO libroDAO = new LibroDAO();
+        List<Integer> consigliSalvati = new ArrayList<>();
+        try {
+            for (int u = 0; u < UTENTI; u++) {
+                for (int c = 0; c < ConsiglioDAO.CONSIGLI_MASSIMI_PER_LIBRO; c++) {
+                    int suggerito = libri.get(1 + u * ConsiglioDAO.CONSIGLI_MASSIMI_PER_LIBRO + c);
+                    consiglioDAO.salvaConsiglio(utenti.get(u), riferimento, suggerito).ifPresent(consigliSalvati::add);
+                }
+            }
+
+            System.out.printf("%d thread, %d chiamate per thread, libro %d, pool di %d connessioni%n",
+                    thread, chiamatePerThread, riferimento, DatabaseManager.getInstance().getPool().getDimensioneMassima());
+            System.out.printf("%-14s %10s %8s %8s %8s %8s %8s %8s%n",
+                    "versione", "chiamate/s", "p50 us", "p99 us", "max us", "create", "totali", "timeout");
+            esegui("query unica", thread, chiamatePerThread,
+                    id -> consiglioDAO.generaConsigliPerLibro(id, LIMITE), riferimento);
+            esegui("N+1 query", thread, chiamatePerThread,
+                    id -> generaConsigliN1(libroDAO, id, LIMITE), riferimento);
+        } finally {
+            for (int consiglioID : consigliSalvati) {
+                consiglioDAO.eliminaConsiglio(consiglioID);
+            }
+            DatabaseManager.getInstance().chiudi();
+        }
+    }
+
+    private static void esegui(String versione, int thread, int chiamatePerThread, Generatore generatore,
+                               int riferimento) throws Exception {
+        PoolConnessioni pool = DatabaseManager.getInstance().getPool();
+        for (int i = 0; i < RISCALDAMENTO; i++) {
+            generatore.genera(riferimento);
+        }
+
+        long createPrima = pool.getConnessioniCreate();
+        long timeoutPrima = pool.getTimeoutAcquisizione();
+        Istogramma latenza = new Istogramma();
+        AtomicInteger errori = new AtomicInteger();
+        ExecutorService esecutore = Executors.newFixedThreadPool(thread);
+        long inizio = System.nanoTime();
+        for (int t = 0; t < thread; t++) {
+            esecutore.submit(() -> {
+                for (int i = 0; i < chiamatePerThread; i++) {
+                    long t0 = System.nanoTime();
+                    try {
+                        generatore.genera(riferimento);
+                    } catch (SQLException e) {
+                        errori.incrementAndGet();
+                    }
+                    latenza.registra(System.nanoTime() - t0);
+                }
+            });
+        }
+        esecutore.shutdown();
+        esecutore.awaitTermination(10, TimeUnit.MINUTES);
+        double secondi = (System.nanoTime() - inizio) / 1e9;
+
+        long[] p = latenza.percentili(50, 99, 100);
+        System.out.printf("%-14s %10.0f %8d %8d %8d %8d %8d %8d%n", versione, latenza.getConteggio() / secondi,
+                p[0], p[1], p[2], pool.getConnessioniCreate() - createPrima, pool.getConnessioniTotali(),
+                pool.getTimeoutAcquisizione() - timeoutPrima);
+        if (errori.get() > 0) {
+            System.out.println("  errori: " + errori.get());
+        }
+    }
+
+    /**
+     * La versione precedente di {@link ConsiglioDAO#generaConsigliPerLibro}: una query per i consigli
+     * e una per ogni libro suggerito, ciascuna con una propria connessione.
+     */
+    private static List<Libro> generaConsigliN1(LibroDAO libroDAO, int libroRiferimentoID, int limit) throws SQLException {
+        List<Libro> libriConsigliati = new ArrayList<>();
+        String sql = """
+                SELECT * FROM "ConsigliLibri"
+                WHERE "LibroRiferimentoID" = ?
+                ORDER BY "DataSuggerimento" DESC
+                LIMIT ?
+                """;
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, libroRiferimentoID);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Optional<Libro> libro = libroDAO.getLibroById(rs.getInt("LibroSuggeritoID"));
+                    libro.ifPresent(libriConsigliati::add);
+                }
+            }
+        }
+        return libriConsigliati;
+    }
+
+    private static List<Integer> leggiID(String sql, int limite) throws SQLException {
+        List<Integer> id = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, limite);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    id.add(rs.getInt(1));
+                }
+            }
+        }
+        return id;
+    }
+}
@@ -0,0 +1,102 @@
+package me.labb.bookrecommender.server.bench;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import me.labb.bookrecommender.server.ClientHandler;
+import me.labb.bookrecommender.server.utils.FormatoBinario;
+import me.labb.bookrecommender.server.utils.ResponseFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Confronto JMH tra le codifiche di una risposta con un elenco di libri, come quella di VISUALIZZA_LIBRERIA:
+ * <ul>
+ *     <li>{@code json}: testo JSON e riga da inviare (formato JSON)</li>
+ *     <li>{@code binarioDaJson}: testo JSON convertito in un frame Smile, il percorso delle risposte già
+ *     costruite come testo (ad esempio quelle in cache)</li>
+ *     <li>{@code binarioDiretto}: frame Smile generato direttamente dalle righe, il percorso delle risposte
+ *     in streaming nelle sessioni BINARY</li>
+ * </ul>
+ * Le righe sono già in memoria, così il confronto misura solo serializzazione e codifica.
+ * <p>
+ * Uso, dopo {@code mvn test-compile}: {@code java -cp <classpath di test> org.openjdk.jmh.Main BenchmarkFormato}
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchmarkFormato {
+
+    private record Riga(int libroID, String titolo, String autori, String categoria, double prezzo) {
+    }
+
+    @Param({"10", "100", "1000"})
+    private int righe;
+
+    private Riga[] libri;
+    private ResponseFormatter.ScrittoreDati scrittore;
+
+    @Setup
+    public void prepara() {
+        libri = new Riga[righe];
+        String[] categorie = {"Fiction", "Fantasy", "History", "Romance", "Juvenile Fiction"};
+        for (int i = 0; i < righe; i++) {
+            libri[i] = new Riga(1000 + i, "Titolo del libro numero " + i, "Autore " + (i % 37) + ", Coautore " + (i % 11),
+                    categorie[i % categorie.length], 5.0 + (i % 50) * 0.5);
+        }
+        scrittore = dati -> {
+            dati.writeNumberField("libreriaID", 3001);
+            dati.writeStringField("nomeLibreria", "Preferiti");
+            dati.writeArrayFieldStart("libri");
+            for (Riga libro : libri) {
+                dati.writeStartObject();
+                dati.writeNumberField("libroID", libro.libroID());
+                dati.writeStringField("titolo", libro.titolo());
+                dati.writeStringField("autori", libro.autori());
+                dati.writeStringField("categoria", libro.categoria());
+                dati.writeNumberField("prezzo", libro.prezzo());
+                dati.writeEndObject();
+            }
+            dati.writeEndArray();
+            return "Libri nella libreria 'Preferiti'.";
+        };
+    }
+
+    @Benchmark
+    public byte[] json() throws IOException, SQLException {
+        return ClientHandler.codificaRisposta(ResponseFormatter.successoJson(scrittore), false, false);
+    }
+
+    @Benchmark
+    public byte[] binarioDaJson() throws IOException, SQLException {
+        return ClientHandler.codificaRisposta(ResponseFormatter.successoJson(scrittore), true, false);
+    }
+
+    @Benchmark
+    public byte[] binarioDiretto() throws IOException, SQLException {
+        ByteArrayOutputStream frame = FormatoBinario.apriFrame(1024);
+        try (JsonGenerator generatore = FormatoBinario.creaGeneratore(frame)) {
+            ResponseFormatter.scriviSuccesso(generatore, null, scrittore);
+        }
+        return FormatoBinario.chiudiFrame(frame);
+    }
+}
@@ -0,0 +1,243 @@
+package me.labb.bookrecommender.server.bench;
+
+import me.labb.bookrecommender.server.db.DatabaseManager;
+import me.labb.bookrecommender.server.db.MigrazioniDB;
+import me.labb.bookrecommender.server.metriche.Istogramma;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Confronto dei tempi della ricerca per titolo o autore con gli indici trigram e full-text della migrazione V001
+ * e con la sola ricerca ILIKE, su un catalogo sintetico di N libri.
+ * <p>
+ * Per ogni dimensione crea lo schema {@code bench_ricerca} con una copia vuota della tabella "Libri", la riempie
+ * con titoli e autori composti da parole casuali (poche parole molto frequenti e molte rare), ricrea gli stessi
+ * indici del catalogo ed esegue ANALYZE. Le query sono quelle della prima pagina di {@code LibroDAO.cercaLibri}
+ * nelle due modalità; la ricerca ILIKE è eseguita con le bitmap scan disattivate, così il planner non può usare
+ * gli indici GIN, come su un database senza la migrazione V001. Al termine lo schema viene eliminato.
+ * <p>
+ * Uso: {@code BenchmarkRicerca [righe ...]}, di default 100000 e 1000000.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class BenchmarkRicerca {
+
+    private static final String SCHEMA = "bench_ricerca";
+    private static final int PAROLE = 20_000;
+    private static final int RIGHE_PER_INSERT = 10_000;
+    private static final int LIMITE = 20;
+    private static final int RISCALDAMENTO = 3;
+    private static final int RIPETIZIONI = 20;
+
+    private static final String SQL_INDICIZZATA = """
+            SELECT * FROM (
+                SELECT *,
+                       CASE WHEN "Titolo" ILIKE ? THEN 0 ELSE 1 END AS "Fase",
+                       -ts_rank("RicercaTesto", plainto_tsquery('simple', ?)) AS "Rango",
+                       -similarity("Titolo", ?) AS "Somiglianza"
+                FROM bench_ricerca."Libri"
+                WHERE "Titolo" ILIKE ? OR "Autori" ILIKE ?
+                   OR "RicercaTesto" @@ plainto_tsquery('simple', ?)
+            ) r
+            ORDER BY "Fase", "Rango", "Somiglianza", "Titolo", "LibroID" LIMIT ?
+            """;
+
+    private static final String SQL_ILIKE = """
+            SELECT * FROM (
+                SELECT *, CASE WHEN "Titolo" ILIKE ? THEN 0 ELSE 1 END AS "Fase"
+                FROM bench_ricerca."Libri"
+                WHERE "Titolo" ILIKE ? OR "Autori" ILIKE ?
+            ) r
+            ORDER BY "Fase", "Titolo", "LibroID" LIMIT ?
+            """;
+
+    private record Termine(String descrizione, String testo) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> dimensioni = new ArrayList<>();
+        for (String arg : args) {
+            dimensioni.add(Integer.parseInt(arg));
+        }
+        if (dimensioni.isEmpty()) {
+            dimensioni = List.of(100_000, 1_000_000);
+        }
+
+        new MigrazioniDB().applica();
+        String[] parole = generaParole(new Random(42));
+        List<Termine> termini = List.of(
+                new Termine("parola frequente", parole[0]),
+                new Termine("parola media", parole[PAROLE / 20]),
+                new Termine("parola rara", parole[PAROLE - 1]),
+                new Termine("due parole", parole[1] + " " + parole[PAROLE / 10]),
+                new Termine("frammento di 3 lettere", parole[PAROLE / 2].substring(1, 4)),
+                new Termine("assente", "qwxz"));
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection()) {
+            try {
+                for (int righe : dimensioni) {
+                    long inizio = System.nanoTime();
+                    creaCatalogo(conn, righe, parole);
+                    System.out.printf("%n%d libri caricati e indicizzati in %.1f s%n", righe, (System.nanoTime() - inizio) / 1e9);
+                    System.out.printf("%-36s %-12s %8s %10s %10s %10s%n",
+                            "termine", "ricerca", "trovati", "media us", "p50 us", "max us");
+                    for (Termine termine : termini) {
+                        misura(conn, termine, "trigram+tsv", false);
+                        misura(conn, termine, "ILIKE", true);
+                    }
+                }
+            } finally {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+                }
+            }
+        }
+        DatabaseManager.getInstance().chiudi();
+    }
+
+    /**
+     * Crea la copia della tabella dei libri, la riempie e solo dopo costruisce gli indici del catalogo,
+     * letti da pg_indexes, perché aggiornare gli indici GIN riga per riga renderebbe il caricamento molto più lento.
+     */
+    private static void creaCatalogo(Connection conn, int righe, String[] parole) throws SQLException {
+        List<String> indici = new ArrayList<>();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+            stmt.execute("CREATE SCHEMA " + SCHEMA);
+            stmt.execute("CREATE TABLE " + SCHEMA + ".\"Libri\" (LIKE public.\"Libri\" INCLUDING DEFAULTS INCLUDING GENERATED)");
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT indexdef FROM pg_indexes WHERE schemaname = 'public' AND tablename = 'Libri'")) {
+                while (rs.next()) {
+                    indici.add(rs.getString(1).replaceFirst("INDEX \\S+ ON public\\.\"Libri\"",
+                            "INDEX ON " + SCHEMA + ".\"Libri\""));
+                }
+            }
+        }
+
+        String sql = "INSERT INTO " + SCHEMA + ".\"Libri\" (\"LibroID\", \"Titolo\", \"Autori\", \"AnnoPubblicazione\") "
+                + "SELECT * FROM unnest(?::int[], ?::varchar[], ?::text[], ?::int[])";
+        Random r = new Random(righe);
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int primo = 1; primo <= righe; primo += RIGHE_PER_INSERT) {
+                int quante = Math.min(RIGHE_PER_INSERT, righe - primo + 1);
+                Integer[] id = new Integer[quante];
+                String[] titoli = new String[quante];
+                String[] autori = new String[quante];
+                Integer[] anni = new Integer[quante];
+                for (int i = 0; i < quante; i++) {
+                    id[i] = primo + i;
+                    titoli[i] = frase(r, parole, 2 + r.nextInt(5));
+                    autori[i] = "By " + frase(r, parole, 2);
+                    anni[i] = 1900 + r.nextInt(125);
+                }
+                Array[] colonne = {conn.createArrayOf("int4", id), conn.createArrayOf("varchar", titoli),
+                        conn.createArrayOf("text", autori), conn.createArrayOf("int4", anni)};
+                for (int c = 0; c < colonne.length; c++) {
+                    stmt.setArray(c + 1, colonne[c]);
+                }
+                stmt.executeUpdate();
+                for (Array colonna : colonne) {
+                    colonna.free();
+                }
+            }
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            for (String indice : indici) {
+                stmt.execute(indice);
+            }
+            stmt.execute("ANALYZE " + SCHEMA + ".\"Libri\"");
+        }
+    }
+
+    private static void misura(Connection conn, Termine termine, String modalita, boolean soloIlike) throws SQLException {
+        String pattern = "%" + termine.testo() + "%";
+        Istogramma latenza = new Istogramma();
+        int trovati = 0;
+        conn.setAutoCommit(false);
+        try (Statement impostazioni = conn.createStatement();
+             PreparedStatement stmt = conn.prepareStatement(soloIlike ? SQL_ILIKE : SQL_INDICIZZATA)) {
+            if (soloIlike) {
+                impostazioni.execute("SET LOCAL enable_bitmapscan = off");
+                stmt.setString(1, pattern);
+                stmt.setString(2, pattern);
+                stmt.setString(3, pattern);
+                stmt.setInt(4, LIMITE);
+            } else {
+                stmt.setString(1, pattern);
+                stmt.setString(2, termine.testo());
+                stmt.setString(3, termine.testo());
+                stmt.setString(4, pattern);
+                stmt.setString(5, pattern);
+                stmt.setString(6, termine.testo());
+                stmt.setInt(7, LIMITE);
+            }
+            for (int i = 0; i < RISCALDAMENTO + RIPETIZIONI; i++) {
+                long t = System.nanoTime();
+                int righe = 0;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        righe++;
+                    }
+                }
+                if (i >= RISCALDAMENTO) {
+                    latenza.registra(System.nanoTime() - t);
+                }
+                trovati = righe;
+            }
+        } finally {
+            conn.rollback();
+            conn.setAutoCommit(true);
+        }
+        long[] p = latenza.percentili(50, 100);
+        System.out.printf("%-36s %-12s %8d %10d %10d %10d%n", termine.descrizione() + " (" + termine.testo() + ")",
+                modalita, trovati, latenza.getSomma() / latenza.getConteggio(), p[0], p[1]);
+    }
+
+    /**
+     * Genera parole diverse di due-quattro sillabe, in ordine di frequenza decrescente per {@link #frase}.
+     */
+    private static String[] generaParole(Random r) {
+        String consonanti = "bcdfglmnprstvz";
+        String vocali = "aeiou";
+        Set<String> parole = new LinkedHashSet<>();
+        while (parole.size() < PAROLE) {
+            StringBuilder parola = new StringBuilder();
+            int sillabe = 2 + r.nextInt(3);
+            for (int s = 0; s < sillabe; s++) {
+                parola.append(consonanti.charAt(r.nextInt(consonanti.length())))
+                        .append(vocali.charAt(r.nextInt(vocali.length())));
+            }
+            parole.add(parola.toString());
+        }
+        return parole.toArray(new String[0]);
+    }
+
+    /**
+     * Compone una frase di parole scelte con una distribuzione molto sbilanciata verso le prime del vocabolario,
+     * come in un catalogo reale dove poche parole compaiono in molti titoli.
+     */
+    private static String frase(Random r, String[] parole, int lunghezza) {
+        StringBuilder frase = new StringBuilder();
+        for (int i = 0; i < lunghezza; i++) {
+            if (i > 0) {
+                frase.append(' ');
+            }
+            double u = r.nextDouble();
+            frase.append(parole[(int) (u * u * u * parole.length)]);
+        }
+        return frase.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package me.labb.bookrecommender.server.bench;
+
+import me.labb.bookrecommender.server.db.DatabaseManager;
+import me.labb.bookrecommender.server.log.Log;
+import me.labb.bookrecommender.server.log.LogRichieste;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Prova di carico del log: lo stesso carico di {@link CaricoServer} con ogni richiesta registrata nel log,
+ * per confrontare la scrittura diretta su System.out con quella asincrona di {@link Log}.
+ * <p>
+ * Modalità, nell'ordine:
+ * <ul>
+ *     <li>{@code nessuno}: richieste non registrate, il riferimento senza log</li>
+ *     <li>{@code diretto}: ogni richiesta scritta dal thread che la elabora, come prima di {@link Log#attiva}</li>
+ *     <li>{@code asincrono}: ogni richiesta accodata nel buffer di {@link Log}</li>
+ *     <li>{@code limitato}: scrittura asincrona con il limite predefinito di righe al secondo di {@link LogRichieste}</li>
+ * </ul>
+ * Il log va su standard output, da redirigere su un file o su /dev/null per non misurare il terminale;
+ * la tabella dei risultati, con i messaggi scartati perché il buffer era pieno, è stampata su standard error.
+ * <p>
+ * Uso: {@code CaricoLog [client] [richiestePerClient] [blocking|nio] [platform|virtual] > log.txt}
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class CaricoLog {
+
+    public static void main(String[] args) throws Exception {
+        int client = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int richiestePerClient = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        String trasporto = args.length > 2 ? args[2] : "blocking";
+        String esecutore = args.length > 3 ? args[3] : "virtual";
+
+        List<Integer> libri = new ArrayList<>();
+        List<String> parole = new ArrayList<>();
+        CaricoServer.leggiCampione(libri, parole);
+        if (libri.isEmpty() || parole.isEmpty()) {
+            System.err.println("Il database non contiene libri.");
+            return;
+        }
+
+        Properties proprieta = new Properties();
+        proprieta.setProperty("server.executor", esecutore);
+        proprieta.setProperty("server.transport", trasporto);
+        // Un giro non misurato, così la prima modalità non paga la compilazione JIT del server
+        LogRichieste.attiva(0);
+        CaricoServer.esegui("riscaldamento", proprieta, client, richiestePerClient, libri, parole);
+
+        List<CaricoServer.Risultato> risultati = new ArrayList<>();
+        List<Long> scartati = new ArrayList<>();
+        for (String modalita : List.of("nessuno", "diretto", "asincrono", "limitato")) {
+            switch (modalita) {
+                case "nessuno" -> LogRichieste.attiva(0);
+                case "diretto", "asincrono" -> LogRichieste.attiva(Integer.MAX_VALUE);
+                default -> LogRichieste.attiva(LogRichieste.LIMITE_PREDEFINITO);
+            }
+            if (!modalita.equals("diretto")) {
+                Log.attiva(Log.Livello.INFO, Log.CAPACITA_PREDEFINITA);
+            }
+            risultati.add(CaricoServer.esegui(modalita, proprieta, client, richiestePerClient, libri, parole));
+            scartati.add(Log.getScartati());
+            Log.arresta();
+        }
+
+        System.err.printf("%nLog delle richieste: trasporto %s, thread %s, %d client, %d richieste per client, %d CPU%n",
+                trasporto, esecutore, client, richiestePerClient, Runtime.getRuntime().availableProcessors());
+        CaricoServer.stampa(System.err, "log", risultati);
+        for (int i = 0; i < risultati.size(); i++) {
+            System.err.printf("%-10s %d messaggi scartati%n", risultati.get(i).modalita(), scartati.get(i));
+        }
+        DatabaseManager.getInstance().chiudi();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,263 @@
+package me.labb.bookrecommender.server.bench;
+
+import me.labb.bookrecommender.server.Server;
+import me.labb.bookrecommender.server.db.DatabaseManager;
+import me.labb.bookrecommender.server.metriche.Istogramma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Prova di carico del server con molti client concorrenti, per confrontare i thread di piattaforma
+ * e i thread virtuali (server.executor) sullo stesso trasporto.
+ * <p>
+ * Per ogni modalità avvia il server nel processo su una porta libera, apre tutti i client, fa inviare
+ * a ciascuno alcune richieste di riscaldamento e poi quelle misurate, una dopo l'altra, registrando la latenza
+ * di ognuna. Stampa throughput, percentili della latenza, errori e picco di thread di piattaforma della JVM;
+ * con i thread virtuali {@code DiagnosticaPinning} segnala nel log i thread rimasti bloccati sul carrier.
+ * <p>
+ * Le richieste sono di sola lettura (70% dettagli di un libro, 20% ricerca per autore, 10% categorie) e, senza
+ * cache e indice in memoria attivati da ServerMain, arrivano tutte al database configurato in config.properties.
+ * La ricerca per titolo è esclusa: sul database scorre l'intera tabella e con poche CPU il confronto
+ * misurerebbe solo l'attesa di una connessione dal pool.
+ * <p>
+ * Uso: {@code CaricoServer [client] [richiestePerClient] [blocking|nio] [platform|virtual ...]}
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class CaricoServer {
+
+    private static final int CAMPIONE_LIBRI = 200;
+    private static final int RICHIESTE_RISCALDAMENTO = 5;
+    private static final int APERTURE_CONCORRENTI = 32;
+    private static final int TIMEOUT_LETTURA_MS = 30_000;
+    private static final Pattern PAROLA = Pattern.compile("\\p{L}{4,}");
+
+    record Risultato(String modalita, int client, long richieste, int errori, double secondi,
+                             Istogramma latenza, int piccoThread) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int client = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int richiestePerClient = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        String trasporto = args.length > 2 ? args[2] : "blocking";
+        List<String> modalita = args.length > 3 ? List.of(args).subList(3, args.length) : List.of("platform", "virtual");
+
+        List<Integer> libri = new ArrayList<>();
+        List<String> parole = new ArrayList<>();
+        leggiCampione(libri, parole);
+        if (libri.isEmpty() || parole.isEmpty()) {
+            System.err.println("Il database non contiene libri.");
+            return;
+        }
+
+        List<Risultato> risultati = new ArrayList<>();
+        for (String esecutore : modalita) {
+            Properties proprieta = new Properties();
+            proprieta.setProperty("server.executor", esecutore);
+            proprieta.setProperty("server.transport", trasporto);
+            risultati.add(esegui(esecutore, proprieta, client, richiestePerClient, libri, parole));
+        }
+
+        System.out.printf("%nTrasporto %s, %d client, %d richieste per client, %d CPU%n",
+                trasporto, client, richiestePerClient, Runtime.getRuntime().availableProcessors());
+        stampa(System.out, "esecutore", risultati);
+        DatabaseManager.getInstance().chiudi();
+        System.exit(0);
+    }
+
+    /**
+     * Stampa la tabella dei risultati, una riga per modalità.
+     *
+     * @param colonna Intestazione della colonna con il nome della modalità
+     */
+    static void stampa(PrintStream uscita, String colonna, List<Risultato> risultati) {
+        uscita.printf("%-10s %10s %7s %8s %11s %8s %8s %8s %8s %7s%n",
+                colonna, "richieste", "errori", "secondi", "richieste/s", "p50 us", "p99 us", "p999 us", "max us", "thread");
+        for (Risultato r : risultati) {
+            long[] p = r.latenza().percentili(50, 99, 99.9, 100);
+            uscita.printf("%-10s %10d %7d %8.2f %11.0f %8d %8d %8d %8d %7d%n",
+                    r.modalita(), r.richieste(), r.errori(), r.secondi(), r.richieste() / r.secondi(),
+                    p[0], p[1], p[2], p[3], r.piccoThread());
+        }
+    }
+
+    /**
+     * Avvia il server con le proprietà indicate e lo carica con i client.
+     *
+     * @param modalita  Nome della modalità nei risultati
+     * @param proprieta Proprietà che sostituiscono quelle di config.properties
+     */
+    static Risultato esegui(String modalita, Properties proprieta, int client, int richiestePerClient,
+                            List<Integer> libri, List<String> parole) throws Exception {
+        int porta = portaLibera();
+        Server server = new Server(porta, proprieta);
+        Thread threadServer = new Thread(server, "server-" + modalita);
+        threadServer.start();
+        attendiAvvio(porta);
+
+        ThreadMXBean thread = ManagementFactory.getThreadMXBean();
+        thread.resetPeakThreadCount();
+
+        Istogramma latenza = new Istogramma();
+        AtomicInteger errori = new AtomicInteger();
+        CountDownLatch connessi = new CountDownLatch(client);
+        CountDownLatch via = new CountDownLatch(1);
+        CountDownLatch finiti = new CountDownLatch(client);
+        Semaphore aperture = new Semaphore(APERTURE_CONCORRENTI);
+        long inizio;
+
+        // I client sono thread virtuali in entrambe le modalità, così il loro numero non dipende da quella provata
+        try (ExecutorService clienti = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < client; c++) {
+                clienti.submit(() -> {
+                    boolean pronto = false;
+                    try (Socket socket = new Socket()) {
+                        BufferedReader in;
+                        PrintWriter out;
+                        // Oltre la coda di accept del server il kernel scarta connessioni che il client crede aperte
+                        aperture.acquire();
+                        try {
+                            socket.connect(new InetSocketAddress("localhost", porta));
+                            socket.setSoTimeout(TIMEOUT_LETTURA_MS);
+                            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                            out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+                            in.readLine();
+                        } finally {
+                            aperture.release();
+                        }
+                        for (int i = 0; i < RICHIESTE_RISCALDAMENTO; i++) {
+                            invia(in, out, i, libri, parole);
+                        }
+                        pronto = true;
+                        connessi.countDown();
+                        via.await();
+                        for (int i = 0; i < richiestePerClient; i++) {
+                            long t = System.nanoTime();
+                            boolean ok = invia(in, out, i, libri, parole);
+                            latenza.registra(System.nanoTime() - t);
+                            if (!ok) {
+                                errori.incrementAndGet();
+                            }
+                        }
+                        out.println("EXIT");
+                    } catch (IOException | InterruptedException e) {
+                        errori.incrementAndGet();
+                        if (!pronto) {
+                            connessi.countDown();
+                        }
+                        System.err.println("Client interrotto: " + e.getMessage());
+                    } finally {
+                        finiti.countDown();
+                    }
+                    return null;
+                });
+            }
+            connessi.await();
+            inizio = System.nanoTime();
+            via.countDown();
+            finiti.await();
+        }
+        double secondi = (System.nanoTime() - inizio) / 1e9;
+        int piccoThread = thread.getPeakThreadCount();
+
+        server.arresta();
+        threadServer.join(TimeUnit.SECONDS.toMillis(10));
+        return new Risultato(modalita, client, latenza.getConteggio(), errori.get(), secondi, latenza, piccoThread);
+    }
+
+    /**
+     * Invia una richiesta del mix e ne legge la risposta.
+     *
+     * @return true se la risposta è di successo
+     */
+    private static boolean invia(BufferedReader in, PrintWriter out, int id, List<Integer> libri,
+                                 List<String> parole) throws IOException {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        int tipo = r.nextInt(10);
+        String comando;
+        String parametri;
+        if (tipo < 7) {
+            comando = "DETTAGLI_LIBRO";
+            parametri = String.valueOf(libri.get(r.nextInt(libri.size())));
+        } else if (tipo < 9) {
+            comando = "CERCA_PER_AUTORE";
+            parametri = parole.get(r.nextInt(parole.size()));
+        } else {
+            comando = "CATEGORIE";
+            parametri = "";
+        }
+        out.println("{\"id\":" + id + ",\"comando\":\"" + comando + "\",\"parametri\":\"" + parametri + "\"}");
+        String risposta = in.readLine();
+        if (risposta == null) {
+            throw new IOException("Connessione chiusa dal server");
+        }
+        return risposta.contains("\"status\":\"SUCCESS\"");
+    }
+
+    /**
+     * Legge gli ID di alcuni libri e una parola degli autori di ognuno, usata come termine di ricerca.
+     */
+    static void leggiCampione(List<Integer> libri, List<String> parole) throws SQLException {
+        String sql = "SELECT \"LibroID\", \"Autori\" FROM \"Libri\" ORDER BY \"LibroID\" LIMIT ?";
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, CAMPIONE_LIBRI);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    libri.add(rs.getInt(1));
+                    Matcher parola = PAROLA.matcher(rs.getString(2));
+                    if (parola.find()) {
+                        parole.add(parola.group());
+                    }
+                }
+            }
+        }
+    }
+
+    private static int portaLibera() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void attendiAvvio(int porta) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < limite) {
+            try {
+                new Socket("localhost", porta).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("Il server non si è avviato sulla porta " + porta);
+    }
+}
@@ -0,0 +1,164 @@
+package me.labb.bookrecommender.server.bench;
+
+import me.labb.bookrecommender.server.db.ConsiglioDAO;
+import me.labb.bookrecommender.server.db.DatabaseManager;
+import me.labb.bookrecommender.server.db.MigrazioniDB;
+import me.labb.bookrecommender.server.db.ValutazioneDAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prova di carico dei salvataggi concorrenti di valutazioni e consigli, da eseguire su un database di prova
+ * configurato in config.properties: sovrascrive le valutazioni e i consigli degli utenti usati.
+ * <p>
+ * Più thread salvano valutazioni e consigli per pochi utenti e libri, così le stesse righe vengono scritte
+ * in parallelo. Al termine stampa il throughput e verifica che non ci siano valutazioni duplicate,
+ * che nessun utente superi il limite di consigli per libro e che gli aggregati coincidano con le valutazioni.
+ * <p>
+ * Uso: {@code StressSalvataggi [thread] [salvataggiPerThread]}
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+public class StressSalvataggi {
+
+    private static final int UTENTI = 8;
+    private static final int LIBRI_RIFERIMENTO = 3;
+    private static final int LIBRI_SUGGERITI = 6;
+
+    public static void main(String[] args) throws Exception {
+        int thread = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int salvataggiPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+
+        new MigrazioniDB().applica();
+        List<Integer> utenti = leggiID("SELECT \"UserID\" FROM \"UtentiRegistrati\" ORDER BY \"UserID\" LIMIT ?", UTENTI);
+        List<Integer> libri = leggiID("SELECT \"LibroID\" FROM \"Libri\" ORDER BY \"LibroID\" LIMIT ?",
+                LIBRI_RIFERIMENTO + LIBRI_SUGGERITI);
+        if (utenti.size() < UTENTI || libri.size() < LIBRI_RIFERIMENTO + LIBRI_SUGGERITI) {
+            System.err.println("Servono almeno " + UTENTI + " utenti e " + (LIBRI_RIFERIMENTO + LIBRI_SUGGERITI) + " libri.");
+            return;
+        }
+        List<Integer> riferimenti = libri.subList(0, LIBRI_RIFERIMENTO);
+        List<Integer> suggeriti = libri.subList(LIBRI_RIFERIMENTO, libri.size());
+
+        ValutazioneDAO valutazioneDAO = new ValutazioneDAO();
+        ConsiglioDAO consiglioDAO = new ConsiglioDAO();
+        AtomicInteger errori = new AtomicInteger();
+        AtomicInteger rifiutati = new AtomicInteger();
+
+        ExecutorService esecutore = Executors.newFixedThreadPool(thread);
+        long inizio = System.nanoTime();
+        for (int t = 0; t < thread; t++) {
+            esecutore.submit(() -> {
+                ThreadLocalRandom r = ThreadLocalRandom.current();
+                for (int i = 0; i < salvataggiPerThread; i++) {
+                    int utente = utenti.get(r.nextInt(utenti.size()));
+                    int riferimento = riferimenti.get(r.nextInt(riferimenti.size()));
+                    try {
+                        valutazioneDAO.salvaValutazione(utente, riferimento,
+                                punteggio(r), "stile", punteggio(r), "contenuto", punteggio(r), "gradevolezza",
+                                punteggio(r), "originalità", punteggio(r), "edizione");
+                        if (consiglioDAO.salvaConsiglio(utente, riferimento,
+                                suggeriti.get(r.nextInt(suggeriti.size()))).isEmpty()) {
+                            rifiutati.incrementAndGet();
+                        }
+                    } catch (SQLException e) {
+                        errori.incrementAndGet();
+                        System.err.println(e.getMessage());
+                    }
+                }
+            });
+        }
+        esecutore.shutdown();
+        esecutore.awaitTermination(10, TimeUnit.MINUTES);
+        double secondi = (System.nanoTime() - inizio) / 1e9;
+
+        int salvataggi = thread * salvataggiPerThread;
+        System.out.printf("%d thread, %d valutazioni e %d consigli in %.2f s: %.0f salvataggi/s%n",
+                thread, salvataggi, salvataggi, secondi, salvataggi * 2 / secondi);
+        System.out.printf("Errori: %d, consigli rifiutati per il limite: %d%n", errori.get(), rifiutati.get());
+
+        int anomalie = verifica(utenti, riferimenti);
+        System.out.println(anomalie == 0 ? "Verifica superata." : "Verifica fallita: " + anomalie + " anomalie.");
+        DatabaseManager.getInstance().chiudi();
+        if (anomalie > 0 || errori.get() > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static short punteggio(ThreadLocalRandom r) {
+        return (short) (1 + r.nextInt(5));
+    }
+
+    private static List<Integer> leggiID(String sql, int limite) throws SQLException {
+        List<Integer> id = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, limite);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    id.add(rs.getInt(1));
+                }
+            }
+        }
+        return id;
+    }
+
+    private static int verifica(List<Integer> utenti, List<Integer> riferimenti) throws SQLException {
+        Integer[] idUtenti = utenti.toArray(new Integer[0]);
+        Integer[] idLibri = riferimenti.toArray(new Integer[0]);
+        int anomalie = 0;
+        try (Connection conn = DatabaseManager.getInstance().getConnection()) {
+            anomalie += conta(conn, "valutazioni duplicate", """
+                    SELECT COUNT(*) FROM (
+                        SELECT 1 FROM "ValutazioniLibri"
+                        WHERE "LibroID" = ANY (?) AND "UserID" = ANY (?)
+                        GROUP BY "UserID", "LibroID" HAVING COUNT(*) > 1
+                    ) d
+                    """, conn.createArrayOf("integer", idLibri), conn.createArrayOf("integer", idUtenti));
+            anomalie += conta(conn, "consigli oltre il limite", """
+                    SELECT COUNT(*) FROM (
+                        SELECT 1 FROM "ConsigliLibri"
+                        WHERE "LibroRiferimentoID" = ANY (?) AND "UserID" = ANY (?)
+                        GROUP BY "UserID", "LibroRiferimentoID" HAVING COUNT(*) > %d
+                    ) d
+                    """.formatted(ConsiglioDAO.CONSIGLI_MASSIMI_PER_LIBRO),
+                    conn.createArrayOf("integer", idLibri), conn.createArrayOf("integer", idUtenti));
+            anomalie += conta(conn, "aggregati non allineati", """
+                    SELECT COUNT(*) FROM "AggregatiValutazioni" a
+                    JOIN (
+                        SELECT "LibroID", COUNT(*) AS n, SUM("ScoreStile") AS stile, SUM("ScoreEdizione") AS edizione
+                        FROM "ValutazioniLibri" GROUP BY "LibroID"
+                    ) v USING ("LibroID")
+                    WHERE a."LibroID" = ANY (?)
+                      AND (a."NumeroValutazioni", a."SommaStile", a."SommaEdizione") <> (v.n, v.stile, v.edizione)
+                    """, conn.createArrayOf("integer", idLibri));
+        }
+        return anomalie;
+    }
+
+    private static int conta(Connection conn, String descrizione, String sql, Object... parametri) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < parametri.length; i++) {
+                stmt.setObject(i + 1, parametri[i]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                int anomalie = rs.getInt(1);
+                System.out.println("Controllo " + descrizione + ": " + anomalie);
+                return anomalie;
+            }
+        }
+    }
+}
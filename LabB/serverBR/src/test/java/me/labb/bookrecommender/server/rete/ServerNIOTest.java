@@ -0,0 +1,136 @@
+package me.labb.bookrecommender.server.rete;
+
+import me.labb.bookrecommender.server.utils.Compressione;
+import me.labb.bookrecommender.server.utils.FormatoBinario;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Cambio di formato sul trasporto NIO quando il client invia il comando e le richieste successive
+ * nella stessa scrittura: i byte che seguono FORMAT BINARY o COMPRESSIONE vanno letti nel nuovo formato.
+ * Usa solo comandi che non accedono al database.
+ *
+ * @author Caretti Gabriele 756564 VA
+ * @author Como Riccardo 758697 VA
+ * @author Manicone Giorgia 758716 VA
+ */
+class ServerNIOTest {
+
+    private static final int TIMEOUT_MS = 10_000;
+
+    private ExecutorService worker;
+    private ServerNIO server;
+    private Thread threadServer;
+    private int porta;
+
+    @BeforeEach
+    void avvia() throws Exception {
+        try (ServerSocket libera = new ServerSocket(0)) {
+            porta = libera.getLocalPort();
+        }
+        worker = Executors.newFixedThreadPool(2);
+        server = new ServerNIO(porta, worker);
+        threadServer = new Thread(() -> {
+            try {
+                server.avvia();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, "server-nio-test");
+        threadServer.start();
+    }
+
+    @AfterEach
+    void arresta() throws Exception {
+        server.arresta();
+        threadServer.join(TIMEOUT_MS);
+        worker.shutdownNow();
+        worker.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void frameInviatoInsiemeAFormatBinary() throws Exception {
+        try (Socket socket = connetti()) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertTrue(leggiRiga(in).contains("Benvenuto"));
+
+            ByteArrayOutputStream richieste = new ByteArrayOutputStream();
+            richieste.write("{\"id\":1,\"comando\":\"HELP\"}\nFORMAT BINARY\n".getBytes(StandardCharsets.UTF_8));
+            richieste.write(FormatoBinario.codificaFrame("{\"id\":2,\"comando\":\"HELP\"}"));
+            socket.getOutputStream().write(richieste.toByteArray());
+            socket.getOutputStream().flush();
+
+            assertTrue(leggiRiga(in).contains("\"id\":1"));
+            assertTrue(leggiRiga(in).contains("frame binari"));
+            byte[] frame = new byte[in.readInt()];
+            in.readFully(frame);
+            String risposta = FormatoBinario.decodifica(frame);
+            assertTrue(risposta.contains("\"id\":2"), risposta);
+            assertTrue(risposta.contains("SUCCESS"), risposta);
+        }
+    }
+
+    @Test
+    void richiestaInviataInsiemeACompressione() throws Exception {
+        Compressione.attiva(Compressione.SOGLIA_DEFAULT);
+        try (Socket socket = connetti()) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            leggiRiga(in);
+
+            socket.getOutputStream().write("COMPRESSIONE\n{\"id\":3,\"comando\":\"FORMAT\",\"parametri\":\"JSON\"}\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            socket.getOutputStream().flush();
+
+            assertTrue(leggiRiga(in).contains("Compressione attiva"));
+            // Sotto la soglia il frame non è compresso: lunghezza e testo JSON
+            int lunghezza = in.readInt();
+            assertEquals(0, lunghezza & Compressione.FLAG_COMPRESSO);
+            byte[] contenuto = new byte[lunghezza];
+            in.readFully(contenuto);
+            assertTrue(new String(contenuto, StandardCharsets.UTF_8).contains("\"id\":3"));
+        }
+    }
+
+    private Socket connetti() throws Exception {
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS);
+        while (true) {
+            try {
+                Socket socket = new Socket("localhost", porta);
+                socket.setSoTimeout(TIMEOUT_MS);
+                return socket;
+            } catch (IOException e) {
+                if (System.nanoTime() > limite) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private static String leggiRiga(InputStream in) throws IOException {
+        ByteArrayOutputStream riga = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("Connessione chiusa dal server");
+            }
+            riga.write(b);
+        }
+        return riga.toString(StandardCharsets.UTF_8);
+    }
+}